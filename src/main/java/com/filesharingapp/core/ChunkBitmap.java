@@ -0,0 +1,322 @@
+package com.filesharingapp.core;
+
+import com.filesharingapp.utils.LoggerUtil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ChunkBitmap
+ * -----------
+ * Baby-English:
+ *   ✔ One bit per chunk: 1 = "we have this chunk", 0 = "still missing".
+ *   ✔ Can live only in memory, or in a small memory-mapped file next to
+ *     the partial upload ("tmp/uploads/{id}.bitmap").
+ *   ✔ Mapped file → set() only changes a copy in the heap. checkpoint()
+ *     copies the new bits into the mapping and pushes them to disk.
+ *   ✔ Why not write the mapping at once? The OS may write a bitmap page
+ *     back before the chunk data pages. After a power cut a bit would
+ *     then claim a chunk that never reached the disk. So: force the
+ *     chunk data first, THEN the bitmap (checkpoint does both in order).
+ *     A bit on disk always means "this chunk's bytes are on disk too".
+ *   ✔ After a restart we open the file again and know exactly which
+ *     chunks are still missing.
+ *
+ * File layout (big-endian):
+ *   [0]   int   magic "FSCB"
+ *   [4]   int   version
+ *   [8]   long  chunkSize
+ *   [16]  long  totalBytes
+ *   [24]  int   totalChunks
+ *   [28]  short + bytes  transferId (UTF-8, max 496 bytes)
+ *   [526] short + bytes  fileName   (UTF-8, max 496 bytes)
+ *   [1024…]             bits, chunk 0 = lowest bit of first byte
+ */
+public final class ChunkBitmap implements Closeable {
+
+    private static final int MAGIC = 0x46534342; // "FSCB"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 1024;
+    private static final int NAME_SLOT = 496;
+    private static final int ID_POS = 28;
+    private static final int NAME_POS = ID_POS + 2 + NAME_SLOT;
+
+    private final ByteBuffer buffer;     // mapped file or plain heap buffer
+    private final byte[] live;           // bits as we know them now (mapping gets them on checkpoint())
+    private final FileChannel channel;   // null when in-memory only
+    private final Path file;             // null when in-memory only
+    private final int bitsOffset;
+    private final int totalChunks;
+    private final long chunkSize;
+    private final long totalBytes;
+    private final String transferId;
+    private final String fileName;
+    private int cardinality;
+    private int dirtyFrom = Integer.MAX_VALUE; // byte range of live not yet copied to the mapping
+    private int dirtyTo = -1;
+
+    private ChunkBitmap(ByteBuffer buffer, FileChannel channel, Path file, int bitsOffset,
+                        int totalChunks, long chunkSize, long totalBytes,
+                        String transferId, String fileName) {
+        this.buffer = buffer;
+        this.channel = channel;
+        this.file = file;
+        this.bitsOffset = bitsOffset;
+        this.totalChunks = totalChunks;
+        this.chunkSize = chunkSize;
+        this.totalBytes = totalBytes;
+        this.transferId = transferId;
+        this.fileName = fileName;
+        this.live = new byte[bitBytes(totalChunks)];
+        buffer.get(bitsOffset, live);
+        this.cardinality = countBits();
+    }
+
+    // ============================================================
+    // 🏗️ Create / open
+    // ============================================================
+
+    /** Bitmap kept only in the heap (nothing survives a restart). */
+    public static ChunkBitmap inMemory(int totalChunks) {
+        ByteBuffer buf = ByteBuffer.allocate(bitBytes(totalChunks));
+        return new ChunkBitmap(buf, null, null, 0, totalChunks, 0L, 0L, null, null);
+    }
+
+    /**
+     * Create a new mapped bitmap file (all chunks missing).
+     * An old file at the same path is replaced.
+     */
+    public static ChunkBitmap create(Path file, String transferId, String fileName,
+                                     long chunkSize, long totalBytes, int totalChunks) throws IOException {
+        Files.deleteIfExists(file);
+        FileChannel ch = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + bitBytes(totalChunks));
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putLong(8, chunkSize);
+            map.putLong(16, totalBytes);
+            map.putInt(24, totalChunks);
+            putString(map, ID_POS, transferId);
+            putString(map, NAME_POS, fileName);
+            map.force();
+            return new ChunkBitmap(map, ch, file, HEADER_SIZE, totalChunks, chunkSize, totalBytes,
+                    transferId, fileName);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open a bitmap file written by an earlier run.
+     *
+     * @throws IOException if the file is not a valid bitmap
+     */
+    public static ChunkBitmap open(Path file) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (ch.size() < HEADER_SIZE) throw new IOException("Bitmap too small: " + file);
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size());
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+                throw new IOException("Not a chunk bitmap: " + file);
+            }
+            long chunkSize = map.getLong(8);
+            long totalBytes = map.getLong(16);
+            int totalChunks = map.getInt(24);
+            if (totalChunks <= 0 || ch.size() < HEADER_SIZE + bitBytes(totalChunks)) {
+                throw new IOException("Corrupt chunk bitmap: " + file);
+            }
+            return new ChunkBitmap(map, ch, file, HEADER_SIZE, totalChunks, chunkSize, totalBytes,
+                    getString(map, ID_POS), getString(map, NAME_POS));
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    // ============================================================
+    // 🧩 Bits
+    // ============================================================
+
+    /**
+     * Set the bit for one chunk (in the heap; the file gets it on checkpoint()).
+     *
+     * @return true if it was 0 before (new chunk), false if already set.
+     */
+    public synchronized boolean set(int index) {
+        checkIndex(index);
+        int pos = index >>> 3;
+        byte mask = (byte) (1 << (index & 7));
+        if ((live[pos] & mask) != 0) return false;
+        live[pos] |= mask;
+        dirtyFrom = Math.min(dirtyFrom, pos);
+        dirtyTo = Math.max(dirtyTo, pos);
+        cardinality++;
+        return true;
+    }
+
+    public synchronized boolean get(int index) {
+        checkIndex(index);
+        return (live[index >>> 3] & (1 << (index & 7))) != 0;
+    }
+
+    /** How many chunks we have. */
+    public synchronized int cardinality() {
+        return cardinality;
+    }
+
+    public synchronized boolean isComplete() {
+        return cardinality == totalChunks;
+    }
+
+    /**
+     * missingRanges
+     * -------------
+     * Baby-English:
+     *   ✔ Walk the bits once and group missing chunks into runs.
+     *   ✔ Each item is {firstIndex, lastIndexExclusive}.
+     */
+    public synchronized List<int[]> missingRanges() {
+        List<int[]> ranges = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < totalChunks; i++) {
+            boolean have = (live[i >>> 3] & (1 << (i & 7))) != 0;
+            if (!have && start < 0) {
+                start = i;
+            } else if (have && start >= 0) {
+                ranges.add(new int[]{start, i});
+                start = -1;
+            }
+        }
+        if (start >= 0) ranges.add(new int[]{start, totalChunks});
+        return ranges;
+    }
+
+    // ============================================================
+    // 💾 Persistence
+    // ============================================================
+
+    /**
+     * checkpoint
+     * Baby-English:
+     *   ✔ 1) Take the bits set since last time (their chunks are already
+     *        written: callers set a bit only after writing its chunk).
+     *   ✔ 2) Force the chunk data file.
+     *   ✔ 3) Only now put those bits into the mapping and force it.
+     *   ✔ Bits set while 2) runs wait for the next checkpoint.
+     *   ✔ set() is never blocked by the slow disk flush.
+     *   ✔ No-op for in-memory bitmaps.
+     */
+    public void checkpoint(FileChannel data) throws IOException {
+        if (!(buffer instanceof MappedByteBuffer)) return;
+        int from;
+        byte[] bits;
+        synchronized (this) {
+            if (dirtyTo < 0) return;
+            from = dirtyFrom;
+            bits = Arrays.copyOfRange(live, dirtyFrom, dirtyTo + 1);
+            dirtyFrom = Integer.MAX_VALUE;
+            dirtyTo = -1;
+        }
+        try {
+            data.force(false);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) { // not written → next checkpoint tries again
+                dirtyFrom = Math.min(dirtyFrom, from);
+                dirtyTo = Math.max(dirtyTo, from + bits.length - 1);
+            }
+            throw e;
+        }
+        synchronized (this) {
+            for (int i = 0; i < bits.length; i++) {
+                int pos = bitsOffset + from + i;
+                buffer.put(pos, (byte) (buffer.get(pos) | bits[i])); // bits only ever get added
+            }
+            ((MappedByteBuffer) buffer).force();
+        }
+    }
+
+    public boolean isPersistent() {
+        return file != null;
+    }
+
+    /**
+     * Close the file. Bits not yet checkpointed are NOT written: their data
+     * may not be on disk. Call checkpoint() first to keep them.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            channel.close();
+        }
+    }
+
+    /** Close and remove the bitmap file (transfer finished or abandoned). */
+    public void delete() {
+        try {
+            close();
+            if (file != null) Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LoggerUtil.warn("[ChunkBitmap] Could not delete " + file + ": " + e.getMessage());
+        }
+    }
+
+    // ============================================================
+    // ℹ️ Header values
+    // ============================================================
+
+    public int getTotalChunks() { return totalChunks; }
+    public long getChunkSize() { return chunkSize; }
+    public long getTotalBytes() { return totalBytes; }
+    public String getTransferId() { return transferId; }
+    public String getFileName() { return fileName; }
+
+    // ============================================================
+    // 🔧 Helpers
+    // ============================================================
+
+    private static int bitBytes(int totalChunks) {
+        return (Math.max(totalChunks, 0) + 7) >>> 3;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= totalChunks) {
+            throw new IndexOutOfBoundsException("chunk " + index + " of " + totalChunks);
+        }
+    }
+
+    private int countBits() {
+        int count = 0;
+        for (int i = 0; i < bitBytes(totalChunks); i++) {
+            count += Integer.bitCount(live[i] & 0xff);
+        }
+        return count;
+    }
+
+    private static void putString(ByteBuffer buf, int pos, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > NAME_SLOT) throw new IOException("Name too long for bitmap header: " + value);
+        buf.putShort(pos, (short) bytes.length);
+        buf.put(pos + 2, bytes);
+    }
+
+    private static String getString(ByteBuffer buf, int pos) throws IOException {
+        int len = buf.getShort(pos);
+        if (len < 0 || len > NAME_SLOT) throw new IOException("Corrupt bitmap header");
+        byte[] bytes = new byte[len];
+        buf.get(pos + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
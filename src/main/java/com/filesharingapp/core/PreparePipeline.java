@@ -0,0 +1,292 @@
+package com.filesharingapp.core;
+
+import com.filesharingapp.security.AesGcmRecords;
+import com.filesharingapp.security.AesUtil;
+import com.filesharingapp.utils.AppConfig;
+import com.filesharingapp.utils.BoundedPipe;
+import com.filesharingapp.utils.CompressibilityProbe;
+import com.filesharingapp.utils.HashUtil;
+import com.filesharingapp.utils.LoggerUtil;
+import com.filesharingapp.utils.ZipUtil;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * PreparePipeline
+ * ---------------
+ * Baby-English:
+ * ✔ Old way: write .zip → read it, write .enc → read it again for
+ *   the checksum → services read it AGAIN for their own checksum.
+ * ✔ New way: read the original file ONCE and push the bytes through
+ *       zip → AES → checksum → output
+ *   all at the same time.
+ * ✔ Output bytes are what ZipUtil.zipIfNeeded + AesUtil.encryptFile would
+ *   make (same zip entry name, same AES layout: IV first + AES/CBC/PKCS5
+ *   by default, or GCM records with security.aes.format=gcm).
+ * ✔ The checksum is remembered in HashUtil, so later fileChecksum()
+ *   calls (Sender, HTTP/ZeroTier/S3 services) do not re-read the file.
+ * ✔ writeTo(...) can push into ANY OutputStream (file or network).
+ * ✔ stream(...) runs writeTo(...) on a background thread into a bounded
+ *   pipe → the uploader reads from it while zip/AES are still working,
+ *   and no temp archive is written (transfer.prepare.streaming=true).
+ */
+public final class PreparePipeline {
+
+    private static final int BUFFER = 64 * 1024;
+
+    /** Send straight from the pipe instead of writing name.zip(.enc) first. */
+    public static final boolean STREAMING = AppConfig.getBoolean("transfer.prepare.streaming", false);
+
+    /** Bytes allowed to wait between the zip stage and the uploader. */
+    private static final int PIPE_BYTES = AppConfig.getInt("transfer.prepare.pipeBytes", 8 * 1024 * 1024);
+
+    /** What prepareToFile() made. */
+    public static final class Result {
+        public final File file;
+        public final String checksum;
+
+        Result(File file, String checksum) {
+            this.file = file;
+            this.checksum = checksum;
+        }
+    }
+
+    /**
+     * What stream() gives back.
+     * Baby-English: read input() until the end, then checksum() is ready.
+     */
+    public static final class Streamed implements Closeable {
+        public final String name;
+        private final InputStream input;
+        private final CompletableFuture<String> checksum;
+
+        Streamed(String name, InputStream input, CompletableFuture<String> checksum) {
+            this.name = name;
+            this.input = input;
+            this.checksum = checksum;
+        }
+
+        /** Prepared bytes (zip / AES already applied). */
+        public InputStream input() {
+            return input;
+        }
+
+        /** Checksum of all bytes in input(); waits for the zip stage to finish. */
+        public String checksum() throws IOException {
+            try {
+                return checksum.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for checksum", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Preparing " + name + " failed", e.getCause());
+            }
+        }
+
+        /** Stop early: the background stage sees "pipe closed" and quits. */
+        @Override
+        public void close() {
+            try {
+                input.close();
+            } catch (IOException ignored) {
+                // pipe source never throws on close
+            }
+        }
+    }
+
+    private PreparePipeline() {}
+
+    // ============================================================
+    // 1️⃣ Prepare into a file next to the original
+    // ============================================================
+
+    /**
+     * prepareToFile
+     * Baby-English:
+     * ✔ "photo.jpg" + AES → "photo.jpg.zip.enc" in one pass.
+     * ✔ Already ".zip" (or will not shrink) and no AES → nothing to
+     *   write, file used as-is.
+     *
+     * @param aesPassword null/blank → no encryption
+     */
+    public static Result prepareToFile(File original, File destFolder, String aesPassword) throws IOException {
+        if (original == null || !original.isFile()) {
+            throw new FileNotFoundException("File to prepare not found");
+        }
+
+        boolean zip = needsZip(original);
+        boolean encrypt = aesPassword != null && !aesPassword.isBlank();
+        if (!zip && !encrypt) {
+            LoggerUtil.info("[Prepare] Nothing to zip and no AES. Using as-is: " + original.getName());
+            return new Result(original, HashUtil.fileChecksum(original));
+        }
+
+        File folder = (destFolder != null) ? destFolder : original.getAbsoluteFile().getParentFile();
+        File out = new File(folder, outputName(original, aesPassword));
+
+        long start = System.currentTimeMillis();
+        String checksum;
+        try (OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(out), BUFFER)) {
+            checksum = writeTo(original, aesPassword, fileOut);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(out.toPath());
+            throw e;
+        }
+        HashUtil.rememberChecksum(out, checksum);
+
+        LoggerUtil.info("[Prepare] " + (zip ? "Zipped" : "Copied") + (encrypt ? " + encrypted" : "")
+                + " in one pass → " + out.getName() + " (" + out.length() + " bytes, "
+                + (System.currentTimeMillis() - start) + " ms)");
+        return new Result(out, checksum);
+    }
+
+    // ============================================================
+    // 2️⃣ Prepare into a pipe (no temp file)
+    // ============================================================
+
+    /**
+     * stream
+     * Baby-English:
+     * ✔ Start zip → AES → checksum on a background thread, writing into a
+     *   bounded pipe; the caller uploads from Streamed.input() at the
+     *   same time.
+     * ✔ Pipe full → zipping waits; so memory stays at PIPE_BYTES.
+     * ✔ Same bytes as prepareToFile() would write, same checksum.
+     * ✔ Size is not known up front → uploader must not need it.
+     */
+    public static Streamed stream(File original, String aesPassword) throws IOException {
+        if (original == null || !original.isFile()) {
+            throw new FileNotFoundException("File to prepare not found");
+        }
+
+        String name = outputName(original, aesPassword);
+        BoundedPipe pipe = new BoundedPipe(PIPE_BYTES, BUFFER);
+        CompletableFuture<String> checksum = new CompletableFuture<>();
+
+        Thread stage = new Thread(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                checksum.complete(writeTo(original, aesPassword, pipe.sink()));
+                LoggerUtil.info("[Prepare] Streamed " + name + " in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            } catch (Throwable e) {
+                pipe.fail(e);
+                checksum.completeExceptionally(e);
+                LoggerUtil.warn("[Prepare] Streaming " + name + " stopped: " + e.getMessage());
+            }
+        }, "prepare-stream");
+        stage.setDaemon(true);
+        stage.start();
+
+        LoggerUtil.info("[Prepare] Streaming " + original.getName() + " → " + name + " (no temp archive)");
+        return new Streamed(name, pipe.source(), checksum);
+    }
+
+    /** Name the prepared output will have: name(.zip)(.enc). */
+    public static String outputName(File original, String aesPassword) {
+        String name = needsZip(original) ? ZipUtil.sanitizeName(original.getName()) + ".zip" : original.getName();
+        return (aesPassword != null && !aesPassword.isBlank()) ? name + ".enc" : name;
+    }
+
+    // ============================================================
+    // 3️⃣ The one-pass stream
+    // ============================================================
+
+    /**
+     * writeTo
+     * Baby-English:
+     * ✔ original → (zip) → (AES) → checksum tap → sink
+     * ✔ Checksum is made from the bytes that leave the pipe, so it
+     *   matches what the receiver will hash.
+     * ✔ The sink is closed at the end.
+     *
+     * @return checksum of the bytes written to sink (configured mode)
+     */
+    public static String writeTo(File original, String aesPassword, OutputStream sink) throws IOException {
+        HashUtil.StreamingChecksum sum = HashUtil.newStreamingChecksum();
+        OutputStream tap = new FilterOutputStream(sink) {
+            @Override
+            public void write(int b) throws IOException {
+                sum.update(new byte[]{(byte) b}, 0, 1);
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                sum.update(b, off, len);
+                out.write(b, off, len);
+            }
+        };
+
+        OutputStream stage = tap;
+        SecretKey recordKey = null;
+        try {
+            if (aesPassword != null && !aesPassword.isBlank()) {
+                if (AesUtil.useRecordFormat()) {
+                    recordKey = AesUtil.buildKeyFromPassword(aesPassword);
+                    stage = AesGcmRecords.encryptingStream(tap, recordKey, AesUtil.recordSize());
+                } else {
+                    stage = new CipherOutputStream(tap, encryptCipher(aesPassword, tap));
+                }
+            }
+
+            if (needsZip(original)) {
+                ZipUtil.writeArchive(List.of(original), stage, null);
+            } else {
+                try (OutputStream out = stage) {
+                    Files.copy(original.toPath(), out);
+                }
+            }
+        } finally {
+            AesUtil.destroyKey(recordKey);
+        }
+        return sum.finishHex();
+    }
+
+    /** Make the AES/CBC cipher and write its IV first (same layout as AesUtil.encryptFile). */
+    private static Cipher encryptCipher(String aesPassword, OutputStream out) throws IOException {
+        SecretKey key = AesUtil.buildKeyFromPassword(aesPassword);
+        try {
+            byte[] ivBytes = AesUtil.randomIv();
+            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(ivBytes));
+            out.write(ivBytes);
+            return cipher;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            LoggerUtil.error("[Prepare] Could not set up AES.", e);
+            throw new IOException("AES setup failed", e);
+        } finally {
+            AesUtil.destroyKey(key); // the cipher keeps its own copy
+        }
+    }
+
+    /**
+     * Baby-English:
+     * ✔ ".zip" → already zipped.
+     * ✔ Will not shrink (jpg, mp4, gz, random bytes ...) and
+     *   zip.probe.incompressible=skip → send the file itself, no wrapper.
+     */
+    private static boolean needsZip(File file) {
+        if (file.getName().toLowerCase(Locale.ROOT).endsWith(".zip")) return false;
+        return !CompressibilityProbe.skipZipWhenIncompressible() || CompressibilityProbe.probe(file).compressible;
+    }
+}
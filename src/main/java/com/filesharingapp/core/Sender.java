@@ -1,7 +1,7 @@
 package com.filesharingapp.core;
 
-import com.filesharingapp.security.AesUtil;
 import com.filesharingapp.security.AuthUtil; // FIX: Added missing import
+import com.filesharingapp.transfer.StreamingTransfer;
 import com.filesharingapp.transfer.TargetConfig;
 import com.filesharingapp.transfer.TransferFactory;
 import com.filesharingapp.transfer.TransferMethod;
@@ -11,11 +11,9 @@ import com.filesharingapp.utils.LoggerUtil;
 import com.filesharingapp.utils.NetworkUtil;
 import com.filesharingapp.utils.ValidationMessages; // FIX: Added missing import
 import com.filesharingapp.utils.ValidationUtil;
-import com.filesharingapp.utils.ZipUtil; // FIX: Added missing import
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Path;
 import java.util.Locale;
 import java.util.Scanner;
 
@@ -78,6 +76,17 @@ public class Sender {
                 return;
             }
 
+            // -------------------------------
+            // 6a) Streaming mode: zip/encrypt while sending, no temp file
+            // -------------------------------
+            if (PreparePipeline.STREAMING && currentTransferHandler instanceof StreamingTransfer) {
+                String streamName = PreparePipeline.outputName(originalFile, targetConfig.getAesPassword());
+                if (!confirmReady(in, streamName)) return;
+                sendStreamed(userName, mode.toUpperCase(Locale.ROOT), targetConfig, originalFile,
+                        (StreamingTransfer) currentTransferHandler);
+                return;
+            }
+
             // -------------------------------
             // 6) Prepare file (Zip/Encrypt)
             // -------------------------------
@@ -146,6 +155,12 @@ public class Sender {
                 return;
             }
 
+            // Streaming mode: zip/encrypt while sending, no temp file
+            if (PreparePipeline.STREAMING && handler instanceof StreamingTransfer) {
+                sendStreamed(userName, config.getMode(), config, file, (StreamingTransfer) handler);
+                return;
+            }
+
             // Prepare File
             File fileToSend = prepareFileForTransfer(file, config);
             if (fileToSend == null) return;
@@ -184,31 +199,24 @@ public class Sender {
     // File Preparation (Zip/Encrypt)
     // ============================================
     private File prepareFileForTransfer(File originalFile, TargetConfig config) throws IOException {
-        File fileToSend = originalFile;
-
-        // Zip the file if needed
-        if (!fileToSend.getName().toLowerCase().endsWith(".zip")) {
+        // One read of the original: zip + AES + checksum together.
+        // The checksum is remembered, so computeChecksum() below and the
+        // transfer services do not read the file again.
+        String aesPassword = config.getAesPassword();
+        if (aesPassword != null && !aesPassword.isBlank()) {
+            LoggerUtil.info("📦🔐 Zipping + encrypting file before upload...");
+        } else {
             LoggerUtil.info("📦 Zipping file before upload...");
-            // Use the same folder as the original file for the zip output
-            Path tempDir = originalFile.getParentFile().toPath();
-            // FIX: Uses correct ZipUtil signature
-            fileToSend = ZipUtil.zipIfNeeded(originalFile, tempDir.toFile());
         }
 
-        // AES encryption if enabled
-        String aesPassword = config.getAesPassword();
-        if (aesPassword != null && !aesPassword.isBlank()) {
-            LoggerUtil.info("🔐 Encrypting file before upload...");
-            // Temporary encrypted file will be deleted later by cleanup logic
-            File encryptedFile = new File(fileToSend.getAbsolutePath() + ".enc");
-            try {
-                // FIX: Use correct AesUtil signature for File encryption (requires SecretKey)
-                AesUtil.encryptFile(fileToSend, encryptedFile, AesUtil.buildKeyFromPassword(aesPassword));
-                fileToSend = encryptedFile;
-            } catch (Exception e) {
-                LoggerUtil.error("Failed to encrypt file.", e);
-                return null;
-            }
+        File fileToSend;
+        try {
+            // Use the same folder as the original file for the output
+            fileToSend = PreparePipeline.prepareToFile(originalFile, originalFile.getAbsoluteFile().getParentFile(),
+                    aesPassword).file;
+        } catch (IOException e) {
+            LoggerUtil.error("Failed to prepare file.", e);
+            return null;
         }
 
         long sizeBytes = fileToSend.length();
@@ -221,6 +229,41 @@ public class Sender {
         return fileToSend;
     }
 
+    // ============================================
+    // Streamed send (no temp archive)
+    // ============================================
+
+    /**
+     * Baby-English:
+     * - PreparePipeline.stream() zips/encrypts on a helper thread.
+     * - The handler uploads from the pipe at the same time.
+     * - Checksum is checked by the handler once the stream is done.
+     */
+    private boolean sendStreamed(String userName, String mode, TargetConfig config,
+                                 File originalFile, StreamingTransfer handler) {
+        TransferContext.setActiveMethod(mode);
+        TransferContext.setLastSenderIp(config.getTargetHost());
+        TransferContext.setEncryptionEnabled(config.getAesPassword() != null);
+
+        LoggerUtil.info("🚀 Streaming transfer using " + mode + " (zip/encrypt while sending) …");
+        long start = System.currentTimeMillis();
+        long sentBytes = 0;
+        boolean success = false;
+        String name = PreparePipeline.outputName(originalFile, config.getAesPassword());
+
+        try (PreparePipeline.Streamed stream = PreparePipeline.stream(originalFile, config.getAesPassword())) {
+            sentBytes = handler.sendStream(userName, stream, config);
+            success = true;
+            LoggerUtil.success("🎉 File sent successfully (streamed).");
+        } catch (Exception e) {
+            LoggerUtil.error("Streamed transfer failed", e);
+        }
+
+        long durationMs = System.currentTimeMillis() - start;
+        logAuditTrail(mode, config.getTargetHost(), name, Math.max(sentBytes, 0), durationMs, success);
+        return success;
+    }
+
     // ============================================
     // Ask for file and validate
     // ============================================
@@ -324,7 +367,7 @@ public class Sender {
     // ============================================
     private String computeChecksum(File file) {
         try {
-            return HashUtil.sha256Hex(file);
+            return HashUtil.fileChecksum(file);
         } catch (Exception e) {
             LoggerUtil.error("Checksum failed.", e);
             return null;
@@ -335,12 +378,17 @@ public class Sender {
     // Log audit trail
     // ============================================
     private void logAuditTrail(String mode, String targetHost, File file, long durationMs, boolean success) {
+        logAuditTrail(mode, targetHost, file.getName(), file.length(), durationMs, success);
+    }
+
+    private void logAuditTrail(String mode, String targetHost, String fileName, long sizeBytes,
+                               long durationMs, boolean success) {
         ActivityLogger.logTransfer(
                 mode,
                 NetworkUtil.findLocalIp(),
                 targetHost,
-                file.getName(),
-                file.length(),
+                fileName,
+                sizeBytes,
                 durationMs,
                 success ? "SUCCESS" : "FAIL",
                 success ? "Transfer finished OK" : "Transfer failed or canceled"
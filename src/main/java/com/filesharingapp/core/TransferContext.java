@@ -6,8 +6,11 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * TransferContext
@@ -32,7 +35,7 @@ public final class TransferContext {
     private static volatile long resumeOffsetBytes;
     private static volatile String tempFolderPath;
     private static volatile int totalChunks;
-    private static volatile int completedChunks;
+    private static final AtomicInteger COMPLETED_CHUNKS = new AtomicInteger(); // many chunk threads add at once
     private static volatile String finalOutputPath;
     private static volatile String zeroTierPeerIp;
     private static volatile String zeroTierNetworkId;
@@ -43,15 +46,28 @@ public final class TransferContext {
     // ================================
     // 📊 Progress tracking
     // ================================
+    /**
+     * Baby-English:
+     *   - Counters are atomic, so many chunk threads can add at once.
+     *   - Reading progress is O(1): no folder listing, no file stats.
+     */
     public static final class Progress {
         public final long totalBytes;
-        public volatile long receivedBytes;
+        private final AtomicLong receivedBytes = new AtomicLong();
+        private final AtomicInteger completedChunks = new AtomicInteger();
         public volatile int totalChunks;
-        public volatile int completedChunks;
 
         public Progress(long totalBytes) {
             this.totalBytes = totalBytes;
         }
+
+        public long getReceivedBytes() { return receivedBytes.get(); }
+        public int getCompletedChunks() { return completedChunks.get(); }
+
+        /** Add bytes (never below 0) and return the new total. */
+        public long addReceivedBytes(long delta) {
+            return receivedBytes.accumulateAndGet(delta, (cur, d) -> Math.max(cur + d, 0L));
+        }
     }
 
     private static final Map<String, Progress> PROGRESS_MAP = new ConcurrentHashMap<>();
@@ -59,12 +75,16 @@ public final class TransferContext {
     // ================================
     // 🧩 Chunk state for safe merge
     // ================================
+    /**
+     * Baby-English:
+     *   - The bits live in a ChunkBitmap (heap or memory-mapped file).
+     *   - Mapped bitmap → survives a crash, so resume knows the holes.
+     */
     private static final class ChunkState {
-        final boolean[] received;
-        final Object mergeLock = new Object();
+        final ChunkBitmap bits;
 
-        ChunkState(int totalChunks) {
-            this.received = new boolean[totalChunks];
+        ChunkState(ChunkBitmap bits) {
+            this.bits = bits;
         }
     }
 
@@ -116,8 +136,8 @@ public final class TransferContext {
     public static void setTotalChunks(int count) { totalChunks = Math.max(count, 0); }
     public static int getTotalChunks() { return totalChunks; }
 
-    public static void setCompletedChunks(int count) { completedChunks = Math.max(count, 0); }
-    public static int getCompletedChunks() { return completedChunks; }
+    public static void setCompletedChunks(int count) { COMPLETED_CHUNKS.set(Math.max(count, 0)); }
+    public static int getCompletedChunks() { return COMPLETED_CHUNKS.get(); }
 
     public static void setFinalOutputPath(String path) { finalOutputPath = path; }
     public static String getFinalOutputPath() { return finalOutputPath; }
@@ -153,7 +173,7 @@ public final class TransferContext {
 
     public static void addReceivedBytes(String transferId, long delta) {
         Progress p = PROGRESS_MAP.get(transferId);
-        if (p != null) p.receivedBytes = Math.max(p.receivedBytes + delta, 0);
+        if (p != null) p.addReceivedBytes(delta);
     }
 
     public static Progress getProgress(String transferId) { return PROGRESS_MAP.get(transferId); }
@@ -164,36 +184,94 @@ public final class TransferContext {
     // ============================================================
     public static synchronized void initChunkState(String transferId, int chunkCount) {
         if (transferId == null || chunkCount <= 0) return;
-        CHUNK_STATE_MAP.put(transferId, new ChunkState(chunkCount));
+        CHUNK_STATE_MAP.put(transferId, new ChunkState(ChunkBitmap.inMemory(chunkCount)));
         setTotalChunks(chunkCount);
         setCompletedChunks(0);
     }
 
-    public static void markChunkReceived(String transferId, int index) {
+    /**
+     * Same as above, but with a bitmap the caller already opened
+     * (for example a persistent one picked up after a restart).
+     */
+    public static synchronized void initChunkState(String transferId, ChunkBitmap bits) {
+        if (transferId == null || bits == null) return;
+        CHUNK_STATE_MAP.put(transferId, new ChunkState(bits));
+        setTotalChunks(bits.getTotalChunks());
+        setCompletedChunks(bits.cardinality());
+    }
+
+    /**
+     * Mark one chunk as stored.
+     *
+     * @return true if this chunk was new, false if it was a repeat (retry).
+     */
+    public static boolean markChunkReceived(String transferId, int index) {
         ChunkState state = CHUNK_STATE_MAP.get(transferId);
-        if (state == null || index < 0 || index >= state.received.length) return;
+        if (state == null || index < 0 || index >= state.bits.getTotalChunks()) return false;
+        if (!state.bits.set(index)) return false;
+        COMPLETED_CHUNKS.incrementAndGet();
+        Progress p = PROGRESS_MAP.get(transferId);
+        if (p != null) p.completedChunks.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * recordChunk
+     * -----------
+     * Baby-English:
+     *   ✔ Mark the chunk AND add its bytes in one step.
+     *   ✔ A repeated chunk (retry) adds nothing.
+     *
+     * @return true if the chunk was new (its bytes were counted).
+     */
+    public static boolean recordChunk(String transferId, int index, long bytes) {
+        if (!markChunkReceived(transferId, index)) return false;
+        Progress p = PROGRESS_MAP.get(transferId);
+        if (p != null) p.addReceivedBytes(bytes);
+        return true;
+    }
+
+    /**
+     * rebuildProgress
+     * ---------------
+     * Baby-English:
+     *   ✔ Used only when a transfer is picked up again after a restart.
+     *   ✔ Counts the chunks the bitmap already has and sets the byte
+     *     counter from that, so later updates are simple adds again.
+     */
+    public static void rebuildProgress(String transferId, long chunkSize, long totalBytes) {
+        ChunkState state = CHUNK_STATE_MAP.get(transferId);
+        if (state == null || chunkSize <= 0) return;
+
+        Progress p = getOrCreateProgress(transferId, totalBytes);
         synchronized (state) {
-            if (!state.received[index]) {
-                state.received[index] = true;
-                completedChunks++;
-                Progress p = PROGRESS_MAP.get(transferId);
-                if (p != null) p.completedChunks = completedChunks;
+            int count = 0;
+            long bytes = 0L;
+            for (int i = 0; i < state.bits.getTotalChunks(); i++) {
+                if (!state.bits.get(i)) continue;
+                count++;
+                bytes += Math.min(chunkSize, totalBytes - i * chunkSize);
             }
+            p.completedChunks.set(count);
+            p.receivedBytes.set(bytes);
         }
+        LoggerUtil.info("[Context] Rebuilt progress for " + transferId + ": "
+                + p.getCompletedChunks() + " chunks, " + p.getReceivedBytes() + " bytes");
     }
 
+    /** Baby-English: no loop – we just compare the counter with the chunk total. */
     public static boolean areAllChunksReceived(String transferId) {
         ChunkState state = CHUNK_STATE_MAP.get(transferId);
-        if (state == null) return false;
-        synchronized (state) {
-            for (boolean b : state.received) if (!b) return false;
-            return true;
-        }
+        return state != null && state.bits.isComplete();
     }
 
-    public static Object getMergeLock(String transferId) {
+    /**
+     * Missing chunk runs as {firstIndex, lastIndexExclusive}.
+     * Empty list when the transfer is unknown.
+     */
+    public static List<int[]> getMissingChunkRanges(String transferId) {
         ChunkState state = CHUNK_STATE_MAP.get(transferId);
-        return (state != null) ? state.mergeLock : null;
+        return (state != null) ? state.bits.missingRanges() : List.of();
     }
 
     // ============================================================
@@ -227,7 +305,7 @@ public final class TransferContext {
         resumeOffsetBytes = 0;
         tempFolderPath = null;
         totalChunks = 0;
-        completedChunks = 0;
+        COMPLETED_CHUNKS.set(0);
         finalOutputPath = null;
         zeroTierPeerIp = null;
         zeroTierNetworkId = null;
@@ -0,0 +1,538 @@
+package com.filesharingapp.security;
+
+import com.filesharingapp.utils.LoggerUtil;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.stream.LongStream;
+
+/**
+ * AesGcmRecords
+ * -------------
+ * Baby-English:
+ *   ✔ Old AES/CBC: every block needs the block before it → one core,
+ *     start to end, no way to jump into the middle.
+ *   ✔ New format: cut the data in fixed-size records, lock each one
+ *     on its own with AES-GCM (encrypt + tamper seal in one go).
+ *   ✔ Records do not need each other, so:
+ *       - all cores can encrypt / decrypt at the same time,
+ *       - every record is checked the moment it arrives,
+ *       - a byte range can be decrypted by opening only its records.
+ *
+ * File layout:
+ *   [32-byte header][record 0][record 1] ... [last record]
+ *   header = "FSG1" | version | 3 zero | recordSize (int) | salt (16) | kdfRounds (int)
+ *   record = AES-GCM(plain piece) + 16-byte tag
+ *   every record holds recordSize plain bytes, except the last one.
+ *
+ * Keys and nonces:
+ *   ✔ Per-file key = PBKDF2(password, salt, kdfRounds); the salt is
+ *     random per file, so two files never share a key.
+ *   ✔ kdfRounds = 0 (first files in this format) →
+ *     HMAC-SHA256(password key, "FSG1" + salt) instead.
+ *   ✔ Nonce = record index (8 bytes) + "last record" flag + 3 zero.
+ *     Index in the nonce → records cannot be swapped.
+ *     Last flag in the nonce → a cut-off file does not verify.
+ */
+public final class AesGcmRecords {
+
+    public static final int HEADER_LENGTH = 32;
+    public static final int TAG_LENGTH = 16;
+    public static final int DEFAULT_RECORD_SIZE = 64 * 1024;
+
+    private static final byte[] MAGIC = {'F', 'S', 'G', '1'};
+    private static final byte VERSION = 1;
+    private static final int SALT_LENGTH = 16;
+    private static final int MIN_RECORD_SIZE = 1024;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    /** More rounds than this in a header = broken or hostile file. */
+    private static final int MAX_KDF_ROUNDS = 10_000_000;
+
+    /** Records opened at once (in parallel) when streaming a range out. */
+    private static final int BATCH_RECORDS = 64;
+
+    /** One GCM cipher per thread; init() with a new nonce resets it. */
+    private static final ThreadLocal<Cipher> GCM = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM not available", e);
+        }
+    });
+
+    /** One record-sized buffer pair per thread (grows if a file uses bigger records). */
+    private static final ThreadLocal<byte[][]> BUFFERS = ThreadLocal.withInitial(() -> new byte[2][0]);
+
+    private AesGcmRecords() {}
+
+    // ============================================================
+    // 1️⃣ Header
+    // ============================================================
+
+    /** What the first 32 bytes tell us. */
+    public static final class Header {
+        public final int recordSize;
+        final byte[] salt;
+        final int kdfRounds;
+
+        Header(int recordSize, byte[] salt, int kdfRounds) {
+            this.recordSize = recordSize;
+            this.salt = salt;
+            this.kdfRounds = kdfRounds;
+        }
+
+        /** New header: fresh salt; PBKDF2 rounds only if we still know the password. */
+        static Header fresh(int recordSize, SecretKey passwordKey) {
+            int rounds = (passwordKey instanceof PasswordKey) ? AesUtil.kdfIterations() : 0;
+            return new Header(checkRecordSize(recordSize), AesUtil.randomBytes(SALT_LENGTH), rounds);
+        }
+
+        byte[] toBytes() {
+            ByteBuffer bb = ByteBuffer.allocate(HEADER_LENGTH);
+            bb.put(MAGIC).put(VERSION).put(new byte[3]).putInt(recordSize).put(salt).putInt(kdfRounds);
+            return bb.array();
+        }
+
+        static Header parse(byte[] bytes) throws IOException {
+            if (!hasMagic(bytes, bytes.length)) throw new IOException("Not an AES-GCM record file");
+            ByteBuffer bb = ByteBuffer.wrap(bytes);
+            bb.position(MAGIC.length);
+            byte version = bb.get();
+            if (version != VERSION) throw new IOException("Unknown record format version " + version);
+            bb.position(8);
+            int recordSize = bb.getInt();
+            if (recordSize < MIN_RECORD_SIZE || recordSize > MAX_RECORD_SIZE) {
+                throw new IOException("Bad record size " + recordSize);
+            }
+            byte[] salt = new byte[SALT_LENGTH];
+            bb.get(salt);
+            int kdfRounds = bb.getInt();
+            if (kdfRounds < 0 || kdfRounds > MAX_KDF_ROUNDS) {
+                throw new IOException("Bad KDF round count " + kdfRounds);
+            }
+            return new Header(recordSize, salt, kdfRounds);
+        }
+    }
+
+    /** True if these first bytes start a record file. */
+    public static boolean hasMagic(byte[] head, int len) {
+        if (len < HEADER_LENGTH) return false;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (head[i] != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    /** True if the file on disk uses this format. */
+    public static boolean isRecordFile(Path path) {
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] head = in.readNBytes(HEADER_LENGTH);
+            return hasMagic(head, head.length);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // ============================================================
+    // 2️⃣ Sizes
+    // ============================================================
+
+    /** Records used for this many plain bytes (empty data = one empty record). */
+    public static long recordCount(long plainLength, int recordSize) {
+        return Math.max(1L, (plainLength + recordSize - 1) / recordSize);
+    }
+
+    /** Size on disk for this many plain bytes. */
+    public static long encryptedLength(long plainLength, int recordSize) {
+        return HEADER_LENGTH + plainLength + recordCount(plainLength, recordSize) * TAG_LENGTH;
+    }
+
+    /** Plain size hidden in a record file of this size. */
+    public static long plainLength(long encryptedLength, int recordSize) throws IOException {
+        long body = encryptedLength - HEADER_LENGTH;
+        if (body < TAG_LENGTH) throw new IOException("Encrypted file is truncated");
+        long full = (long) recordSize + TAG_LENGTH;
+        long records = (body + full - 1) / full;
+        long lastLen = body - (records - 1) * full;
+        if (lastLen < TAG_LENGTH || (records > 1 && lastLen == TAG_LENGTH)) {
+            throw new IOException("Encrypted file is truncated");
+        }
+        return body - records * TAG_LENGTH;
+    }
+
+    // ============================================================
+    // 3️⃣ Whole files (all cores)
+    // ============================================================
+
+    /**
+     * encryptFile
+     * Baby-English:
+     *   ✔ Record i is read from plain offset i*recordSize and written to
+     *     its fixed spot in the output → any thread, any order.
+     */
+    public static void encryptFile(File inputFile, File outputFile, SecretKey passwordKey, int recordSize)
+            throws IOException {
+        Header header = Header.fresh(recordSize, passwordKey);
+        SecretKey key = recordKey(passwordKey, header);
+        long plain = inputFile.length();
+        long records = recordCount(plain, recordSize);
+
+        try (FileChannel src = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            writeFully(dst, ByteBuffer.wrap(header.toBytes()), 0);
+            runParallel(records, i -> {
+                int len = (int) Math.min(recordSize, plain - i * recordSize);
+                byte[][] bufs = buffers(recordSize + TAG_LENGTH);
+                readFully(src, bufs[0], len, i * recordSize);
+                int n = seal(key, i, i == records - 1, bufs[0], 0, len, bufs[1], 0);
+                writeFully(dst, ByteBuffer.wrap(bufs[1], 0, n), recordOffset(i, recordSize));
+            });
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(outputFile.toPath());
+            throw e;
+        }
+    }
+
+    /**
+     * decryptFile
+     * Baby-English:
+     *   ✔ Same idea backwards; any record that fails its tag check
+     *     stops everything and the half-made output is removed.
+     */
+    public static void decryptFile(File inputFile, File outputFile, SecretKey passwordKey) throws IOException {
+        try (FileChannel src = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            Header header = readHeader(src);
+            int recordSize = header.recordSize;
+            SecretKey key = recordKey(passwordKey, header);
+            long plain = plainLength(src.size(), recordSize);
+            long records = recordCount(plain, recordSize);
+
+            runParallel(records, i -> {
+                byte[][] bufs = buffers(recordSize + TAG_LENGTH);
+                int n = openRecord(src, key, i, records, plain, recordSize, bufs[0], bufs[1]);
+                writeFully(dst, ByteBuffer.wrap(bufs[1], 0, n), i * recordSize);
+            });
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(outputFile.toPath());
+            throw e;
+        }
+    }
+
+    // ============================================================
+    // 4️⃣ Byte ranges (DownloadServlet)
+    // ============================================================
+
+    /** Plain size of a record file, read from its header and length. */
+    public static long plainLength(FileChannel channel) throws IOException {
+        return plainLength(channel.size(), readHeader(channel).recordSize);
+    }
+
+    /**
+     * decryptRange
+     * Baby-English:
+     *   ✔ Only records touching [start, start+length) are opened.
+     *   ✔ Up to BATCH_RECORDS records are opened at once on all cores,
+     *     then written out in order.
+     */
+    public static void decryptRange(FileChannel channel, long start, long length,
+                                    SecretKey passwordKey, OutputStream out) throws IOException {
+        if (length <= 0) return;
+        Header header = readHeader(channel);
+        int recordSize = header.recordSize;
+        SecretKey key = recordKey(passwordKey, header);
+        long plain = plainLength(channel.size(), recordSize);
+        long records = recordCount(plain, recordSize);
+        long end = Math.min(plain, start + length); // exclusive
+
+        long first = start / recordSize;
+        long last = (end - 1) / recordSize;
+        for (long batchStart = first; batchStart <= last; batchStart += BATCH_RECORDS) {
+            long from = batchStart;
+            int count = (int) Math.min(BATCH_RECORDS, last - batchStart + 1);
+            byte[][] plainRecords = new byte[count][];
+            runParallel(count, j -> {
+                byte[][] bufs = buffers(recordSize + TAG_LENGTH);
+                int n = openRecord(channel, key, from + j, records, plain, recordSize, bufs[0], bufs[1]);
+                plainRecords[(int) j] = Arrays.copyOf(bufs[1], n);
+            });
+
+            for (int j = 0; j < count; j++) {
+                long recStart = (from + j) * recordSize;
+                int off = (int) Math.max(0L, start - recStart);
+                int to = (int) Math.min(plainRecords[j].length, end - recStart);
+                out.write(plainRecords[j], off, to - off);
+            }
+        }
+    }
+
+    // ============================================================
+    // 5️⃣ Streams (prepare pipeline, stream uploads)
+    // ============================================================
+
+    /**
+     * encryptingStream
+     * Baby-English:
+     *   ✔ Header goes out at once; then every full record is sealed as
+     *     soon as the NEXT byte shows up (only then we know it is not
+     *     the last one). close() seals the last record.
+     */
+    public static OutputStream encryptingStream(OutputStream sink, SecretKey passwordKey, int recordSize)
+            throws IOException {
+        Header header = Header.fresh(recordSize, passwordKey);
+        sink.write(header.toBytes());
+        return new RecordOutputStream(sink, recordKey(passwordKey, header), recordSize);
+    }
+
+    /**
+     * decryptStream
+     * Baby-English:
+     *   ✔ Read header, then one record at a time.
+     *   ✔ Each record is checked before its bytes are written out,
+     *     so damage is caught right where it happens.
+     *
+     * @return plain bytes written
+     */
+    public static long decryptStream(InputStream in, OutputStream out, SecretKey passwordKey) throws IOException {
+        Header header = Header.parse(in.readNBytes(HEADER_LENGTH));
+        int full = header.recordSize + TAG_LENGTH;
+        SecretKey key = recordKey(passwordKey, header);
+
+        byte[] current = new byte[full];
+        byte[] next = new byte[full];
+        byte[] plain = new byte[header.recordSize];
+        int currentLen = in.readNBytes(current, 0, full);
+        long index = 0;
+        long total = 0;
+
+        while (true) {
+            if (currentLen < TAG_LENGTH) throw new EOFException("Encrypted stream is truncated");
+            int nextLen = (currentLen == full) ? in.readNBytes(next, 0, full) : 0;
+            boolean last = nextLen == 0;
+
+            int n = open(key, index, last, current, 0, currentLen, plain, 0);
+            out.write(plain, 0, n);
+            total += n;
+            if (last) return total;
+
+            byte[] swap = current;
+            current = next;
+            next = swap;
+            currentLen = nextLen;
+            index++;
+        }
+    }
+
+    /** Output side of encryptingStream(...). */
+    private static final class RecordOutputStream extends OutputStream {
+        private final OutputStream sink;
+        private final SecretKey key;
+        private final byte[] record;
+        private final byte[] sealed;
+        private int filled;
+        private long index;
+        private boolean closed;
+
+        RecordOutputStream(OutputStream sink, SecretKey key, int recordSize) {
+            this.sink = sink;
+            this.key = key;
+            this.record = new byte[recordSize];
+            this.sealed = new byte[recordSize + TAG_LENGTH];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (filled == record.length) flushRecord(false);
+                int n = Math.min(len, record.length - filled);
+                System.arraycopy(b, off, record, filled, n);
+                filled += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            sink.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                flushRecord(true);
+            } finally {
+                sink.close();
+            }
+        }
+
+        private void flushRecord(boolean last) throws IOException {
+            int n = seal(key, index++, last, record, 0, filled, sealed, 0);
+            sink.write(sealed, 0, n);
+            filled = 0;
+        }
+    }
+
+    // ============================================================
+    // 6️⃣ One record
+    // ============================================================
+
+    private static int seal(SecretKey key, long index, boolean last,
+                            byte[] in, int off, int len, byte[] out, int outOff) throws IOException {
+        try {
+            Cipher cipher = GCM.get();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce(index, last)));
+            return cipher.doFinal(in, off, len, out, outOff);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("AES-GCM encryption failed for record " + index, e);
+        }
+    }
+
+    private static int open(SecretKey key, long index, boolean last,
+                            byte[] in, int off, int len, byte[] out, int outOff) throws IOException {
+        try {
+            Cipher cipher = GCM.get();
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce(index, last)));
+            return cipher.doFinal(in, off, len, out, outOff);
+        } catch (AEADBadTagException e) {
+            LoggerUtil.warn("[AES] Record " + index + " failed authentication (wrong password or damaged data).");
+            throw new IOException("Record " + index + " failed authentication");
+        } catch (GeneralSecurityException e) {
+            throw new IOException("AES-GCM decryption failed for record " + index, e);
+        }
+    }
+
+    /** Read record i from the file and open it into plainOut; returns plain length. */
+    private static int openRecord(FileChannel channel, SecretKey key, long index, long records,
+                                  long plain, int recordSize, byte[] sealedBuf, byte[] plainOut) throws IOException {
+        int plainLen = (int) Math.min(recordSize, plain - index * recordSize);
+        int sealedLen = plainLen + TAG_LENGTH;
+        readFully(channel, sealedBuf, sealedLen, recordOffset(index, recordSize));
+        return open(key, index, index == records - 1, sealedBuf, 0, sealedLen, plainOut, 0);
+    }
+
+    private static byte[] nonce(long index, boolean last) {
+        return ByteBuffer.allocate(12).putLong(index).put((byte) (last ? 1 : 0)).array();
+    }
+
+    /** Per-file key from the password (key) and the file's salt + rounds. */
+    private static SecretKey recordKey(SecretKey passwordKey, Header header) throws IOException {
+        if (header.kdfRounds > 0) {
+            if (!(passwordKey instanceof PasswordKey)) {
+                throw new IOException("Record file needs the password, not a raw key");
+            }
+            return AesUtil.stretchedKey((PasswordKey) passwordKey, header.salt, header.kdfRounds);
+        }
+        byte[] salt = header.salt;
+        byte[] raw = passwordKey.getEncoded();
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(raw, "HmacSHA256"));
+            mac.update(MAGIC);
+            byte[] keyBytes = mac.doFinal(salt);
+            SecretKey key = new SecretKeySpec(keyBytes, "AES");
+            AesUtil.clearBytes(keyBytes);
+            return key;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not derive record key", e);
+        } finally {
+            AesUtil.clearBytes(raw);
+        }
+    }
+
+    // ============================================================
+    // 🔧 Helpers
+    // ============================================================
+
+    private interface RecordTask {
+        void run(long index) throws IOException;
+    }
+
+    /** Run task(0..count-1) on all cores; first IOException is re-thrown as-is. */
+    private static void runParallel(long count, RecordTask task) throws IOException {
+        try {
+            LongStream.range(0, count).parallel().forEach(i -> {
+                try {
+                    task.run(i);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Header readHeader(FileChannel channel) throws IOException {
+        byte[] bytes = new byte[HEADER_LENGTH];
+        if (channel.size() < HEADER_LENGTH) throw new IOException("Encrypted file is truncated");
+        readFully(channel, bytes, HEADER_LENGTH, 0);
+        return Header.parse(bytes);
+    }
+
+    private static long recordOffset(long index, int recordSize) {
+        return HEADER_LENGTH + index * (recordSize + TAG_LENGTH);
+    }
+
+    private static int checkRecordSize(int recordSize) {
+        if (recordSize < MIN_RECORD_SIZE || recordSize > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Record size must be " + MIN_RECORD_SIZE + ".." + MAX_RECORD_SIZE);
+        }
+        return recordSize;
+    }
+
+    private static byte[][] buffers(int size) {
+        byte[][] bufs = BUFFERS.get();
+        if (bufs[0].length < size) {
+            bufs[0] = new byte[size];
+            bufs[1] = new byte[size];
+        }
+        return bufs;
+    }
+
+    private static void readFully(FileChannel channel, byte[] buf, int len, long position) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(buf, 0, len);
+        long pos = position;
+        while (bb.hasRemaining()) {
+            int n = channel.read(bb, pos);
+            if (n < 0) throw new EOFException("Encrypted file is truncated");
+            pos += n;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        long pos = position;
+        while (buf.hasRemaining()) {
+            pos += channel.write(buf, pos);
+        }
+    }
+}
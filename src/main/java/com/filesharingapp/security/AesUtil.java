@@ -1,12 +1,21 @@
 package com.filesharingapp.security;
 
+import com.filesharingapp.utils.AppConfig;
+import com.filesharingapp.utils.HashUtil;
 import com.filesharingapp.utils.LoggerUtil;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.security.SecureRandom;
 import java.util.Arrays;
 
@@ -15,7 +24,20 @@ import java.util.Arrays;
  * -------
  * Baby-English:
  *   ✔ We take a password from the user.
- *   ✔ We stretch it into a 32-byte key (AES-256).
+ *   ✔ Header-less layouts (CBC files, chunk bodies) keep the old
+ *     32-byte repeat-the-password key, so older peers still read them.
+ *   ✔ AES-GCM record files carry a salt + round count in their header
+ *     → the password is stretched with PBKDF2 for that file.
+ *   ✔ Stretching is slow on purpose → done ONCE per transfer: the key
+ *     from buildKeyFromPassword keeps the stretched keys it made, the
+ *     transfer passes that one key down and destroys it at the end.
+ *     Nothing secret stays behind in a static cache.
+ *   ✔ Chunk paths reuse one Cipher per thread and one SecureRandom,
+ *     so a chunk costs little more than the AES work itself.
+ *   ✔ Files/streams: security.aes.format=cbc (default) → old layout that
+ *     every peer reads; gcm → AesGcmRecords (independent AES-GCM records,
+ *     all cores, ranges) – only when the receiver is new enough.
+ *     Decrypt always looks at the header, so both kinds still open.
  *   ✔ When encrypting:
  *       1) Make a random 16-byte IV.
  *       2) Write IV at the top of the file.
@@ -38,6 +60,35 @@ public final class AesUtil {
     /** AES key size (32 bytes = 256 bits). */
     private static final int KEY_LENGTH = 32;
 
+    private static final String CBC = "AES/CBC/PKCS5Padding";
+
+    /**
+     * PBKDF2 rounds written into new AES-GCM record headers.
+     * 0 = record key straight from the old key (what the first
+     * record files used). Readers use the rounds from the header.
+     */
+    private static final int KDF_ITERATIONS = Math.max(0, AppConfig.getInt("security.aes.kdfIterations", 210_000));
+
+    /** cbc = IV + one CBC stream (older peers read only this), gcm = AesGcmRecords layout. */
+    private static final boolean RECORD_FORMAT =
+            "gcm".equalsIgnoreCase(AppConfig.get("security.aes.format", "cbc"));
+
+    /** Plain bytes per AES-GCM record. */
+    private static final int RECORD_SIZE =
+            AppConfig.getInt("security.aes.recordSize", AesGcmRecords.DEFAULT_RECORD_SIZE);
+
+    /** One strong random source for all IVs (thread-safe). */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /** One CBC cipher per thread; init() fully resets it for every chunk. */
+    private static final ThreadLocal<Cipher> CHUNK_CIPHER = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(CBC);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/CBC not available", e);
+        }
+    });
+
     private AesUtil() {}
 
     // ============================================================
@@ -47,21 +98,146 @@ public final class AesUtil {
     /**
      * Baby-English:
      *   - User types a password.
-     *   - We turn it into a 32-byte array.
-     *   - If short → repeat it.
-     *   - If long → cut it.
-     *   - Wrap into AES key.
+     *   - As a plain AES key we give the old repeat-the-password key:
+     *     CBC files and chunk bodies have no room for a salt, and older
+     *     peers make their key this way.
+     *   - The key also keeps SHA-256(password) (not the password), so
+     *     AES-GCM record files can stretch it with PBKDF2 and the salt
+     *     from their header.
+     *   - Call it ONCE per transfer and pass the key down: every chunk
+     *     and file of the transfer reuses it (and its stretched keys).
+     *   - The old-style key bytes ARE the password for passwords of up to
+     *     32 bytes → the transfer must destroyKey(...) it when it ends.
      */
     public static SecretKey buildKeyFromPassword(String password) {
         if (password == null) password = "";
-        byte[] pwdBytes = password.getBytes();
+        return new PasswordKey(legacyKeyBytes(password), passwordHash(password));
+    }
+
+    /** Wipe a key from buildKeyFromPassword (null or other keys: nothing to do). */
+    public static void destroyKey(SecretKey key) {
+        if (key instanceof PasswordKey) ((PasswordKey) key).destroy();
+    }
+
+    /** SHA-256 of the password's UTF-8 bytes, made without another String copy. */
+    private static byte[] passwordHash(String password) {
+        char[] chars = password.toCharArray();
+        ByteBuffer utf8 = StandardCharsets.UTF_8.encode(CharBuffer.wrap(chars));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(utf8.duplicate());
+            return digest.digest();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        } finally {
+            Arrays.fill(chars, '\0');
+            wipe(utf8);
+        }
+    }
+
+    /** Lower-case hex as a char[] (a String could not be wiped). */
+    private static char[] hexChars(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[2 * i] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+            out[2 * i + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+        }
+        return out;
+    }
+
+    private static void wipe(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            Arrays.fill(buffer.array(), (byte) 0);
+        } else {
+            buffer.clear();
+            while (buffer.hasRemaining()) buffer.put((byte) 0);
+        }
+    }
+
+    /** PBKDF2 rounds for new record files (0 = no stretching). */
+    static int kdfIterations() {
+        return KDF_ITERATIONS;
+    }
+
+    /**
+     * Baby-English:
+     *   - PBKDF2-HMAC-SHA256(SHA-256(password) as hex, salt, rounds)
+     *     → 32-byte AES key.
+     *   - Salt + rounds come from a record file header.
+     *   - Kept inside the password key: ranged reads of the same file in
+     *     one transfer derive once, and destroy() wipes it with the key.
+     */
+    static SecretKey stretchedKey(PasswordKey passwordKey, byte[] salt, int rounds) {
+        byte[] keyBytes = passwordKey.stretched(HashUtil.toHex(salt) + ":" + rounds, () -> {
+            byte[] kdfInput = passwordKey.kdfInput();
+            try {
+                return deriveKey(kdfInput, salt, rounds);
+            } finally {
+                clearBytes(kdfInput);
+            }
+        });
+        try {
+            return new SecretKeySpec(keyBytes, "AES");
+        } finally {
+            clearBytes(keyBytes);
+        }
+    }
+
+    private static byte[] deriveKey(byte[] kdfInput, byte[] salt, int rounds) {
+        long start = System.currentTimeMillis();
+        char[] chars = hexChars(kdfInput);
+        PBEKeySpec spec = new PBEKeySpec(chars, salt, rounds, KEY_LENGTH * 8);
+        try {
+            byte[] keyBytes = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+            LoggerUtil.info("[AES] Key derived (" + rounds + " rounds, "
+                    + (System.currentTimeMillis() - start) + " ms).");
+            return keyBytes;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 not available", e);
+        } finally {
+            spec.clearPassword();
+            Arrays.fill(chars, '\0');
+        }
+    }
+
+    /**
+     * Old way (what older peers use):
+     *   - If short → repeat it.
+     *   - If long → cut it.
+     */
+    private static byte[] legacyKeyBytes(String password) {
+        byte[] pwdBytes = password.getBytes(); // platform charset: what older peers use
         byte[] keyBytes = new byte[KEY_LENGTH];
+        if (pwdBytes.length == 0) return keyBytes; // all zero, as before
 
         for (int i = 0; i < KEY_LENGTH; i++) {
             keyBytes[i] = pwdBytes[i % pwdBytes.length];
         }
 
-        return new SecretKeySpec(keyBytes, "AES");
+        clearBytes(pwdBytes);
+        return keyBytes;
+    }
+
+    /** Fresh random 16-byte IV from the shared SecureRandom. */
+    public static byte[] randomIv() {
+        return randomBytes(IV_LENGTH);
+    }
+
+    /** n random bytes from the shared SecureRandom. */
+    public static byte[] randomBytes(int n) {
+        byte[] bytes = new byte[n];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+
+    /** True → new files/streams are written as AES-GCM records. */
+    public static boolean useRecordFormat() {
+        return RECORD_FORMAT;
+    }
+
+    /** Plain bytes per record for new AES-GCM files. */
+    public static int recordSize() {
+        return RECORD_SIZE;
     }
 
     // ============================================================
@@ -69,7 +245,8 @@ public final class AesUtil {
     // ============================================================
 
     /**
-     * Steps:
+     * Steps (gcm): AesGcmRecords.encryptFile → all cores.
+     * Steps (cbc):
      *   1) Make random IV.
      *   2) Write IV at top of output file.
      *   3) Encrypt input file and write encrypted bytes.
@@ -77,11 +254,16 @@ public final class AesUtil {
     public static void encryptFile(File inputFile, File outputFile, SecretKey key) throws Exception {
         LoggerUtil.info("[AES] Encrypting file: " + inputFile.getName());
 
-        byte[] ivBytes = new byte[IV_LENGTH];
-        new SecureRandom().nextBytes(ivBytes);
+        if (RECORD_FORMAT) {
+            AesGcmRecords.encryptFile(inputFile, outputFile, key, RECORD_SIZE);
+            LoggerUtil.info("[AES] File encrypted (GCM records) → " + outputFile.getAbsolutePath());
+            return;
+        }
+
+        byte[] ivBytes = randomIv();
         IvParameterSpec iv = new IvParameterSpec(ivBytes);
 
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        Cipher cipher = Cipher.getInstance(CBC);
         cipher.init(Cipher.ENCRYPT_MODE, key, iv);
 
         try (FileOutputStream fos = new FileOutputStream(outputFile);
@@ -109,18 +291,25 @@ public final class AesUtil {
 
     /**
      * Steps:
-     *   1) Read first 16 bytes as IV.
+     *   0) Header says AES-GCM records → AesGcmRecords.decryptFile (all cores).
+     *   1) Else read first 16 bytes as IV.
      *   2) Decrypt the rest.
      */
     public static void decryptFile(File inputFile, File outputFile, SecretKey key) throws Exception {
         LoggerUtil.info("[AES] Decrypting file: " + inputFile.getName());
 
+        if (AesGcmRecords.isRecordFile(inputFile.toPath())) {
+            AesGcmRecords.decryptFile(inputFile, outputFile, key);
+            LoggerUtil.info("[AES] File decrypted (GCM records) → " + outputFile.getAbsolutePath());
+            return;
+        }
+
         try (FileInputStream fis = new FileInputStream(inputFile)) {
             byte[] ivBytes = new byte[IV_LENGTH];
             if (fis.read(ivBytes) != IV_LENGTH) throw new IOException("Missing IV in encrypted file");
 
             IvParameterSpec iv = new IvParameterSpec(ivBytes);
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            Cipher cipher = Cipher.getInstance(CBC);
             cipher.init(Cipher.DECRYPT_MODE, key, iv);
 
             try (FileOutputStream fos = new FileOutputStream(outputFile)) {
@@ -150,17 +339,23 @@ public final class AesUtil {
      *   - Return decrypted bytes.
      */
     public static byte[] decrypt(byte[] body, String password) throws Exception {
+        SecretKey key = buildKeyFromPassword(password);
+        try {
+            return decrypt(body, key);
+        } finally {
+            destroyKey(key);
+        }
+    }
+
+    /** Same as above with the transfer's key (no key setup per chunk). */
+    public static byte[] decrypt(byte[] body, SecretKey key) throws Exception {
         if (body == null || body.length < IV_LENGTH) {
             throw new IllegalArgumentException("Encrypted payload too small");
         }
 
-        byte[] ivBytes = Arrays.copyOfRange(body, 0, IV_LENGTH);
-        byte[] encBytes = Arrays.copyOfRange(body, IV_LENGTH, body.length);
-
-        SecretKey key = buildKeyFromPassword(password);
-        IvParameterSpec iv = new IvParameterSpec(ivBytes);
+        IvParameterSpec iv = new IvParameterSpec(body, 0, IV_LENGTH);
 
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        Cipher cipher = CHUNK_CIPHER.get();
         try {
             cipher.init(Cipher.DECRYPT_MODE, key, iv);
         } catch (Exception e) {
@@ -168,7 +363,40 @@ public final class AesUtil {
             throw new IOException("Wrong password");
         }
 
-        return cipher.doFinal(encBytes);
+        return cipher.doFinal(body, IV_LENGTH, body.length - IV_LENGTH);
+    }
+
+    /**
+     * Baby-English:
+     *   - Give back a CBC cipher ready to decrypt ONE chunk piece by piece.
+     *   - Caller reads the 16-byte IV from the chunk first.
+     *   - Lets the server decrypt while streaming (no whole-chunk byte[]).
+     *   - The cipher is this thread's reusable one: use it up before
+     *     asking for the next chunk on the same thread.
+     */
+    public static Cipher chunkDecryptCipher(byte[] ivBytes, String password) throws Exception {
+        SecretKey key = buildKeyFromPassword(password);
+        try {
+            return chunkDecryptCipher(ivBytes, key); // init() keeps its own copy of the key
+        } finally {
+            destroyKey(key);
+        }
+    }
+
+    /** Same as above with the transfer's key (no key setup per chunk). */
+    public static Cipher chunkDecryptCipher(byte[] ivBytes, SecretKey key) throws Exception {
+        if (ivBytes == null || ivBytes.length != IV_LENGTH) {
+            throw new IllegalArgumentException("Encrypted payload too small");
+        }
+
+        Cipher cipher = CHUNK_CIPHER.get();
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(ivBytes));
+        } catch (Exception e) {
+            LoggerUtil.warn("[AES] Wrong password or invalid IV.");
+            throw new IOException("Wrong password");
+        }
+        return cipher;
     }
 
     // ============================================================
@@ -185,20 +413,32 @@ public final class AesUtil {
 
     /**
      * Steps:
-     * 1) Read first 16 bytes as IV.
+     * 0) Peek at the header: AES-GCM records → AesGcmRecords.decryptStream
+     *    (every record checked as it passes).
+     * 1) Else first 16 bytes are the IV.
      * 2) Decrypt the rest directly to the output stream.
      * ✔ Avoids loading the entire file into memory.
      */
     public static void decryptStream(InputStream encryptedStream, OutputStream decryptedStream, SecretKey key) throws Exception {
         LoggerUtil.info("[AES] Starting stream decryption...", null);
 
-        byte[] ivBytes = new byte[IV_LENGTH];
-        if (encryptedStream.read(ivBytes) != IV_LENGTH) {
+        byte[] head = encryptedStream.readNBytes(AesGcmRecords.HEADER_LENGTH);
+        InputStream all = new SequenceInputStream(new ByteArrayInputStream(head), encryptedStream);
+        if (AesGcmRecords.hasMagic(head, head.length)) {
+            AesGcmRecords.decryptStream(all, decryptedStream, key);
+            decryptedStream.flush();
+            LoggerUtil.info("[AES] Stream decryption finished (GCM records).", null);
+            return;
+        }
+        encryptedStream = all;
+
+        byte[] ivBytes = encryptedStream.readNBytes(IV_LENGTH);
+        if (ivBytes.length != IV_LENGTH) {
             throw new IOException("Missing IV in encrypted stream");
         }
 
         IvParameterSpec iv = new IvParameterSpec(ivBytes);
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        Cipher cipher = Cipher.getInstance(CBC);
         cipher.init(Cipher.DECRYPT_MODE, key, iv);
 
         byte[] buffer = new byte[8192];
@@ -217,39 +457,41 @@ public final class AesUtil {
     }
 
     // ============================================================
-// 🆕 encryptChunk(byte[]) for HTTP streaming
-// ============================================================
+    // 🆕 encryptChunk(byte[]) for HTTP streaming
+    // ============================================================
 
     /**
-     * Encrypts a chunk of bytes with IV generation for the first call.
-     * This is meant to be called repeatedly on a stream, but HTTP chunking
-     * requires the IV to be prepended, so we assume the IV is handled
-     * externally (by HttpTransferHandler) or is only applied to the *entire* file before stream.
-     * For now, we stub this to use simple byte-array encryption.
+     * Baby-English:
+     *   - Encrypt ONE chunk on its own: [16-byte IV][AES/CBC data].
+     *   - Pass the transfer's key (made once), cipher from this thread,
+     *     IV from the shared SecureRandom → no per-chunk setup cost.
+     *   - Server side reads it back with chunkDecryptCipher / decrypt.
      */
     public static byte[] encryptChunk(byte[] chunk, String password) throws Exception {
-        SecretKey key = buildKeyFromPassword(password);
-
-        // NOTE: This implementation is simplified for chunking, ideally stateful streaming cipher is used.
-        // However, based on the input code, we'll implement a basic one that requires IV to be prepended by caller.
-        // For simplicity and compilation, we will assume the full encryption happened externally.
-        // Since the main logic uses encryptFile, this method is likely unnecessary but required for compilation.
+        return encryptChunk(chunk, 0, chunk.length, password);
+    }
 
-        // Stub implementation:
-        byte[] ivBytes = new byte[IV_LENGTH];
-        new SecureRandom().nextBytes(ivBytes);
-        IvParameterSpec iv = new IvParameterSpec(ivBytes);
+    /** Same as above for data[off .. off+len) – no copy of the input needed. */
+    public static byte[] encryptChunk(byte[] data, int off, int len, String password) throws Exception {
+        SecretKey key = buildKeyFromPassword(password);
+        try {
+            return encryptChunk(data, off, len, key);
+        } finally {
+            destroyKey(key);
+        }
+    }
 
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-        cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+    /** Same as above with the transfer's key (what senders should use per chunk). */
+    public static byte[] encryptChunk(byte[] data, int off, int len, SecretKey key) throws Exception {
+        byte[] ivBytes = randomIv();
 
-        byte[] encrypted = cipher.doFinal(chunk);
+        Cipher cipher = CHUNK_CIPHER.get();
+        cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(ivBytes));
 
-        // Prepend IV to the chunk for transport (simplistic)
-        byte[] result = new byte[IV_LENGTH + encrypted.length];
+        // IV first, cipher text right after it, in one array
+        byte[] result = new byte[IV_LENGTH + cipher.getOutputSize(len)];
         System.arraycopy(ivBytes, 0, result, 0, IV_LENGTH);
-        System.arraycopy(encrypted, 0, result, IV_LENGTH, encrypted.length);
-
-        return result;
+        int n = cipher.doFinal(data, off, len, result, IV_LENGTH);
+        return (IV_LENGTH + n == result.length) ? result : Arrays.copyOf(result, IV_LENGTH + n);
     }
 }
@@ -0,0 +1,87 @@
+package com.filesharingapp.security;
+
+import javax.crypto.SecretKey;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * PasswordKey
+ * -----------
+ * Baby-English:
+ *   ✔ What AesUtil.buildKeyFromPassword gives back.
+ *   ✔ As a plain AES key it is the OLD key (repeat-the-password), so
+ *     header-less CBC files and chunk bodies stay readable by and for
+ *     older peers.
+ *   ✔ It also holds SHA-256(password), never the password itself, so
+ *     formats WITH a header (AesGcmRecords) can stretch that with PBKDF2
+ *     and the salt + rounds written in the header.
+ *   ✔ PBKDF2 results for record files are kept here too (one KDF run
+ *     per salt for the life of the key, i.e. one transfer).
+ *   ✔ destroy() wipes all of it; the transfer that made the key calls
+ *     AesUtil.destroyKey when it ends.
+ */
+public final class PasswordKey implements SecretKey {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] legacy;
+    private final transient byte[] kdfInput;
+    private final transient Map<String, byte[]> stretched = new HashMap<>();
+    private volatile boolean destroyed;
+
+    PasswordKey(byte[] legacy, byte[] kdfInput) {
+        this.legacy = legacy;
+        this.kdfInput = kdfInput;
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return "AES";
+    }
+
+    @Override
+    public String getFormat() {
+        return "RAW";
+    }
+
+    /** Old-style key bytes (copy). */
+    @Override
+    public byte[] getEncoded() {
+        if (destroyed) throw new IllegalStateException("Key was destroyed");
+        return legacy.clone();
+    }
+
+    /** PBKDF2 input for header-based key stretching (copy; caller clears it). */
+    byte[] kdfInput() {
+        if (destroyed || kdfInput == null) throw new IllegalStateException("Key was destroyed");
+        return kdfInput.clone();
+    }
+
+    /**
+     * Stretched key for this salt + rounds id (copy; caller clears it).
+     * First call runs derive, later calls reuse its result.
+     */
+    synchronized byte[] stretched(String id, Supplier<byte[]> derive) {
+        if (destroyed) throw new IllegalStateException("Key was destroyed");
+        return stretched.computeIfAbsent(id, k -> derive.get()).clone();
+    }
+
+    /** Wipe key bytes, KDF input and stretched keys. */
+    @Override
+    public void destroy() {
+        destroyed = true;
+        Arrays.fill(legacy, (byte) 0);
+        if (kdfInput != null) Arrays.fill(kdfInput, (byte) 0);
+        synchronized (this) {
+            stretched.values().forEach(b -> Arrays.fill(b, (byte) 0));
+            stretched.clear();
+        }
+    }
+
+    @Override
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+}
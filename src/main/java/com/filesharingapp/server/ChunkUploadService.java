@@ -1,13 +1,34 @@
 package com.filesharingapp.server;
 
+import com.filesharingapp.core.ChunkBitmap;
 import com.filesharingapp.core.TransferContext;
 import com.filesharingapp.security.AesUtil;
+import com.filesharingapp.utils.AppConfig;
+import com.filesharingapp.utils.HashUtil;
 import com.filesharingapp.utils.LoggerUtil;
 
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.OpenOption;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
 
 /**
  * ChunkUploadService
@@ -20,7 +41,8 @@ import java.util.Arrays;
  *
  *   ✔ Folders:
  *       - "received" → final files ready for download.
- *       - "tmp/uploads" → temporary chunks before merge.
+ *       - "tmp/uploads" → preallocated ".part" files while chunks arrive,
+ *         each with a ".bitmap" file that remembers which chunks landed.
  *
  *   ✔ AES:
  *       - If sender encrypted → decrypt before writing (optional).
@@ -31,6 +53,157 @@ public final class ChunkUploadService {
     private static final Path TMP_DIR = Path.of("tmp", "uploads");
     private static final Path RECEIVED_DIR = Path.of("received");
 
+    /** Chunk size the web UI uses when the client does not send one. */
+    public static final long DEFAULT_CHUNK_SIZE = 512 * 1024;
+
+    /**
+     * How many new chunks we allow between two disk flushes.
+     * Baby-English: small number = safer after power loss, big number = faster.
+     */
+    private static final int FLUSH_EVERY_CHUNKS =
+            Math.max(1, AppConfig.getInt("upload.bitmap.flushEveryChunks", 64));
+
+    /**
+     * How long a request waits for a chunk another request is still writing.
+     * Baby-English: after that the chunk is refused and the sender resends it.
+     */
+    private static final long CLAIM_WAIT_MS =
+            Math.max(0L, AppConfig.getInt("upload.chunk.claimWaitMs", 30_000));
+
+    /**
+     * One open .part file per chunked transfer.
+     * Baby-English: every chunk of the same transfer shares this channel.
+     */
+    private static final class ChunkTarget {
+        final Path partPath;
+        final Path finalPath;
+        final String fileName;
+        final FileChannel channel;
+        final ChunkBitmap bitmap;
+        final long chunkSize;
+        final long totalBytes;
+        final int totalChunks;
+        final AtomicInteger sinceFlush = new AtomicInteger();
+        /** Units some request is writing right now (guarded by this). */
+        private final BitSet writing = new BitSet();
+        private SecretKey aesKey;
+        private boolean finished;
+
+        ChunkTarget(Path partPath, Path finalPath, String fileName, FileChannel channel, ChunkBitmap bitmap,
+                    long chunkSize, long totalBytes, int totalChunks) {
+            this.partPath = partPath;
+            this.finalPath = finalPath;
+            this.fileName = fileName;
+            this.channel = channel;
+            this.bitmap = bitmap;
+            this.chunkSize = chunkSize;
+            this.totalBytes = totalBytes;
+            this.totalChunks = totalChunks;
+        }
+
+        /** One AES key for the whole transfer: made by the first encrypted chunk. */
+        synchronized SecretKey aesKey(String aesPassword) throws IOException {
+            if (finished) throw new IOException("Transfer already finished");
+            if (aesKey == null) aesKey = AesUtil.buildKeyFromPassword(aesPassword);
+            return aesKey;
+        }
+
+        /**
+         * claim
+         * Baby-English:
+         *   ✔ Take units [first, first+count) for this request, all at once.
+         *   ✔ A unit another request is still writing → wait until that one
+         *     ends (then the unit is stored, or free again if it failed).
+         *   ✔ Bits are read HERE, while no one else may write the unit, so
+         *     a unit is written by at most one request at a time and never
+         *     after its bit is set.
+         *   ✔ Still busy after CLAIM_WAIT_MS → ChunkRejectedException.
+         *
+         * @return skip[i] = true when unit first+i is already stored (not ours to write)
+         */
+        synchronized boolean[] claim(int first, int count) throws IOException {
+            long deadline = System.currentTimeMillis() + CLAIM_WAIT_MS;
+            int busy;
+            while ((busy = writing.nextSetBit(first)) >= 0 && busy < first + count) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) throw new ChunkRejectedException(busy, "being written by another request");
+                try {
+                    wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for chunk " + busy);
+                }
+            }
+            boolean[] skip = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                skip[i] = bitmap.get(first + i);
+                if (!skip[i]) writing.set(first + i);
+            }
+            return skip;
+        }
+
+        /** Give back what claim took (after the bits are set, or on failure). */
+        synchronized void release(int first, boolean[] skip) {
+            for (int i = 0; i < skip.length; i++) {
+                if (!skip[i]) writing.clear(first + i);
+            }
+            notifyAll();
+        }
+
+        /** Transfer over → wipe the key; later requests cannot make a new one. */
+        synchronized void finish() {
+            finished = true;
+            AesUtil.destroyKey(aesKey);
+            aesKey = null;
+        }
+    }
+
+    private static final Map<String, ChunkTarget> OPEN_TARGETS = new ConcurrentHashMap<>();
+
+    /**
+     * MissingReport
+     * -------------
+     * Baby-English:
+     *   ✔ Snapshot of "what do we still need" for one open chunked upload.
+     *   ✔ missingChunks holds runs {firstIndex, lastIndexExclusive}.
+     */
+    public static final class MissingReport {
+        public final long chunkSize;
+        public final long totalBytes;
+        public final int totalChunks;
+        public final int receivedChunks;
+        public final List<int[]> missingChunks;
+
+        MissingReport(long chunkSize, long totalBytes, int totalChunks,
+                      int receivedChunks, List<int[]> missingChunks) {
+            this.chunkSize = chunkSize;
+            this.totalBytes = totalBytes;
+            this.totalChunks = totalChunks;
+            this.receivedChunks = receivedChunks;
+            this.missingChunks = missingChunks;
+        }
+
+        /** Same runs as byte ranges {startByte, endByteExclusive}. */
+        public List<long[]> missingByteRanges() {
+            List<long[]> out = new ArrayList<>(missingChunks.size());
+            for (int[] r : missingChunks) {
+                out.add(new long[]{r[0] * chunkSize, Math.min((long) r[1] * chunkSize, totalBytes)});
+            }
+            return out;
+        }
+    }
+
+    /**
+     * Reusable per-thread buffers for chunk bodies.
+     * Baby-English: Jetty reuses its threads, so heap use stays flat
+     * no matter how big a chunk is.
+     */
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<byte[]> IO_BUFFER =
+            ThreadLocal.withInitial(() -> new byte[IO_BUFFER_SIZE]);
+    private static final ThreadLocal<byte[]> PLAIN_BUFFER =
+            ThreadLocal.withInitial(() -> new byte[IO_BUFFER_SIZE + AesUtil.IV_LENGTH]);
+
     static {
         try {
             Files.createDirectories(TMP_DIR);
@@ -51,12 +224,22 @@ public final class ChunkUploadService {
      * ------------
      * Baby-English:
      *   ✔ We get ONE long stream of bytes from HTTP.
-     *   ✔ If file exists → resume from offset.
-     *   ✔ If AES enabled → decrypt before writing.
+     *   ✔ Client sends X-Resume-Offset = bytes we already have on disk
+     *     → append the rest to that file (resume).
+     *   ✔ No offset (streamed senders never send one, e.g. totalBytes=-1)
+     *     → write a fresh temp file and move it over received/{name} only
+     *     when the body is complete. A second send or a retried broken
+     *     stream never piles new bytes on top of old ones.
+     *   ✔ Offset that does not fit the file on disk → refused, nothing written.
+     *   ✔ If AES enabled → decrypt the whole body as ONE stream
+     *     (AES-GCM records are verified record by record on arrival).
+     *   ✔ Bytes are hashed on the way to disk; the checksum is handed to
+     *     HashUtil, so fileChecksum(outPath) afterwards is free.
      *
      * @param transferId unique transfer ID
      * @param fileName   final file name
      * @param totalBytes total size (or -1 if unknown)
+     * @param resumeOffset X-Resume-Offset from the client (-1 = none sent → fresh file)
      * @param input      HTTP InputStream
      * @param aesPassword optional AES password (null if disabled)
      * @return path to saved file
@@ -64,6 +247,7 @@ public final class ChunkUploadService {
     public static Path handleStream(String transferId,
                                     String fileName,
                                     long totalBytes,
+                                    long resumeOffset,
                                     InputStream input,
                                     String aesPassword) throws IOException {
 
@@ -71,56 +255,94 @@ public final class ChunkUploadService {
         if (fileName == null || fileName.isBlank()) throw new IOException("Missing fileName");
 
         Path outPath = RECEIVED_DIR.resolve(fileName);
-        long already = Files.exists(outPath) ? Files.size(outPath) : 0L;
+        long onDisk = Files.exists(outPath) ? Files.size(outPath) : 0L;
+        if (resumeOffset > 0 && resumeOffset != onDisk) {
+            TransferStatusRegistry.fail(transferId, "Resume offset " + resumeOffset + " does not match " + onDisk + " bytes on disk");
+            throw new IOException("Resume offset " + resumeOffset + " does not match " + onDisk + " bytes on disk");
+        }
+        boolean append = resumeOffset > 0;
+        long already = append ? onDisk : 0L;
+        Path writePath = append ? outPath : TMP_DIR.resolve(safeId(transferId) + ".stream");
 
-        LoggerUtil.info("[UploadStream] Saving to: " + outPath + " (resume offset=" + already + ")");
+        LoggerUtil.info("[UploadStream] Saving to: " + outPath + (append ? " (resume offset=" + already + ")" : " (fresh)"));
 
         TransferStatusRegistry.begin(transferId, fileName, totalBytes);
+        TransferStatusRegistry.progress(transferId, already);
         TransferContext.setFinalOutputPath(outPath.toString());
         TransferContext.setResumeOffsetBytes(already);
 
-        try (OutputStream out = new BufferedOutputStream(
-                Files.newOutputStream(outPath,
-                        java.nio.file.StandardOpenOption.CREATE,
-                        java.nio.file.StandardOpenOption.APPEND))) {
+        // Hash what lands on disk (old part first, if resuming) → the reply
+        // can give the checksum without reading the file again
+        HashUtil.StreamingChecksum sum = HashUtil.newStreamingChecksum();
+        if (already > 0) {
+            try (InputStream existing = Files.newInputStream(outPath)) {
+                byte[] buffer = IO_BUFFER.get();
+                int n;
+                while ((n = existing.read(buffer)) != -1) sum.update(buffer, 0, n);
+            }
+        }
 
-            byte[] buffer = new byte[8192];
-            long written = already;
-            int len;
+        OpenOption[] mode = append
+                ? new OpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.APPEND}
+                : new OpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE};
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(writePath, mode))) {
 
-            while ((len = input.read(buffer)) != -1) {
-                byte[] toWrite = buffer;
-                int writeLen = len;
-
-                // AES decrypt if enabled
-                if (aesPassword != null) {
-                    try {
-                        byte[] chunk = Arrays.copyOf(buffer, len);
-                        toWrite = AesUtil.decrypt(chunk, aesPassword);
-                        writeLen = toWrite.length;
-                    } catch (Exception e) {
-                        LoggerUtil.error("[AES] Decryption failed during stream upload.", e);
-                        throw new IOException("AES decryption error");
-                    }
+            // Counts every byte that reaches the disk (plain or decrypted)
+            OutputStream out = new FilterOutputStream(file) {
+                long written = already;
+
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
                 }
 
-                out.write(toWrite, 0, writeLen);
-                written += writeLen;
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    this.out.write(b, off, len);
+                    sum.update(b, off, len);
+                    long before = written;
+                    written += len;
 
-                TransferStatusRegistry.progress(written);
-                TransferContext.addReceivedBytes(transferId, writeLen);
+                    TransferStatusRegistry.addBytes(transferId, len);
+                    TransferContext.addReceivedBytes(transferId, len);
 
-                if (written % (512 * 1024) < buffer.length) {
-                    LoggerUtil.info("[UploadStream] Written " + written + " bytes so far.");
+                    if (written / (512 * 1024) != before / (512 * 1024)) {
+                        LoggerUtil.info("[UploadStream] Written " + written + " bytes so far.");
+                    }
+                }
+            };
+
+            if (aesPassword != null) {
+                // One decrypt over the whole body. GCM records are checked one by
+                // one as they arrive; old CBC bodies are one continuous stream.
+                SecretKey key = AesUtil.buildKeyFromPassword(aesPassword);
+                try {
+                    AesUtil.decryptStream(input, out, key);
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    LoggerUtil.error("[AES] Decryption failed during stream upload.", e);
+                    throw new IOException("AES decryption error");
+                } finally {
+                    AesUtil.destroyKey(key);
+                }
+            } else {
+                byte[] buffer = IO_BUFFER.get();
+                int len;
+                while ((len = input.read(buffer)) != -1) {
+                    out.write(buffer, 0, len);
                 }
             }
             out.flush();
         } catch (IOException e) {
-            TransferStatusRegistry.fail("Stream upload error: " + e.getMessage());
+            if (!append) Files.deleteIfExists(writePath); // half a body is never worth keeping without an offset
+            TransferStatusRegistry.fail(transferId, "Stream upload error: " + e.getMessage());
             throw e;
         }
+        if (!append) moveIntoPlace(writePath, outPath);
 
-        TransferStatusRegistry.complete(outPath.toAbsolutePath().toString());
+        HashUtil.rememberChecksum(outPath.toFile(), sum.finishHex());
+        TransferStatusRegistry.complete(transferId, outPath.toAbsolutePath().toString());
         LoggerUtil.success("[UploadStream] Finished. Total bytes now on disk=" + Files.size(outPath));
         TransferContext.setIncomingName(fileName);
 
@@ -128,98 +350,616 @@ public final class ChunkUploadService {
     }
 
     // ============================================================
-    // 2️⃣ CHUNK-BASED UPLOAD (supports AES + merge)
+    // 2️⃣ CHUNK-BASED UPLOAD (positional writes, no merge pass)
     // ============================================================
 
     /**
      * handleChunk
      * -----------
      * Baby-English:
-     *   ✔ Save each chunk in tmp/uploads.
-     *   ✔ If AES enabled → decrypt before saving.
-     *   ✔ When all chunks arrive → merge into final file.
+     *   ✔ First chunk we see (any index) → make "tmp/uploads/{id}.part"
+     *     at full size and keep ONE FileChannel open for it.
+     *   ✔ Every chunk is written straight to its own spot:
+     *       offset = chunkIndex * chunkSize
+     *   ✔ chunkSize is the bitmap unit and stays fixed per transfer; one
+     *     request may carry "chunkCount" units in a row (the sender grows
+     *     and shrinks its requests, the bitmap does not change).
+     *   ✔ Chunks may come in any order and at the same time.
+     *   ✔ Body is streamed in through one small reusable buffer,
+     *     so memory per request does not grow with chunk size.
+     *   ✔ If AES enabled → decrypt piece by piece while writing, with one
+     *     key per transfer (wiped when the file is complete).
+     *   ✔ If the sender gave X-Chunk-CRC32C (CRC of the bytes on the wire)
+     *     → CRC while reading; mismatch = ChunkRejectedException, chunk NOT
+     *     marked, sender resends just that chunk.
+     *   ✔ If the sender gave SHA-256(0x00 + unit) for every unit (same
+     *     form as HashUtil leaves, comma separated; http.upload.verifyChunks)
+     *     → hash while writing; mismatch = same as above.
+     *   ✔ Before writing, the request claims its units on the target (see
+     *     ChunkTarget.claim): a unit is written by one request at a time,
+     *     and only while its bit is clear. Bits are set before the claim
+     *     is let go, so a duplicate that comes during or after the write
+     *     can never put bad bytes under a set bit (all marked → body is
+     *     just drained).
+     *   ✔ Chunk bits go to a memory-mapped ".bitmap" file, but only at a
+     *     checkpoint: every FLUSH_EVERY_CHUNKS new chunks we force the data,
+     *     then write + force the bits (see maybeCheckpoint).
+     *   ✔ When the bitmap says "all chunks here" → rename .part into
+     *     "received/" (no copy, no merge) and drop the bitmap file.
      *
+     * @param chunkSize  bitmap unit: size of every unit except maybe the last one
+     * @param chunkCount units in this request, starting at chunkIndex (1 = classic chunk)
+     * @param expectedCrc32c   hex CRC32C of the request body as sent (null = no check)
+     * @param expectedLeafHash hex SHA-256(0x00 + unit) per unit, comma separated (null = no check)
      * @return "CHUNK-STORED" or "MERGED"
+     * @throws ChunkRejectedException chunk damaged on the way (transfer stays alive)
+     * @throws IOException only this request failed, unless the transfer itself is
+     *         broken (target cannot be opened or finished, totalBytes / fileName
+     *         changed): then it is also marked failed in TransferStatusRegistry
      */
     public static String handleChunk(String transferId,
                                      String fileName,
                                      int chunkIndex,
+                                     long chunkSize,
+                                     int chunkCount,
                                      long totalBytes,
-                                     byte[] body,
-                                     String aesPassword) throws IOException {
-
-        // NOTE: RECEIVED_DIR and TMP_DIR must be correctly defined class-level static variables
-        // as per the rest of your ChunkUploadService.java file.
+                                     InputStream body,
+                                     String aesPassword,
+                                     String expectedCrc32c,
+                                     String expectedLeafHash) throws IOException {
 
         if (transferId == null || transferId.isBlank()) throw new IOException("Missing transferId");
         if (fileName == null || fileName.isBlank()) throw new IOException("Missing fileName");
         if (body == null) throw new IOException("Missing chunk body");
+        if (chunkSize <= 0) throw new IOException("Invalid chunkSize: " + chunkSize);
+        if (chunkCount <= 0) throw new IOException("Invalid chunkCount: " + chunkCount);
 
-        if (chunkIndex == 0) {
-            TransferStatusRegistry.begin(transferId, fileName, totalBytes);
-            TransferContext.initChunkState(transferId, (int) Math.ceil(totalBytes / (1024 * 1024))); // rough chunk count
-            TransferContext.setFinalOutputPath(RECEIVED_DIR.resolve(fileName).toString());
+        ChunkTarget target;
+        try {
+            target = openTarget(transferId, fileName, chunkSize, totalBytes);
+        } catch (IOException e) {
+            TransferStatusRegistry.fail(transferId, "Cannot open upload target: " + e.getMessage());
+            throw e;
+        }
+        if (target.chunkSize != chunkSize) {
+            throw new IOException("chunkSize changed mid-transfer (" + target.chunkSize + " → " + chunkSize + ")");
+        }
+        if (target.totalBytes != Math.max(totalBytes, 0L)) {
+            String reason = "totalBytes changed mid-transfer (" + target.totalBytes + " → " + totalBytes + ")";
+            TransferStatusRegistry.fail(transferId, reason);
+            throw new IOException(reason);
+        }
+        if (!target.fileName.equals(fileName)) {
+            String reason = "fileName changed mid-transfer (" + target.fileName + " → " + fileName + ")";
+            TransferStatusRegistry.fail(transferId, reason);
+            throw new IOException(reason);
+        }
+        if (chunkIndex >= target.totalChunks || (long) chunkIndex + chunkCount > target.totalChunks) {
+            throw new IOException("Chunks " + chunkIndex + "+" + chunkCount + " out of range (total "
+                    + target.totalChunks + ")");
         }
 
-        byte[] plain = body;
-        if (aesPassword != null) {
-            try {
-                plain = AesUtil.decrypt(body, aesPassword);
-            } catch (Exception e) {
-                LoggerUtil.error("[AES] Chunk decryption failed.", e);
-                throw new IOException("AES decryption error");
+        // Claim first: the units that are not stored are ours alone until
+        // release(), and their bits are set before we let go of them.
+        boolean[] stored = target.claim(chunkIndex, chunkCount);
+        try {
+            int storedCount = 0;
+            for (boolean b : stored) if (b) storedCount++;
+            if (storedCount == chunkCount) {
+                body.transferTo(OutputStream.nullOutputStream());
+                LoggerUtil.info("[UploadChunk] Chunk " + describeSpan(chunkIndex, chunkCount) + " of " + transferId
+                        + " already stored, skipped.");
+                return "CHUNK-STORED";
             }
+
+            writeClaimed(target, transferId, chunkIndex, chunkCount, stored, body, aesPassword,
+                    expectedCrc32c, expectedLeafHash);
+
+            // O(1): atomic per-transfer counters, no directory listing
+            for (int i = 0; i < chunkCount; i++) {
+                if (stored[i]) continue;
+                int index = chunkIndex + i;
+                long unitBytes = Math.min(chunkSize, target.totalBytes - index * chunkSize);
+                if (TransferContext.recordChunk(transferId, index, unitBytes)) {
+                    TransferStatusRegistry.addBytes(transferId, unitBytes);
+                    maybeCheckpoint(target);
+                }
+            }
+        } finally {
+            target.release(chunkIndex, stored);
+        }
+
+        if (!TransferContext.areAllChunksReceived(transferId)) {
+            return "CHUNK-STORED";
         }
 
-        Path chunkFile = TMP_DIR.resolve(transferId + "." + chunkIndex + ".chunk");
-        Files.write(chunkFile, plain);
-        LoggerUtil.info("[UploadChunk] Stored chunk " + chunkIndex + " (" + plain.length + " bytes)");
+        // Only the thread that removes the target finishes the file.
+        if (!OPEN_TARGETS.remove(transferId, target)) {
+            return "MERGED";
+        }
 
-        TransferContext.markChunkReceived(transferId, chunkIndex);
-        TransferContext.addReceivedBytes(transferId, plain.length);
+        try {
+            target.channel.force(true);
+            target.channel.close();
+            moveIntoPlace(target.partPath, target.finalPath);
+            target.bitmap.delete();
+        } catch (IOException e) {
+            TransferStatusRegistry.fail(transferId, "Could not finish upload: " + e.getMessage());
+            throw e;
+        } finally {
+            target.finish();
+        }
+        LoggerUtil.info("[UploadChunk] All " + target.totalChunks + " chunks received → " + target.finalPath);
 
-        long sum = Files.list(TMP_DIR)
-                .filter(p -> p.getFileName().toString().startsWith(transferId + "."))
-                .mapToLong(p -> {
-                    try { return Files.size(p); } catch (IOException e) { return 0L; }
-                }).sum();
+        TransferStatusRegistry.complete(transferId, target.finalPath.toAbsolutePath().toString());
+        TransferContext.setIncomingName(fileName);
+        TransferContext.clearTransfer(transferId);
 
-        TransferStatusRegistry.progress(sum);
+        LoggerUtil.success("[UploadChunk] Transfer complete for " + transferId);
+        return "MERGED";
+    }
 
-        if (totalBytes > 0 && sum >= totalBytes && TransferContext.areAllChunksReceived(transferId)) {
-            Path out = RECEIVED_DIR.resolve(fileName);
-            LoggerUtil.info("[UploadChunk] All chunks received. Merging into " + out);
+    /**
+     * writeClaimed
+     * ------------
+     * Baby-English:
+     *   ✔ Stream the body into the claimed units (stored ones are skipped).
+     *   ✔ Then check length, CRC32C and unit hashes. Any failure throws
+     *     BEFORE a bit is set; the claimant after us writes the units again.
+     */
+    private static void writeClaimed(ChunkTarget target, String transferId, int chunkIndex, int chunkCount,
+                                     boolean[] stored, InputStream body, String aesPassword,
+                                     String expectedCrc32c, String expectedLeafHash) throws IOException {
+        long chunkSize = target.chunkSize;
+        long offset = chunkIndex * chunkSize;
+        long expected = Math.min(chunkCount * chunkSize, target.totalBytes - offset);
+
+        CheckedInputStream wire = (expectedCrc32c != null) ? new CheckedInputStream(body, new CRC32C()) : null;
+        InputStream in = (wire != null) ? wire : body;
+        ChunkSlot slot = new ChunkSlot(target.channel, offset, expected, chunkSize, stored,
+                expectedLeafHash != null);
+        long written;
+        try {
+            written = (aesPassword != null)
+                    ? writeDecrypted(slot, in, target.aesKey(aesPassword))
+                    : writePlain(slot, in);
+        } catch (IOException e) {
+            // Broken padding etc. is usually just a damaged body → say so if the CRC agrees
+            if (wire != null) checkCrc(transferId, chunkIndex, wire, expectedCrc32c);
+            throw e;
+        }
+        if (wire != null) checkCrc(transferId, chunkIndex, wire, expectedCrc32c);
 
-            try (OutputStream outStream = Files.newOutputStream(out)) {
-                int idx = 0;
-                while (true) {
-                    Path cf = TMP_DIR.resolve(transferId + "." + idx + ".chunk");
-                    if (!Files.exists(cf)) break;
-                    Files.copy(cf, outStream);
-                    idx++;
+        if (written != expected) {
+            throw new IOException("Chunk " + describeSpan(chunkIndex, chunkCount) + " has " + written
+                    + " bytes, expected " + expected);
+        }
+        if (expectedLeafHash != null) {
+            String[] hashes = expectedLeafHash.split(",");
+            if (hashes.length != chunkCount) {
+                throw new ChunkRejectedException(chunkIndex, hashes.length + " leaf hashes for " + chunkCount + " chunks");
+            }
+            for (int i = 0; i < chunkCount; i++) {
+                if (!slot.unitHashes.get(i).equalsIgnoreCase(hashes[i].trim())) {
+                    LoggerUtil.warn("[UploadChunk] Chunk " + (chunkIndex + i) + " of " + transferId + " failed hash check.");
+                    throw new ChunkRejectedException(chunkIndex + i, "hash mismatch");
                 }
             }
+        }
+    }
 
-            Files.list(TMP_DIR)
-                    .filter(p -> p.getFileName().toString().startsWith(transferId + "."))
-                    .forEach(p -> {
-                        try { Files.deleteIfExists(p); } catch (IOException e) {
-                            LoggerUtil.warn("[UploadChunk] Failed to delete chunk " + p);
-                        }
-                    });
+    /**
+     * checkCrc
+     * --------
+     * Baby-English:
+     *   ✔ Read whatever the client still sent, then compare CRC32C.
+     *   ✔ Header is 8 hex digits (leading zeros optional).
+     */
+    private static void checkCrc(String transferId, int chunkIndex,
+                                 CheckedInputStream wire, String expectedCrc32c) throws IOException {
+        wire.transferTo(OutputStream.nullOutputStream());
+        long expected;
+        try {
+            expected = Long.parseUnsignedLong(expectedCrc32c.trim(), 16);
+        } catch (NumberFormatException e) {
+            throw new ChunkRejectedException(chunkIndex, "bad X-Chunk-CRC32C header");
+        }
+        long actual = wire.getChecksum().getValue();
+        if (actual != expected) {
+            LoggerUtil.warn("[UploadChunk] Chunk " + chunkIndex + " of " + transferId + " failed CRC32C check ("
+                    + Long.toHexString(actual) + " != " + expectedCrc32c + ").");
+            throw new ChunkRejectedException(chunkIndex, "CRC32C mismatch");
+        }
+    }
 
-            // FIX: Replaced undefined 'safeFileName' with the correct input parameter 'fileName'
-            TransferStatusRegistry.complete(Path.of("received", fileName).toAbsolutePath().toString());
+    /**
+     * ChunkRejectedException
+     * ----------------------
+     * Baby-English:
+     *   ✔ "This one chunk came in damaged – send it again."
+     *   ✔ Only the chunk is refused; the transfer itself keeps going.
+     */
+    public static class ChunkRejectedException extends IOException {
+        private final int chunkIndex;
 
-            TransferContext.setIncomingName(fileName);
-            TransferContext.clearTransfer(transferId);
+        public ChunkRejectedException(int chunkIndex, String reason) {
+            super("Chunk " + chunkIndex + " rejected: " + reason);
+            this.chunkIndex = chunkIndex;
+        }
 
-            LoggerUtil.success("[UploadChunk] Merge complete for " + transferId);
-            return "MERGED";
+        public int getChunkIndex() {
+            return chunkIndex;
         }
+    }
 
-        return "CHUNK-STORED";
+    /**
+     * maybeCheckpoint
+     * ---------------
+     * Baby-English:
+     *   ✔ New bits live only in the heap until a checkpoint:
+     *       1) chunk data (force .part) 2) then the bits go into the mapped
+     *          bitmap and are forced.
+     *   ✔ So every bit in the file has its data on disk before it, and a
+     *     crash or power cut only loses bits, never data a bit vouches for.
+     *     Chunks since the last checkpoint are simply "missing" after a
+     *     restart and /missing asks for them again.
+     *   ✔ Only one thread per window does the flush; others keep going.
+     */
+    private static void maybeCheckpoint(ChunkTarget target) throws IOException {
+        if (target.sinceFlush.incrementAndGet() < FLUSH_EVERY_CHUNKS) return;
+        target.sinceFlush.set(0);
+        target.bitmap.checkpoint(target.channel);
     }
+
+    /**
+     * ChunkSlot
+     * ---------
+     * Baby-English:
+     *   ✔ The part of the .part file one request may write: [offset, offset+max).
+     *   ✔ Units that are already stored are skipped (bytes still counted).
+     *   ✔ With hashing on: one leaf hash per unit, in order.
+     */
+    private static final class ChunkSlot {
+        final FileChannel channel;
+        final long offset;
+        final long max;
+        final long unitSize;
+        final boolean[] stored;
+        final List<String> unitHashes = new ArrayList<>();
+        MessageDigest digest;
+        long done;
+
+        ChunkSlot(FileChannel channel, long offset, long max, long unitSize, boolean[] stored, boolean hashUnits) {
+            this.channel = channel;
+            this.offset = offset;
+            this.max = max;
+            this.unitSize = unitSize;
+            this.stored = stored;
+            this.digest = hashUnits ? HashUtil.newLeafDigest() : null;
+        }
+
+        /**
+         * Write up to what is left of the slot (and feed the digest, if any);
+         * return how many bytes were produced.
+         */
+        int write(byte[] data, int len) throws IOException {
+            int allowed = (int) Math.max(0L, Math.min(len, max - done));
+            int pos = 0;
+            while (pos < allowed) {
+                long at = done + pos;
+                int unit = (int) (at / unitSize);
+                long unitEnd = Math.min((unit + 1) * unitSize, max);
+                int n = (int) Math.min(allowed - pos, unitEnd - at);
+                if (digest != null) {
+                    digest.update(data, pos, n);
+                    if (at + n == unitEnd) {
+                        unitHashes.add(HashUtil.toHex(digest.digest()));
+                        digest = HashUtil.newLeafDigest(); // leaf digests start with a prefix
+                    }
+                }
+                if (!stored[unit]) writeFully(channel, ByteBuffer.wrap(data, pos, n), offset + at);
+                pos += n;
+            }
+            done += len;
+            return len;
+        }
+    }
+
+    /**
+     * writePlain
+     * ----------
+     * Baby-English:
+     *   ✔ Copy body → file at the slot's offset using the thread's reusable buffer.
+     *   ✔ Never writes past this request's slot.
+     *
+     * @return bytes the client sent (may be more than the slot → caller rejects)
+     */
+    private static long writePlain(ChunkSlot slot, InputStream in) throws IOException {
+        byte[] buf = IO_BUFFER.get();
+        long total = 0L;
+        int len;
+        while ((len = in.read(buf)) != -1) {
+            total += slot.write(buf, len);
+        }
+        return total;
+    }
+
+    /**
+     * writeDecrypted
+     * --------------
+     * Baby-English:
+     *   ✔ First 16 bytes = IV, rest = AES/CBC data.
+     *   ✔ Decrypt each small piece and write it straight to the file.
+     *
+     * @return plain bytes produced (may be more than the slot → caller rejects)
+     */
+    private static long writeDecrypted(ChunkSlot slot, InputStream in, SecretKey aesKey) throws IOException {
+        byte[] iv = in.readNBytes(AesUtil.IV_LENGTH);
+        Cipher cipher;
+        try {
+            cipher = AesUtil.chunkDecryptCipher(iv, aesKey);
+        } catch (Exception e) {
+            LoggerUtil.error("[AES] Chunk decryption failed.", e);
+            throw new IOException("AES decryption error");
+        }
+
+        byte[] buf = IO_BUFFER.get();
+        byte[] plain = PLAIN_BUFFER.get();
+        long total = 0L;
+        try {
+            int len;
+            while ((len = in.read(buf)) != -1) {
+                int n = cipher.update(buf, 0, len, plain, 0);
+                total += slot.write(plain, n);
+            }
+            int n = cipher.doFinal(plain, 0);
+            total += slot.write(plain, n);
+        } catch (GeneralSecurityException e) {
+            LoggerUtil.error("[AES] Chunk decryption failed.", e);
+            throw new IOException("AES decryption error");
+        }
+        return total;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        long pos = position;
+        while (buf.hasRemaining()) {
+            pos += channel.write(buf, pos);
+        }
+    }
+
+    /**
+     * openTarget
+     * ----------
+     * Baby-English:
+     *   ✔ Give back the open .part file for this transfer.
+     *   ✔ First caller creates it, makes it full size, and starts the bitmap.
+     */
+    private static ChunkTarget openTarget(String transferId,
+                                          String fileName,
+                                          long chunkSize,
+                                          long totalBytes) throws IOException {
+        try {
+            return OPEN_TARGETS.computeIfAbsent(transferId, id -> {
+                try {
+                    return createTarget(id, fileName, chunkSize, totalBytes);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static ChunkTarget createTarget(String transferId,
+                                            String fileName,
+                                            long chunkSize,
+                                            long totalBytes) throws IOException {
+        long total = Math.max(totalBytes, 0L);
+        int totalChunks = (int) Math.max(1L, (total + chunkSize - 1) / chunkSize);
+
+        Path partPath = TMP_DIR.resolve(safeId(transferId) + ".part");
+        Path bitmapPath = TMP_DIR.resolve(safeId(transferId) + ".bitmap");
+        Path finalPath = RECEIVED_DIR.resolve(fileName);
+
+        // A .part is only worth keeping when its bitmap matches this upload.
+        ChunkBitmap bitmap = Files.exists(partPath)
+                ? reopenBitmap(bitmapPath, transferId, fileName, chunkSize, total, totalChunks)
+                : null;
+        boolean restarted = (bitmap != null);
+        if (bitmap == null) {
+            bitmap = ChunkBitmap.create(bitmapPath, transferId, fileName, chunkSize, total, totalChunks);
+        }
+
+        FileChannel channel = FileChannel.open(partPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try (RandomAccessFile raf = new RandomAccessFile(partPath.toFile(), "rw")) {
+            raf.setLength(total); // preallocate so every chunk has its slot
+        } catch (IOException e) {
+            channel.close();
+            bitmap.delete();
+            throw e;
+        }
+
+        TransferStatusRegistry.begin(transferId, fileName, total);
+        TransferContext.initChunkState(transferId, bitmap);
+        TransferContext.getOrCreateProgress(transferId, total);
+        if (restarted) {
+            // Picking up a .part left by an earlier run: counters come from the bitmap once.
+            TransferContext.rebuildProgress(transferId, chunkSize, total);
+            TransferStatusRegistry.progress(transferId, TransferContext.getProgress(transferId).getReceivedBytes());
+            LoggerUtil.info("[UploadChunk] Resuming " + transferId + ": "
+                    + bitmap.cardinality() + "/" + totalChunks + " chunks on disk, missing "
+                    + describeRanges(bitmap.missingRanges()));
+        }
+        TransferContext.setFinalOutputPath(finalPath.toString());
+
+        LoggerUtil.info("[UploadChunk] Preallocated " + partPath + " (" + total + " bytes, "
+                + totalChunks + " chunks of " + chunkSize + ")");
+        return new ChunkTarget(partPath, finalPath, fileName, channel, bitmap, chunkSize, total, totalChunks);
+    }
+
+    /**
+     * reopenBitmap
+     * ------------
+     * Baby-English:
+     *   ✔ Open the bitmap an earlier run left behind.
+     *   ✔ Wrong transfer, other name, other chunk size, other total → throw it away
+     *     (return null) so we start clean.
+     */
+    private static ChunkBitmap reopenBitmap(Path bitmapPath, String transferId, String fileName,
+                                            long chunkSize, long totalBytes, int totalChunks) {
+        if (!Files.exists(bitmapPath)) return null;
+        try {
+            ChunkBitmap bitmap = ChunkBitmap.open(bitmapPath);
+            if (transferId.equals(bitmap.getTransferId())
+                    && fileName.equals(bitmap.getFileName())
+                    && bitmap.getChunkSize() == chunkSize
+                    && bitmap.getTotalBytes() == totalBytes
+                    && bitmap.getTotalChunks() == totalChunks) {
+                return bitmap;
+            }
+            LoggerUtil.warn("[UploadChunk] Bitmap for " + transferId + " does not match this upload – starting over.");
+            bitmap.delete();
+        } catch (IOException e) {
+            LoggerUtil.warn("[UploadChunk] Unreadable bitmap " + bitmapPath + " – starting over: " + e.getMessage());
+        }
+        return null;
+    }
+
+    // ============================================================
+    // 🔁 Restart recovery
+    // ============================================================
+
+    /**
+     * recoverPartialUploads
+     * ---------------------
+     * Baby-English:
+     *   ✔ Call once when the server starts.
+     *   ✔ Every ".bitmap" in tmp/uploads with its ".part" next to it
+     *     becomes an open transfer again (status + progress rebuilt).
+     *   ✔ Logs exactly which chunks are still missing.
+     *
+     * @return how many transfers were picked up again
+     */
+    public static int recoverPartialUploads() {
+        int recovered = 0;
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(TMP_DIR, "*.bitmap")) {
+            for (Path bitmapPath : dir) {
+                String transferId;
+                String fileName;
+                long chunkSize;
+                long totalBytes;
+                try (ChunkBitmap probe = ChunkBitmap.open(bitmapPath)) {
+                    transferId = probe.getTransferId();
+                    fileName = probe.getFileName();
+                    chunkSize = probe.getChunkSize();
+                    totalBytes = probe.getTotalBytes();
+                } catch (IOException e) {
+                    LoggerUtil.warn("[UploadChunk] Skipping unreadable bitmap " + bitmapPath + ": " + e.getMessage());
+                    continue;
+                }
+                if (transferId.isBlank() || fileName.isBlank() || chunkSize <= 0
+                        || !Files.exists(TMP_DIR.resolve(safeId(transferId) + ".part"))) {
+                    LoggerUtil.warn("[UploadChunk] Dropping orphan bitmap " + bitmapPath);
+                    Files.deleteIfExists(bitmapPath);
+                    continue;
+                }
+                try {
+                    openTarget(transferId, fileName, chunkSize, totalBytes);
+                    recovered++;
+                } catch (IOException e) {
+                    LoggerUtil.warn("[UploadChunk] Could not resume " + transferId + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            LoggerUtil.error("[UploadChunk] Failed to scan " + TMP_DIR + " for partial uploads", e);
+        }
+        if (recovered > 0) {
+            LoggerUtil.success("[UploadChunk] Recovered " + recovered + " partial upload(s) from disk.");
+        }
+        return recovered;
+    }
+
+    /**
+     * checkpointOpenUploads
+     * ---------------------
+     * Baby-English:
+     *   ✔ Call when the server stops (FileSharingServer does).
+     *   ✔ Every open upload gets a checkpoint: data forced, then its bits.
+     *   ✔ So a normal restart keeps every chunk received so far; without
+     *     this, chunks since the last checkpoint would be asked for again.
+     *
+     * @return how many uploads were checkpointed
+     */
+    public static int checkpointOpenUploads() {
+        int saved = 0;
+        for (Map.Entry<String, ChunkTarget> e : OPEN_TARGETS.entrySet()) {
+            ChunkTarget target = e.getValue();
+            if (!target.channel.isOpen()) continue; // finishing right now
+            try {
+                target.bitmap.checkpoint(target.channel);
+                target.sinceFlush.set(0);
+                saved++;
+            } catch (IOException | RuntimeException ex) {
+                LoggerUtil.warn("[UploadChunk] Could not checkpoint " + e.getKey() + ": " + ex.getMessage());
+            }
+        }
+        if (saved > 0) {
+            LoggerUtil.info("[UploadChunk] Checkpointed " + saved + " open upload(s) on stop.");
+        }
+        return saved;
+    }
+
+    /**
+     * getMissingReport
+     * ----------------
+     * Baby-English:
+     *   ✔ Which chunks of this upload are still missing, straight from
+     *     the bitmap (works right after a restart too).
+     *
+     * @return report, or null if no chunked upload is open for this id
+     */
+    public static MissingReport getMissingReport(String transferId) {
+        if (transferId == null) return null;
+        ChunkTarget target = OPEN_TARGETS.get(transferId);
+        if (target == null) return null;
+        return new MissingReport(target.chunkSize, target.totalBytes, target.totalChunks,
+                target.bitmap.cardinality(), target.bitmap.missingRanges());
+    }
+
+    /** "5" or "5-8" for logs. */
+    private static String describeSpan(int chunkIndex, int chunkCount) {
+        return (chunkCount == 1) ? String.valueOf(chunkIndex) : chunkIndex + "-" + (chunkIndex + chunkCount - 1);
+    }
+
+    /** "0-3, 7, 9-11" style text for logs. */
+    private static String describeRanges(List<int[]> ranges) {
+        if (ranges.isEmpty()) return "none";
+        StringBuilder sb = new StringBuilder();
+        for (int[] r : ranges) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(r[0]);
+            if (r[1] - r[0] > 1) sb.append('-').append(r[1] - 1);
+        }
+        return sb.toString();
+    }
+
+    /** Rename finished .part into received/ (atomic when the file system allows it). */
+    private static void moveIntoPlace(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** Transfer IDs come from the client – keep them safe for file names. */
+    private static String safeId(String transferId) {
+        return transferId.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
     // ============================================================
     // 3️⃣ Helper: Resolve received file
     // ============================================================
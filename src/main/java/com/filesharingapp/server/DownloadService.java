@@ -1,31 +1,82 @@
 package com.filesharingapp.server;
 
 import com.filesharingapp.core.TransferContext;
+import com.filesharingapp.utils.AppConfig;
 import com.filesharingapp.utils.HashUtil;
 import com.filesharingapp.utils.LoggerUtil;
+import org.eclipse.jetty.server.HttpOutput;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.io.File;
-import java.util.regex.Pattern; // FIX: Added missing import for Pattern
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * DownloadService
  * ---------------
  * Baby-English:
  * ✔ This helper sends a file from the server to the receiver.
- * ✔ Supports resume using HTTP Range header:
- * Range: bytes=start-
- * ✔ Sends correct headers for partial content.
+ * ✔ Supports HTTP Range (RFC 7233):
+ *   bytes=start-end, bytes=start-, bytes=-suffix, and several ranges
+ *   at once (multipart/byteranges).
+ * ✔ Strong ETag + If-Range so a resume never mixes two file versions.
+ * ✔ Jetty mode (default): whole file / one range goes through Jetty's
+ *   own channel content path (sendContent), several ranges through one
+ *   reused direct buffer per thread → no byte[] copy in our heap and no
+ *   memory mappings left for the GC to clean up.
  */
 public final class DownloadService {
 
-    private static final int BUFFER = 8192;
-    // FIX: Added Pattern declaration for range parsing
-    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-");
+    /** Bytes per transferTo call on the plain copy path. */
+    private static final long COPY_WINDOW = 16L * 1024 * 1024;
+
+    /** Direct buffer per thread for ranges written in the middle of a response. */
+    private static final int DIRECT_BUFFER_SIZE = 256 * 1024;
+
+    /** download.zeroCopy=false → plain FileChannel.transferTo copy. */
+    private static final boolean ZERO_COPY = AppConfig.getBoolean("download.zeroCopy", true);
+
+    private static final ThreadLocal<ByteBuffer> DIRECT_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE));
+
+    /** More ranges than this in one request → ignore Range, send whole file. */
+    private static final int MAX_RANGES = 32;
+
+    /**
+     * ByteRange
+     * Baby-English: one piece of the file, first and last byte both included
+     * (same as the numbers in "Content-Range: bytes 0-99/1000").
+     */
+    public static final class ByteRange {
+        public final long start;
+        public final long end;
+
+        public ByteRange(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long length() {
+            return end - start + 1;
+        }
+
+        /** "bytes 0-99/1000" */
+        public String contentRange(long totalSize) {
+            return "bytes " + start + "-" + end + "/" + totalSize;
+        }
+    }
 
     private DownloadService() {}
 
@@ -37,19 +88,21 @@ public final class DownloadService {
      * streamDownload
      * Baby-English:
      * ✔ Open file from "received/{name}".
-     * ✔ If Range header exists → resume from offset.
-     * ✔ Send bytes in small pieces.
+     * ✔ range == null → whole file, else just that piece.
+     * ✔ Jetty output → Jetty pulls the bytes itself (sendContent on a
+     *   channel that only sees this range); this also completes the response.
+     * ✔ Other output → sendRegion.
      * ✔ Update progress trackers.
      *
      * @param transferId unique transfer ID
      * @param filePath   path to file in "received"
-     * @param rangeHeader HTTP Range header (or null)
+     * @param range      piece to send (null = whole file)
      * @param clientOut  output stream to client
      */
     public static void streamDownload(
             String transferId,
             Path filePath,
-            String rangeHeader,
+            ByteRange range,
             OutputStream clientOut) throws IOException {
 
         if (filePath == null || !Files.exists(filePath)) {
@@ -58,38 +111,29 @@ public final class DownloadService {
         }
 
         long fileSize = Files.size(filePath);
-        long start = parseRange(rangeHeader, fileSize); // Calls helper within this class
-
-        // Mark transfer start if full download
-        if (start == 0) {
-            TransferContext.getOrCreateProgress(transferId, fileSize);
-        }
+        long start = (range != null) ? range.start : 0L;
+        long length = (range != null) ? range.length() : fileSize;
 
-        TransferContext.Progress prog = TransferContext.getOrCreateProgress(transferId, fileSize);
+        TransferContext.getOrCreateProgress(transferId, fileSize);
 
-        try (InputStream in = new BufferedInputStream(Files.newInputStream(filePath))) {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
             if (start > 0) {
-                long skipped = in.skip(start);
-                LoggerUtil.info("[Resume] Skipped " + skipped + " bytes.");
+                LoggerUtil.info("[Resume] Starting at byte " + start + ".");
             }
 
-            byte[] buf = new byte[BUFFER];
-            long sent = start;
-            int len;
-
-            while ((len = in.read(buf)) != -1) {
-                clientOut.write(buf, 0, len);
-                sent += len;
-
-                TransferContext.addReceivedBytes(transferId, len);
-
-                if (sent % (512 * 1024) < BUFFER) {
-                    LoggerUtil.info("[Download] Sent " + sent + " of " + fileSize);
+            long sent;
+            if (ZERO_COPY && clientOut instanceof HttpOutput) {
+                RegionChannel region = new RegionChannel(transferId, channel, start, length);
+                ((HttpOutput) clientOut).sendContent(region);
+                sent = start + region.sent;
+                if (region.sent < length) {
+                    throw new IOException("File ended early at byte " + sent);
                 }
+            } else {
+                sent = start + sendRegion(transferId, channel, start, length, clientOut);
+                clientOut.flush();
             }
 
-            clientOut.flush();
-
             if (sent == fileSize) {
                 LoggerUtil.success("[Download] File fully delivered (" + fileSize + " bytes)");
             }
@@ -100,39 +144,256 @@ public final class DownloadService {
         }
     }
 
+    /**
+     * sendRegion
+     * Baby-English:
+     * ✔ Send "length" bytes of the file starting at "start".
+     * ✔ Used where the response goes on after this piece (multipart).
+     * ✔ Jetty output → read into this thread's direct buffer, hand the
+     *   buffer to Jetty; the socket write takes it from there.
+     * ✔ Other output → FileChannel.transferTo.
+     * ✔ Progress is counted per buffer, not per 8 KB.
+     *
+     * @return bytes sent
+     */
+    public static long sendRegion(String transferId,
+                                  FileChannel channel,
+                                  long start,
+                                  long length,
+                                  OutputStream clientOut) throws IOException {
+        long sent = 0L;
+
+        if (ZERO_COPY && clientOut instanceof HttpOutput) {
+            HttpOutput httpOut = (HttpOutput) clientOut;
+            ByteBuffer buffer = DIRECT_BUFFER.get();
+            while (sent < length) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), length - sent));
+                int n = channel.read(buffer, start + sent);
+                if (n <= 0) throw new IOException("File ended early at byte " + (start + sent));
+                buffer.flip();
+                httpOut.write(buffer);
+                sent += n;
+                TransferContext.addReceivedBytes(transferId, n);
+            }
+            return sent;
+        }
+
+        WritableByteChannel target = Channels.newChannel(clientOut);
+        while (sent < length) {
+            long n = channel.transferTo(start + sent, Math.min(COPY_WINDOW, length - sent), target);
+            if (n <= 0) throw new IOException("File ended early at byte " + (start + sent));
+            sent += n;
+            TransferContext.addReceivedBytes(transferId, n);
+        }
+        return sent;
+    }
+
+    /**
+     * RegionChannel
+     * Baby-English:
+     * ✔ Shows Jetty only bytes [start, start+length) of the file, read at
+     *   their position (the file channel itself is never moved).
+     * ✔ Jetty reads it into its pooled buffers until -1, then closes it;
+     *   close() leaves the file channel open for its owner.
+     * ✔ Counts progress as Jetty pulls.
+     */
+    private static final class RegionChannel implements ReadableByteChannel {
+        private final String transferId;
+        private final FileChannel file;
+        private final long end;
+        private long position;
+        private long sent;
+        private boolean open = true;
+
+        RegionChannel(String transferId, FileChannel file, long start, long length) {
+            this.transferId = transferId;
+            this.file = file;
+            this.position = start;
+            this.end = start + length;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) throw new ClosedChannelException();
+            long left = end - position;
+            if (left <= 0) return -1;
+            int oldLimit = dst.limit();
+            if (dst.remaining() > left) dst.limit(dst.position() + (int) left);
+            int n;
+            try {
+                n = file.read(dst, position);
+            } finally {
+                dst.limit(oldLimit);
+            }
+            if (n > 0) {
+                position += n;
+                sent += n;
+                TransferContext.addReceivedBytes(transferId, n);
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+    /**
+     * streamMultipart
+     * Baby-English:
+     * ✔ Several ranges asked → one multipart/byteranges body.
+     * ✔ Every part = small header (type + Content-Range) + the bytes.
+     * ✔ Exact length is known up front: see multipartLength().
+     */
+    public static void streamMultipart(String transferId,
+                                       Path filePath,
+                                       List<ByteRange> ranges,
+                                       String contentType,
+                                       String boundary,
+                                       OutputStream clientOut) throws IOException {
+        long fileSize = Files.size(filePath);
+        TransferContext.getOrCreateProgress(transferId, fileSize);
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            for (int i = 0; i < ranges.size(); i++) {
+                ByteRange r = ranges.get(i);
+                clientOut.write(partHeader(i, r, contentType, boundary, fileSize));
+                sendRegion(transferId, channel, r.start, r.length(), clientOut);
+            }
+            clientOut.write(multipartEnd(boundary));
+            clientOut.flush();
+            LoggerUtil.success("[Download] Sent " + ranges.size() + " ranges of " + filePath.getFileName());
+        }
+    }
+
+    /** Content-Length of the body streamMultipart() will write. */
+    public static long multipartLength(List<ByteRange> ranges, String contentType,
+                                       String boundary, long fileSize) {
+        long total = multipartEnd(boundary).length;
+        for (int i = 0; i < ranges.size(); i++) {
+            total += partHeader(i, ranges.get(i), contentType, boundary, fileSize).length + ranges.get(i).length();
+        }
+        return total;
+    }
+
+    private static byte[] partHeader(int index, ByteRange r, String contentType, String boundary, long fileSize) {
+        String head = (index == 0 ? "" : "\r\n") + "--" + boundary + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Range: " + r.contentRange(fileSize) + "\r\n\r\n";
+        return head.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] multipartEnd(String boundary) {
+        return ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
     // ============================================================
-    // 2️⃣ Helper method to parse HTTP Range header (FIX: Missing method added)
+    // 2️⃣ Range header parsing (RFC 7233)
     // ============================================================
 
     /**
-     * parseRange
-     * Baby-English: Checks "Range: bytes=X-" header and returns start offset X.
-     * * @param rangeHeader The HTTP Range header string (e.g., "bytes=100-").
-     * @param totalSize The total size of the file.
-     * @return The starting byte offset (0 if full download is requested).
+     * parseRanges
+     * Baby-English:
+     * ✔ "bytes=0-99"   → first 100 bytes
+     * ✔ "bytes=500-"   → byte 500 to the end
+     * ✔ "bytes=-200"   → last 200 bytes
+     * ✔ "bytes=0-9,20-29" → two pieces
+     * ✔ End past the file → cut at the last byte.
+     *
+     * @return null  → no usable Range header, send the whole file (200)
+     *         empty → no piece fits inside the file (416)
+     *         else  → pieces to send (206)
      */
-    public static long parseRange(String rangeHeader, long totalSize) {
-        if (rangeHeader == null || !rangeHeader.startsWith("bytes=")) {
-            return 0; // Full download
+    public static List<ByteRange> parseRanges(String rangeHeader, long totalSize) {
+        if (rangeHeader == null) return null;
+        String header = rangeHeader.trim();
+        if (!header.regionMatches(true, 0, "bytes=", 0, "bytes=".length())) return null;
+
+        String[] specs = header.substring("bytes=".length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            LoggerUtil.warn("[Range] " + specs.length + " ranges requested – sending whole file.");
+            return null;
         }
 
-        String range = rangeHeader.substring("bytes=".length()).trim();
+        List<ByteRange> ranges = new ArrayList<>();
+        int seen = 0;
+        for (String raw : specs) {
+            String spec = raw.trim();
+            if (spec.isEmpty()) continue;
+            int dash = spec.indexOf('-');
+            if (dash < 0) return null;
+
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (!isDigits(first) && !first.isEmpty()) return null;
+            if (!isDigits(last) && !last.isEmpty()) return null;
+            seen++;
 
-        // Simple case: bytes=X- (start from X to the end)
-        if (range.endsWith("-")) {
             try {
-                long start = Long.parseLong(range.substring(0, range.length() - 1));
-                return Math.max(0, Math.min(start, totalSize));
-            } catch (NumberFormatException ignore) {
-                // Malformed range, fallback to full download
-                return 0;
+                if (first.isEmpty()) {
+                    // Suffix range: last N bytes
+                    if (last.isEmpty()) return null;
+                    long suffix = Long.parseLong(last);
+                    if (suffix == 0 || totalSize == 0) continue; // cannot be satisfied
+                    ranges.add(new ByteRange(Math.max(0L, totalSize - suffix), totalSize - 1));
+                } else {
+                    long start = Long.parseLong(first);
+                    if (!last.isEmpty() && Long.parseLong(last) < start) return null; // invalid → ignore header
+                    if (start >= totalSize) continue;             // cannot be satisfied
+                    long end = last.isEmpty() ? totalSize - 1 : Long.parseLong(last);
+                    ranges.add(new ByteRange(start, Math.min(end, totalSize - 1)));
+                }
+            } catch (NumberFormatException e) {
+                return null;
             }
         }
+        return (seen == 0) ? null : ranges;
+    }
 
-        // Complex ranges (e.g., bytes=X-Y or bytes=-Y) are ignored.
-        return 0;
+    /**
+     * etagFor
+     * Baby-English: size + last-modified time → changes whenever the file does.
+     */
+    public static String etagFor(Path file) throws IOException {
+        long size = Files.size(file);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        return "\"" + Long.toHexString(size) + "-" + Long.toHexString(modified) + "\"";
     }
 
+    /**
+     * ifRangeMatches
+     * Baby-English:
+     * ✔ No If-Range → ranges are fine.
+     * ✔ If-Range "etag" → only if it is exactly our (strong) ETag.
+     * ✔ If-Range date → only if the file was not changed since then.
+     * ✔ No match → caller ignores Range and sends the fresh whole file.
+     */
+    public static boolean ifRangeMatches(String ifRange, String etag, long lastModifiedMs) {
+        if (ifRange == null || ifRange.isBlank()) return true;
+        String value = ifRange.trim();
+        if (value.startsWith("W/")) return false;          // weak tags never match
+        if (value.startsWith("\"")) return value.equals(etag);
+        try {
+            long since = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().getEpochSecond();
+            return Instant.ofEpochMilli(lastModifiedMs).getEpochSecond() == since;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static boolean isDigits(String s) {
+        if (s.isEmpty()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isDigit(s.charAt(i))) return false;
+        }
+        return true;
+    }
 
     // ============================================================
     // 3️⃣ Verify checksum after full download
@@ -150,7 +411,7 @@ public final class DownloadService {
         }
 
         try {
-            String actual = HashUtil.sha256Hex(file.toFile());
+            String actual = HashUtil.fileChecksum(file.toFile());
             boolean ok = actual.equalsIgnoreCase(expected);
 
             if (ok) {
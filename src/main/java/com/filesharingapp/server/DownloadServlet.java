@@ -1,6 +1,7 @@
 package com.filesharingapp.server;
 
 import com.filesharingapp.core.TransferContext;
+import com.filesharingapp.security.AesGcmRecords;
 import com.filesharingapp.security.AesUtil;
 import com.filesharingapp.utils.LoggerUtil;
 import com.filesharingapp.utils.ValidationUtil;
@@ -13,14 +14,22 @@ import javax.crypto.SecretKey;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
 
 /**
  * DownloadServlet
  * ---------------
  * Baby-English:
  * ✔ This servlet is the "door" for downloading a file.
+ * ✔ Plain files: Range / If-Range → 206 (one piece or multipart),
+ *   416 when no piece fits, 200 otherwise. HEAD gives headers only.
+ * ✔ Server-side decrypt of an AES-GCM record file: exact size is known
+ *   and one Range is served by opening only the records it touches.
+ *   Old CBC files: whole file only (Accept-Ranges: none).
  */
 public class DownloadServlet extends HttpServlet {
 
@@ -74,19 +83,57 @@ public class DownloadServlet extends HttpServlet {
         }
 
         // ------------------------------------------------------
-        // 4) Handle Range header for resume (Only for unencrypted files)
+        // 4) Validators + Range header (RFC 7233)
         // ------------------------------------------------------
-        String rangeHeader = req.getHeader("Range");
-        long startByte = 0;
         long fileSize = Files.size(file);
+        String etag = DownloadService.etagFor(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        boolean headOnly = "HEAD".equalsIgnoreCase(req.getMethod());
 
-        if (!decryptOnServer && rangeHeader != null) {
-            // FIX: The method is now available in DownloadService
-            startByte = DownloadService.parseRange(rangeHeader, fileSize);
+        // Size of what we send: file size, or plain size of a GCM record file
+        boolean recordFile = decryptOnServer && AesGcmRecords.isRecordFile(file);
+        long contentSize = fileSize;
+        if (recordFile) {
+            try (FileChannel channel = FileChannel.open(file)) {
+                contentSize = AesGcmRecords.plainLength(channel);
+                // Open the first record now → wrong password is a 400, not an empty 200
+                AesGcmRecords.decryptRange(channel, 0, 1, aesKey, OutputStream.nullOutputStream());
+            } catch (IOException e) {
+                LoggerUtil.error("[AES] Cannot decrypt " + name + " (wrong password or damaged file).", e, transferId);
+                resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                resp.getWriter().write("Wrong AES password or damaged file");
+                return;
+            }
+            etag = etag.substring(0, etag.length() - 1) + "-dec\"";
+        }
+
+        List<DownloadService.ByteRange> ranges = null;
+        if (!decryptOnServer || recordFile) {
+            resp.setHeader("Accept-Ranges", "bytes");
+            resp.setHeader("ETag", etag);
+            resp.setDateHeader("Last-Modified", lastModified);
+
+            String rangeHeader = req.getHeader("Range");
+            if (rangeHeader != null
+                    && DownloadService.ifRangeMatches(req.getHeader("If-Range"), etag, lastModified)) {
+                ranges = DownloadService.parseRanges(rangeHeader, contentSize);
+            }
+            // Decrypted multipart is allowed to fall back to the whole body (RFC 7233 §4.1)
+            if (recordFile && ranges != null && ranges.size() > 1) ranges = null;
+        } else {
+            // CBC bytes are made on the fly from the start → no offsets to jump to
+            resp.setHeader("Accept-Ranges", "none");
+        }
+
+        if (ranges != null && ranges.isEmpty()) {
+            resp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            resp.setHeader("Content-Range", "bytes */" + contentSize);
+            LoggerUtil.warn("[Range] Unsatisfiable range for " + name + " (" + contentSize + " bytes)", transferId);
+            return;
         }
 
         // ------------------------------------------------------
-        // 5) Set HTTP headers (simplified, letting DownloadService handle range)
+        // 5) Set HTTP headers
         // ------------------------------------------------------
         String contentType = Files.probeContentType(file);
         if (contentType == null || contentType.isBlank()) {
@@ -102,28 +149,52 @@ public class DownloadServlet extends HttpServlet {
             resp.setHeader("X-File-Checksum-SHA256", expectedChecksum);
         }
 
+        String boundary = null;
+        if (decryptOnServer && !recordFile) {
+            // CBC padding is only known at the very end → no Content-Length
+            resp.setStatus(HttpServletResponse.SC_OK);
+        } else if (ranges == null) {
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.setContentLengthLong(contentSize);
+        } else if (ranges.size() == 1) {
+            DownloadService.ByteRange only = ranges.get(0);
+            resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            resp.setHeader("Content-Range", only.contentRange(contentSize));
+            resp.setContentLengthLong(only.length());
+        } else {
+            boundary = UUID.randomUUID().toString().replace("-", "");
+            resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            resp.setContentType("multipart/byteranges; boundary=" + boundary);
+            resp.setContentLengthLong(DownloadService.multipartLength(ranges, contentType, boundary, fileSize));
+        }
+
+        if (headOnly) return;
+
         // ------------------------------------------------------
-        // 6) Stream file with resume or streaming AES decrypt
+        // 6) Stream file, range(s) or streaming AES decrypt
         // ------------------------------------------------------
         try (OutputStream out = resp.getOutputStream()) {
-            if (decryptOnServer) {
-                // **FIXED LOGIC: Use streaming decryption**
-                resp.setStatus(HttpServletResponse.SC_OK);
-                // NOTE: AesUtil.IV_LENGTH must be publicly accessible (public static final)
-                resp.setContentLengthLong(fileSize - AesUtil.IV_LENGTH);
+            if (recordFile) {
+                long start = (ranges == null) ? 0L : ranges.get(0).start;
+                long length = (ranges == null) ? contentSize : ranges.get(0).length();
+                try (FileChannel channel = FileChannel.open(file)) {
+                    AesGcmRecords.decryptRange(channel, start, length, aesKey, out);
+                }
+            } else if (decryptOnServer) {
                 try (InputStream fileIn = Files.newInputStream(file)) {
                     // This method reads the IV and decrypts the rest directly to 'out'
                     AesUtil.decryptStream(fileIn, out, aesKey);
                 } catch (Exception e) {
                     throw new RuntimeException(e);
                 }
+            } else if (boundary != null) {
+                DownloadService.streamMultipart(transferId, file, ranges, contentType, boundary, out);
             } else {
-                // Unencrypted download with full resume support handled by DownloadService
-                DownloadService.streamDownload(transferId, file, rangeHeader, out);
+                DownloadService.streamDownload(transferId, file, (ranges == null) ? null : ranges.get(0), out);
             }
         } catch (IOException e) {
             // If the connection is cut during streaming, this catches it.
             LoggerUtil.error("Download stream failed for file: " + name, e, transferId);
         }
     }
-}
\ No newline at end of file
+}
@@ -2,11 +2,22 @@ package com.filesharingapp.server;
 
 import com.filesharingapp.utils.AppConfig;
 import com.filesharingapp.utils.LoggerUtil;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.HandlerList;
 import org.eclipse.jetty.server.handler.ResourceHandler;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.component.LifeCycle;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 /**
@@ -18,9 +29,14 @@ import org.eclipse.jetty.util.thread.QueuedThreadPool;
  *       - Serves upload API → /upload
  *       - Serves download API → /download
  *       - Serves progress API → /status
+ *       - Serves resume API → /missing (which chunks to send again)
  *       - Serves prompt API → /prompt
  *       - Serves static files (index.html, JS, CSS) from /web folder
  *
+ *   ✔ Speaks HTTP/1.1 and HTTP/2 on the same port (h2c: upgrade or
+ *     prior knowledge), so the shared transfer client can multiplex
+ *     chunk uploads and status polls over one connection.
+ *
  *   ✔ What it does NOT do:
  *       - No business logic here
  *       - No encryption or chunk merging here
@@ -62,13 +78,20 @@ public final class FileSharingServer {
             QueuedThreadPool threadPool = new QueuedThreadPool(50, 10);
             server = new Server(threadPool);
             server.setStopAtShutdown(true);
-            server.setConnectors(null); // Jetty will create default connector
             server.setHandler(null);
             server.setStopTimeout(5000);
+            // Runs after every stop (stopServer() or the JVM shutdown hook):
+            // requests are done, so the chunk bitmaps can be saved in full
+            server.addEventListener(new LifeCycle.Listener() {
+                @Override
+                public void lifeCycleStopped(LifeCycle event) {
+                    ChunkUploadService.checkpointOpenUploads();
+                }
+            });
             server.setAttribute("org.eclipse.jetty.server.Request.maxFormContentSize", 50 * 1024 * 1024); // 50MB
 
-            // Create Jetty server on this port
-            server = new Server(port);
+            // One port: HTTP/1.1 + HTTP/2 cleartext
+            server.setConnectors(new ServerConnector[]{createConnector(server, port)});
 
             // ------------------------------------------------------
             // 2) Servlet context for APIs
@@ -80,6 +103,7 @@ public final class FileSharingServer {
             context.addServlet(new ServletHolder(new UploadServlet()), "/upload");
             context.addServlet(new ServletHolder(new DownloadServlet()), "/download");
             context.addServlet(new ServletHolder(new StatusServlet()), "/status");
+            context.addServlet(new ServletHolder(new MissingChunksServlet()), "/missing");
             context.addServlet(new ServletHolder(new PromptServlet()), "/prompt");
 
             // ------------------------------------------------------
@@ -100,7 +124,12 @@ public final class FileSharingServer {
             server.setHandler(handlers);
 
             // ------------------------------------------------------
-            // 5) Start Jetty
+            // 5) Pick up chunked uploads left by an earlier run
+            // ------------------------------------------------------
+            ChunkUploadService.recoverPartialUploads();
+
+            // ------------------------------------------------------
+            // 6) Start Jetty
             // ------------------------------------------------------
             server.start();
             LoggerUtil.success("[FileSharingServer] Running at http://localhost:" + port);
@@ -112,11 +141,64 @@ public final class FileSharingServer {
         }
     }
 
+    /**
+     * createConnector
+     * Baby-English:
+     *   ✔ HTTP/1.1 always; server.h2c.enabled=true adds HTTP/2 cleartext.
+     *   ✔ Bigger HTTP/2 receive windows than Jetty's defaults, so a few
+     *     256 KB chunks in flight on one connection do not wait on
+     *     WINDOW_UPDATE frames.
+     */
+    private static ServerConnector createConnector(Server server, int port) {
+        HttpConfiguration config = new HttpConfiguration();
+        config.setSendServerVersion(false);
+        HttpConnectionFactory http1 = new HttpConnectionFactory(config);
+
+        ServerConnector connector;
+        if (AppConfig.getBoolean("server.h2c.enabled", true)) {
+            HTTP2CServerConnectionFactory h2c = new BodySafeH2c(config);
+            h2c.setInitialSessionRecvWindow(AppConfig.getInt("server.h2c.sessionWindow", 16 * 1024 * 1024));
+            h2c.setInitialStreamRecvWindow(AppConfig.getInt("server.h2c.streamWindow", 4 * 1024 * 1024));
+            h2c.setMaxConcurrentStreams(AppConfig.getInt("server.h2c.maxStreams", 128));
+            connector = new ServerConnector(server, http1, h2c);
+        } else {
+            connector = new ServerConnector(server, http1);
+        }
+        connector.setPort(port);
+        return connector;
+    }
+
+    /**
+     * BodySafeH2c
+     * Baby-English:
+     *   ✔ "Upgrade: h2c" on a request that still has a body on the wire
+     *     (first chunk upload, a stream upload) → switching protocols in the
+     *     middle loses that body. So: answer it on HTTP/1.1, no upgrade.
+     *   ✔ The next request without a body (/missing, /status) upgrades
+     *     the connection; prior-knowledge HTTP/2 is not affected.
+     */
+    private static final class BodySafeH2c extends HTTP2CServerConnectionFactory {
+
+        BodySafeH2c(HttpConfiguration config) {
+            super(config);
+        }
+
+        @Override
+        public Connection upgradeConnection(Connector connector, EndPoint endPoint,
+                                            MetaData.Request request, HttpFields.Mutable responseFields) {
+            if (request.getContentLength() > 0 || request.getFields().contains(HttpHeader.TRANSFER_ENCODING)) {
+                return null;
+            }
+            return super.upgradeConnection(connector, endPoint, request, responseFields);
+        }
+    }
+
     /**
      * Stop the Jetty server gracefully.
      *
      * Baby-English:
-     *   ✔ If running → stop it.
+     *   ✔ If running → stop it (open chunk uploads are checkpointed
+     *     once Jetty has stopped, so no received chunk is lost).
      *   ✔ If not → do nothing.
      */
     public static synchronized void stopServer() {
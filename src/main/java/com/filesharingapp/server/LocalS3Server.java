@@ -0,0 +1,812 @@
+package com.filesharingapp.server;
+
+import com.filesharingapp.utils.AppConfig;
+import com.filesharingapp.utils.HashUtil;
+import com.filesharingapp.utils.LoggerUtil;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http.UriCompliance;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * LocalS3Server
+ * -------------
+ * Baby-English:
+ *   ✔ A tiny S3 look-alike on our own Jetty, files kept on the local disk.
+ *   ✔ Lets the S3 code (AwsS3TransferService, S3TransferHandler, the
+ *     multipart uploader, the ranged downloader) run with NO AWS account:
+ *     point aws.s3.endpoint at it and every shared S3 client talks to it.
+ *   ✔ Good for tests and for measuring S3 upload / download speed offline.
+ *
+ *   ✔ What it speaks (path style: /bucket/key):
+ *       - PUT /bucket                 → create bucket
+ *       - HEAD /bucket                → bucket there? (200 / 404)
+ *       - PUT /bucket/key             → store object (+ x-amz-meta-*)
+ *       - HEAD /bucket/key            → size, ETag, metadata
+ *       - GET /bucket/key             → object, Range + If-Match honoured
+ *       - DELETE /bucket/key          → remove object
+ *       - POST ?uploads, PUT ?partNumber&uploadId, GET ?uploadId,
+ *         POST ?uploadId, DELETE ?uploadId → multipart upload
+ *       - Presigned GET               → X-Amz-Date + X-Amz-Expires checked
+ *
+ *   ✔ What it does NOT do:
+ *       - No signature checks (any access key works) → it listens on
+ *         loopback only unless aws.s3.local.host says otherwise
+ *       - No listing, versioning, ACLs or bucket policies
+ *
+ *   ✔ ETags are real MD5s (multipart: "md5-of-part-md5s-N"), because the
+ *     AWS SDK checks them against what it sent.
+ *
+ *   ✔ Files on disk (aws.s3.local.root):
+ *       {bucket}/objects/{sha256(key)}.data + .meta
+ *       {bucket}/uploads/{uploadId}/part-N + part-N.md5 + upload.meta
+ */
+public final class LocalS3Server {
+
+    private static final String XMLNS = "http://s3.amazonaws.com/doc/2006-03-01/";
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+    private static final Pattern PART = Pattern.compile("<Part>(.*?)</Part>", Pattern.DOTALL);
+    private static final Pattern PART_NUMBER = Pattern.compile("<PartNumber>\\s*(\\d+)\\s*</PartNumber>");
+    private static final Pattern PART_ETAG = Pattern.compile("<ETag>(.*?)</ETag>", Pattern.DOTALL);
+
+    /** Stand-in server for this JVM (null = not running). */
+    private static Server server;
+
+    private LocalS3Server() {
+        // Utility class – no objects.
+    }
+
+    // ============================================================
+    // 1️⃣ Start / stop
+    // ============================================================
+
+    /**
+     * Interface to listen on. Anyone who can reach it may read, write and
+     * delete the stored files (no signature checks) → loopback by default.
+     */
+    private static final String HOST = AppConfig.get("aws.s3.local.host", "127.0.0.1");
+
+    /** Start on aws.s3.local.port, files under aws.s3.local.root. */
+    public static int start() {
+        return start(AppConfig.getInt("aws.s3.local.port", 9090),
+                Path.of(AppConfig.get("aws.s3.local.root", "tmp/s3-local")));
+    }
+
+    /**
+     * start
+     * Baby-English:
+     *   ✔ Already running → just return its port.
+     *   ✔ port 0 → any free port (handy for tests).
+     *
+     * @return port where the stand-in listens
+     */
+    public static synchronized int start(int port, Path root) {
+        if (server != null && server.isStarted()) {
+            return ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        }
+
+        try {
+            Files.createDirectories(root);
+
+            QueuedThreadPool threadPool = new QueuedThreadPool(64, 8);
+            threadPool.setName("local-s3");
+            server = new Server(threadPool);
+            server.setStopAtShutdown(true);
+            server.setStopTimeout(2000);
+
+            HttpConfiguration config = new HttpConfiguration();
+            config.setSendServerVersion(false);
+            config.setUriCompliance(UriCompliance.LEGACY); // keys may carry %2F and friends
+            ServerConnector connector = new ServerConnector(server, new HttpConnectionFactory(config));
+            connector.setHost(HOST);
+            connector.setPort(port);
+            server.setConnectors(new ServerConnector[]{connector});
+
+            ServletContextHandler context = new ServletContextHandler();
+            context.setContextPath("/");
+            context.addServlet(new ServletHolder(new S3Servlet(root.toAbsolutePath())), "/*");
+            server.setHandler(context);
+
+            server.start();
+            int bound = connector.getLocalPort();
+            LoggerUtil.success("[LocalS3] Running at http://" + HOST + ":" + bound + " (files in " + root.toAbsolutePath() + ")");
+            return bound;
+        } catch (Exception e) {
+            LoggerUtil.error("Failed to start local S3 server", e);
+            throw new RuntimeException("Failed to start local S3 server", e);
+        }
+    }
+
+    public static synchronized void stop() {
+        if (server != null) {
+            try {
+                server.stop();
+                LoggerUtil.info("[LocalS3] Stopped.");
+            } catch (Exception e) {
+                LoggerUtil.error("Error while stopping local S3 server", e);
+            }
+            server = null;
+        }
+    }
+
+    /**
+     * Run on its own: java ... LocalS3Server [port] [root]
+     * Then set aws.s3.endpoint=http://127.0.0.1:{port} for the app.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : AppConfig.getInt("aws.s3.local.port", 9090);
+        Path root = Path.of((args.length > 1) ? args[1] : AppConfig.get("aws.s3.local.root", "tmp/s3-local"));
+        start(port, root);
+        server.join();
+    }
+
+    // ============================================================
+    // 2️⃣ Requests
+    // ============================================================
+
+    /** One servlet for everything: S3 picks the operation from method + query, not the path. */
+    private static final class S3Servlet extends HttpServlet {
+
+        private final Path root;
+
+        S3Servlet(Path root) {
+            this.root = root;
+        }
+
+        @Override
+        protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            String path = req.getRequestURI().substring(req.getContextPath().length());
+            while (path.startsWith("/")) path = path.substring(1);
+            int slash = path.indexOf('/');
+            String bucket = decode(slash < 0 ? path : path.substring(0, slash));
+            String key = (slash < 0) ? "" : decode(path.substring(slash + 1));
+            Map<String, String> query = parseQuery(req.getQueryString());
+            String method = req.getMethod();
+
+            try {
+                if (bucket.isEmpty()) {
+                    error(resp, 400, "InvalidRequest", "Path-style request without bucket", "/");
+                } else if (key.isEmpty()) {
+                    bucketRequest(method, bucket, req, resp);
+                } else if (query.containsKey("uploads")) {
+                    if (!"POST".equals(method)) notImplemented(resp, method, bucket, key);
+                    else createUpload(bucket, key, req, resp);
+                } else if (query.containsKey("uploadId")) {
+                    uploadRequest(method, bucket, key, query, req, resp);
+                } else {
+                    objectRequest(method, bucket, key, query, req, resp);
+                }
+            } catch (S3Error e) {
+                error(resp, e.status, e.code, e.getMessage(), "/" + bucket + (key.isEmpty() ? "" : "/" + key));
+            }
+        }
+
+        private void bucketRequest(String method, String bucket,
+                                   HttpServletRequest req, HttpServletResponse resp) throws IOException, S3Error {
+            Path dir = bucketDir(bucket);
+            switch (method) {
+                case "PUT":
+                    req.getInputStream().transferTo(OutputStream.nullOutputStream()); // LocationConstraint, ignored
+                    Files.createDirectories(dir.resolve("objects"));
+                    Files.createDirectories(dir.resolve("uploads"));
+                    resp.setHeader("Location", "/" + bucket);
+                    resp.setStatus(200);
+                    LoggerUtil.info("[LocalS3] Bucket created: " + bucket);
+                    break;
+                case "HEAD":
+                    resp.setStatus(Files.isDirectory(dir) ? 200 : 404);
+                    break;
+                default:
+                    notImplemented(resp, method, bucket, "");
+            }
+        }
+
+        private void objectRequest(String method, String bucket, String key, Map<String, String> query,
+                                   HttpServletRequest req, HttpServletResponse resp) throws IOException, S3Error {
+            switch (method) {
+                case "PUT":
+                    putObject(bucket, key, req, resp);
+                    break;
+                case "GET":
+                case "HEAD":
+                    getObject(bucket, key, query, req, resp, "HEAD".equals(method));
+                    break;
+                case "DELETE":
+                    requireBucket(bucket);
+                    Path data = objectData(bucket, key);
+                    Files.deleteIfExists(data);
+                    Files.deleteIfExists(metaFile(data));
+                    resp.setStatus(204);
+                    break;
+                default:
+                    notImplemented(resp, method, bucket, key);
+            }
+        }
+
+        private void uploadRequest(String method, String bucket, String key, Map<String, String> query,
+                                   HttpServletRequest req, HttpServletResponse resp) throws IOException, S3Error {
+            String uploadId = query.get("uploadId");
+            switch (method) {
+                case "PUT":
+                    if (!query.containsKey("partNumber")) throw new S3Error(400, "InvalidRequest", "partNumber missing");
+                    uploadPart(bucket, key, uploadId, query.get("partNumber"), req, resp);
+                    break;
+                case "GET":
+                    listParts(bucket, key, uploadId, resp);
+                    break;
+                case "POST":
+                    completeUpload(bucket, key, uploadId, req, resp);
+                    break;
+                case "DELETE":
+                    deleteTree(uploadDir(bucket, key, uploadId));
+                    resp.setStatus(204);
+                    LoggerUtil.info("[LocalS3] Aborted upload " + uploadId);
+                    break;
+                default:
+                    notImplemented(resp, method, bucket, key);
+            }
+        }
+
+        // ------------------------------------------------------------
+        // Objects
+        // ------------------------------------------------------------
+
+        private void putObject(String bucket, String key,
+                               HttpServletRequest req, HttpServletResponse resp) throws IOException, S3Error {
+            requireBucket(bucket);
+            Path data = objectData(bucket, key);
+            String md5 = receiveBody(req, data);
+
+            Properties meta = requestMeta(req);
+            meta.setProperty("key", key);
+            meta.setProperty("etag", "\"" + md5 + "\"");
+            writeMeta(metaFile(data), meta);
+
+            resp.setHeader("ETag", meta.getProperty("etag"));
+            resp.setStatus(200);
+        }
+
+        /**
+         * getObject
+         * Baby-English:
+         *   ✔ If-Match with another ETag → 412 (object changed under a resumed download).
+         *   ✔ One Range → 206 + Content-Range; range past the end → 416.
+         *   ✔ Presigned URL past X-Amz-Expires → 403.
+         */
+        private void getObject(String bucket, String key, Map<String, String> query,
+                               HttpServletRequest req, HttpServletResponse resp, boolean headOnly)
+                throws IOException, S3Error {
+            checkPresignExpiry(query);
+            requireBucket(bucket);
+            Path data = objectData(bucket, key);
+            Path metaPath = metaFile(data);
+            if (!Files.exists(data) || !Files.exists(metaPath)) {
+                if (headOnly) {
+                    resp.setStatus(404);
+                    return;
+                }
+                throw new S3Error(404, "NoSuchKey", "The specified key does not exist.");
+            }
+
+            Properties meta = readMeta(metaPath);
+            String etag = meta.getProperty("etag");
+            long size = Files.size(data);
+
+            String ifMatch = req.getHeader("If-Match");
+            if (ifMatch != null && !ifMatch.trim().equals("*") && !stripQuotes(ifMatch).equals(stripQuotes(etag))) {
+                if (headOnly) {
+                    resp.setStatus(412);
+                    return;
+                }
+                throw new S3Error(412, "PreconditionFailed", "At least one of the pre-conditions you specified did not hold");
+            }
+
+            long start = 0;
+            long length = size;
+            List<DownloadService.ByteRange> ranges = DownloadService.parseRanges(req.getHeader("Range"), size);
+            if (ranges != null) {
+                if (ranges.isEmpty()) {
+                    resp.setHeader("Content-Range", "bytes */" + size);
+                    throw new S3Error(416, "InvalidRange", "The requested range is not satisfiable");
+                }
+                DownloadService.ByteRange r = ranges.get(0); // S3 serves one range only
+                start = r.start;
+                length = r.length();
+                resp.setStatus(206);
+                resp.setHeader("Content-Range", r.contentRange(size));
+            } else {
+                resp.setStatus(200);
+            }
+
+            resp.setHeader("ETag", etag);
+            resp.setHeader("Accept-Ranges", "bytes");
+            resp.setHeader("Last-Modified", httpDate(Files.getLastModifiedTime(data).toInstant()));
+            resp.setContentType(meta.getProperty("content-type", "application/octet-stream"));
+            for (String name : meta.stringPropertyNames()) {
+                if (name.startsWith("meta.")) resp.setHeader("x-amz-meta-" + name.substring(5), meta.getProperty(name));
+            }
+            resp.setContentLengthLong(length);
+            if (headOnly) return;
+
+            try (FileChannel channel = FileChannel.open(data, StandardOpenOption.READ)) {
+                WritableByteChannel out = Channels.newChannel(resp.getOutputStream());
+                long sent = 0;
+                while (sent < length) {
+                    long n = channel.transferTo(start + sent, Math.min(BUFFER_SIZE * 16L, length - sent), out);
+                    if (n <= 0) throw new IOException("Object ended early at byte " + (start + sent));
+                    sent += n;
+                }
+            }
+        }
+
+        // ------------------------------------------------------------
+        // Multipart
+        // ------------------------------------------------------------
+
+        private void createUpload(String bucket, String key,
+                                  HttpServletRequest req, HttpServletResponse resp) throws IOException, S3Error {
+            requireBucket(bucket);
+            String uploadId = UUID.randomUUID().toString().replace("-", "");
+            Path dir = bucketDir(bucket).resolve("uploads").resolve(uploadId);
+            Files.createDirectories(dir);
+
+            Properties meta = requestMeta(req);
+            meta.setProperty("key", key);
+            writeMeta(dir.resolve("upload.meta"), meta);
+
+            LoggerUtil.info("[LocalS3] Multipart upload started: " + bucket + "/" + key + " (" + uploadId + ")");
+            xml(resp, 200, "<InitiateMultipartUploadResult xmlns=\"" + XMLNS + "\">"
+                    + "<Bucket>" + esc(bucket) + "</Bucket>"
+                    + "<Key>" + esc(key) + "</Key>"
+                    + "<UploadId>" + uploadId + "</UploadId>"
+                    + "</InitiateMultipartUploadResult>");
+        }
+
+        private void uploadPart(String bucket, String key, String uploadId, String partNumber,
+                                HttpServletRequest req, HttpServletResponse resp) throws IOException, S3Error {
+            int number;
+            try {
+                number = Integer.parseInt(partNumber);
+            } catch (NumberFormatException e) {
+                throw new S3Error(400, "InvalidArgument", "Part number must be an integer");
+            }
+            if (number < 1 || number > 10_000) {
+                throw new S3Error(400, "InvalidArgument", "Part number must be between 1 and 10000");
+            }
+
+            Path dir = uploadDir(bucket, key, uploadId);
+            Path part = dir.resolve("part-" + number);
+            String md5 = receiveBody(req, part);
+            Files.writeString(dir.resolve("part-" + number + ".md5"), md5, StandardCharsets.UTF_8);
+
+            resp.setHeader("ETag", "\"" + md5 + "\"");
+            resp.setStatus(200);
+        }
+
+        private void listParts(String bucket, String key, String uploadId,
+                               HttpServletResponse resp) throws IOException, S3Error {
+            Path dir = uploadDir(bucket, key, uploadId);
+            StringBuilder xml = new StringBuilder("<ListPartsResult xmlns=\"" + XMLNS + "\">")
+                    .append("<Bucket>").append(esc(bucket)).append("</Bucket>")
+                    .append("<Key>").append(esc(key)).append("</Key>")
+                    .append("<UploadId>").append(uploadId).append("</UploadId>")
+                    .append("<IsTruncated>false</IsTruncated>");
+            for (Map.Entry<Integer, String> p : storedParts(dir).entrySet()) {
+                Path part = dir.resolve("part-" + p.getKey());
+                xml.append("<Part>")
+                        .append("<PartNumber>").append(p.getKey()).append("</PartNumber>")
+                        .append("<LastModified>").append(Files.getLastModifiedTime(part).toInstant()).append("</LastModified>")
+                        .append("<ETag>&quot;").append(p.getValue()).append("&quot;</ETag>")
+                        .append("<Size>").append(Files.size(part)).append("</Size>")
+                        .append("</Part>");
+            }
+            xml.append("</ListPartsResult>");
+            xml(resp, 200, xml.toString());
+        }
+
+        /**
+         * completeUpload
+         * Baby-English:
+         *   ✔ Body lists (partNumber, ETag) in order → every part must be
+         *     here with that ETag, else InvalidPart (like S3).
+         *   ✔ Parts are glued into the object file; ETag = md5(part md5s)-N.
+         */
+        private void completeUpload(String bucket, String key, String uploadId,
+                                    HttpServletRequest req, HttpServletResponse resp) throws IOException, S3Error {
+            Path dir = uploadDir(bucket, key, uploadId);
+            Map<Integer, String> stored = storedParts(dir);
+            String body = new String(req.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+
+            List<Integer> order = new ArrayList<>();
+            Matcher m = PART.matcher(body);
+            while (m.find()) {
+                Matcher num = PART_NUMBER.matcher(m.group(1));
+                Matcher tag = PART_ETAG.matcher(m.group(1));
+                if (!num.find() || !tag.find()) throw new S3Error(400, "MalformedXML", "Part without PartNumber or ETag");
+                int n = Integer.parseInt(num.group(1));
+                String want = stripQuotes(tag.group(1).replace("&quot;", "\"").replace("&#34;", "\""));
+                if (!want.equalsIgnoreCase(stored.get(n))) {
+                    throw new S3Error(400, "InvalidPart", "Part " + n + " is missing or its ETag does not match");
+                }
+                if (!order.isEmpty() && n <= order.get(order.size() - 1)) {
+                    throw new S3Error(400, "InvalidPartOrder", "Parts must be listed in ascending order");
+                }
+                order.add(n);
+            }
+            if (order.isEmpty()) throw new S3Error(400, "MalformedXML", "No parts listed");
+
+            MessageDigest all = md5();
+            Path data = objectData(bucket, key);
+            Path tmp = data.resolveSibling(data.getFileName() + "." + uploadId + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (int n : order) {
+                    all.update(HexFormat.of().parseHex(stored.get(n)));
+                    try (FileChannel in = FileChannel.open(dir.resolve("part-" + n), StandardOpenOption.READ)) {
+                        long size = in.size();
+                        long copied = 0;
+                        while (copied < size) copied += in.transferTo(copied, size - copied, out);
+                    }
+                }
+            }
+            Files.move(tmp, data, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            Properties meta = readMeta(dir.resolve("upload.meta"));
+            String etag = "\"" + HashUtil.toHex(all.digest()) + "-" + order.size() + "\"";
+            meta.setProperty("etag", etag);
+            writeMeta(metaFile(data), meta);
+            deleteTree(dir);
+
+            LoggerUtil.info("[LocalS3] Multipart upload done: " + bucket + "/" + key + " (" + order.size() + " parts)");
+            xml(resp, 200, "<CompleteMultipartUploadResult xmlns=\"" + XMLNS + "\">"
+                    + "<Location>/" + esc(bucket) + "/" + esc(key) + "</Location>"
+                    + "<Bucket>" + esc(bucket) + "</Bucket>"
+                    + "<Key>" + esc(key) + "</Key>"
+                    + "<ETag>" + esc(etag) + "</ETag>"
+                    + "</CompleteMultipartUploadResult>");
+        }
+
+        // ------------------------------------------------------------
+        // Storage
+        // ------------------------------------------------------------
+
+        private Path bucketDir(String bucket) throws S3Error {
+            if (bucket.contains("/") || bucket.contains("\\") || bucket.startsWith(".")) {
+                throw new S3Error(400, "InvalidBucketName", "The specified bucket is not valid.");
+            }
+            return root.resolve(bucket);
+        }
+
+        private void requireBucket(String bucket) throws S3Error {
+            if (!Files.isDirectory(bucketDir(bucket))) {
+                throw new S3Error(404, "NoSuchBucket", "The specified bucket does not exist");
+            }
+        }
+
+        /** Key → fixed-length file name (keys may be long or hold "/" and ".."). */
+        private Path objectData(String bucket, String key) throws S3Error {
+            return bucketDir(bucket).resolve("objects").resolve(HashUtil.sha256(key) + ".data");
+        }
+
+        /** "abc.data" → "abc.meta" (key, ETag, content-type, user metadata). */
+        private static Path metaFile(Path data) {
+            String name = data.getFileName().toString();
+            return data.resolveSibling(name.substring(0, name.length() - ".data".length()) + ".meta");
+        }
+
+        private Path uploadDir(String bucket, String key, String uploadId) throws IOException, S3Error {
+            requireBucket(bucket);
+            if (uploadId == null || !uploadId.matches("[0-9a-f]{32}")) {
+                throw new S3Error(404, "NoSuchUpload", "The specified upload does not exist.");
+            }
+            Path dir = bucketDir(bucket).resolve("uploads").resolve(uploadId);
+            Path info = dir.resolve("upload.meta");
+            if (!Files.exists(info) || !key.equals(readMeta(info).getProperty("key"))) {
+                throw new S3Error(404, "NoSuchUpload", "The specified upload does not exist.");
+            }
+            return dir;
+        }
+
+        /**
+         * receiveBody
+         * Baby-English:
+         *   ✔ Body → temp file → moved into place, so readers never see half a file.
+         *   ✔ SDK "aws-chunked" bodies are un-wrapped first.
+         *   ✔ Content-MD5 sent → must fit, else BadDigest.
+         *
+         * @return MD5 hex of the stored bytes
+         */
+        private String receiveBody(HttpServletRequest req, Path target) throws IOException, S3Error {
+            InputStream raw = req.getInputStream();
+            String sha = req.getHeader("x-amz-content-sha256");
+            String encoding = req.getHeader("Content-Encoding");
+            if ((sha != null && sha.startsWith("STREAMING-"))
+                    || (encoding != null && encoding.contains("aws-chunked"))) {
+                raw = new AwsChunkedInputStream(new BufferedInputStream(raw, BUFFER_SIZE));
+            }
+
+            MessageDigest digest = md5();
+            Path tmp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+            try (DigestInputStream in = new DigestInputStream(raw, digest)) {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            byte[] md5 = digest.digest();
+
+            String contentMd5 = req.getHeader("Content-MD5");
+            if (contentMd5 != null && !contentMd5.trim().equals(Base64.getEncoder().encodeToString(md5))) {
+                Files.deleteIfExists(tmp);
+                throw new S3Error(400, "BadDigest", "The Content-MD5 you specified did not match what we received.");
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return HashUtil.toHex(md5);
+        }
+
+        /** part-N.md5 files → partNumber → MD5 hex, sorted. */
+        private static Map<Integer, String> storedParts(Path dir) throws IOException {
+            Map<Integer, String> parts = new TreeMap<>();
+            try (var files = Files.list(dir)) {
+                for (Path p : (Iterable<Path>) files::iterator) {
+                    String name = p.getFileName().toString();
+                    if (name.startsWith("part-") && name.endsWith(".md5")) {
+                        int n = Integer.parseInt(name.substring(5, name.length() - 4));
+                        parts.put(n, Files.readString(p, StandardCharsets.UTF_8).trim());
+                    }
+                }
+            }
+            return parts;
+        }
+
+        /** content-type + x-amz-meta-* of the request → meta properties. */
+        private static Properties requestMeta(HttpServletRequest req) {
+            Properties meta = new Properties();
+            String type = req.getContentType();
+            if (type != null) meta.setProperty("content-type", type);
+            for (String name : Collections.list(req.getHeaderNames())) {
+                String lower = name.toLowerCase();
+                if (lower.startsWith("x-amz-meta-")) {
+                    meta.setProperty("meta." + lower.substring("x-amz-meta-".length()), req.getHeader(name));
+                }
+            }
+            return meta;
+        }
+    }
+
+    // ============================================================
+    // 3️⃣ aws-chunked bodies
+    // ============================================================
+
+    /**
+     * AwsChunkedInputStream
+     * Baby-English:
+     *   ✔ The SDK may send bodies as:  hex-size[;chunk-signature=..] CRLF data CRLF ...
+     *     ending with a 0-size chunk and optional trailer lines (checksums).
+     *   ✔ We hand out only the data bytes; signatures are not checked.
+     */
+    private static final class AwsChunkedInputStream extends FilterInputStream {
+
+        private long left;      // data bytes left in this chunk
+        private boolean done;
+
+        AwsChunkedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return (n == -1) ? -1 : (one[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (done) return -1;
+            if (left == 0) {
+                nextChunk();
+                if (done) return -1;
+            }
+            int n = in.read(buf, off, (int) Math.min(len, left));
+            if (n == -1) throw new EOFException("aws-chunked body ended inside a chunk");
+            left -= n;
+            if (left == 0) readLine(); // CRLF after the data
+            return n;
+        }
+
+        private void nextChunk() throws IOException {
+            String header = readLine();
+            int semi = header.indexOf(';');
+            String hex = (semi < 0 ? header : header.substring(0, semi)).trim();
+            try {
+                left = Long.parseLong(hex, 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad aws-chunked header: " + header);
+            }
+            if (left == 0) {
+                while (!readLine().isEmpty()) {
+                    // trailer lines (x-amz-checksum-*, x-amz-trailer-signature) → skip
+                }
+                done = true;
+            }
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c == '\n') break;
+                if (c != '\r') line.append((char) c);
+            }
+            return line.toString(); // end of stream → "" (last trailer may lack its CRLF)
+        }
+    }
+
+    // ============================================================
+    // 🔧 Helpers
+    // ============================================================
+
+    /** S3-style failure: HTTP status + error code. */
+    private static final class S3Error extends Exception {
+        final int status;
+        final String code;
+
+        S3Error(int status, String code, String message) {
+            super(message);
+            this.status = status;
+            this.code = code;
+        }
+    }
+
+    /** Presigned URL: X-Amz-Date + X-Amz-Expires in the past → 403 like S3. */
+    private static void checkPresignExpiry(Map<String, String> query) throws S3Error {
+        String date = query.get("X-Amz-Date");
+        String expires = query.get("X-Amz-Expires");
+        if (date == null || expires == null) return;
+        try {
+            Instant signed = LocalDateTime.parse(date, AMZ_DATE).toInstant(ZoneOffset.UTC);
+            if (Instant.now().isAfter(signed.plusSeconds(Long.parseLong(expires)))) {
+                throw new S3Error(403, "AccessDenied", "Request has expired");
+            }
+        } catch (RuntimeException e) {
+            throw new S3Error(403, "AuthorizationQueryParametersError", "X-Amz-Date or X-Amz-Expires is not valid");
+        }
+    }
+
+    private static void error(HttpServletResponse resp, int status, String code,
+                              String message, String resource) throws IOException {
+        if (status >= 500) LoggerUtil.warn("[LocalS3] " + code + ": " + message);
+        xml(resp, status, "<Error>"
+                + "<Code>" + code + "</Code>"
+                + "<Message>" + esc(message) + "</Message>"
+                + "<Resource>" + esc(resource) + "</Resource>"
+                + "<RequestId>" + UUID.randomUUID() + "</RequestId>"
+                + "</Error>");
+    }
+
+    private static void notImplemented(HttpServletResponse resp, String method,
+                                       String bucket, String key) throws IOException {
+        error(resp, 501, "NotImplemented", method + " is not supported by the local S3 stand-in",
+                "/" + bucket + (key.isEmpty() ? "" : "/" + key));
+    }
+
+    private static void xml(HttpServletResponse resp, int status, String body) throws IOException {
+        byte[] bytes = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + body).getBytes(StandardCharsets.UTF_8);
+        resp.setStatus(status);
+        resp.setContentType("application/xml");
+        resp.setContentLength(bytes.length);
+        resp.getOutputStream().write(bytes);
+    }
+
+    private static String esc(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String stripQuotes(String etag) {
+        String t = etag.trim();
+        if (t.startsWith("W/")) t = t.substring(2);
+        return (t.length() >= 2 && t.startsWith("\"") && t.endsWith("\"")) ? t.substring(1, t.length() - 1) : t;
+    }
+
+    /** "%2B" stays "+": only percent-escapes are decoded in paths. */
+    private static String decode(String raw) {
+        return URLDecoder.decode(raw.replace("+", "%2B"), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> parseQuery(String queryString) {
+        Map<String, String> query = new HashMap<>();
+        if (queryString == null || queryString.isEmpty()) return query;
+        for (String pair : queryString.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = (eq < 0) ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            query.put(name, value);
+        }
+        return query;
+    }
+
+    private static String httpDate(Instant instant) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(instant.atZone(ZoneOffset.UTC));
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+
+    private static Properties readMeta(Path file) throws IOException {
+        Properties meta = new Properties();
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            meta.load(r);
+        }
+        return meta;
+    }
+
+    /** Write next to the target, then move → a reader sees the old or the new meta, never half. */
+    private static void writeMeta(Path file, Properties meta) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            meta.store(w, "FileSharingApp local S3");
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (var walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
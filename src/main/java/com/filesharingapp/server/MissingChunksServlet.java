@@ -0,0 +1,119 @@
+package com.filesharingapp.server;
+
+import com.filesharingapp.utils.LoggerUtil;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * MissingChunksServlet
+ * --------------------
+ * Baby-English:
+ * ✔ Sender asks: "Which pieces of this transfer do you still need?"
+ * ✔ GET /missing?transferId=...
+ * ✔ Answer comes from the chunk bitmap, so it is exact even when chunks
+ *   arrived out of order or the server restarted in between.
+ * ✔ We send back JSON with:
+ * - state: IN_PROGRESS / COMPLETED / UNKNOWN
+ * - chunkSize, totalBytes, totalChunks, receivedChunks
+ * - missingChunks: [[firstIndex, lastIndexExclusive], ...]
+ * - missingRanges: [[startByte, endByteExclusive], ...]
+ *
+ * Why this matters:
+ * ✔ After a broken link the sender re-sends ONLY the holes,
+ *   not everything after the first hole.
+ * ✔ UNKNOWN → server has nothing for this id → send everything.
+ */
+public class MissingChunksServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest req,
+                         HttpServletResponse resp) throws ServletException, IOException {
+
+        resp.setContentType("application/json");
+
+        // ------------------------------------------------------
+        // 1) Validate transferId
+        // ------------------------------------------------------
+        String transferId = req.getParameter("transferId");
+        if (transferId == null || transferId.isBlank()) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().write("{\"status\":\"error\",\"message\":\"Missing transferId\"}");
+            return;
+        }
+
+        // ------------------------------------------------------
+        // 2) Open chunked upload → exact holes from the bitmap
+        // ------------------------------------------------------
+        ChunkUploadService.MissingReport report = ChunkUploadService.getMissingReport(transferId);
+        if (report != null) {
+            String json = "{"
+                    + "\"transferId\":\"" + safe(transferId) + "\","
+                    + "\"state\":\"IN_PROGRESS\","
+                    + "\"chunkSize\":" + report.chunkSize + ","
+                    + "\"totalBytes\":" + report.totalBytes + ","
+                    + "\"totalChunks\":" + report.totalChunks + ","
+                    + "\"receivedChunks\":" + report.receivedChunks + ","
+                    + "\"missingChunks\":" + toJsonPairs(report.missingChunks) + ","
+                    + "\"missingRanges\":" + toJsonLongPairs(report.missingByteRanges())
+                    + "}";
+
+            LoggerUtil.info("[Missing] " + transferId + " → " + report.receivedChunks + "/"
+                    + report.totalChunks + " chunks, " + report.missingChunks.size() + " gap(s)");
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.getWriter().write(json);
+            return;
+        }
+
+        // ------------------------------------------------------
+        // 3) Already finished → nothing missing
+        // ------------------------------------------------------
+        TransferStatusRegistry.Entry entry = TransferStatusRegistry.get(transferId);
+        if (entry != null && entry.getState() == TransferStatusRegistry.State.COMPLETED) {
+            String json = "{"
+                    + "\"transferId\":\"" + safe(transferId) + "\","
+                    + "\"state\":\"COMPLETED\","
+                    + "\"totalBytes\":" + entry.getTotalBytes() + ","
+                    + "\"missingChunks\":[],"
+                    + "\"missingRanges\":[]"
+                    + "}";
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.getWriter().write(json);
+            return;
+        }
+
+        // ------------------------------------------------------
+        // 4) Never seen (or failed before first chunk) → send all
+        // ------------------------------------------------------
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.getWriter().write("{\"transferId\":\"" + safe(transferId) + "\",\"state\":\"UNKNOWN\"}");
+    }
+
+    private static String toJsonPairs(List<int[]> pairs) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int[] p : pairs) {
+            if (sb.length() > 1) sb.append(',');
+            sb.append('[').append(p[0]).append(',').append(p[1]).append(']');
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String toJsonLongPairs(List<long[]> pairs) {
+        StringBuilder sb = new StringBuilder("[");
+        for (long[] p : pairs) {
+            if (sb.length() > 1) sb.append(',');
+            sb.append('[').append(p[0]).append(',').append(p[1]).append(']');
+        }
+        return sb.append(']').toString();
+    }
+
+    /** Escape text for JSON safety. */
+    private static String safe(String s) {
+        if (s == null) return "";
+        return s.replace("\"", "'").trim();
+    }
+}
@@ -14,7 +14,9 @@ import java.io.IOException;
  * -------------
  * Baby-English:
  * ✔ Browser or Sender asks: "How much of the file did you get?"
- * ✔ We look at TransferContext for this transfer.
+ * ✔ No transferId → JSON list of every active transfer.
+ * ✔ Upload transfers → answered from TransferStatusRegistry (one entry per id).
+ * ✔ Anything else (downloads) → we look at TransferContext for this transfer.
  * ✔ We send back JSON with:
  * - transferId
  * - fileName
@@ -38,13 +40,26 @@ public class StatusServlet extends HttpServlet {
                          HttpServletResponse resp) throws ServletException, IOException {
 
         // ------------------------------------------------------
-        // 1) Validate transferId
+        // 1) No transferId → list every active transfer
         // ------------------------------------------------------
         String transferId = req.getParameter("transferId");
         if (transferId == null || transferId.isBlank()) {
-            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.setContentType("application/json");
+            resp.getWriter().write(TransferStatusRegistry.toJsonAll());
+            return;
+        }
+
+        // ------------------------------------------------------
+        // 1b) Upload we track per transfer → answer from the registry
+        // ------------------------------------------------------
+        TransferStatusRegistry.Entry entry = TransferStatusRegistry.get(transferId);
+        if (entry != null && entry.getState() != TransferStatusRegistry.State.IDLE) {
+            String json = entry.toJson(true);
+
+            resp.setStatus(HttpServletResponse.SC_OK);
             resp.setContentType("application/json");
-            resp.getWriter().write("{\"error\":\"missing transferId\"}");
+            resp.getWriter().write(json);
             return;
         }
 
@@ -69,6 +84,7 @@ public class StatusServlet extends HttpServlet {
         // ------------------------------------------------------
         // FIX: The TransferContext.getResumeOffsetBytes() and getExpectedChecksum() are likely
         //      instance/thread-local and not static, but are kept here to compile against context.
+        long received = progress.getReceivedBytes();
         long resumeOffset = TransferContext.getResumeOffsetBytes();
         String checksum = TransferContext.getExpectedChecksum();
         String fileName = TransferContext.getIncomingName();
@@ -80,9 +96,9 @@ public class StatusServlet extends HttpServlet {
         String json = "{"
                 + "\"transferId\":\"" + safe(transferId) + "\","
                 + "\"fileName\":\"" + safe(fileName) + "\","
-                + "\"bytesWritten\":" + progress.receivedBytes + ","
+                + "\"bytesWritten\":" + received + ","
                 + "\"totalBytes\":" + progress.totalBytes + ","
-                + "\"state\":\"" + (progress.totalBytes == progress.receivedBytes ? "COMPLETED" : "IN_PROGRESS") + "\","
+                + "\"state\":\"" + (progress.totalBytes == received ? "COMPLETED" : "IN_PROGRESS") + "\","
                 + "\"lastUpdated\":\"" + System.currentTimeMillis() + "\","
                 + "\"checksum\":\"" + safe(checksum) + "\","
                 + "\"resumeOffset\":" + resumeOffset + ","
@@ -93,7 +109,7 @@ public class StatusServlet extends HttpServlet {
         // 5) Log gently
         // ------------------------------------------------------
         // FIX: Corrected LoggerUtil.info call to use single-argument overload
-        LoggerUtil.info("[Status] " + transferId + " → " + progress.receivedBytes + "/" + progress.totalBytes);
+        LoggerUtil.info("[Status] " + transferId + " → " + received + "/" + progress.totalBytes);
 
         // ------------------------------------------------------
         // 6) Send JSON back
@@ -5,20 +5,27 @@ import com.filesharingapp.utils.LoggerUtil;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * TransferStatusRegistry
  * ----------------------
  * Baby English:
- *   - This class remembers "how is my transfer doing right now?"
+ *   - This class remembers "how is each transfer doing right now?"
  *   - Server updates this during /upload.
  *   - /status servlet reads from here and sends JSON to the browser.
  *
  * Important notes:
- *   - We track ONE active transfer at a time (the latest one).
- *   - This is enough for your current app and UI.
- *   - If you ever want many transfers at once, you can wrap
- *     this logic in a Map<transferId, TransferStatusRegistry>.
+ *   - One {@link Entry} per transferId, so two uploads at the same
+ *     time never overwrite each other.
+ *   - No class-wide lock: byte counters are LongAdders and the
+ *     "last updated" clock is only sampled now and then on writes.
+ *   - Finished entries are dropped a while after they end.
  */
 public final class TransferStatusRegistry {
 
@@ -37,43 +44,152 @@ public final class TransferStatusRegistry {
         FAILED
     }
 
-    // ------------------------------
-    // Core transfer fields (existing)
-    // ------------------------------
-    private static String transferId;
-    private static String fileName;
-    private static long   totalBytes;
-    private static long   bytesWritten;
-    private static State  state        = State.IDLE;
-    private static String errorMessage;
-    private static LocalDateTime lastUpdated;
+    /** On average, one write in this many refreshes the timestamp. */
+    private static final int TIMESTAMP_SAMPLE_RATE = 64;
 
-    // ------------------------------
-    // New meta fields (as per analysis)
-    // ------------------------------
-    /** HTTP / S3 / ZEROTIER */
-    private static String protocol;
+    /** How long COMPLETED / FAILED entries stay visible in /status. */
+    private static final long FINISHED_RETENTION_MS = 15 * 60 * 1000L;
 
-    /** Friendly user name, if known. */
-    private static String userName;
+    /**
+     * Entry
+     * -----
+     * Baby English:
+     *   - Status of ONE transfer.
+     *   - Hot path (bytes) is a LongAdder → many writer threads, no lock.
+     *   - Everything else changes rarely, so plain volatile fields are enough.
+     */
+    public static final class Entry {
+        private final String transferId;
+        private final String fileName;
+        private final long totalBytes;
+        private final long startedAtMs;
+        private final LongAdder bytesWritten = new LongAdder();
+
+        private volatile State state = State.IN_PROGRESS;
+        private volatile String errorMessage;
+        private volatile long lastUpdatedMs;
+
+        /** HTTP / S3 / ZEROTIER */
+        private volatile String protocol;
+
+        /** Friendly user name, if known. */
+        private volatile String userName;
+
+        /** Expected checksum (SHA-256) for integrity. */
+        private volatile String checksum;
+
+        /** Where to resume from (byte offset). */
+        private volatile long resumeOffset;
+
+        /** Full path of final saved file (optional). */
+        private volatile String filePath;
+
+        /** True if AES encryption is enabled for this transfer. */
+        private volatile boolean aesEnabled;
+
+        private Entry(String transferId, String fileName, long totalBytes) {
+            this.transferId  = transferId;
+            this.fileName    = fileName;
+            this.totalBytes  = totalBytes;
+            this.startedAtMs = System.currentTimeMillis();
+            this.lastUpdatedMs = startedAtMs;
+        }
 
-    /** Expected checksum (SHA-256) for integrity. */
-    private static String checksum;
+        /** Keep descriptive fields (protocol, checksum…) when a transfer restarts. */
+        private void copyMetaFrom(Entry old) {
+            if (old == null) return;
+            protocol     = old.protocol;
+            userName     = old.userName;
+            checksum     = old.checksum;
+            resumeOffset = old.resumeOffset;
+            aesEnabled   = old.aesEnabled;
+        }
 
-    /** Where to resume from (byte offset). */
-    private static long resumeOffset;
+        private void touch() {
+            lastUpdatedMs = System.currentTimeMillis();
+        }
 
-    /** Full path of final saved file (optional). */
-    private static String filePath;
+        public String getTransferId() { return transferId; }
+        public String getFileName()   { return fileName; }
+        public long getTotalBytes()   { return totalBytes; }
+        public long getBytesWritten() { return bytesWritten.sum(); }
+        public long getResumeOffset() { return resumeOffset; }
+        public State getState()       { return state; }
 
-    /** True if AES encryption is enabled for this transfer. */
-    private static boolean aesEnabled;
+        /** Known size and not all bytes yet → sender can resume. */
+        public boolean isResumable() {
+            return totalBytes > 0 && bytesWritten.sum() < totalBytes;
+        }
 
-    /** When transfer started (for speed/ETA). */
-    private static long startedAtMs;
+        /** All bytes in → COMPLETED (once; later calls see the new state). */
+        private synchronized void completeIfFull() {
+            if (state == State.IN_PROGRESS) {
+                state = State.COMPLETED;
+                touch();
+                LoggerUtil.success("[Status] " + transferId + " reached total bytes. Marking as COMPLETED.");
+            }
+        }
 
-    /** Last update timestamp in milliseconds. */
-    private static long lastUpdatedMs;
+        /**
+         * Build small JSON string for this transfer.
+         * Baby English:
+         *   - We do not use any JSON library.
+         *   - We just build a text string carefully.
+         */
+        public String toJson() {
+            return toJson(false);
+        }
+
+        /** Same, plus a "resumable" field when asked (single-transfer /status). */
+        public String toJson(boolean withResumable) {
+            long written = bytesWritten.sum();
+
+            // Compute progressPercent, speed, and ETA safely.
+            double percent = 0.0;
+            if (totalBytes > 0) {
+                percent = (written * 100.0) / totalBytes;
+            }
+
+            long   now     = System.currentTimeMillis();
+            long   elapsed = Math.max(now - startedAtMs, 1L); // ms
+            double speedBps = (written * 1000.0) / elapsed; // bytes per second
+
+            long remainingBytes = (totalBytes > 0 && written <= totalBytes)
+                    ? (totalBytes - written)
+                    : 0L;
+
+            long etaSeconds = (speedBps > 1.0 && remainingBytes > 0)
+                    ? (long) (remainingBytes / speedBps)
+                    : 0L;
+
+            StringBuilder sb = new StringBuilder();
+            sb.append("{");
+            sb.append("\"transferId\":\"").append(safe(transferId)).append("\",");
+            sb.append("\"fileName\":\"").append(safe(fileName)).append("\",");
+            sb.append("\"protocol\":\"").append(safe(protocol)).append("\",");
+            sb.append("\"userName\":\"").append(safe(userName)).append("\",");
+            sb.append("\"totalBytes\":").append(totalBytes).append(",");
+            sb.append("\"bytesWritten\":").append(written).append(",");
+            sb.append("\"progressPercent\":").append(String.format("%.2f", percent)).append(",");
+            sb.append("\"resumeOffset\":").append(resumeOffset).append(",");
+            sb.append("\"state\":\"").append(state.name()).append("\",");
+            sb.append("\"error\":\"").append(safe(errorMessage)).append("\",");
+            sb.append("\"checksum\":\"").append(safe(checksum)).append("\",");
+            sb.append("\"aesEnabled\":").append(aesEnabled).append(",");
+            sb.append("\"filePath\":\"").append(safe(filePath)).append("\",");
+            sb.append("\"speedBytesPerSecond\":").append(String.format("%.2f", speedBps)).append(",");
+            sb.append("\"estimatedEtaSeconds\":").append(etaSeconds).append(",");
+            sb.append("\"lastUpdated\":\"").append(toLocalDateTime(lastUpdatedMs)).append("\"");
+            if (withResumable) {
+                sb.append(",\"resumable\":").append(isResumable());
+            }
+            sb.append("}");
+            return sb.toString();
+        }
+    }
+
+    /** All known transfers by transferId. */
+    private static final Map<String, Entry> TRANSFERS = new ConcurrentHashMap<>();
 
     private TransferStatusRegistry() {
         // Utility class — no objects.
@@ -84,105 +200,108 @@ public final class TransferStatusRegistry {
     // ============================
 
     /**
-     * Begin a new transfer.
+     * Begin (or restart) a transfer.
      * Baby English:
-     *   - We reset everything.
-     *   - We remember id, file name, and total size.
+     *   - Fresh counters and state for this transferId.
+     *   - Other transfers are not touched.
+     *   - Meta fields set earlier for the same id (protocol, checksum…) stay.
      */
-    public static synchronized void begin(String id, String name, long total) {
-        transferId   = safe(id);
-        fileName     = safe(name);
-        totalBytes   = Math.max(total, 0);
-        bytesWritten = 0L;
-        state        = State.IN_PROGRESS;
-        errorMessage = null;
-        protocol     = null;
-        checksum     = null;
-        resumeOffset = 0L;
-        filePath     = null;
-        aesEnabled   = false;
-        startedAtMs  = System.currentTimeMillis();
-        lastUpdatedMs = startedAtMs;
-        lastUpdated   = LocalDateTime.now();
-        LoggerUtil.info("[Status] Begin transfer: " + transferId
-                + " (" + fileName + "), totalBytes=" + totalBytes);
+    public static void begin(String id, String name, long total) {
+        String key = safe(id);
+        Entry fresh = new Entry(key, safe(name), Math.max(total, 0));
+        fresh.copyMetaFrom(TRANSFERS.put(key, fresh));
+        pruneFinished();
+        LoggerUtil.info("[Status] Begin transfer: " + key
+                + " (" + fresh.fileName + "), totalBytes=" + fresh.totalBytes);
     }
 
     /**
      * Set which protocol we are using.
      * Example: "HTTP", "S3", "ZEROTIER".
      */
-    public static synchronized void setProtocol(String proto) {
-        protocol = safe(proto);
+    public static void setProtocol(String id, String proto) {
+        Entry e = entryOrPlaceholder(id);
+        e.protocol = safe(proto);
     }
 
     /**
      * Set display name of user (sender or receiver).
      */
-    public static synchronized void setUserName(String name) {
-        userName = safe(name);
+    public static void setUserName(String id, String name) {
+        Entry e = entryOrPlaceholder(id);
+        e.userName = safe(name);
     }
 
     /**
      * Set expected checksum string.
      */
-    public static synchronized void setChecksum(String cs) {
-        checksum = safe(cs);
+    public static void setChecksum(String id, String cs) {
+        Entry e = entryOrPlaceholder(id);
+        e.checksum = safe(cs);
     }
 
     /**
      * Set resume offset in bytes.
      * This is where next upload chunk should start.
      */
-    public static synchronized void setResumeOffset(long offset) {
-        resumeOffset = Math.max(offset, 0L);
+    public static void setResumeOffset(String id, long offset) {
+        Entry e = entryOrPlaceholder(id);
+        e.resumeOffset = Math.max(offset, 0L);
     }
 
     /**
      * Save final file path for reference.
      */
-    public static synchronized void setFilePath(String path) {
-        filePath = safe(path);
+    public static void setFilePath(String id, String path) {
+        Entry e = entryOrPlaceholder(id);
+        e.filePath = safe(path);
     }
 
     /**
      * Mark whether AES encryption is enabled.
      */
-    public static synchronized void setAesEnabled(boolean enabled) {
-        aesEnabled = enabled;
+    public static void setAesEnabled(String id, boolean enabled) {
+        Entry e = entryOrPlaceholder(id);
+        e.aesEnabled = enabled;
     }
 
     /**
-     * Update bytesWritten to a new absolute value.
+     * Set bytesWritten to a new absolute value.
      * Baby English:
      *   - newBytesWritten is "how many bytes total we have now".
+     *   - Meant for one-off jumps (resume offset, restart rebuild),
+     *     not for the per-write hot path – use addBytes there.
      */
-    public static synchronized void progress(long newBytesWritten) {
-        bytesWritten = Math.max(newBytesWritten, 0L);
-        lastUpdated  = LocalDateTime.now();
-        lastUpdatedMs = System.currentTimeMillis();
+    public static void progress(String id, long newBytesWritten) {
+        Entry e = TRANSFERS.get(safe(id));
+        if (e == null) return;
+        e.bytesWritten.reset();
+        e.bytesWritten.add(Math.max(newBytesWritten, 0L));
+        e.touch();
     }
 
     /**
      * Add a delta of bytes to current bytesWritten.
      * Baby English:
      *   - We use this when we only know "we wrote X more bytes".
+     *   - Many threads may call this at once; nobody waits for a lock.
+     *   - The clock is read only on a random 1-in-64 write.
+     *   - "Did we reach total size?" is checked on every write (one
+     *     sum), so a finished transfer always shows COMPLETED.
      */
-    public static synchronized void addBytes(long delta) {
+    public static void addBytes(String id, long delta) {
         if (delta < 0) {
             return;
         }
-        bytesWritten += delta;
-        if (bytesWritten < 0) {
-            bytesWritten = 0;
-        }
-        lastUpdated   = LocalDateTime.now();
-        lastUpdatedMs = System.currentTimeMillis();
+        Entry e = TRANSFERS.get(safe(id));
+        if (e == null) return;
+        e.bytesWritten.add(delta);
 
         // If we know total size and reached it, we can auto-complete.
-        if (totalBytes > 0 && bytesWritten >= totalBytes && state == State.IN_PROGRESS) {
-            state = State.COMPLETED;
-            LoggerUtil.success("[Status] Transfer reached total bytes. Marking as COMPLETED.");
+        if (e.totalBytes > 0 && e.state == State.IN_PROGRESS && e.bytesWritten.sum() >= e.totalBytes) {
+            e.completeIfFull();
+        } else if (ThreadLocalRandom.current().nextInt(TIMESTAMP_SAMPLE_RATE) == 0) {
+            e.touch();
         }
     }
 
@@ -190,46 +309,42 @@ public final class TransferStatusRegistry {
      * Mark transfer as completed.
      * Optionally set final file path.
      */
-    public static synchronized void complete(String finalPath) {
-        state         = State.COMPLETED;
-        lastUpdated   = LocalDateTime.now();
-        lastUpdatedMs = System.currentTimeMillis();
+    public static void complete(String id, String finalPath) {
+        Entry e = TRANSFERS.get(safe(id));
+        if (e == null) return;
+        e.state = State.COMPLETED;
+        e.touch();
         if (finalPath != null) {
-            filePath = safe(finalPath);
+            e.filePath = safe(finalPath);
         }
-        LoggerUtil.success("[Status] Transfer completed: " + fileName);
+        LoggerUtil.success("[Status] Transfer completed: " + e.fileName);
     }
 
     /**
      * Mark transfer as failed with error message.
      */
-    public static synchronized void fail(String msg) {
-        state         = State.FAILED;
-        errorMessage  = safe(msg);
-        lastUpdated   = LocalDateTime.now();
-        lastUpdatedMs = System.currentTimeMillis();
-        LoggerUtil.error("[Status] Transfer failed: " + msg);
+    public static void fail(String id, String msg) {
+        Entry e = TRANSFERS.get(safe(id));
+        if (e != null) {
+            e.state        = State.FAILED;
+            e.errorMessage = safe(msg);
+            e.touch();
+        }
+        LoggerUtil.error("[Status] Transfer failed: " + safe(id) + " → " + msg);
+    }
+
+    /**
+     * Forget one transfer.
+     */
+    public static void remove(String id) {
+        TRANSFERS.remove(safe(id));
     }
 
     /**
-     * Reset everything back to IDLE.
+     * Reset everything back to IDLE (forget every transfer).
      */
-    public static synchronized void reset() {
-        transferId    = null;
-        fileName      = null;
-        totalBytes    = 0L;
-        bytesWritten  = 0L;
-        state         = State.IDLE;
-        errorMessage  = null;
-        protocol      = null;
-        userName      = null;
-        checksum      = null;
-        resumeOffset  = 0L;
-        filePath      = null;
-        aesEnabled    = false;
-        startedAtMs   = 0L;
-        lastUpdatedMs = 0L;
-        lastUpdated   = LocalDateTime.now();
+    public static void reset() {
+        TRANSFERS.clear();
         LoggerUtil.info("[Status] Reset transfer status registry.");
     }
 
@@ -237,24 +352,33 @@ public final class TransferStatusRegistry {
     // Public getters
     // =============
 
-    public static synchronized long getBytesWritten() {
-        return bytesWritten;
+    /** @return status of one transfer, or null if unknown. */
+    public static Entry get(String id) {
+        return (id == null) ? null : TRANSFERS.get(safe(id));
     }
 
-    public static synchronized long getTotalBytes() {
-        return totalBytes;
+    public static long getBytesWritten(String id) {
+        Entry e = get(id);
+        return (e != null) ? e.getBytesWritten() : 0L;
     }
 
-    public static synchronized long getResumeOffset() {
-        return resumeOffset;
+    public static long getTotalBytes(String id) {
+        Entry e = get(id);
+        return (e != null) ? e.getTotalBytes() : 0L;
     }
 
-    public static synchronized String getTransferId() {
-        return transferId;
+    public static long getResumeOffset(String id) {
+        Entry e = get(id);
+        return (e != null) ? e.getResumeOffset() : 0L;
     }
 
-    public static synchronized String getFileName() {
-        return fileName;
+    /** @return transfers that are still IN_PROGRESS right now. */
+    public static List<Entry> activeTransfers() {
+        List<Entry> list = new ArrayList<>();
+        for (Entry e : TRANSFERS.values()) {
+            if (e.state == State.IN_PROGRESS) list.add(e);
+        }
+        return list;
     }
 
     // ============================
@@ -262,53 +386,26 @@ public final class TransferStatusRegistry {
     // ============================
 
     /**
-     * Build small JSON string for /status response.
-     * Baby English:
-     *   - We do not use any JSON library.
-     *   - We just build a text string carefully.
+     * JSON for one transfer, or {"state":"unknown"} if we never saw it.
      */
-    public static synchronized String toJson() {
-        // Compute progressPercent, speed, and ETA safely.
-        double percent = 0.0;
-        if (totalBytes > 0) {
-            percent = (bytesWritten * 100.0) / totalBytes;
-        }
-
-        long   now     = System.currentTimeMillis();
-        long   elapsed = (startedAtMs > 0) ? Math.max(now - startedAtMs, 1L) : 1L; // ms
-        double speedBps = (bytesWritten * 1000.0) / elapsed; // bytes per second
-
-        long remainingBytes = (totalBytes > 0 && bytesWritten <= totalBytes)
-                ? (totalBytes - bytesWritten)
-                : 0L;
-
-        long etaSeconds = (speedBps > 1.0 && remainingBytes > 0)
-                ? (long) (remainingBytes / speedBps)
-                : 0L;
-
-        String lastUpdatedStr = (lastUpdated != null)
-                ? lastUpdated.toString()
-                : "";
+    public static String toJson(String id) {
+        Entry e = get(id);
+        return (e != null) ? e.toJson() : "{\"state\":\"unknown\"}";
+    }
 
+    /**
+     * JSON listing every active transfer.
+     * Example: {"activeCount":2,"transfers":[{...},{...}]}
+     */
+    public static String toJsonAll() {
+        List<Entry> active = activeTransfers();
         StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        sb.append("\"transferId\":\"").append(safe(transferId)).append("\",");
-        sb.append("\"fileName\":\"").append(safe(fileName)).append("\",");
-        sb.append("\"protocol\":\"").append(safe(protocol)).append("\",");
-        sb.append("\"userName\":\"").append(safe(userName)).append("\",");
-        sb.append("\"totalBytes\":").append(totalBytes).append(",");
-        sb.append("\"bytesWritten\":").append(bytesWritten).append(",");
-        sb.append("\"progressPercent\":").append(String.format("%.2f", percent)).append(",");
-        sb.append("\"resumeOffset\":").append(resumeOffset).append(",");
-        sb.append("\"state\":\"").append(state.name()).append("\",");
-        sb.append("\"error\":\"").append(safe(errorMessage)).append("\",");
-        sb.append("\"checksum\":\"").append(safe(checksum)).append("\",");
-        sb.append("\"aesEnabled\":").append(aesEnabled).append(",");
-        sb.append("\"filePath\":\"").append(safe(filePath)).append("\",");
-        sb.append("\"speedBytesPerSecond\":").append(String.format("%.2f", speedBps)).append(",");
-        sb.append("\"estimatedEtaSeconds\":").append(etaSeconds).append(",");
-        sb.append("\"lastUpdated\":\"").append(lastUpdatedStr).append("\"");
-        sb.append("}");
+        sb.append("{\"activeCount\":").append(active.size()).append(",\"transfers\":[");
+        for (int i = 0; i < active.size(); i++) {
+            if (i > 0) sb.append(",");
+            sb.append(active.get(i).toJson());
+        }
+        sb.append("]}");
         return sb.toString();
     }
 
@@ -316,14 +413,32 @@ public final class TransferStatusRegistry {
     // Helper methods
     // =============
 
+    /**
+     * Meta setters may run before begin() (the first chunk opens the
+     * transfer). Create an IDLE placeholder so the value is not lost;
+     * begin() keeps it.
+     */
+    private static Entry entryOrPlaceholder(String id) {
+        return TRANSFERS.computeIfAbsent(safe(id), k -> {
+            Entry e = new Entry(k, "", 0L);
+            e.state = State.IDLE;
+            return e;
+        });
+    }
+
+    /** Drop finished transfers nobody has looked at for a while. */
+    private static void pruneFinished() {
+        long cutoff = System.currentTimeMillis() - FINISHED_RETENTION_MS;
+        TRANSFERS.values().removeIf(e -> e.state != State.IN_PROGRESS && e.lastUpdatedMs < cutoff);
+    }
+
     /** Simple helper: avoid nulls and remove quotes. */
     private static String safe(String s) {
         if (s == null) return "";
         return s.replace("\"", "'").trim();
     }
 
-    /** Optional helper to log a human-readable timestamp from millis. */
-    @SuppressWarnings("unused")
+    /** Human-readable timestamp from millis. */
     private static String toLocalDateTime(long epochMs) {
         if (epochMs <= 0) return "";
         return LocalDateTime.ofInstant(
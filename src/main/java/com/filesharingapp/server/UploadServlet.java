@@ -1,16 +1,16 @@
 package com.filesharingapp.server;
 
 import com.filesharingapp.core.TransferContext;
-import com.filesharingapp.security.AesUtil;
+import com.filesharingapp.utils.HashUtil;
 import com.filesharingapp.utils.LoggerUtil;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 /**
@@ -20,9 +20,10 @@ import java.nio.file.Path;
  *   ✔ Browser or Sender POSTs file data to /upload.
  *   ✔ Supports:
  *       - Chunk mode (many small pieces)
- *       - Stream mode (one big upload)
+ *       - Stream mode (one big upload; totalBytes=-1 if size unknown)
  *       - Resume using Range or X-Resume-Offset
  *       - AES decrypt if enabled
+ *       - Per-chunk CRC32C / leaf hash → damaged chunk gets 400 "rejected"
  *       - JSON response for UI
  */
 public class UploadServlet extends HttpServlet {
@@ -39,10 +40,14 @@ public class UploadServlet extends HttpServlet {
         String transferId = firstNonBlank(req.getParameter("transferId"), req.getHeader("X-Transfer-Id"));
         String fileName = firstNonBlank(req.getParameter("fileName"), req.getHeader("X-File-Name"));
         String chunkIndexStr = firstNonBlank(req.getParameter("chunkIndex"), req.getHeader("X-Chunk-Index"));
+        String chunkSizeStr = firstNonBlank(req.getParameter("chunkSize"), req.getHeader("X-Chunk-Size"));
+        String chunkCountStr = firstNonBlank(req.getParameter("chunkCount"), req.getHeader("X-Chunk-Count"));
         String totalBytesStr = firstNonBlank(req.getParameter("totalBytes"), req.getHeader("X-Total-Bytes"));
         String checksum = firstNonBlank(req.getParameter("checksum"), req.getHeader("X-Checksum"));
         String resumeOffsetStr = req.getHeader("X-Resume-Offset");
         String aesPassword = req.getHeader("X-AES-Password"); // optional AES key
+        String chunkCrc = req.getHeader("X-Chunk-CRC32C");    // optional CRC32C of the body
+        String chunkHash = req.getHeader("X-Chunk-SHA256");   // optional SHA-256 per unit (leaf form), comma separated
 
         // ------------------------------------------------------
         // 2) Validate required fields
@@ -53,10 +58,13 @@ public class UploadServlet extends HttpServlet {
             return;
         }
 
+        boolean isChunkMode = (chunkIndexStr != null);
+
         long totalBytes;
         try {
             totalBytes = Long.parseLong(totalBytesStr);
-            if (totalBytes < 0) throw new NumberFormatException("negative");
+            // -1 = size not known yet (stream mode only, e.g. zip made on the fly)
+            if (totalBytes < 0 && (isChunkMode || totalBytes != -1)) throw new NumberFormatException("negative");
         } catch (NumberFormatException e) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             resp.getWriter().write("{\"status\":\"error\",\"message\":\"Invalid totalBytes\"}");
@@ -86,8 +94,9 @@ public class UploadServlet extends HttpServlet {
             }
         }
 
-        boolean isChunkMode = (chunkIndexStr != null);
         int chunkIndex = 0;
+        long chunkSize = ChunkUploadService.DEFAULT_CHUNK_SIZE;
+        int chunkCount = 1; // units of chunkSize in this body (adaptive senders send more)
         if (isChunkMode) {
             try {
                 chunkIndex = Integer.parseInt(chunkIndexStr);
@@ -97,19 +106,39 @@ public class UploadServlet extends HttpServlet {
                 resp.getWriter().write("{\"status\":\"error\",\"message\":\"Invalid chunkIndex\"}");
                 return;
             }
+            if (!isBlank(chunkSizeStr)) {
+                try {
+                    chunkSize = Long.parseLong(chunkSizeStr);
+                    if (chunkSize <= 0) throw new NumberFormatException("non-positive chunk size");
+                } catch (NumberFormatException ex) {
+                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                    resp.getWriter().write("{\"status\":\"error\",\"message\":\"Invalid chunkSize\"}");
+                    return;
+                }
+            }
+            if (!isBlank(chunkCountStr)) {
+                try {
+                    chunkCount = Integer.parseInt(chunkCountStr);
+                    if (chunkCount <= 0) throw new NumberFormatException("non-positive chunk count");
+                } catch (NumberFormatException ex) {
+                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                    resp.getWriter().write("{\"status\":\"error\",\"message\":\"Invalid chunkCount\"}");
+                    return;
+                }
+            }
         }
 
         // ------------------------------------------------------
-        // 5) Initialize TransferStatusRegistry
+        // 5) Describe this transfer in TransferStatusRegistry
+        //    (ChunkUploadService calls begin(): stream mode on every
+        //     request, chunk mode on the first chunk it sees, whatever
+        //     its index, because chunks may arrive out of order)
         // ------------------------------------------------------
-        if (!isChunkMode || chunkIndex == 0) {
-            TransferStatusRegistry.begin(transferId, safeFileName, totalBytes);
-        }
-        TransferStatusRegistry.setProtocol("HTTP");
-        TransferStatusRegistry.setResumeOffset(resumeOffset);
-        TransferStatusRegistry.setAesEnabled(aesPassword != null);
+        TransferStatusRegistry.setProtocol(transferId, "HTTP");
+        TransferStatusRegistry.setResumeOffset(transferId, resumeOffset);
+        TransferStatusRegistry.setAesEnabled(transferId, aesPassword != null);
         if (!isBlank(checksum)) {
-            TransferStatusRegistry.setChecksum(checksum);
+            TransferStatusRegistry.setChecksum(transferId, checksum);
             TransferContext.setExpectedChecksum(checksum);
         }
         TransferContext.setIncomingName(safeFileName);
@@ -124,21 +153,25 @@ public class UploadServlet extends HttpServlet {
                 // ======================
                 // STREAM MODE
                 // ======================
+                // No X-Resume-Offset → -1: fresh file, never appended to an old one
                 Path saved = ChunkUploadService.handleStream(
                         transferId,
                         safeFileName,
                         totalBytes,
+                        isBlank(resumeOffsetStr) ? -1L : resumeOffset,
                         req.getInputStream(),
                         aesPassword // decrypt if AES enabled
                 );
 
-                TransferStatusRegistry.complete(saved.toAbsolutePath().toString());
+                TransferStatusRegistry.complete(transferId, saved.toAbsolutePath().toString());
 
+                // Hashed while it was written → cached, no second read here
                 String json = "{"
                         + "\"status\":\"ok\","
                         + "\"merged\":true,"
-                        + "\"received\":" + totalBytes + ","
-                        + "\"resumeFrom\":0,"
+                        + "\"received\":" + Files.size(saved) + ","
+                        + "\"resumeFrom\":" + resumeOffset + ","
+                        + "\"checksum\":\"" + HashUtil.fileChecksum(saved.toFile()) + "\","
                         + "\"transferId\":\"" + escapeJson(transferId) + "\""
                         + "}";
                 resp.setStatus(HttpServletResponse.SC_OK);
@@ -149,45 +182,27 @@ public class UploadServlet extends HttpServlet {
                 // ======================
                 // CHUNK MODE
                 // ======================
-                byte[] body;
-                try (InputStream in = req.getInputStream();
-                     ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-                    byte[] buf = new byte[8192];
-                    int len;
-                    while ((len = in.read(buf)) != -1) {
-                        bos.write(buf, 0, len);
-                    }
-                    body = bos.toByteArray();
+                // Body goes straight from the socket into the .part file
+                // (AES decrypt, if enabled, happens inside ChunkUploadService)
+                String result;
+                try (InputStream in = req.getInputStream()) {
+                    result = ChunkUploadService.handleChunk(
+                            transferId,
+                            safeFileName,
+                            chunkIndex,
+                            chunkSize,
+                            chunkCount,
+                            totalBytes,
+                            in,
+                            aesPassword,
+                            chunkCrc,
+                            chunkHash
+                    );
                 }
 
-                // AES decrypt if enabled
-                if (aesPassword != null) {
-                    try {
-                        body = AesUtil.decrypt(body, aesPassword);
-                    } catch (Exception e) {
-                        LoggerUtil.error("[AES] Chunk decryption failed", e);
-                        resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                        resp.getWriter().write("{\"status\":\"error\",\"message\":\"AES decryption failed\"}");
-                        return;
-                    }
-                }
-
-                String result = ChunkUploadService.handleChunk(
-                        transferId,
-                        safeFileName,
-                        chunkIndex,
-                        totalBytes,
-                        body,
-                        aesPassword
-                );
-
-                TransferStatusRegistry.addBytes(body.length);
                 boolean merged = "MERGED".equalsIgnoreCase(result);
-                if (merged) {
-                    TransferStatusRegistry.complete(Path.of("received", safeFileName).toAbsolutePath().toString());
-                }
 
-                long receivedNow = TransferStatusRegistry.getBytesWritten();
+                long receivedNow = TransferStatusRegistry.getBytesWritten(transferId);
                 String json = "{"
                         + "\"status\":\"ok\","
                         + "\"merged\":" + merged + ","
@@ -199,9 +214,17 @@ public class UploadServlet extends HttpServlet {
                 resp.getWriter().write(json);
             }
 
+        } catch (ChunkUploadService.ChunkRejectedException ex) {
+            // Only this chunk is bad → sender retries it, transfer stays alive
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().write("{\"status\":\"rejected\","
+                    + "\"chunkIndex\":" + ex.getChunkIndex() + ","
+                    + "\"message\":\"" + escapeJson(ex.getMessage()) + "\"}");
         } catch (Exception ex) {
             LoggerUtil.error("Upload failed", ex);
-            TransferStatusRegistry.fail(ex.getMessage());
+            // Chunk mode: one failed request is not a failed transfer; the sender
+            // retries it (ChunkUploadService marks transfer-level errors itself).
+            if (!isChunkMode) TransferStatusRegistry.fail(transferId, ex.getMessage());
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             resp.getWriter().write("{\"status\":\"error\",\"message\":\"Upload failed on server\"}");
         }
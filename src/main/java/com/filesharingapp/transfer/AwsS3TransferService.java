@@ -1,5 +1,6 @@
 package com.filesharingapp.transfer;
 
+import com.filesharingapp.core.PreparePipeline;
 import com.filesharingapp.core.TransferContext;
 import com.filesharingapp.security.AesUtil;
 import com.filesharingapp.utils.AppConfig;
@@ -7,8 +8,6 @@ import com.filesharingapp.utils.HashUtil;
 import com.filesharingapp.utils.LoggerUtil;
 import com.filesharingapp.utils.ValidationUtil;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
-import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
-import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
@@ -17,20 +16,33 @@ import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * AwsS3TransferService
  * --------------------
  * Baby-English:
  * ✔ Sender side: Upload file, compute checksum, generate presigned URL.
+ * ✔ Sender side (stream): multipart upload straight from the prepare
+ *   pipe, no temp .zip; checksum is attached when the stream ends.
  * ✔ Receiver side: Download file with resume, verify checksum.
  */
-public class AwsS3TransferService implements TransferMethod {
+public class AwsS3TransferService implements TransferMethod, StreamingTransfer {
 
-    private static final int BUFFER_SIZE = 8192;
+    /** S3 needs >= 5 MB for every part except the last one. */
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    /** Size of each part when uploading a stream of unknown size. */
+    private static final int STREAM_PART_SIZE =
+            Math.max(MIN_PART_SIZE, AppConfig.getInt("aws.s3.streamPartSize", 8 * 1024 * 1024));
+
+    /** Largest object CopyObject can rewrite in one call (for the checksum metadata). */
+    private static final long MAX_COPY_BYTES = 5L * 1024 * 1024 * 1024;
     // NOTE: DEFAULT_REGION initialization is simplified here to avoid configuration complexity.
     // private static final Region DEFAULT_REGION = Region.of(AppConfig.get("aws.s3.region", "us-east-1"));
 
@@ -40,7 +52,7 @@ public class AwsS3TransferService implements TransferMethod {
 
     @Override
     public String computeChecksum(File file) throws Exception {
-        return HashUtil.sha256Hex(file);
+        return HashUtil.fileChecksum(file);
     }
 
     @Override
@@ -88,57 +100,156 @@ public class AwsS3TransferService implements TransferMethod {
 
         LoggerUtil.info("🪣 [S3] Using bucket: " + bucket + " in region: " + regionCode);
 
-        try (S3Client s3 = S3Client.builder()
-                .region(region)
-                .credentialsProvider(StaticCredentialsProvider.create(creds))
-                .build()) {
-
-            // Compute checksum
-            String sha256 = HashUtil.sha256Hex(file);
-            LoggerUtil.info("🧮 [S3] Local SHA-256: " + sha256);
-
-            String key = file.getName();
-
-            // Update TransferContext
-            TransferContext.setIncomingName(key);
-            TransferContext.setExpectedChecksum(sha256);
-            TransferContext.setActiveMethod("S3");
-            TransferContext.setEncryptionEnabled(config.getAesPassword() != null);
-
-
-            // Upload file with checksum metadata
-            PutObjectRequest putReq = PutObjectRequest.builder()
-                    .bucket(bucket)
-                    .key(key)
-                    .metadata(java.util.Map.of("sha256", sha256, "encrypted", String.valueOf(config.getAesPassword() != null)))
-                    .build();
-
-            s3.putObject(putReq, RequestBody.fromFile(file));
-            LoggerUtil.success("✅ [S3] Upload completed: s3://" + bucket + "/" + key);
-
-            // Generate presigned URL
-            try (S3Presigner presigner = S3Presigner.builder()
-                    .region(region)
-                    .credentialsProvider(StaticCredentialsProvider.create(creds))
-                    .build()) {
-
-                GetObjectRequest getReq = GetObjectRequest.builder()
-                        .bucket(bucket)
-                        .key(key)
-                        .build();
-
-                GetObjectPresignRequest presignReq = GetObjectPresignRequest.builder()
-                        .getObjectRequest(getReq)
-                        .signatureDuration(Duration.ofHours(12))
-                        .build();
-
-                String presignedUrl = presigner.presignGetObject(presignReq).url().toExternalForm();
-                LoggerUtil.success("🔗 [S3] Presigned URL (share with receiver): " + presignedUrl);
-                TransferContext.setS3DownloadLocation(presignedUrl); // Optional: Store for audit
+        S3Client s3 = S3ClientRegistry.client(region, creds);
+
+        // Compute checksum
+        String sha256 = HashUtil.fileChecksum(file);
+        LoggerUtil.info("🧮 [S3] Local SHA-256: " + sha256);
+
+        String key = file.getName();
+
+        // Update TransferContext
+        TransferContext.setIncomingName(key);
+        TransferContext.setExpectedChecksum(sha256);
+        TransferContext.setActiveMethod("S3");
+        TransferContext.setEncryptionEnabled(config.getAesPassword() != null);
+
+
+        // Upload file with checksum metadata (parallel multipart + resume for big files)
+        S3MultipartUploader.upload(s3, S3ClientRegistry.asyncClientIfEnabled(region, creds), bucket, key, file,
+                Map.of("sha256", sha256, "encrypted", String.valueOf(config.getAesPassword() != null)));
+        LoggerUtil.success("✅ [S3] Upload completed: s3://" + bucket + "/" + key);
+
+        presign(region, creds, bucket, key);
+    }
+
+    /**
+     * sendStream
+     * Baby-English:
+     * ✔ Size is not known → multipart upload: read STREAM_PART_SIZE bytes
+     *   from the pipe, upload them as one part, repeat.
+     * ✔ Zip/AES keep working while a part is on the wire.
+     * ✔ Any error → abort the upload (no half object left in the bucket).
+     * ✔ At the end: put "sha256"/"encrypted" metadata on the object by
+     *   copying it onto itself (metadata cannot be changed otherwise).
+     */
+    @Override
+    public long sendStream(String senderName, PreparePipeline.Streamed stream, TargetConfig config) throws Exception {
+        handshake(); // Check credentials
+
+        String bucket = config.getTargetHost();
+        if (ValidationUtil.validateS3Bucket(bucket) != null) {
+            throw new IllegalArgumentException("Invalid S3 bucket name.");
+        }
+
+        String regionCode = AppConfig.get("aws.s3.region", "us-east-1").trim();
+        Region region = Region.of(regionCode);
+        AwsBasicCredentials creds = AwsBasicCredentials.create(
+                AppConfig.get("aws.accessKey", "").trim(),
+                AppConfig.get("aws.secretKey", "").trim());
+        String key = stream.name;
+        boolean encrypted = config.getAesPassword() != null;
+
+        TransferContext.setIncomingName(key);
+        TransferContext.setActiveMethod("S3");
+        TransferContext.setEncryptionEnabled(encrypted);
+        LoggerUtil.info("🪣 [S3] Streaming " + key + " to bucket " + bucket + " in " + STREAM_PART_SIZE + "-byte parts");
+
+        S3Client s3 = S3ClientRegistry.client(region, creds);
+
+        long total = uploadParts(s3, bucket, key, stream, encrypted);
+
+        // Checksum is ready only now that the stream is finished
+        String sha256 = stream.checksum();
+        TransferContext.setExpectedChecksum(sha256);
+        Map<String, String> metadata = Map.of("sha256", sha256, "encrypted", String.valueOf(encrypted));
+        // (a stream smaller than one part went up as a single PUT with metadata)
+        if (total >= STREAM_PART_SIZE && total <= MAX_COPY_BYTES) {
+            s3.copyObject(CopyObjectRequest.builder()
+                    .sourceBucket(bucket).sourceKey(key)
+                    .destinationBucket(bucket).destinationKey(key)
+                    .metadata(metadata)
+                    .metadataDirective(MetadataDirective.REPLACE)
+                    .build());
+        } else if (total > MAX_COPY_BYTES) {
+            LoggerUtil.warn("⚠️ [S3] Object over 5 GB: checksum not stored as metadata (" + sha256 + ")");
+        }
+        LoggerUtil.success("✅ [S3] Stream upload completed: s3://" + bucket + "/" + key + " (" + total + " bytes)");
+
+        presign(region, creds, bucket, key);
+        return total;
+    }
+
+    /** Multipart upload of everything in the stream; returns bytes uploaded. */
+    private long uploadParts(S3Client s3, String bucket, String key,
+                             PreparePipeline.Streamed stream, boolean encrypted) throws Exception {
+        InputStream in = stream.input();
+        byte[] part = new byte[STREAM_PART_SIZE];
+        int n = in.readNBytes(part, 0, part.length);
+        if (n < part.length) {
+            // Whole stream fits in one request → plain PUT with metadata, no multipart
+            s3.putObject(PutObjectRequest.builder().bucket(bucket).key(key)
+                            .metadata(Map.of("sha256", stream.checksum(), "encrypted", String.valueOf(encrypted)))
+                            .build(),
+                    RequestBody.fromBytes(java.util.Arrays.copyOf(part, n)));
+            return n;
+        }
+
+        String uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket).key(key).build()).uploadId();
+        List<CompletedPart> done = new ArrayList<>();
+        long total = 0;
+        try {
+            int partNumber = 1;
+            while (n > 0) {
+                UploadPartResponse resp = s3.uploadPart(UploadPartRequest.builder()
+                                .bucket(bucket).key(key).uploadId(uploadId).partNumber(partNumber)
+                                .contentLength((long) n)
+                                .build(),
+                        RequestBody.fromInputStream(new java.io.ByteArrayInputStream(part, 0, n), n));
+                done.add(CompletedPart.builder().partNumber(partNumber).eTag(resp.eTag()).build());
+                total += n;
+                LoggerUtil.info("📤 [S3] Part " + partNumber + " uploaded (" + total + " bytes so far)");
+                partNumber++;
+                n = in.readNBytes(part, 0, part.length);
             }
+
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket).key(key).uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(done).build())
+                    .build());
+            return total;
+        } catch (Exception e) {
+            LoggerUtil.warn("⚠️ [S3] Stream upload failed, aborting multipart upload: " + e.getMessage());
+            try {
+                s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                        .bucket(bucket).key(key).uploadId(uploadId).build());
+            } catch (Exception abortError) {
+                LoggerUtil.warn("⚠️ [S3] Abort failed: " + abortError.getMessage());
+            }
+            throw e;
         }
     }
 
+    /** Make a 12-hour download link for the receiver. */
+    private void presign(Region region, AwsBasicCredentials creds, String bucket, String key) {
+        S3Presigner presigner = S3ClientRegistry.presigner(region, creds);
+
+        GetObjectRequest getReq = GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .build();
+
+        GetObjectPresignRequest presignReq = GetObjectPresignRequest.builder()
+                .getObjectRequest(getReq)
+                .signatureDuration(Duration.ofHours(12))
+                .build();
+
+        String presignedUrl = presigner.presignGetObject(presignReq).url().toExternalForm();
+        LoggerUtil.success("🔗 [S3] Presigned URL (share with receiver): " + presignedUrl);
+        TransferContext.setS3DownloadLocation(presignedUrl); // Optional: Store for audit
+    }
+
     @Override
     public void receive(String savePath) throws Exception {
         if (ValidationUtil.validateFolder(savePath) != null) {
@@ -162,86 +273,57 @@ public class AwsS3TransferService implements TransferMethod {
 
         File localFile = new File(savePath, key);
 
-        try (S3Client s3 = S3Client.builder()
-                .region(region)
-                .credentialsProvider(StaticCredentialsProvider.create(creds))
-                .build()) {
+        S3Client s3 = S3ClientRegistry.client(region, creds);
 
-            HeadObjectResponse headResp = s3.headObject(HeadObjectRequest.builder()
-                    .bucket(bucket)
-                    .key(key)
-                    .build());
-
-            long remoteSize = headResp.contentLength();
-            String remoteSha = headResp.metadata().get("sha256");
-            boolean encrypted = Boolean.parseBoolean(headResp.metadata().get("encrypted"));
-
-            long localSize = localFile.exists() ? localFile.length() : 0L;
-            boolean resume = localFile.exists() && localSize > 0 && localSize < remoteSize;
-
-            String rangeHeader = resume ? "bytes=" + localSize + "-" : null;
-            LoggerUtil.info(resume ? "🔁 [S3] Resuming download from " + localSize : "⬇️ [S3] Starting full download");
-
-            GetObjectRequest.Builder getReqBuilder = GetObjectRequest.builder()
-                    .bucket(bucket)
-                    .key(key);
-            if (rangeHeader != null) getReqBuilder.range(rangeHeader);
-
-            try (ResponseInputStream<GetObjectResponse> s3Stream = s3.getObject(getReqBuilder.build());
-                 FileOutputStream fos = new FileOutputStream(localFile, resume)) {
-
-                byte[] buffer = new byte[BUFFER_SIZE];
-                int read;
-                long downloaded = localSize;
-
-                while ((read = s3Stream.read(buffer)) != -1) {
-                    fos.write(buffer, 0, read);
-                    downloaded += read;
-                    // TODO: Update TransferStatusRegistry.addBytes(read);
-                    if (remoteSize > 0 && downloaded % (1024 * 1024) < BUFFER_SIZE) {
-                        int percent = (int) ((downloaded * 100) / remoteSize);
-                        LoggerUtil.info("📥 [S3] Progress: " + percent + "%");
-                    }
-                }
-            }
+        HeadObjectResponse headResp = s3.headObject(HeadObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .build());
 
-            LoggerUtil.success("✅ [S3] Download complete: " + localFile.getAbsolutePath());
+        long remoteSize = headResp.contentLength();
+        String remoteSha = headResp.metadata().get("sha256");
+        boolean encrypted = Boolean.parseBoolean(headResp.metadata().get("encrypted"));
 
-            // Verification and Decryption logic
-            verifyAndDecryptFile(localFile, remoteSha, encrypted);
+        String aesPassword = encrypted ? TransferContext.getAesKeyFingerprint() : null;
+        if (encrypted && aesPassword == null) {
+            LoggerUtil.error("❌ [S3] File is encrypted but no AES password available.");
+        }
+        boolean decrypt = aesPassword != null;
+        File decryptedFile = ReceiveSink.decryptedFileFor(localFile);
+        if (decrypt) LoggerUtil.info("🔐 [S3] Decrypting while downloading...");
+
+        // Parallel ranged GETs (resume from the .segments sidecar); bytes are
+        // hashed and decrypted in order as they arrive, no second pass
+        ReceiveSink sink = ReceiveSink.open(null, decryptedFile,
+                decrypt ? AesUtil.buildKeyFromPassword(aesPassword) : null);
+        try {
+            S3RangedDownloader.download(s3, bucket, key, localFile, remoteSize, headResp.eTag(), sink.input());
+            sink.finish();
+        } catch (Exception e) {
+            sink.abort(e);
+            throw e;
         }
-    }
 
-    /**
-     * Common verification and decryption logic for receiver side.
-     */
-    private void verifyAndDecryptFile(File targetFile, String remoteSha, boolean encrypted) throws Exception {
-
-        // 1. AES decrypt if enabled
-        if (encrypted) {
-            String aesPassword = TransferContext.getAesKeyFingerprint();
-            if (aesPassword == null) {
-                LoggerUtil.error("❌ [S3] File is encrypted but no AES password available.");
-                return;
+        LoggerUtil.success("✅ [S3] Download complete: " + localFile.getAbsolutePath());
+
+        if (decrypt) {
+            Files.deleteIfExists(localFile.toPath());
+            if (!localFile.getName().endsWith(".enc")) {
+                // Key had no ".enc" → plain bytes take over the downloaded name
+                Files.move(decryptedFile.toPath(), localFile.toPath());
+                decryptedFile = localFile;
             }
-            LoggerUtil.info("🔐 [S3] Decrypting file...");
-            // Use decrypted file for checksum
-            File decryptedFile = new File(targetFile.getAbsolutePath().replace(".enc", ""));
-            AesUtil.decryptFile(targetFile, decryptedFile, AesUtil.buildKeyFromPassword(aesPassword));
-            Files.deleteIfExists(targetFile.toPath());
-            targetFile = decryptedFile;
-            LoggerUtil.success("✅ [S3] File decrypted: " + targetFile.getName());
+            LoggerUtil.success("✅ [S3] File decrypted: " + decryptedFile.getName());
+        } else if (encrypted) {
+            return; // cannot check a checksum of the plain file
         }
 
-        // 2. Verify checksum
         if (remoteSha != null && !remoteSha.isBlank()) {
-            String localSha = HashUtil.sha256Hex(targetFile);
-            if (remoteSha.equalsIgnoreCase(localSha)) {
+            if (sink.matches(remoteSha)) {
                 LoggerUtil.success("🔒 [S3] Checksum OK");
             } else {
-                // Fix was likely here, ensuring the string concatenation is correct
-                LoggerUtil.error("❌ [S3] Checksum mismatch! Remote=" + remoteSha + ", Local=" + localSha);
+                LoggerUtil.error("❌ [S3] Checksum mismatch! Remote=" + remoteSha + ", Local=" + sink.checksum());
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,122 @@
+package com.filesharingapp.transfer;
+
+import java.util.Locale;
+
+/**
+ * ChunkSizeController
+ * -------------------
+ * Baby-English:
+ * ✔ Picks how big the next upload request is and how many may be in
+ *   flight at once, from what the last requests measured.
+ * ✔ Request size = N × unit. The unit is the server's bitmap chunk and
+ *   never changes; only N moves.
+ * ✔ AIMD (like TCP):
+ *     - a request answered faster than the RTT target → N + 1
+ *     - slower than 2 × target → N / 2
+ *     - a whole window of answers gave more goodput (bytes/second)
+ *       than the window before → window + 1
+ *     - goodput fell hard, or a request failed → window / 2 (and N / 2)
+ * ✔ Starts small (1 unit, window 1): a far link never pays for a huge
+ *   retry, a LAN grows to the max within a few dozen requests.
+ * ✔ Thread-safe: workers report, the dispatcher asks.
+ */
+public final class ChunkSizeController {
+
+    private final int unitSize;
+    private final int maxUnits;
+    private final int maxWindow;
+    private final long targetRttNanos;
+    private final boolean adaptive;
+
+    private int units = 1;
+    private int window = 1;
+
+    // Goodput of the current window ("round") and the one before
+    private long roundStart = System.nanoTime();
+    private long roundBytes;
+    private int roundAcks;
+    private double lastGoodput;
+
+    // Smoothed RTT for logs
+    private double avgRttMs;
+
+    /**
+     * @param unitSize     server bitmap chunk size (bytes)
+     * @param maxBytes     biggest request body we want (rounded down to units)
+     * @param maxWindow    most requests in flight at once
+     * @param targetRttMs  a request should take about this long
+     * @param adaptive     false → fixed: 1 unit, window = maxWindow (old behaviour)
+     */
+    public ChunkSizeController(int unitSize, long maxBytes, int maxWindow, long targetRttMs, boolean adaptive) {
+        this.unitSize = unitSize;
+        this.maxUnits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / unitSize));
+        this.maxWindow = Math.max(1, maxWindow);
+        this.targetRttNanos = Math.max(1, targetRttMs) * 1_000_000L;
+        this.adaptive = adaptive;
+        if (!adaptive) this.window = this.maxWindow;
+    }
+
+    public int getUnitSize() {
+        return unitSize;
+    }
+
+    public int getMaxWindow() {
+        return maxWindow;
+    }
+
+    /** Units for the next request (caller may send fewer at the end of a run). */
+    public synchronized int nextUnits() {
+        return units;
+    }
+
+    /** Requests allowed in flight right now. */
+    public synchronized int window() {
+        return window;
+    }
+
+    /** A request of "bytes" got its OK after "rttNanos". */
+    public synchronized void onSuccess(long bytes, long rttNanos) {
+        double rttMs = rttNanos / 1_000_000.0;
+        avgRttMs = (avgRttMs == 0) ? rttMs : avgRttMs * 0.8 + rttMs * 0.2;
+        if (!adaptive) return;
+
+        // Size: keep each request near the RTT target
+        if (rttNanos < targetRttNanos) {
+            units = Math.min(maxUnits, units + 1);
+        } else if (rttNanos > 2 * targetRttNanos) {
+            units = Math.max(1, units / 2);
+        }
+
+        // Window: one step per round of "window" answers
+        roundBytes += bytes;
+        if (++roundAcks < window) return;
+
+        long now = System.nanoTime();
+        double goodput = roundBytes / Math.max(1e-9, (now - roundStart) / 1e9);
+        if (goodput > lastGoodput * 1.05) {
+            window = Math.min(maxWindow, window + 1);
+        } else if (goodput < lastGoodput * 0.5) {
+            window = Math.max(1, window / 2);
+        }
+        lastGoodput = goodput;
+        roundStart = now;
+        roundBytes = 0;
+        roundAcks = 0;
+    }
+
+    /** A request failed (timeout, rejected, connection error). */
+    public synchronized void onFailure() {
+        if (!adaptive) return;
+        units = Math.max(1, units / 2);
+        window = Math.max(1, window / 2);
+        roundStart = System.nanoTime();
+        roundBytes = 0;
+        roundAcks = 0;
+    }
+
+    /** "chunk 2048 KB × 3 in flight, rtt 180 ms, 21.4 MB/s" for progress logs. */
+    public synchronized String describe() {
+        return String.format(Locale.ROOT, "chunk %d KB × %d in flight, rtt %.0f ms, %.1f MB/s",
+                (long) units * unitSize / 1024, window, avgRttMs, lastGoodput / (1024 * 1024));
+    }
+}
@@ -1,15 +1,34 @@
 package com.filesharingapp.transfer;
 
 import com.filesharingapp.security.AesUtil;
+import com.filesharingapp.utils.AppConfig;
 import com.filesharingapp.utils.HashUtil;
 import com.filesharingapp.utils.LoggerUtil;
 import com.filesharingapp.utils.RetryUtil;
+import org.json.JSONArray;
+import org.json.JSONObject;
 
+import javax.crypto.SecretKey;
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URI;
 import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32C;
 
 /**
  * HttpTransferHandler
@@ -17,26 +36,60 @@ import java.nio.charset.StandardCharsets;
  * Baby-English:
  *   ✔ This class does the "hard work" of sending bytes over HTTP.
  *   ✔ Supports:
- *       - Resume (ask server how many bytes it has)
- *       - Chunked mode (optional)
+ *       - Resume (ask /missing which chunks the server still needs)
+ *       - Chunked mode (every chunk lands at its own offset)
+ *       - Parallel mode (N connections at once, each chunk retried alone)
  *       - AES encryption before upload
  *       - Retry with backoff
  *       - Checksum validation after upload
+ *       - Stream mode: one POST of unknown length, fed while zip/AES run
+ *   ✔ All requests go through SharedHttpClient: chunks on its HTTP/1.1
+ *     upload client (one connection per worker), the rest on HTTP/2.
  */
 public final class HttpTransferHandler {
 
+    /** Bitmap unit on the server; requests carry 1..N of these. */
     private static final int CHUNK_SIZE = 256 * 1024; // 256 KB
-    private static final int CONNECT_TIMEOUT_MS = 5000;
-    private static final int READ_TIMEOUT_MS = 15000;
+
+    /**
+     * How many chunks are in flight at once.
+     * Baby-English: one TCP flow is slow on far links, several fill the pipe.
+     */
+    private static final int PARALLELISM = Math.max(1, AppConfig.getInt("http.upload.parallelism", 4));
+    private static final int CHUNK_RETRIES = Math.max(1, AppConfig.getInt("http.upload.chunkRetries", 3));
+    private static final long CHUNK_RETRY_DELAY_MS = 500;
+
+    /**
+     * Also send SHA-256 (leaf form) of every unit so the server checks it on arrival.
+     * Off by default: X-Chunk-CRC32C already catches wire damage, and these
+     * hashes are per upload unit, not the leaves of the checksum tree.
+     */
+    private static final boolean VERIFY_CHUNKS = AppConfig.getBoolean("http.upload.verifyChunks", false);
+
+    /**
+     * Adaptive request size (AIMD on RTT + goodput).
+     * Baby-English: LAN → big requests, far or lossy link → small ones.
+     */
+    private static final boolean ADAPTIVE = AppConfig.getBoolean("http.upload.adaptive", true);
+    private static final long MAX_REQUEST_BYTES = AppConfig.getLong("http.upload.maxChunkBytes", 8L * 1024 * 1024);
+    private static final long TARGET_RTT_MS = AppConfig.getLong("http.upload.targetRttMs", 1000);
+
+    /** Leaf hashes ride in one header → at most this many per request (~4 KB). */
+    private static final int MAX_UNITS_PER_REQUEST = 64;
 
     private HttpTransferHandler() {}
 
     /**
      * uploadWithResume
      * Baby-English:
-     *   ✔ Ask /status for resume offset.
-     *   ✔ Encrypt file if AES enabled.
-     *   ✔ Send remaining bytes to /upload.
+     *   ✔ Ask /missing which chunks are still needed.
+     *   ✔ Encrypt each chunk if AES enabled (one key for the whole
+     *     upload, wiped when it ends – success or not).
+     *   ✔ Send only those chunks to /upload; ChunkSizeController decides
+     *     how many chunks go in one request and how many requests are in
+     *     flight (up to "http.upload.parallelism"), from measured RTT and
+     *     goodput. Each request has its own small retry loop.
+     *   ✔ If a chunk still fails, the whole upload is retried (asks again).
      *   ✔ Verify checksum after upload.
      *
      * @param file       File to upload
@@ -60,15 +113,23 @@ public final class HttpTransferHandler {
             throw new IllegalArgumentException("transferId cannot be empty");
         }
 
-        boolean ok = RetryUtil.runWithRetry(() -> {
-            try {
-                doUploadOnce(file, transferId, checksum, host, port, aesPassword);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-        }, 3, 2000);
+        // What the size controller learned about the link survives retries
+        AtomicReference<ChunkSizeController> controllers = new AtomicReference<>();
+        SecretKey aesKey = (aesPassword != null) ? AesUtil.buildKeyFromPassword(aesPassword) : null;
 
-        if (!ok) throw new IllegalStateException("HTTP upload failed after retries");
+        try {
+            boolean ok = RetryUtil.runWithRetry(() -> {
+                try {
+                    doUploadOnce(file, transferId, checksum, host, port, aesKey, controllers);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }, 3, 2000);
+
+            if (!ok) throw new IllegalStateException("HTTP upload failed after retries");
+        } finally {
+            AesUtil.destroyKey(aesKey);
+        }
     }
 
     private static void doUploadOnce(File file,
@@ -76,115 +137,328 @@ public final class HttpTransferHandler {
                                      String checksum,
                                      String host,
                                      int port,
-                                     String aesPassword) throws Exception {
+                                     SecretKey aesKey,
+                                     AtomicReference<ChunkSizeController> controllers) throws Exception {
 
         long fileSize = file.length();
-        long resumeFrom = queryResumeOffset(transferId, host, port);
-        if (resumeFrom < 0 || resumeFrom > fileSize) resumeFrom = 0;
-
-        LoggerUtil.info("🌐 [HTTP] File size=" + fileSize + ", resumeFrom=" + resumeFrom);
-
-        String uploadUrl = "http://" + host + ":" + port + "/upload";
-        HttpURLConnection conn = (HttpURLConnection) new URL(uploadUrl).openConnection();
-        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
-        conn.setReadTimeout(READ_TIMEOUT_MS);
-        conn.setDoOutput(true);
-        conn.setRequestMethod("POST");
-
-        // Headers
-        conn.setRequestProperty("X-Transfer-Id", transferId);
-        conn.setRequestProperty("X-File-Name", file.getName());
-        conn.setRequestProperty("X-Total-Bytes", String.valueOf(fileSize));
-        conn.setRequestProperty("X-Resume-Offset", String.valueOf(resumeFrom));
-        if (checksum != null && !checksum.isBlank()) conn.setRequestProperty("X-Checksum", checksum);
-        if (aesPassword != null) conn.setRequestProperty("X-AES-Password", "true");
-
-        conn.setChunkedStreamingMode(CHUNK_SIZE);
-
-        long sent = resumeFrom;
-
-        try (FileInputStream fis = new FileInputStream(file);
-             OutputStream rawOut = conn.getOutputStream();
-             BufferedOutputStream out = new BufferedOutputStream(rawOut)) {
-
-            // Skip already uploaded part
-            long skipped = fis.skip(resumeFrom);
-            if (skipped < resumeFrom) {
-                LoggerUtil.warn("⚠️ Could not skip resume offset. Restarting from 0.");
-                fis.getChannel().position(0);
-                sent = 0;
-            }
+        MissingChunks missing = queryMissingChunks(transferId, host, port);
 
-            byte[] buffer = new byte[CHUNK_SIZE];
-            int read;
-            long lastLogTime = System.currentTimeMillis();
+        if (missing.completed) {
+            LoggerUtil.success("✅ Server already has the whole file for " + transferId);
+            verifyChecksumAfterUpload(transferId, host, port, checksum);
+            return;
+        }
 
-            while ((read = fis.read(buffer)) != -1) {
-                byte[] toSend = buffer;
-                int len = read;
+        // Resume must use the chunk size (bitmap unit) the server already started with
+        int chunkSize = (missing.chunkSize > 0) ? (int) missing.chunkSize : CHUNK_SIZE;
+        int totalChunks = (int) Math.max(1L, (fileSize + chunkSize - 1) / chunkSize);
+        List<int[]> toSend = (missing.ranges != null)
+                ? missing.ranges
+                : List.of(new int[]{0, totalChunks});
 
-                // AES encrypt if enabled
-                if (aesPassword != null) {
-                    byte[] chunk = new byte[read];
-                    System.arraycopy(buffer, 0, chunk, 0, read);
-                    toSend = AesUtil.encryptChunk(chunk, aesPassword); // Implement encryptChunk in AesUtil
-                    len = toSend.length;
-                }
+        long pendingBytes = 0;
+        for (int[] r : toSend) {
+            long from = (long) r[0] * chunkSize;
+            long to = Math.min((long) Math.min(r[1], totalChunks) * chunkSize, fileSize);
+            pendingBytes += Math.max(0L, to - from);
+        }
 
-                out.write(toSend, 0, len);
-                sent += read;
+        ChunkSizeController control = controllers.get();
+        if (control == null || control.getUnitSize() != chunkSize) {
+            control = new ChunkSizeController(chunkSize, maxRequestBytes(chunkSize), PARALLELISM,
+                    TARGET_RTT_MS, ADAPTIVE);
+            controllers.set(control);
+        }
+        final ChunkSizeController sizer = control;
+
+        LoggerUtil.info("🌐 [HTTP] File size=" + fileSize + ", sending " + pendingBytes + " bytes of "
+                + totalChunks + " chunks (unit " + chunkSize + " bytes"
+                + (ADAPTIVE ? ", adaptive up to " + maxRequestBytes(chunkSize) + " per request)" : ")"));
+
+        AtomicInteger threadNo = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(sizer.getMaxWindow(), r -> {
+            Thread t = new Thread(r, "http-upload-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        ExecutorCompletionService<Boolean> results = new ExecutorCompletionService<>(pool);
+
+        // One buffer per worker thread, grown to the biggest request it sent
+        ThreadLocal<byte[][]> buffers = ThreadLocal.withInitial(() -> new byte[1][0]);
+        AtomicBoolean cancel = new AtomicBoolean(false);
+        AtomicLong sentBytes = new AtomicLong();
+        AtomicLong lastLogTime = new AtomicLong(System.currentTimeMillis());
+        AtomicReference<String> lastReply = new AtomicReference<>("");
+        final long totalPending = pendingBytes;
+
+        int failed = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // Dispatcher: cut each missing run into requests of the size the
+            // controller asks for right now; never more in flight than its window
+            int inFlight = 0;
+            for (int[] range : toSend) {
+                int index = range[0];
+                int runEnd = Math.min(range[1], totalChunks);
+                while (index < runEnd && !cancel.get()) {
+                    while (inFlight >= sizer.window()) {
+                        inFlight--;
+                        if (!results.take().get()) failed++;
+                    }
+                    final int first = index;
+                    final int count = Math.min(sizer.nextUnits(), runEnd - index);
+                    index += count;
+                    inFlight++;
+
+                    results.submit(() -> {
+                        long offset = (long) first * chunkSize;
+                        int len = (int) Math.min((long) count * chunkSize, fileSize - offset);
+                        // Per-request retry; a request that keeps failing stops the others
+                        boolean ok = RetryUtil.runWithRetryAndBackoff(() -> {
+                            long started = System.nanoTime();
+                            try {
+                                byte[][] holder = buffers.get();
+                                if (holder[0].length < len) holder[0] = new byte[len];
+                                readChunk(channel, holder[0], len, offset);
+                                String hashes = VERIFY_CHUNKS ? leafHashes(holder[0], len, chunkSize) : null;
+                                lastReply.set(sendChunk(file.getName(), transferId, checksum, host, port,
+                                        aesKey, first, count, chunkSize, fileSize, holder[0], len, hashes));
+                                sizer.onSuccess(len, System.nanoTime() - started);
+                            } catch (Exception e) {
+                                sizer.onFailure();
+                                throw new RuntimeException(e);
+                            }
+                        }, CHUNK_RETRIES, CHUNK_RETRY_DELAY_MS, cancel);
+                        if (!ok) {
+                            cancel.set(true);
+                            return false;
+                        }
 
-                long now = System.currentTimeMillis();
-                if (now - lastLogTime > 1000) {
-                    int percent = (int) ((sent * 100) / fileSize);
-                    LoggerUtil.info("📤 [HTTP] Progress: " + percent + "% (" + sent + "/" + fileSize + ")");
-                    lastLogTime = now;
+                        long done = sentBytes.addAndGet(len);
+                        long now = System.currentTimeMillis();
+                        long last = lastLogTime.get();
+                        if (now - last > 1000 && lastLogTime.compareAndSet(last, now)) {
+                            int percent = (int) ((done * 100L) / Math.max(totalPending, 1));
+                            LoggerUtil.info("📤 [HTTP] Progress: " + percent + "% (" + done + "/" + totalPending
+                                    + " bytes, " + sizer.describe() + ")");
+                        }
+                        return true;
+                    });
                 }
             }
-            out.flush();
+            while (inFlight > 0) {
+                inFlight--;
+                if (!results.take().get()) failed++;
+            }
+            if (failed > 0) {
+                throw new IllegalStateException(failed + " request(s) not sent after " + CHUNK_RETRIES + " tries");
+            }
+        } finally {
+            pool.shutdownNow();
         }
 
-        int code = conn.getResponseCode();
-        String responseText;
-        try (InputStream is = (code >= 200 && code < 300) ? conn.getInputStream() : conn.getErrorStream()) {
-            responseText = (is != null) ? new String(is.readAllBytes(), StandardCharsets.UTF_8) : "";
-        } finally {
-            conn.disconnect();
+        LoggerUtil.info("📏 [HTTP] Settled at " + sizer.describe());
+        LoggerUtil.success("✅ Upload finished. Server replied: " + lastReply.get());
+        verifyChecksumAfterUpload(transferId, host, port, checksum);
+    }
+
+    /** Biggest request body for this unit size (whole units, header-safe). */
+    private static long maxRequestBytes(int unitSize) {
+        long units = Math.max(1L, Math.min(MAX_REQUEST_BYTES / unitSize, MAX_UNITS_PER_REQUEST));
+        return units * unitSize;
+    }
+
+    /** SHA-256(0x00 + piece) of every chunkSize piece of data[0..len), comma separated. */
+    private static String leafHashes(byte[] data, int len, int chunkSize) {
+        StringBuilder sb = new StringBuilder(((len + chunkSize - 1) / chunkSize) * 65);
+        for (int off = 0; off < len; off += chunkSize) {
+            MessageDigest leaf = HashUtil.newLeafDigest();
+            leaf.update(data, off, Math.min(chunkSize, len - off));
+            if (sb.length() > 0) sb.append(',');
+            sb.append(HashUtil.toHex(leaf.digest()));
         }
+        return sb.toString();
+    }
 
-        if (code >= 200 && code < 300) {
-            LoggerUtil.success("✅ Upload finished. Server replied: " + responseText);
-            verifyChecksumAfterUpload(transferId, host, port, checksum);
-        } else {
-            LoggerUtil.error("❌ Upload failed: HTTP " + code + " → " + responseText);
-            throw new IllegalStateException("Upload failed with status " + code);
+    /** Positional read – safe to call from many threads on one channel. */
+    private static void readChunk(FileChannel channel, byte[] buffer, int len, long offset) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(buffer, 0, len);
+        long pos = offset;
+        while (bb.hasRemaining()) {
+            int n = channel.read(bb, pos);
+            if (n < 0) throw new EOFException("File shrank while uploading (offset " + pos + ")");
+            pos += n;
+        }
+    }
+
+    /**
+     * sendChunk
+     * Baby-English:
+     *   ✔ POST chunkCount chunks in a row to /upload in chunk mode.
+     *   ✔ Server writes them at chunkIndex * chunkSize, so order does not matter.
+     *   ✔ chunkSize is always the bitmap unit, never the request size.
+     *   ✔ X-Chunk-CRC32C (always, over the exact body bytes) lets the
+     *     server reject a damaged chunk at once; only that chunk is retried.
+     *   ✔ leafHashes (only with http.upload.verifyChunks, one per chunk)
+     *     do the same with SHA-256 on the plain data.
+     *
+     * @return server reply text
+     */
+    private static String sendChunk(String fileName,
+                                    String transferId,
+                                    String checksum,
+                                    String host,
+                                    int port,
+                                    SecretKey aesKey,
+                                    int chunkIndex,
+                                    int chunkCount,
+                                    int chunkSize,
+                                    long fileSize,
+                                    byte[] data,
+                                    int len,
+                                    String leafHashes) throws Exception {
+
+        String uploadUrl = "http://" + host + ":" + port + "/upload"
+                + "?transferId=" + URLEncoder.encode(transferId, StandardCharsets.UTF_8)
+                + "&fileName=" + URLEncoder.encode(fileName, StandardCharsets.UTF_8)
+                + "&chunkIndex=" + chunkIndex
+                + "&chunkCount=" + chunkCount
+                + "&chunkSize=" + chunkSize
+                + "&totalBytes=" + fileSize;
+
+        byte[] body = data;
+        int bodyLen = len;
+        if (aesKey != null) {
+            body = AesUtil.encryptChunk(data, 0, len, aesKey); // IV + CBC data
+            bodyLen = body.length;
+        }
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(uploadUrl))
+                .timeout(SharedHttpClient.requestTimeout())
+                .header("Content-Type", "application/octet-stream")
+                .header("X-Chunk-CRC32C", crc32cHex(body, bodyLen))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body, 0, bodyLen));
+        if (checksum != null && !checksum.isBlank()) request.header("X-Checksum", checksum);
+        if (aesKey != null) request.header("X-AES-Password", "true");
+        if (leafHashes != null) request.header("X-Chunk-SHA256", leafHashes);
+
+        HttpResponse<String> response = SharedHttpClient.sendUpload(request.build());
+        int code = response.statusCode();
+        String responseText = response.body();
+
+        if (code < 200 || code >= 300) {
+            LoggerUtil.error("❌ Chunk " + chunkIndex + " failed: HTTP " + code + " → " + responseText);
+            throw new IllegalStateException("Chunk " + chunkIndex + " failed with status " + code);
+        }
+        return responseText;
+    }
+
+    /** CRC32C (hardware-accelerated in the JDK) as 8 hex digits. */
+    private static String crc32cHex(byte[] data, int len) {
+        CRC32C crc = new CRC32C();
+        crc.update(data, 0, len);
+        return String.format("%08x", crc.getValue());
+    }
+
+    /**
+     * uploadStream
+     * Baby-English:
+     *   ✔ ONE POST to /upload in stream mode (no chunkIndex), size not
+     *     known (chunked encoding on HTTP/1.1, plain DATA frames on HTTP/2).
+     *   ✔ Bytes go out as soon as the prepare stage makes them.
+     *   ✔ No resume: the stream cannot be rewound. A broken link means
+     *     "start again" (or turn streaming off for huge files).
+     *
+     * @return server reply (has "received" and "checksum")
+     */
+    public static JSONObject uploadStream(InputStream body, String fileName, String transferId,
+                                          String host, int port) throws IOException {
+        String uploadUrl = "http://" + host + ":" + port + "/upload"
+                + "?transferId=" + URLEncoder.encode(transferId, StandardCharsets.UTF_8)
+                + "&fileName=" + URLEncoder.encode(fileName, StandardCharsets.UTF_8)
+                + "&totalBytes=-1";
+
+        // Counts + logs while the client pulls the body (no overall timeout: size unknown)
+        AtomicLong sent = new AtomicLong();
+        InputStream counted = new FilterInputStream(body) {
+            private long lastLog = System.currentTimeMillis();
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    long total = sent.addAndGet(n);
+                    if (System.currentTimeMillis() - lastLog > 1000) {
+                        lastLog = System.currentTimeMillis();
+                        LoggerUtil.info("📤 [HTTP] Streamed " + total + " bytes so far");
+                    }
+                }
+                return n;
+            }
+        };
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(uploadUrl))
+                .header("Content-Type", "application/octet-stream")
+                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> counted))
+                .build();
+
+        HttpResponse<String> response = SharedHttpClient.send(request);
+        int code = response.statusCode();
+        String responseText = response.body();
+        if (code < 200 || code >= 300) {
+            throw new IOException("Stream upload failed with status " + code + ": " + responseText);
         }
+
+        LoggerUtil.success("✅ Stream upload finished (" + sent.get() + " bytes, " + response.version()
+                + "). Server replied: " + responseText);
+        return new JSONObject(responseText);
     }
 
-    private static long queryResumeOffset(String transferId, String host, int port) {
+    /**
+     * What /missing told us.
+     * Baby-English: ranges == null → server knows nothing → send all chunks.
+     */
+    private static final class MissingChunks {
+        boolean completed;
+        long chunkSize;
+        List<int[]> ranges;
+    }
+
+    /**
+     * queryMissingChunks
+     * Baby-English:
+     *   ✔ Ask /missing which chunks the server still needs.
+     *   ✔ Any problem → treat as "server has nothing" (safe: chunks are
+     *     written by index, so a resend never corrupts the file).
+     */
+    private static MissingChunks queryMissingChunks(String transferId, String host, int port) {
+        MissingChunks result = new MissingChunks();
         try {
-            String statusUrl = "http://" + host + ":" + port + "/status?transferId=" +
+            String missingUrl = "http://" + host + ":" + port + "/missing?transferId=" +
                     URLEncoder.encode(transferId, StandardCharsets.UTF_8);
-            HttpURLConnection conn = (HttpURLConnection) new URL(statusUrl).openConnection();
-            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
-            conn.setReadTimeout(READ_TIMEOUT_MS);
-            conn.setRequestMethod("GET");
-
-            if (conn.getResponseCode() != 200) return 0L;
-            String json;
-            try (InputStream is = conn.getInputStream()) {
-                json = new String(is.readAllBytes(), StandardCharsets.UTF_8);
-            } finally {
-                conn.disconnect();
-            }
+            HttpResponse<String> response = SharedHttpClient.send(HttpRequest.newBuilder(URI.create(missingUrl))
+                    .timeout(SharedHttpClient.requestTimeout())
+                    .GET()
+                    .build());
 
-            long result = extractLongField(json, "bytesWritten");
-            if (result < 0) result = extractLongField(json, "receivedBytes");
-            return Math.max(result, 0);
+            if (response.statusCode() != 200) return result;
+            JSONObject obj = new JSONObject(response.body());
+            String state = obj.optString("state", "UNKNOWN");
+            if ("COMPLETED".equals(state)) {
+                result.completed = true;
+            } else if ("IN_PROGRESS".equals(state)) {
+                result.chunkSize = obj.optLong("chunkSize", 0L);
+                JSONArray arr = obj.getJSONArray("missingChunks");
+                List<int[]> ranges = new ArrayList<>(arr.length());
+                for (int i = 0; i < arr.length(); i++) {
+                    JSONArray pair = arr.getJSONArray(i);
+                    ranges.add(new int[]{pair.getInt(0), pair.getInt(1)});
+                }
+                result.ranges = ranges;
+            }
         } catch (Exception e) {
-            LoggerUtil.warn("⚠️ Could not query resume offset: " + e.getMessage());
-            return 0L;
+            LoggerUtil.warn("⚠️ Could not query missing chunks: " + e.getMessage());
         }
+        return result;
     }
 
     private static void verifyChecksumAfterUpload(String transferId, String host, int port, String expectedChecksum) {
@@ -192,16 +466,13 @@ public final class HttpTransferHandler {
         try {
             String statusUrl = "http://" + host + ":" + port + "/status?transferId=" +
                     URLEncoder.encode(transferId, StandardCharsets.UTF_8);
-            HttpURLConnection conn = (HttpURLConnection) new URL(statusUrl).openConnection();
-            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
-            conn.setReadTimeout(READ_TIMEOUT_MS);
-            conn.setRequestMethod("GET");
-
-            if (conn.getResponseCode() == 200) {
-                String json;
-                try (InputStream is = conn.getInputStream()) {
-                    json = new String(is.readAllBytes(), StandardCharsets.UTF_8);
-                }
+            HttpResponse<String> response = SharedHttpClient.send(HttpRequest.newBuilder(URI.create(statusUrl))
+                    .timeout(SharedHttpClient.requestTimeout())
+                    .GET()
+                    .build());
+
+            if (response.statusCode() == 200) {
+                String json = response.body();
                 if (json.contains(expectedChecksum)) {
                     LoggerUtil.success("🔒 Checksum verified successfully.");
                 } else {
@@ -212,19 +483,4 @@ public final class HttpTransferHandler {
             LoggerUtil.warn("⚠️ Could not verify checksum: " + e.getMessage());
         }
     }
-
-    private static long extractLongField(String json, String fieldName) {
-        if (json == null || json.isBlank()) return -1L;
-        try {
-            String key = "\"" + fieldName + "\":";
-            int idx = json.indexOf(key);
-            if (idx < 0) return -1L;
-            int start = idx + key.length();
-            int end = start;
-            while (end < json.length() && Character.isDigit(json.charAt(end))) end++;
-            return Long.parseLong(json.substring(start, end));
-        } catch (Exception e) {
-            return -1L;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package com.filesharingapp.transfer;
 
+import com.filesharingapp.core.PreparePipeline;
 import com.filesharingapp.core.TransferContext;
 import com.filesharingapp.security.AesUtil;
 import com.filesharingapp.utils.HashUtil;
@@ -7,9 +8,11 @@ import com.filesharingapp.utils.LoggerUtil;
 import com.filesharingapp.utils.NetworkUtil;
 import com.filesharingapp.utils.ValidationUtil;
 import com.filesharingapp.utils.ZipUtil; // Import ZipUtil
+import org.json.JSONObject;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -18,8 +21,9 @@ import java.nio.file.Path;
  * -------------------
  * Baby-English:
  * ✔ High-level HTTP helper for Sender + Receiver.
+ * ✔ Can also send a prepare stream (zip/AES still running) in one POST.
  */
-public class HttpTransferService implements TransferMethod {
+public class HttpTransferService implements TransferMethod, StreamingTransfer {
 
     private static final Path RECEIVED_DIR = Path.of("received");
 
@@ -29,7 +33,7 @@ public class HttpTransferService implements TransferMethod {
 
     @Override
     public String computeChecksum(File file) throws Exception {
-        return HashUtil.sha256Hex(file);
+        return HashUtil.fileChecksum(file);
     }
 
     @Override
@@ -72,7 +76,7 @@ public class HttpTransferService implements TransferMethod {
         LoggerUtil.info("🌐 [HTTP] Preparing upload to " + host + ":" + effectivePort);
 
         // Compute checksum
-        String checksum = HashUtil.sha256Hex(finalFile);
+        String checksum = HashUtil.fileChecksum(finalFile);
         LoggerUtil.info("🧮 [HTTP] SHA-256 checksum: " + checksum);
 
         // Build transferId
@@ -91,6 +95,43 @@ public class HttpTransferService implements TransferMethod {
         LoggerUtil.success("🎉 [HTTP] Sender finished HTTP transfer for file: " + finalFile.getName());
     }
 
+    /**
+     * sendStream
+     * Baby-English:
+     * ✔ Upload while zip/AES are still making the bytes (no temp .zip).
+     * ✔ Server hashes while writing and tells us its checksum;
+     *   it must match the checksum of what we streamed.
+     */
+    @Override
+    public long sendStream(String senderName, PreparePipeline.Streamed stream, TargetConfig config) throws Exception {
+        String host = config.getTargetHost();
+        int effectivePort = config.getPort();
+        if (ValidationUtil.validateHost(host) != null) {
+            throw new IllegalArgumentException("[HTTP] Invalid host/IP: " + host);
+        }
+        if (ValidationUtil.validatePort(effectivePort) != null) {
+            throw new IllegalArgumentException("[HTTP] Invalid port: " + effectivePort);
+        }
+
+        String transferId = "http-stream-" + System.currentTimeMillis();
+        TransferContext.setIncomingName(stream.name);
+        TransferContext.setActiveMethod("HTTP");
+        TransferContext.setEncryptionEnabled(config.getAesPassword() != null);
+
+        LoggerUtil.info("🌐 [HTTP] Streaming " + stream.name + " to " + host + ":" + effectivePort);
+        JSONObject reply = HttpTransferHandler.uploadStream(stream.input(), stream.name, transferId, host, effectivePort);
+
+        String checksum = stream.checksum();
+        TransferContext.setExpectedChecksum(checksum);
+        String serverChecksum = reply.optString("checksum", "");
+        if (!checksum.equalsIgnoreCase(serverChecksum)) {
+            throw new IllegalStateException("[HTTP] Checksum mismatch after stream upload: local="
+                    + checksum + ", server=" + serverChecksum);
+        }
+        LoggerUtil.success("🔒 [HTTP] Checksum verified: " + checksum);
+        return reply.optLong("received", -1L);
+    }
+
     @Override
     public void receive(String savePath) throws Exception {
         if (savePath == null || savePath.isBlank()) {
@@ -122,41 +163,44 @@ public class HttpTransferService implements TransferMethod {
 
         LoggerUtil.info("📁 [HTTP] Moving file from server temp to user folder: " + targetFile);
 
-        // Move the file and handle decryption/checksum on the received file.
-        // Since DownloadServlet handled the transfer, this method just performs cleanup and verification.
-        Files.copy(serverFile, targetFile, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-        LoggerUtil.success("✅ [HTTP] File placed at: " + targetFile);
+        // One pass over the received file: copy or decrypt, checksum on the way
+        deliverAndVerify(serverFile, targetFile);
         Files.deleteIfExists(serverFile); // Clean up server received file
-
-        // Verification and Decryption logic
-        verifyAndDecryptFile(targetFile);
     }
 
     /**
-     * Common verification and decryption logic for receiver side.
+     * deliverAndVerify
+     * Baby-English:
+     * ✔ Reads the server copy ONCE: encrypted → decrypted straight into
+     *   the user folder (no .enc copy); plain → copied.
+     * ✔ Checksums are made while the bytes pass (ReceiveSink), so there
+     *   is no extra full read to decrypt and then hash.
      */
-    private void verifyAndDecryptFile(Path targetFile) throws Exception {
-
-        // 1. AES decrypt if enabled
+    private void deliverAndVerify(Path serverFile, Path targetFile) throws Exception {
         String aesPassword = TransferContext.getAesKeyFingerprint(); // Assuming AES fingerprint is the password itself
-        if (TransferContext.isEncryptionEnabled() && aesPassword != null) {
-            LoggerUtil.info("🔐 [HTTP] Decrypting file...");
-            // Decrypts in place or creates a new file based on AesUtil implementation
-            File decryptedFile = new File(targetFile.toString().replace(".enc", ""));
-            AesUtil.decryptFile(targetFile.toFile(), decryptedFile, AesUtil.buildKeyFromPassword(aesPassword));
-            Files.deleteIfExists(targetFile); // Delete encrypted file
-            targetFile = decryptedFile.toPath(); // Use decrypted file for checksum
-            LoggerUtil.success("✅ [HTTP] File decrypted: " + targetFile.getFileName());
+        boolean decrypt = TransferContext.isEncryptionEnabled() && aesPassword != null;
+        File decryptedFile = new File(targetFile.toString().replace(".enc", ""));
+        if (decrypt) LoggerUtil.info("🔐 [HTTP] Decrypting file...");
+
+        ReceiveSink sink = ReceiveSink.open(decrypt ? null : targetFile.toFile(), decryptedFile,
+                decrypt ? AesUtil.buildKeyFromPassword(aesPassword) : null);
+        try (InputStream in = Files.newInputStream(serverFile)) {
+            sink.readFrom(in);
+            sink.finish();
+        } catch (Exception e) {
+            sink.abort(e);
+            throw e;
         }
+        LoggerUtil.success(decrypt
+                ? "✅ [HTTP] File decrypted: " + decryptedFile.getName()
+                : "✅ [HTTP] File placed at: " + targetFile);
 
-        // 2. Verify checksum
         String expectedChecksum = TransferContext.getExpectedChecksum();
         if (expectedChecksum != null && !expectedChecksum.isBlank()) {
-            String actual = HashUtil.sha256Hex(targetFile.toFile());
-            if (expectedChecksum.equalsIgnoreCase(actual)) {
+            if (sink.matches(expectedChecksum)) {
                 LoggerUtil.success("🔒 [HTTP] Checksum OK");
             } else {
-                LoggerUtil.error("❌ [HTTP] Checksum mismatch! Expected=" + expectedChecksum + " Actual=" + actual);
+                LoggerUtil.error("❌ [HTTP] Checksum mismatch! Expected=" + expectedChecksum + " Actual=" + sink.checksum());
             }
         }
     }
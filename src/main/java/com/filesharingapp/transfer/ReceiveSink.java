@@ -0,0 +1,229 @@
+package com.filesharingapp.transfer;
+
+import com.filesharingapp.security.AesUtil;
+import com.filesharingapp.utils.BoundedPipe;
+import com.filesharingapp.utils.HashUtil;
+
+import javax.crypto.SecretKey;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ReceiveSink
+ * -----------
+ * Baby-English:
+ * ✔ Receivers write the incoming bytes here, in file order, ONCE.
+ * ✔ On the way through, in the same pass:
+ *     - checksum of the bytes as they came (wire checksum),
+ *     - optional copy to a file,
+ *     - optional AES decrypt on a helper thread → plain file +
+ *       checksum of the plain bytes.
+ * ✔ When the last byte is in, finish() has both checksums ready:
+ *   no second (or third) full read of the file to decrypt and verify.
+ * ✔ The sender's checksum may be of the plain file or of the bytes it
+ *   uploaded (older senders differ) → matches() accepts either.
+ */
+public final class ReceiveSink {
+
+    private static final int PIPE_BYTES = 4 * 1024 * 1024;
+    private static final int PIPE_BLOCK = 64 * 1024;
+
+    private final HashUtil.StreamingChecksum wireSum = HashUtil.newStreamingChecksum();
+    private final HashUtil.StreamingChecksum plainSum;
+    private final File copyFile;
+    private final File plainFile;
+    private final OutputStream copy;
+    private final BoundedPipe pipe;
+    private final Thread decryptor;
+    private final AtomicReference<Throwable> decryptError = new AtomicReference<>();
+    private final OutputStream input;
+
+    private String wireHex;
+    private String plainHex;
+
+    private ReceiveSink(File copyFile, File plainFile, SecretKey key) throws IOException {
+        this.copyFile = copyFile;
+        this.plainFile = (key != null) ? plainFile : null;
+        this.copy = (copyFile != null) ? new BufferedOutputStream(new FileOutputStream(copyFile), 256 * 1024) : null;
+
+        if (this.plainFile != null) {
+            this.plainSum = HashUtil.newStreamingChecksum();
+            this.pipe = new BoundedPipe(PIPE_BYTES, PIPE_BLOCK);
+            this.decryptor = new Thread(() -> decrypt(key), "receive-decrypt");
+            this.decryptor.setDaemon(true);
+            this.decryptor.start();
+        } else {
+            this.plainSum = null;
+            this.pipe = null;
+            this.decryptor = null;
+        }
+
+        OutputStream next = (copy != null) ? copy : OutputStream.nullOutputStream();
+        if (pipe != null) next = new Fork(next, pipe.sink());
+        this.input = wireSum.tap(next);
+    }
+
+    /**
+     * open
+     * @param copyFile  where to write the bytes as they come (null = somebody else writes them)
+     * @param plainFile where to write the decrypted bytes (used only with a key)
+     * @param key       AES key, null = not encrypted; the sink owns it and
+     *                  destroys it once the decrypt is over
+     */
+    public static ReceiveSink open(File copyFile, File plainFile, SecretKey key) throws IOException {
+        return new ReceiveSink(copyFile, plainFile, key);
+    }
+
+    /**
+     * Where the plain bytes of "encrypted" go: "x.zip.enc" → "x.zip".
+     * No ".enc" at the end → "x.plain" next to it (never onto the file
+     * that is still being written).
+     */
+    public static File decryptedFileFor(File encrypted) {
+        String path = encrypted.getPath();
+        return path.endsWith(".enc")
+                ? new File(path.substring(0, path.length() - 4))
+                : new File(path + ".plain");
+    }
+
+    /** Write the received bytes here, in order. Do not close it; call finish(). */
+    public OutputStream input() {
+        return input;
+    }
+
+    /** Feed a whole stream (e.g. the file the server already saved) into input(). */
+    public void readFrom(InputStream in) throws IOException {
+        byte[] buffer = new byte[256 * 1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) input.write(buffer, 0, n);
+    }
+
+    private void decrypt(SecretKey key) {
+        try (OutputStream plain = plainSum.tap(new BufferedOutputStream(new FileOutputStream(plainFile), 256 * 1024))) {
+            AesUtil.decryptStream(pipe.source(), plain, key);
+        } catch (Throwable t) {
+            decryptError.set(t);
+        } finally {
+            AesUtil.destroyKey(key);
+            try {
+                pipe.source().close(); // writer sees "pipe closed" instead of waiting forever
+            } catch (IOException ignored) {
+                // nothing to release
+            }
+        }
+    }
+
+    // ============================================================
+    // 1️⃣ End
+    // ============================================================
+
+    /**
+     * finish
+     * Baby-English:
+     * ✔ All bytes are in → wait for the decrypt thread, close the files,
+     *   fix both checksums. Decrypt error → IOException.
+     * ✔ The checksums are remembered for the files we wrote, so a later
+     *   fileChecksum() on them is free.
+     */
+    public void finish() throws IOException {
+        try {
+            if (copy != null) copy.close();
+            if (pipe != null) {
+                pipe.sink().close();
+                decryptor.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decrypting", e);
+        } catch (IOException e) {
+            if (decryptError.get() == null) throw e;
+        }
+        Throwable failed = decryptError.get();
+        if (failed != null) {
+            throw new IOException("Decryption failed: " + failed.getMessage(), failed);
+        }
+
+        wireHex = wireSum.finishHex();
+        if (copyFile != null) HashUtil.rememberChecksum(copyFile, wireHex);
+        if (plainSum != null) {
+            plainHex = plainSum.finishHex();
+            HashUtil.rememberChecksum(plainFile, plainHex);
+        }
+    }
+
+    /** Something upstream broke: stop the decrypt thread and close files (nothing is verified). */
+    public void abort(Throwable cause) {
+        try {
+            if (copy != null) copy.close();
+        } catch (IOException ignored) {
+            // already failing
+        }
+        if (pipe != null) {
+            pipe.fail(cause);
+            try {
+                decryptor.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // ============================================================
+    // 2️⃣ Results (after finish)
+    // ============================================================
+
+    /** Decrypted file, or null when nothing was decrypted. */
+    public File plainFile() {
+        return plainFile;
+    }
+
+    /** Checksum to show in logs: plain one when decrypted, else the wire one. */
+    public String checksum() {
+        return (plainHex != null) ? plainHex : wireHex;
+    }
+
+    /** Expected checksum fits the plain bytes or the bytes as received. */
+    public boolean matches(String expected) {
+        if (expected == null) return false;
+        if (plainHex != null && expected.equalsIgnoreCase(plainHex)) return true;
+        return expected.equalsIgnoreCase(wireHex);
+    }
+
+    // ============================================================
+    // 🔧 Helpers
+    // ============================================================
+
+    /** Writes to two streams (file copy + decrypt pipe). */
+    private final class Fork extends OutputStream {
+        private final OutputStream a;
+        private final OutputStream b;
+
+        Fork(OutputStream a, OutputStream b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public void write(int v) throws IOException {
+            write(new byte[]{(byte) v}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) throws IOException {
+            a.write(buf, off, len);
+            try {
+                b.write(buf, off, len);
+            } catch (IOException e) {
+                // Pipe closed because the decrypt thread gave up → report why
+                Throwable failed = decryptError.get();
+                if (failed != null) throw new IOException("Decryption failed: " + failed.getMessage(), failed);
+                throw e;
+            }
+        }
+    }
+}
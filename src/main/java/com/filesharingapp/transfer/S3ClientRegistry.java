@@ -0,0 +1,173 @@
+package com.filesharingapp.transfer;
+
+import com.filesharingapp.utils.AppConfig;
+import com.filesharingapp.utils.HashUtil;
+import com.filesharingapp.utils.LoggerUtil;
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.utils.SdkAutoCloseable;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * S3ClientRegistry
+ * ----------------
+ * Baby-English:
+ * ✔ Making an S3Client is slow (SDK start-up, connection pool, TLS).
+ *   We make ONE per (region, credentials, endpoint) and keep it.
+ * ✔ Same for the presigner and the async client.
+ * ✔ Clients are thread-safe: every transfer and every worker thread
+ *   shares them. Callers must NOT close them.
+ * ✔ Warm connections stay in the pool → the next small object skips
+ *   the TCP + TLS handshake.
+ * ✔ All clients are closed once, when the JVM shuts down (or closeAll()).
+ * ✔ aws.s3.endpoint (e.g. http://localhost:9090) sends the default
+ *   lookups to an S3-compatible server instead of AWS, path style.
+ */
+public final class S3ClientRegistry {
+
+    /** Connections per client: enough for parallel parts / segments of a few transfers at once. */
+    private static final int MAX_CONNECTIONS = Math.max(1, AppConfig.getInt("aws.s3.client.maxConnections", 64));
+
+    /** true → multipart parts go through S3AsyncClient (no thread per part). */
+    private static final boolean ASYNC = AppConfig.getBoolean("aws.s3.client.async", false);
+
+    /** aws.s3.endpoint set → every default lookup goes there (S3-compatible store, LocalS3Server). */
+    private static final URI ENDPOINT = configuredEndpoint();
+
+    private static final Map<String, S3Client> CLIENTS = new ConcurrentHashMap<>();
+    private static final Map<String, S3AsyncClient> ASYNC_CLIENTS = new ConcurrentHashMap<>();
+    private static final Map<String, S3Presigner> PRESIGNERS = new ConcurrentHashMap<>();
+
+    static {
+        Thread hook = new Thread(S3ClientRegistry::closeAll, "s3-client-shutdown");
+        Runtime.getRuntime().addShutdownHook(hook);
+    }
+
+    private S3ClientRegistry() {
+        // Utility class – no objects.
+    }
+
+    // ============================================================
+    // 1️⃣ Lookups
+    // ============================================================
+
+    public static S3Client client(Region region, AwsCredentials creds) {
+        return client(region, creds, ENDPOINT);
+    }
+
+    /** Shared sync client; endpoint null = normal AWS endpoint. */
+    public static S3Client client(Region region, AwsCredentials creds, URI endpoint) {
+        return CLIENTS.computeIfAbsent(keyOf(region, creds, endpoint), k -> {
+            LoggerUtil.info("🔌 [S3] New client for " + describe(region, endpoint));
+            var builder = S3Client.builder()
+                    .region(region)
+                    .credentialsProvider(StaticCredentialsProvider.create(creds))
+                    .httpClientBuilder(ApacheHttpClient.builder().maxConnections(MAX_CONNECTIONS));
+            if (endpoint != null) builder.endpointOverride(endpoint).forcePathStyle(true);
+            return builder.build();
+        });
+    }
+
+    public static S3AsyncClient asyncClient(Region region, AwsCredentials creds) {
+        return asyncClient(region, creds, ENDPOINT);
+    }
+
+    /** Shared async client (Netty, non-blocking); endpoint null = normal AWS endpoint. */
+    public static S3AsyncClient asyncClient(Region region, AwsCredentials creds, URI endpoint) {
+        return ASYNC_CLIENTS.computeIfAbsent(keyOf(region, creds, endpoint), k -> {
+            LoggerUtil.info("🔌 [S3] New async client for " + describe(region, endpoint));
+            var builder = S3AsyncClient.builder()
+                    .region(region)
+                    .credentialsProvider(StaticCredentialsProvider.create(creds))
+                    .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(MAX_CONNECTIONS));
+            if (endpoint != null) builder.endpointOverride(endpoint).forcePathStyle(true);
+            return builder.build();
+        });
+    }
+
+    /** aws.s3.client.async=true → shared async client for part uploads, else null (sync parts). */
+    public static S3AsyncClient asyncClientIfEnabled(Region region, AwsCredentials creds) {
+        return ASYNC ? asyncClient(region, creds) : null;
+    }
+
+    public static S3Presigner presigner(Region region, AwsCredentials creds) {
+        return presigner(region, creds, ENDPOINT);
+    }
+
+    /** Shared presigner (URLs for the receiver). */
+    public static S3Presigner presigner(Region region, AwsCredentials creds, URI endpoint) {
+        return PRESIGNERS.computeIfAbsent(keyOf(region, creds, endpoint), k -> {
+            var builder = S3Presigner.builder()
+                    .region(region)
+                    .credentialsProvider(StaticCredentialsProvider.create(creds));
+            if (endpoint != null) {
+                builder.endpointOverride(endpoint)
+                        .serviceConfiguration(S3Configuration.builder()
+                                .pathStyleAccessEnabled(true).build());
+            }
+            return builder.build();
+        });
+    }
+
+    // ============================================================
+    // 2️⃣ Shutdown
+    // ============================================================
+
+    /** Close every client and presigner (next lookup makes new ones). */
+    public static void closeAll() {
+        int closed = closeEach(CLIENTS) + closeEach(ASYNC_CLIENTS) + closeEach(PRESIGNERS);
+        if (closed > 0) LoggerUtil.info("🔌 [S3] Closed " + closed + " shared client(s)");
+    }
+
+    private static int closeEach(Map<String, ? extends SdkAutoCloseable> map) {
+        int n = 0;
+        for (String key : map.keySet()) {
+            SdkAutoCloseable c = map.remove(key);
+            if (c == null) continue;
+            try {
+                c.close();
+                n++;
+            } catch (RuntimeException e) {
+                LoggerUtil.warn("⚠️ [S3] Closing client failed: " + e.getMessage());
+            }
+        }
+        return n;
+    }
+
+    // ============================================================
+    // 🔧 Helpers
+    // ============================================================
+
+    /** Secret key is hashed so it never sits in a map key in clear text. */
+    private static String keyOf(Region region, AwsCredentials creds, URI endpoint) {
+        return region.id() + "|" + creds.accessKeyId() + "|" + HashUtil.sha256(creds.secretAccessKey())
+                + "|" + (endpoint == null ? "" : endpoint.toString());
+    }
+
+    private static URI configuredEndpoint() {
+        String value = AppConfig.get("aws.s3.endpoint", "").trim();
+        if (value.isEmpty()) return null;
+        try {
+            URI uri = URI.create(value);
+            LoggerUtil.info("🔌 [S3] Endpoint override: " + uri);
+            return uri;
+        } catch (IllegalArgumentException e) {
+            LoggerUtil.warn("⚠️ [S3] Ignoring bad aws.s3.endpoint '" + value + "': " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String describe(Region region, URI endpoint) {
+        return region.id() + (endpoint == null ? "" : " @ " + endpoint);
+    }
+}
@@ -0,0 +1,503 @@
+package com.filesharingapp.transfer;
+
+import com.filesharingapp.utils.AppConfig;
+import com.filesharingapp.utils.HashUtil;
+import com.filesharingapp.utils.LoggerUtil;
+import com.filesharingapp.utils.RetryUtil;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * S3MultipartUploader
+ * -------------------
+ * Baby-English:
+ * ✔ Big file → S3 multipart upload: cut it in parts, send several parts
+ *   at the same time (one connection each), S3 glues them together.
+ * ✔ No 5 GB limit of a single PUT (up to 10 000 parts).
+ * ✔ Every finished part is written to a small manifest file
+ *   ("tmp/s3-uploads/{id}.parts") with its ETag.
+ * ✔ Upload breaks → run it again: same file, same bucket/key → we reopen
+ *   the same multipart upload and send only the parts that are missing.
+ * ✔ File changed in between → old upload is aborted, start fresh.
+ * ✔ Metadata ("sha256", "encrypted") goes on the object when the upload
+ *   is created, so the receiver sees the same contract as a plain PUT.
+ * ✔ Small file (below aws.s3.multipartThreshold) → one plain PUT.
+ */
+public final class S3MultipartUploader {
+
+    /** S3 needs >= 5 MB for every part except the last one. */
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    /** S3 allows at most this many parts per upload. */
+    private static final int MAX_PARTS = 10_000;
+
+    private static final long PART_SIZE =
+            Math.max(MIN_PART_SIZE, AppConfig.getLong("aws.s3.partSize", 16L * 1024 * 1024));
+    private static final long THRESHOLD =
+            Math.max(MIN_PART_SIZE, AppConfig.getLong("aws.s3.multipartThreshold", 16L * 1024 * 1024));
+    private static final int PARALLELISM = Math.max(1, AppConfig.getInt("aws.s3.upload.parallelism", 4));
+    private static final int PART_RETRIES = Math.max(1, AppConfig.getInt("aws.s3.partRetries", 3));
+    private static final long PART_RETRY_DELAY_MS = 500;
+
+    private static final Path MANIFEST_DIR = Path.of("tmp", "s3-uploads");
+
+    private S3MultipartUploader() {
+        // Utility class – no objects.
+    }
+
+    // ============================================================
+    // 1️⃣ Upload
+    // ============================================================
+
+    /**
+     * upload
+     * Baby-English:
+     * ✔ Sends the file to s3://bucket/key with the given metadata.
+     * ✔ Returns the number of bytes in the object.
+     * ✔ On failure the multipart upload is KEPT (not aborted), so the
+     *   next call can resume it. The manifest says how far we got.
+     */
+    public static long upload(S3Client s3, String bucket, String key, File file,
+                              Map<String, String> metadata) throws Exception {
+        return upload(s3, null, bucket, key, file, metadata);
+    }
+
+    /** Same, with parts sent through "async" when it is not null (no thread per part). */
+    public static long upload(S3Client s3, S3AsyncClient async, String bucket, String key, File file,
+                              Map<String, String> metadata) throws Exception {
+        long size = file.length();
+        if (size < THRESHOLD) {
+            s3.putObject(PutObjectRequest.builder().bucket(bucket).key(key).metadata(metadata).build(),
+                    RequestBody.fromFile(file));
+            return size;
+        }
+
+        long partSize = partSizeFor(size);
+        int totalParts = (int) ((size + partSize - 1) / partSize);
+        Path manifestPath = manifestPath(bucket, key, file);
+
+        Manifest manifest = resume(s3, manifestPath, bucket, key, file, partSize, metadata);
+        if (manifest == null) {
+            String uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                    .bucket(bucket).key(key).metadata(metadata).build()).uploadId();
+            manifest = Manifest.create(manifestPath, bucket, key, file, partSize, metadata, uploadId);
+            LoggerUtil.info("📦 [S3] Multipart upload started: " + totalParts + " parts of "
+                    + partSize + " bytes, " + PARALLELISM + " at a time");
+        } else {
+            LoggerUtil.info("🔁 [S3] Resuming multipart upload: " + manifest.count() + "/"
+                    + totalParts + " parts already in S3");
+        }
+
+        try (Manifest m = manifest) {
+            if (async != null) {
+                sendMissingPartsAsync(async, m, file, size, partSize, totalParts);
+            } else {
+                sendMissingParts(s3, m, file, size, partSize, totalParts);
+            }
+
+            List<CompletedPart> parts = new ArrayList<>();
+            for (Map.Entry<Integer, String> e : m.parts.entrySet()) {
+                parts.add(CompletedPart.builder().partNumber(e.getKey()).eTag(e.getValue()).build());
+            }
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket).key(key).uploadId(m.uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        }
+        Files.deleteIfExists(manifestPath);
+        return size;
+    }
+
+    /** Parallel part uploads for every part the manifest does not have yet. */
+    private static void sendMissingParts(S3Client s3, Manifest manifest, File file, long size,
+                                         long partSize, int totalParts) throws Exception {
+        List<Integer> missing = new ArrayList<>();
+        for (int n = 1; n <= totalParts; n++) {
+            if (!manifest.has(n)) missing.add(n);
+        }
+        if (missing.isEmpty()) return;
+
+        AtomicInteger threadNo = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(PARALLELISM, missing.size()), r -> {
+            Thread t = new Thread(r, "s3-part-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        ExecutorCompletionService<Boolean> results = new ExecutorCompletionService<>(pool);
+        AtomicBoolean cancel = new AtomicBoolean(false);
+        AtomicLong sent = new AtomicLong();
+        AtomicLong lastLogTime = new AtomicLong(System.currentTimeMillis());
+        long pending = 0;
+        for (int n : missing) pending += partLength(n, partSize, size);
+        final long totalPending = pending;
+        long start = System.nanoTime();
+
+        int failed = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (int partNumber : missing) {
+                results.submit(() -> {
+                    long offset = (partNumber - 1L) * partSize;
+                    long len = partLength(partNumber, partSize, size);
+                    boolean ok = RetryUtil.runWithRetryAndBackoff(() -> {
+                        UploadPartResponse resp = s3.uploadPart(UploadPartRequest.builder()
+                                        .bucket(manifest.bucket).key(manifest.key).uploadId(manifest.uploadId)
+                                        .partNumber(partNumber).contentLength(len)
+                                        .build(),
+                                RequestBody.fromContentProvider(() -> new RangeStream(channel, offset, len),
+                                        len, "application/octet-stream"));
+                        manifest.record(partNumber, resp.eTag());
+                    }, PART_RETRIES, PART_RETRY_DELAY_MS, cancel);
+                    if (!ok) {
+                        cancel.set(true);
+                        return false;
+                    }
+
+                    long done = sent.addAndGet(len);
+                    long now = System.currentTimeMillis();
+                    long last = lastLogTime.get();
+                    if (now - last > 1000 && lastLogTime.compareAndSet(last, now)) {
+                        LoggerUtil.info("📤 [S3] Progress: " + ((size - totalPending + done) * 100 / size) + "% ("
+                                + manifest.count() + "/" + totalParts + " parts)");
+                    }
+                    return true;
+                });
+            }
+            for (int i = 0; i < missing.size(); i++) {
+                if (!results.take().get()) failed++;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (failed > 0) {
+            LoggerUtil.warn("⚠️ [S3] " + failed + " part(s) failed; " + manifest.count() + "/" + totalParts
+                    + " parts kept for resume (" + manifest.path + ")");
+            throw new IOException(failed + " S3 part(s) not uploaded after " + PART_RETRIES + " tries");
+        }
+        double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        LoggerUtil.info(String.format(Locale.ROOT, "📤 [S3] %d parts sent in %.1f s (%.1f MB/s)",
+                missing.size(), seconds, totalPending / seconds / (1024 * 1024)));
+    }
+
+    /**
+     * sendMissingPartsAsync
+     * Baby-English:
+     * ✔ Same job with S3AsyncClient: the SDK reads each part straight from
+     *   the file and keeps up to PARALLELISM requests open, no worker threads.
+     * ✔ The SDK retries a part itself; a part that still fails stops new ones.
+     */
+    private static void sendMissingPartsAsync(S3AsyncClient async, Manifest manifest, File file, long size,
+                                              long partSize, int totalParts) throws Exception {
+        Semaphore slots = new Semaphore(PARALLELISM);
+        AtomicInteger failed = new AtomicInteger();
+        List<CompletableFuture<?>> inFlight = new ArrayList<>();
+        long start = System.nanoTime();
+        long sent = 0;
+
+        for (int n = 1; n <= totalParts && failed.get() == 0; n++) {
+            if (manifest.has(n)) continue;
+            final int partNumber = n;
+            long offset = (partNumber - 1L) * partSize;
+            long len = partLength(partNumber, partSize, size);
+            slots.acquire();
+            inFlight.add(async.uploadPart(UploadPartRequest.builder()
+                                    .bucket(manifest.bucket).key(manifest.key).uploadId(manifest.uploadId)
+                                    .partNumber(partNumber).contentLength(len)
+                                    .build(),
+                            AsyncRequestBody.fromFile(b -> b.path(file.toPath()).position(offset).numBytesToRead(len)))
+                    .whenComplete((resp, error) -> {
+                        slots.release();
+                        if (error == null) {
+                            manifest.record(partNumber, resp.eTag());
+                        } else {
+                            failed.incrementAndGet();
+                            LoggerUtil.warn("⚠️ [S3] Part " + partNumber + " failed: " + error.getMessage());
+                        }
+                    }));
+            sent += len;
+        }
+        CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0]))
+                .handle((v, e) -> null)
+                .get();
+
+        if (failed.get() > 0) {
+            LoggerUtil.warn("⚠️ [S3] " + failed.get() + " part(s) failed; " + manifest.count() + "/" + totalParts
+                    + " parts kept for resume (" + manifest.path + ")");
+            throw new IOException(failed.get() + " S3 part(s) not uploaded");
+        }
+        double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        LoggerUtil.info(String.format(Locale.ROOT, "📤 [S3] %d parts sent (async) in %.1f s (%.1f MB/s)",
+                inFlight.size(), seconds, sent / seconds / (1024 * 1024)));
+    }
+
+    // ============================================================
+    // 2️⃣ Resume
+    // ============================================================
+
+    /**
+     * resume
+     * Baby-English:
+     * ✔ Manifest for the same file version + same part size → ask S3
+     *   which parts it really has (ListParts) and keep those.
+     * ✔ S3 forgot the upload (aborted / expired) → start fresh.
+     * ✔ File changed → abort the old upload so it does not cost storage.
+     */
+    private static Manifest resume(S3Client s3, Path manifestPath, String bucket, String key, File file,
+                                   long partSize, Map<String, String> metadata) {
+        if (!Files.exists(manifestPath)) return null;
+        Manifest old;
+        try {
+            old = Manifest.load(manifestPath);
+        } catch (IOException e) {
+            LoggerUtil.warn("⚠️ [S3] Unreadable upload manifest, starting fresh: " + e.getMessage());
+            deleteQuietly(manifestPath);
+            return null;
+        }
+
+        boolean sameFile = old.size == file.length() && old.modified == file.lastModified()
+                && old.partSize == partSize && old.metadata.equals(metadata);
+        if (!sameFile) {
+            LoggerUtil.info("ℹ️ [S3] File changed since the last attempt, starting a new upload");
+            try {
+                s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                        .bucket(old.bucket).key(old.key).uploadId(old.uploadId).build());
+            } catch (Exception e) {
+                LoggerUtil.warn("⚠️ [S3] Abort of old upload failed: " + e.getMessage());
+            }
+            deleteQuietly(manifestPath);
+            return null;
+        }
+
+        try {
+            Map<Integer, String> inS3 = new TreeMap<>();
+            for (Part p : s3.listPartsPaginator(ListPartsRequest.builder()
+                    .bucket(bucket).key(key).uploadId(old.uploadId).build()).parts()) {
+                inS3.put(p.partNumber(), p.eTag());
+            }
+            // Keep only parts both sides agree on (same ETag)
+            old.parts.entrySet().removeIf(e -> !e.getValue().equals(inS3.get(e.getKey())));
+            return old.reopen();
+        } catch (NoSuchUploadException e) {
+            LoggerUtil.info("ℹ️ [S3] Previous upload no longer exists, starting fresh");
+        } catch (Exception e) {
+            LoggerUtil.warn("⚠️ [S3] Could not resume previous upload: " + e.getMessage());
+        }
+        deleteQuietly(manifestPath);
+        return null;
+    }
+
+    // ============================================================
+    // 3️⃣ Manifest
+    // ============================================================
+
+    /**
+     * Manifest
+     * Baby-English:
+     * ✔ Text file: "name=value" header lines, then one
+     *   "part=N,ETag" line per finished part (appended + flushed).
+     * ✔ Process dies mid-upload → the lines already written survive.
+     */
+    static final class Manifest implements Closeable {
+        private static final String HEADER = "# FileSharingApp S3 multipart manifest v1";
+
+        final Path path;
+        String bucket;
+        String key;
+        long size;
+        long modified;
+        long partSize;
+        String uploadId;
+        final Map<String, String> metadata = new TreeMap<>();
+        /** partNumber → ETag, sorted (CompleteMultipartUpload wants ascending order). */
+        final Map<Integer, String> parts = new TreeMap<>();
+        private BufferedWriter out;
+
+        private Manifest(Path path) {
+            this.path = path;
+        }
+
+        static Manifest create(Path path, String bucket, String key, File file, long partSize,
+                               Map<String, String> metadata, String uploadId) throws IOException {
+            Manifest m = new Manifest(path);
+            m.bucket = bucket;
+            m.key = key;
+            m.size = file.length();
+            m.modified = file.lastModified();
+            m.partSize = partSize;
+            m.uploadId = uploadId;
+            m.metadata.putAll(metadata);
+
+            Files.createDirectories(path.getParent());
+            StringBuilder sb = new StringBuilder(HEADER).append('\n')
+                    .append("bucket=").append(bucket).append('\n')
+                    .append("key=").append(key).append('\n')
+                    .append("size=").append(m.size).append('\n')
+                    .append("modified=").append(m.modified).append('\n')
+                    .append("partSize=").append(partSize).append('\n')
+                    .append("uploadId=").append(uploadId).append('\n');
+            for (Map.Entry<String, String> e : m.metadata.entrySet()) {
+                sb.append("meta.").append(e.getKey()).append('=').append(e.getValue()).append('\n');
+            }
+            Files.writeString(path, sb.toString(), StandardCharsets.UTF_8);
+            return m.reopen();
+        }
+
+        static Manifest load(Path path) throws IOException {
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !HEADER.equals(lines.get(0))) {
+                throw new IOException("not a manifest: " + path);
+            }
+            Manifest m = new Manifest(path);
+            try {
+                for (String line : lines.subList(1, lines.size())) {
+                    int eq = line.indexOf('=');
+                    if (eq < 0) continue; // half-written last line
+                    String name = line.substring(0, eq);
+                    String value = line.substring(eq + 1);
+                    switch (name) {
+                        case "bucket" -> m.bucket = value;
+                        case "key" -> m.key = value;
+                        case "size" -> m.size = Long.parseLong(value);
+                        case "modified" -> m.modified = Long.parseLong(value);
+                        case "partSize" -> m.partSize = Long.parseLong(value);
+                        case "uploadId" -> m.uploadId = value;
+                        case "part" -> {
+                            int comma = value.indexOf(',');
+                            if (comma > 0) m.parts.put(Integer.parseInt(value.substring(0, comma)), value.substring(comma + 1));
+                        }
+                        default -> {
+                            if (name.startsWith("meta.")) m.metadata.put(name.substring(5), value);
+                        }
+                    }
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("bad manifest line in " + path, e);
+            }
+            if (m.bucket == null || m.key == null || m.uploadId == null) {
+                throw new IOException("incomplete manifest: " + path);
+            }
+            return m;
+        }
+
+        /** Open for appending part lines. */
+        private Manifest reopen() throws IOException {
+            out = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            return this;
+        }
+
+        synchronized int count() {
+            return parts.size();
+        }
+
+        synchronized boolean has(int partNumber) {
+            return parts.containsKey(partNumber);
+        }
+
+        synchronized void record(int partNumber, String eTag) {
+            parts.put(partNumber, eTag);
+            try {
+                out.write("part=" + partNumber + "," + eTag + "\n");
+                out.flush();
+            } catch (IOException e) {
+                // Upload still fine; only resume after a crash would resend this part
+                LoggerUtil.warn("⚠️ [S3] Could not write upload manifest: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (out != null) out.close();
+        }
+    }
+
+    // ============================================================
+    // 🔧 Helpers
+    // ============================================================
+
+    /** Configured part size, bigger when the file would need more than 10 000 parts (MB-rounded). */
+    private static long partSizeFor(long size) {
+        long needed = (size + MAX_PARTS - 1) / MAX_PARTS;
+        long mb = 1024 * 1024;
+        return Math.max(PART_SIZE, (needed + mb - 1) / mb * mb);
+    }
+
+    private static long partLength(int partNumber, long partSize, long size) {
+        return Math.min(partSize, size - (partNumber - 1L) * partSize);
+    }
+
+    /** One manifest per (bucket, key, local file). */
+    private static Path manifestPath(String bucket, String key, File file) {
+        String id = HashUtil.sha256(bucket + "\n" + key + "\n" + file.getAbsolutePath());
+        return MANIFEST_DIR.resolve(id.substring(0, 32) + ".parts");
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // next create() overwrites it anyway
+        }
+    }
+
+    /**
+     * RangeStream
+     * Baby-English: reads [offset, offset + len) of the file with positional
+     * reads, so all part uploads share one FileChannel. A fresh one is made
+     * for every (re)try of the part.
+     */
+    private static final class RangeStream extends InputStream {
+        private final FileChannel channel;
+        private long pos;
+        private final long end;
+
+        RangeStream(FileChannel channel, long offset, long len) {
+            this.channel = channel;
+            this.pos = offset;
+            this.end = offset + len;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return (read(one, 0, 1) < 0) ? -1 : (one[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (pos >= end) return -1;
+            int want = (int) Math.min(len, end - pos);
+            int n = channel.read(ByteBuffer.wrap(b, off, want), pos);
+            if (n < 0) throw new IOException("File shrank during upload");
+            pos += n;
+            return n;
+        }
+    }
+}
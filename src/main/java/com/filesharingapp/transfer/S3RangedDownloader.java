@@ -0,0 +1,431 @@
+package com.filesharingapp.transfer;
+
+import com.filesharingapp.utils.AppConfig;
+import com.filesharingapp.utils.LoggerUtil;
+import com.filesharingapp.utils.RetryUtil;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * S3RangedDownloader
+ * ------------------
+ * Baby-English:
+ * ✔ Cut the object in segments and fetch several at the same time
+ *   (GET with "Range: bytes=a-b", one connection each).
+ * ✔ Each segment is written straight at its own place in the file
+ *   (FileChannel positional write) — no joining afterwards.
+ * ✔ A small sidecar "{file}.segments" lists finished segments.
+ *   Download breaks → run again → only missing segments are fetched.
+ * ✔ Segment numbers reach the sidecar only after their bytes were
+ *   forced to disk (in batches), so even a power cut cannot leave a
+ *   listed segment with lost data.
+ * ✔ Object changed on S3 (other ETag / size) → start over.
+ * ✔ Old-style partial file (no sidecar) → its first bytes count as done.
+ * ✔ Optional "in order" stream: gets every byte of the object in file
+ *   order while segments still arrive out of order (used to hash and
+ *   decrypt during the download). A few finished segments wait in
+ *   memory until the ones before them are in.
+ */
+public final class S3RangedDownloader {
+
+    private static final long SEGMENT_SIZE =
+            Math.max(1024 * 1024, AppConfig.getLong("aws.s3.download.segmentSize", 8L * 1024 * 1024));
+    private static final int PARALLELISM = Math.max(1, AppConfig.getInt("aws.s3.download.parallelism", 4));
+    private static final int SEGMENT_RETRIES = Math.max(1, AppConfig.getInt("aws.s3.partRetries", 3));
+    private static final long SEGMENT_RETRY_DELAY_MS = 500;
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /** Finished segments per data force + sidecar write. */
+    private static final int SIDECAR_BATCH = 8;
+
+    private S3RangedDownloader() {
+        // Utility class – no objects.
+    }
+
+    /**
+     * download
+     * Baby-English:
+     * ✔ Fetches s3://bucket/key into "target" (remoteSize / eTag from HEAD).
+     * ✔ On failure the finished segments stay on disk + in the sidecar.
+     */
+    public static void download(S3Client s3, String bucket, String key, File target,
+                                long remoteSize, String eTag) throws Exception {
+        download(s3, bucket, key, target, remoteSize, eTag, null);
+    }
+
+    /**
+     * Same, and also writes the whole object to "inOrder" in file order
+     * (segments done by an earlier attempt are read back from disk).
+     * "inOrder" is not closed.
+     */
+    public static void download(S3Client s3, String bucket, String key, File target,
+                                long remoteSize, String eTag, OutputStream inOrder) throws Exception {
+        if (remoteSize == 0) {
+            Files.write(target.toPath(), new byte[0]);
+            return;
+        }
+        Path sidecar = Path.of(target.getPath() + ".segments");
+        int totalSegments = (int) Math.max(1, (remoteSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+
+        try (Sidecar done = Sidecar.open(sidecar, target, remoteSize, eTag, totalSegments)) {
+            List<Integer> missing = new ArrayList<>();
+            for (int i = 0; i < totalSegments; i++) {
+                if (!done.has(i)) missing.add(i);
+            }
+            if (missing.size() < totalSegments) {
+                LoggerUtil.info("🔁 [S3] Resuming download: " + (totalSegments - missing.size()) + "/"
+                        + totalSegments + " segments already on disk");
+            } else {
+                LoggerUtil.info("⬇️ [S3] Downloading " + remoteSize + " bytes in " + totalSegments
+                        + " segments, " + PARALLELISM + " at a time");
+            }
+
+            // Right size up front: every segment writes into its own slot
+            try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+                raf.setLength(remoteSize);
+            }
+            try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                OrderedTap tap = (inOrder == null) ? null
+                        : new OrderedTap(inOrder, channel, remoteSize, totalSegments, missing);
+                if (tap != null) tap.drain(); // segments from an earlier attempt first
+                if (!missing.isEmpty()) {
+                    fetchSegments(s3, bucket, key, channel, remoteSize, eTag, missing, done, tap);
+                }
+                if (tap != null) tap.finish();
+            }
+        }
+        Files.deleteIfExists(sidecar);
+    }
+
+    private static void fetchSegments(S3Client s3, String bucket, String key, FileChannel channel, long remoteSize,
+                                      String eTag, List<Integer> missing, Sidecar done, OrderedTap tap) throws Exception {
+        AtomicInteger threadNo = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(PARALLELISM, missing.size()), r -> {
+            Thread t = new Thread(r, "s3-range-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        ExecutorCompletionService<Boolean> results = new ExecutorCompletionService<>(pool);
+        ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+        AtomicBoolean cancel = new AtomicBoolean(false);
+        AtomicLong received = new AtomicLong();
+        AtomicLong lastLogTime = new AtomicLong(System.currentTimeMillis());
+        long pending = 0;
+        for (int i : missing) pending += segmentLength(i, remoteSize);
+        final long totalPending = pending;
+        long start = System.nanoTime();
+
+        int failed = 0;
+        try {
+            for (int segment : missing) {
+                results.submit(() -> {
+                    long first = segment * SEGMENT_SIZE;
+                    long len = segmentLength(segment, remoteSize);
+                    // In-order mode: do not run too far ahead of the oldest missing segment
+                    if (tap != null && !tap.awaitTurn(segment)) return false;
+                    byte[] kept = (tap != null) ? new byte[(int) len] : null;
+                    boolean ok = RetryUtil.runWithRetryAndBackoff(() -> {
+                        GetObjectRequest.Builder req = GetObjectRequest.builder()
+                                .bucket(bucket).key(key)
+                                .range("bytes=" + first + "-" + (first + len - 1));
+                        if (eTag != null) req.ifMatch(eTag); // object replaced mid-way → 412, not a mix
+                        try (ResponseInputStream<GetObjectResponse> in = s3.getObject(req.build())) {
+                            byte[] buf = buffers.get();
+                            long pos = first;
+                            long end = first + len;
+                            int n;
+                            while (pos < end && (n = in.read(buf, 0, (int) Math.min(buf.length, end - pos))) != -1) {
+                                if (kept != null) System.arraycopy(buf, 0, kept, (int) (pos - first), n);
+                                ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+                                while (bb.hasRemaining()) pos += channel.write(bb, pos);
+                                received.addAndGet(n);
+                            }
+                            if (pos != end) {
+                                throw new IOException("Segment " + segment + " ended early (" + (pos - first) + "/" + len + ")");
+                            }
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }, SEGMENT_RETRIES, SEGMENT_RETRY_DELAY_MS, cancel);
+                    if (!ok) {
+                        cancel.set(true);
+                        if (tap != null) tap.abort();
+                        return false;
+                    }
+                    try {
+                        done.record(segment, channel);
+                    } catch (IOException e) {
+                        // Only costs a re-fetch after a crash
+                        LoggerUtil.warn("⚠️ [S3] Could not save segment sidecar: " + e.getMessage());
+                    }
+                    if (tap != null) {
+                        try {
+                            tap.deliver(segment, kept);
+                        } catch (IOException e) {
+                            LoggerUtil.warn("⚠️ [S3] In-order consumer failed: " + e.getMessage());
+                            cancel.set(true);
+                            tap.abort();
+                            return false;
+                        }
+                    }
+
+                    long now = System.currentTimeMillis();
+                    long last = lastLogTime.get();
+                    if (now - last > 1000 && lastLogTime.compareAndSet(last, now)) {
+                        long got = Math.min(received.get(), totalPending);
+                        LoggerUtil.info("📥 [S3] Progress: " + (got * 100 / Math.max(totalPending, 1)) + "% ("
+                                + done.count() + "/" + done.total + " segments)");
+                    }
+                    return true;
+                });
+            }
+            for (int i = 0; i < missing.size(); i++) {
+                if (!results.take().get()) failed++;
+            }
+        } finally {
+            pool.shutdownNow();
+            try {
+                done.checkpoint(channel); // last, partly filled batch
+            } catch (IOException e) {
+                LoggerUtil.warn("⚠️ [S3] Could not save segment sidecar: " + e.getMessage());
+            }
+        }
+
+        if (failed > 0) {
+            LoggerUtil.warn("⚠️ [S3] " + failed + " segment(s) failed; " + done.count() + "/" + done.total
+                    + " kept for resume");
+            throw new IOException(failed + " S3 segment(s) not downloaded after " + SEGMENT_RETRIES + " tries");
+        }
+        double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        LoggerUtil.info(String.format(Locale.ROOT, "📥 [S3] %d segments in %.1f s (%.1f MB/s)",
+                missing.size(), seconds, totalPending / seconds / (1024 * 1024)));
+    }
+
+    private static long segmentLength(int segment, long remoteSize) {
+        return Math.min(SEGMENT_SIZE, remoteSize - segment * SEGMENT_SIZE);
+    }
+
+    // ============================================================
+    // 🔗 In-order tap
+    // ============================================================
+
+    /**
+     * OrderedTap
+     * Baby-English:
+     * ✔ Segments finish in any order; the consumer wants bytes 0, 1, 2 ...
+     * ✔ "next" = first segment not handed over yet. A finished segment
+     *   waits in memory until it is next; segments from an earlier
+     *   attempt are read back from the file when their turn comes.
+     * ✔ A worker may start segment k only while k < next + WINDOW, so at
+     *   most WINDOW segments ever wait in memory.
+     */
+    private static final class OrderedTap {
+        private static final int WINDOW = 2 * PARALLELISM;
+
+        private final OutputStream out;
+        private final FileChannel channel;
+        private final long remoteSize;
+        private final int total;
+        private final BitSet fetching = new BitSet();
+        private final Map<Integer, byte[]> waiting = new HashMap<>();
+        private int next;
+        private boolean aborted;
+
+        OrderedTap(OutputStream out, FileChannel channel, long remoteSize, int total, List<Integer> missing) {
+            this.out = out;
+            this.channel = channel;
+            this.remoteSize = remoteSize;
+            this.total = total;
+            for (int i : missing) fetching.set(i);
+        }
+
+        /** Blocks until segment may start; false = download is being given up. */
+        synchronized boolean awaitTurn(int segment) throws InterruptedException {
+            while (!aborted && segment >= next + WINDOW) wait();
+            return !aborted;
+        }
+
+        synchronized void deliver(int segment, byte[] data) throws IOException {
+            waiting.put(segment, data);
+            drain();
+        }
+
+        /** Hand over everything that is ready, in order. */
+        synchronized void drain() throws IOException {
+            while (next < total) {
+                byte[] data = waiting.remove(next);
+                if (data != null) {
+                    out.write(data);
+                } else if (!fetching.get(next)) {
+                    copyFromDisk(next);
+                } else {
+                    break;
+                }
+                next++;
+            }
+            notifyAll();
+        }
+
+        synchronized void finish() throws IOException {
+            drain();
+            if (next < total) throw new IOException("Segment " + next + " never arrived");
+        }
+
+        synchronized void abort() {
+            aborted = true;
+            notifyAll();
+        }
+
+        private void copyFromDisk(int segment) throws IOException {
+            long pos = segment * SEGMENT_SIZE;
+            long end = pos + segmentLength(segment, remoteSize);
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            while (pos < end) {
+                buf.clear().limit((int) Math.min(BUFFER_SIZE, end - pos));
+                int n = channel.read(buf, pos);
+                if (n < 0) throw new IOException("File shorter than its sidecar says");
+                out.write(buf.array(), 0, n);
+                pos += n;
+            }
+        }
+    }
+
+    // ============================================================
+    // 📒 Sidecar
+    // ============================================================
+
+    /**
+     * Sidecar
+     * Baby-English:
+     * ✔ Text file next to the download:
+     *     header line "size,segmentSize,eTag", then one segment number
+     *     per finished segment (appended).
+     * ✔ Header does not match the object any more → thrown away.
+     * ✔ record() only keeps the number in memory; every SIDECAR_BATCH
+     *   segments (and at the end) checkpoint() forces the data file
+     *   first, THEN appends the numbers. A listed segment is on disk.
+     */
+    private static final class Sidecar implements Closeable {
+        private static final String HEADER = "# FileSharingApp S3 segments v1";
+
+        final int total;
+        private final BitSet done;
+        private final BufferedWriter out;
+        /** Finished but not yet listed in the file (data maybe not forced). */
+        private final List<Integer> pending = new ArrayList<>();
+
+        private Sidecar(int total, BitSet done, BufferedWriter out) {
+            this.total = total;
+            this.done = done;
+            this.out = out;
+        }
+
+        static Sidecar open(Path path, File target, long remoteSize, String eTag, int total) throws IOException {
+            String identity = remoteSize + "," + SEGMENT_SIZE + "," + (eTag == null ? "-" : eTag);
+            BitSet done = new BitSet(total);
+
+            boolean reuse = false;
+            if (Files.exists(path)) {
+                List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+                reuse = lines.size() >= 2 && HEADER.equals(lines.get(0)) && identity.equals(lines.get(1))
+                        && target.exists();
+                if (reuse) {
+                    for (String line : lines.subList(2, lines.size())) {
+                        try {
+                            int i = Integer.parseInt(line.trim());
+                            if (i >= 0 && i < total) done.set(i);
+                        } catch (NumberFormatException ignored) {
+                            // half-written last line
+                        }
+                    }
+                } else {
+                    LoggerUtil.info("ℹ️ [S3] Object changed since the last attempt, downloading again");
+                }
+            } else if (target.exists() && target.length() < remoteSize) {
+                // Partial file from a plain sequential download: whole segments at the start are done
+                long segments = target.length() / SEGMENT_SIZE;
+                done.set(0, (int) Math.min(segments, total));
+            }
+            if (!reuse) {
+                StringBuilder sb = new StringBuilder(HEADER).append('\n').append(identity).append('\n');
+                for (int i = done.nextSetBit(0); i >= 0; i = done.nextSetBit(i + 1)) sb.append(i).append('\n');
+                Files.writeString(path, sb.toString(), StandardCharsets.UTF_8);
+            }
+
+            BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            return new Sidecar(total, done, out);
+        }
+
+        synchronized boolean has(int segment) {
+            return done.get(segment);
+        }
+
+        synchronized int count() {
+            return done.cardinality();
+        }
+
+        void record(int segment, FileChannel data) throws IOException {
+            boolean full;
+            synchronized (this) {
+                done.set(segment);
+                pending.add(segment);
+                full = pending.size() >= SIDECAR_BATCH;
+            }
+            if (full) checkpoint(data);
+        }
+
+        /** Force the data, then list the pending segments (slow force runs outside the lock). */
+        void checkpoint(FileChannel data) throws IOException {
+            List<Integer> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) return;
+                batch = new ArrayList<>(pending);
+                pending.clear();
+            }
+            try {
+                data.force(false);
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) { // not listed → next checkpoint tries again
+                    pending.addAll(batch);
+                }
+                throw e;
+            }
+            synchronized (this) {
+                for (int segment : batch) out.write(segment + "\n");
+                out.flush();
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+}
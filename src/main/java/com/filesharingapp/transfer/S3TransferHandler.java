@@ -7,18 +7,14 @@ import com.filesharingapp.utils.HashUtil;
 import com.filesharingapp.utils.LoggerUtil;
 import com.filesharingapp.utils.ValidationUtil;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
-import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
-import software.amazon.awssdk.core.ResponseInputStream;
-import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 
+import javax.crypto.SecretKey;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
 
@@ -30,8 +26,6 @@ import java.time.Duration;
  */
 public class S3TransferHandler {
 
-    private static final int BUFFER_SIZE = 8192;
-
     // ============================
     // SENDER SIDE: Upload to S3
     // ============================
@@ -53,66 +47,55 @@ public class S3TransferHandler {
         LoggerUtil.info("🌍 Region: " + regionCode);
 
         Region region = Region.of(regionCode);
-        StaticCredentialsProvider provider = StaticCredentialsProvider.create(
-                AwsBasicCredentials.create(accessKey, secretKey)
-        );
-
-        try (S3Client s3 = S3Client.builder()
-                .region(region)
-                .credentialsProvider(provider)
-                .build()) {
-
-            ensureBucketExists(s3, bucket);
-
-            // Compute checksum
-            String checksum = HashUtil.sha256Hex(file);
-            LoggerUtil.info("🧮 Local checksum: " + checksum);
-
-            // AES encrypt if enabled
-            File finalFile = file;
-            if (TransferContext.isEncryptionEnabled()) {
-                LoggerUtil.info("🔐 Encrypting file before upload...");
-                // FIX: Use correct AesUtil signature (requires SecretKey)
-                File encryptedFile = new File(file.getAbsolutePath() + ".enc");
-                AesUtil.encryptFile(file, encryptedFile, AesUtil.buildKeyFromPassword(TransferContext.getAesPassword()));
-                finalFile = encryptedFile;
-            }
-
-            // Upload with metadata
-            PutObjectRequest putReq = PutObjectRequest.builder()
-                    .bucket(bucket)
-                    .key(key)
-                    .metadata(java.util.Map.of(
-                            "sha256", checksum,
-                            "encrypted", String.valueOf(TransferContext.isEncryptionEnabled())))
-                    .build();
-
-            s3.putObject(putReq, RequestBody.fromFile(finalFile));
-            LoggerUtil.success("✅ Uploaded to s3://" + bucket + "/" + key);
-
-            // Generate presigned URL
-            try (S3Presigner presigner = S3Presigner.builder()
-                    .credentialsProvider(provider)
-                    .region(region)
-                    .build()) {
-
-                GetObjectPresignRequest presignReq = GetObjectPresignRequest.builder()
-                        .signatureDuration(Duration.ofHours(12))
-                        .getObjectRequest(GetObjectRequest.builder()
-                                .bucket(bucket)
-                                .key(key)
-                                .build())
-                        .build();
-
-                String url = presigner.presignGetObject(presignReq).url().toString();
-                LoggerUtil.success("🔗 SHARE THIS PRESIGNED URL WITH RECEIVER:");
-                LoggerUtil.success(url);
-
-                TransferContext.setIncomingName(key);
-                TransferContext.setExpectedChecksum(checksum);
-                TransferContext.setActiveMethod("S3");
+        AwsBasicCredentials creds = AwsBasicCredentials.create(accessKey, secretKey);
+
+        S3Client s3 = S3ClientRegistry.client(region, creds);
+
+        ensureBucketExists(s3, bucket);
+
+        // Compute checksum
+        String checksum = HashUtil.fileChecksum(file);
+        LoggerUtil.info("🧮 Local checksum: " + checksum);
+
+        // AES encrypt if enabled
+        File finalFile = file;
+        if (TransferContext.isEncryptionEnabled()) {
+            LoggerUtil.info("🔐 Encrypting file before upload...");
+            // FIX: Use correct AesUtil signature (requires SecretKey)
+            File encryptedFile = new File(file.getAbsolutePath() + ".enc");
+            SecretKey aesKey = AesUtil.buildKeyFromPassword(TransferContext.getAesPassword());
+            try {
+                AesUtil.encryptFile(file, encryptedFile, aesKey);
+            } finally {
+                AesUtil.destroyKey(aesKey);
             }
+            finalFile = encryptedFile;
         }
+
+        // Upload with metadata (parallel multipart + resume for big files)
+        S3MultipartUploader.upload(s3, S3ClientRegistry.asyncClientIfEnabled(region, creds), bucket, key, finalFile, java.util.Map.of(
+                "sha256", checksum,
+                "encrypted", String.valueOf(TransferContext.isEncryptionEnabled())));
+        LoggerUtil.success("✅ Uploaded to s3://" + bucket + "/" + key);
+
+        // Generate presigned URL
+        S3Presigner presigner = S3ClientRegistry.presigner(region, creds);
+
+        GetObjectPresignRequest presignReq = GetObjectPresignRequest.builder()
+                .signatureDuration(Duration.ofHours(12))
+                .getObjectRequest(GetObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .build())
+                .build();
+
+        String url = presigner.presignGetObject(presignReq).url().toString();
+        LoggerUtil.success("🔗 SHARE THIS PRESIGNED URL WITH RECEIVER:");
+        LoggerUtil.success(url);
+
+        TransferContext.setIncomingName(key);
+        TransferContext.setExpectedChecksum(checksum);
+        TransferContext.setActiveMethod("S3");
     }
 
     // ============================
@@ -135,84 +118,49 @@ public class S3TransferHandler {
         key = sanitizeKey(key);
 
         Region region = Region.of(regionCode);
-        StaticCredentialsProvider provider = StaticCredentialsProvider.create(
-                AwsBasicCredentials.create(accessKey, secretKey)
-        );
-
-        try (S3Client s3 = S3Client.builder()
-                .credentialsProvider(provider)
-                .region(region)
-                .build()) {
+        AwsBasicCredentials creds = AwsBasicCredentials.create(accessKey, secretKey);
 
-            HeadObjectResponse head = s3.headObject(HeadObjectRequest.builder()
-                    .bucket(bucket)
-                    .key(key)
-                    .build());
+        S3Client s3 = S3ClientRegistry.client(region, creds);
 
-            long remoteSize = head.contentLength();
-            String remoteSha = head.metadata().get("sha256");
-            boolean encrypted = Boolean.parseBoolean(head.metadata().get("encrypted"));
+        HeadObjectResponse head = s3.headObject(HeadObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .build());
 
-            LoggerUtil.info("ℹ️ Remote size: " + remoteSize);
-            LoggerUtil.info("ℹ️ Remote checksum: " + remoteSha);
+        long remoteSize = head.contentLength();
+        String remoteSha = head.metadata().get("sha256");
+        boolean encrypted = Boolean.parseBoolean(head.metadata().get("encrypted"));
 
-            Path localFile = Path.of(saveFolder, key);
-            long localSize = Files.exists(localFile) ? localFile.toFile().length() : 0;
-            boolean resume = localSize > 0 && localSize < remoteSize;
+        LoggerUtil.info("ℹ️ Remote size: " + remoteSize);
+        LoggerUtil.info("ℹ️ Remote checksum: " + remoteSha);
 
-            LoggerUtil.info(resume ? "🔁 Resuming download from " + localSize : "⬇️ Starting fresh download");
+        Path localFile = Path.of(saveFolder, key);
 
-            GetObjectRequest.Builder getReqBuilder = GetObjectRequest.builder()
-                    .bucket(bucket)
-                    .key(key);
-            if (resume) getReqBuilder.range("bytes=" + localSize + "-");
-
-            try (ResponseInputStream<GetObjectResponse> s3Stream = s3.getObject(getReqBuilder.build());
-                 FileOutputStream fos = new FileOutputStream(localFile.toFile(), resume)) {
-
-                byte[] buffer = new byte[BUFFER_SIZE];
-                int read;
-                long downloaded = localSize;
-
-                while ((read = s3Stream.read(buffer)) != -1) {
-                    fos.write(buffer, 0, read);
-                    downloaded += read;
-
-                    int percent = (int) ((downloaded * 100) / remoteSize);
-                    if (percent % 10 == 0) LoggerUtil.info("📥 Download progress: " + percent + "%");
-                }
-            }
+        File decryptedFile = ReceiveSink.decryptedFileFor(localFile.toFile());
+        if (encrypted) LoggerUtil.info("🔓 Decrypting while downloading...");
 
-            LoggerUtil.success("✅ Download complete: " + localFile);
-
-            File finalFile = localFile.toFile(); // Start with the local file
-
-            if (encrypted) {
-                LoggerUtil.info("🔓 Decrypting file...");
-
-                // 1. Define the decrypted output file
-                File decryptedFile = new File(finalFile.getAbsolutePath().replace(".enc", ""));
-
-                // 2. Perform the decryption (void return)
-                AesUtil.decryptFile(
-                        finalFile, // inputFile (encrypted)
-                        decryptedFile, // outputFile (decrypted)
-                        AesUtil.buildKeyFromPassword(TransferContext.getAesPassword()) // Key
-                );
-
-                // 3. Update 'finalFile' to point to the newly created decrypted file
-                finalFile = decryptedFile;
+        // Parallel ranged GETs (resume from the .segments sidecar); bytes are
+        // hashed and decrypted in order as they arrive, no second pass
+        ReceiveSink sink = ReceiveSink.open(null, decryptedFile,
+                encrypted ? AesUtil.buildKeyFromPassword(TransferContext.getAesPassword()) : null);
+        try {
+            S3RangedDownloader.download(s3, bucket, key, localFile.toFile(), remoteSize, head.eTag(), sink.input());
+            sink.finish();
+        } catch (Exception e) {
+            sink.abort(e);
+            throw e;
+        }
 
-                LoggerUtil.success("✅ File decrypted: " + finalFile.getAbsolutePath());
-            }
+        LoggerUtil.success("✅ Download complete: " + localFile);
+        if (encrypted) {
+            LoggerUtil.success("✅ File decrypted: " + decryptedFile.getAbsolutePath());
+        }
 
-            if (remoteSha != null) {
-                String localSha = HashUtil.sha256Hex(finalFile);
-                if (remoteSha.equalsIgnoreCase(localSha)) {
-                    LoggerUtil.success("🔒 Checksum OK!");
-                } else {
-                    LoggerUtil.error("❌ Checksum mismatch! Remote=" + remoteSha + ", Local=" + localSha);
-                }
+        if (remoteSha != null) {
+            if (sink.matches(remoteSha)) {
+                LoggerUtil.success("🔒 Checksum OK!");
+            } else {
+                LoggerUtil.error("❌ Checksum mismatch! Remote=" + remoteSha + ", Local=" + sink.checksum());
             }
         }
     }
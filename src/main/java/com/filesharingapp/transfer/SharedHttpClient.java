@@ -0,0 +1,96 @@
+package com.filesharingapp.transfer;
+
+import com.filesharingapp.utils.AppConfig;
+import com.filesharingapp.utils.LoggerUtil;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * SharedHttpClient
+ * ----------------
+ * Baby-English:
+ * ✔ TWO long-lived java.net.http.HttpClients for the whole app.
+ * ✔ Both keep connections open and reuse them (no new TCP handshake
+ *   for every request).
+ * ✔ Control client (/missing, /status, stream uploads): HTTP/2 (h2c on
+ *   plain http), small requests share one warm connection. A server
+ *   without HTTP/2 just keeps talking HTTP/1.1 with keep-alive.
+ * ✔ Upload client (chunk uploads): HTTP/1.1 → one pooled keep-alive
+ *   connection per chunk in flight, so N workers really get N TCP flows
+ *   (one HTTP/2 connection would squeeze them back into one flow).
+ * ✔ http.client.version / http.client.uploadVersion pick the versions.
+ */
+public final class SharedHttpClient {
+
+    private static final Duration CONNECT_TIMEOUT =
+            Duration.ofMillis(AppConfig.getLong("http.client.connectTimeoutMs", 5000));
+    private static final Duration REQUEST_TIMEOUT =
+            Duration.ofMillis(AppConfig.getLong("http.client.requestTimeoutMs", 15000));
+
+    private static final HttpClient CLIENT = build("http.client.version", HttpClient.Version.HTTP_2);
+
+    private static final HttpClient UPLOAD_CLIENT = build("http.client.uploadVersion", HttpClient.Version.HTTP_1_1);
+
+    private SharedHttpClient() {}
+
+    private static HttpClient build(String property, HttpClient.Version fallback) {
+        String configured = AppConfig.get(property, fallback.name()).trim().toUpperCase(Locale.ROOT);
+        HttpClient.Version version;
+        try {
+            version = HttpClient.Version.valueOf(configured);
+        } catch (IllegalArgumentException e) {
+            LoggerUtil.warn("[HTTP] Unknown " + property + " '" + configured + "', using " + fallback);
+            version = fallback;
+        }
+        return HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    /** The shared control client (thread-safe). */
+    public static HttpClient get() {
+        return CLIENT;
+    }
+
+    /** The shared chunk-upload client (thread-safe). */
+    public static HttpClient uploads() {
+        return UPLOAD_CLIENT;
+    }
+
+    /** Max wait for a reply to a small request (chunk, /missing, /status). */
+    public static Duration requestTimeout() {
+        return REQUEST_TIMEOUT;
+    }
+
+    /**
+     * send
+     * Baby-English:
+     * ✔ Blocking send with the body as text.
+     * ✔ Interrupted → InterruptedIOException (interrupt flag kept).
+     */
+    public static HttpResponse<String> send(HttpRequest request) throws IOException {
+        return send(CLIENT, request);
+    }
+
+    /** Same as send, on the upload client (own connection per worker). */
+    public static HttpResponse<String> sendUpload(HttpRequest request) throws IOException {
+        return send(UPLOAD_CLIENT, request);
+    }
+
+    private static HttpResponse<String> send(HttpClient client, HttpRequest request) throws IOException {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + request.uri());
+        }
+    }
+}
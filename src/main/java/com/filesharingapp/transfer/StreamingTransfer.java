@@ -0,0 +1,34 @@
+package com.filesharingapp.transfer;
+
+import com.filesharingapp.core.PreparePipeline;
+
+/**
+ * StreamingTransfer
+ * -----------------
+ * Baby-English:
+ * ✔ Extra rule for transfer methods that can send bytes whose size is
+ *   not known yet (zip/AES still running on another thread).
+ * ✔ Sender uses it when transfer.prepare.streaming=true, so no
+ *   "name.zip(.enc)" temp file is ever written.
+ * ✔ Methods without it keep using TransferMethod.send(file).
+ */
+public interface StreamingTransfer {
+
+    /**
+     * sendStream
+     * ----------
+     * Baby-English:
+     * ✔ Read stream.input() to the end and push it to the target.
+     * ✔ Then compare stream.checksum() with what the target saw.
+     *
+     * @param senderName   Who is sending (for logs/audit only).
+     * @param stream       Prepared bytes + checksum (ready at the end).
+     * @param targetConfig Where to send.
+     * @return number of bytes sent
+     *
+     * @throws Exception if sending or the checksum check fails.
+     */
+    long sendStream(String senderName,
+                    PreparePipeline.Streamed stream,
+                    TargetConfig targetConfig) throws Exception;
+}
@@ -9,6 +9,7 @@ import com.filesharingapp.utils.ValidationUtil;
 import com.filesharingapp.security.AuthUtil; // FIX: Added missing AuthUtil import
 
 import java.io.File;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Scanner;
@@ -29,7 +30,7 @@ public class ZeroTierTransferService implements TransferMethod {
 
     @Override
     public String computeChecksum(File file) throws Exception {
-        return HashUtil.sha256Hex(file);
+        return HashUtil.fileChecksum(file);
     }
 
     @Override
@@ -100,7 +101,7 @@ public class ZeroTierTransferService implements TransferMethod {
         File finalFile = file;
 
         // 4) Compute checksum
-        String checksum = HashUtil.sha256Hex(finalFile);
+        String checksum = HashUtil.fileChecksum(finalFile);
 
         // 5) Update TransferContext
         TransferContext.setIncomingName(finalFile.getName());
@@ -142,38 +143,42 @@ public class ZeroTierTransferService implements TransferMethod {
             return;
         }
 
-        Files.copy(receivedFile, targetFile, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-        LoggerUtil.success("✅ File saved to: " + targetFile);
+        // One pass over the received file: copy or decrypt, checksum on the way
+        deliverAndVerify(receivedFile, targetFile);
         Files.deleteIfExists(receivedFile); // Cleanup server copy
-
-        // Verification and Decryption logic
-        verifyAndDecryptFile(targetFile);
     }
 
     /**
-     * Common verification and decryption logic for receiver side.
+     * deliverAndVerify
+     * Baby-English:
+     * ✔ Reads the server copy ONCE: encrypted → decrypted straight into
+     *   the save folder; plain → copied. Checksums are made on the way.
      */
-    private void verifyAndDecryptFile(Path targetFile) throws Exception {
-        // 1. AES decrypt if enabled
+    private void deliverAndVerify(Path receivedFile, Path targetFile) throws Exception {
         String aesPassword = TransferContext.getAesPassword();
-        if (TransferContext.isEncryptionEnabled() && aesPassword != null) {
-            LoggerUtil.info("🔐 [ZeroTier] Decrypting file...");
-            File decryptedFile = new File(targetFile.toString().replace(".enc", ""));
-            // FIX: Use correct AesUtil signature (requires SecretKey)
-            AesUtil.decryptFile(targetFile.toFile(), decryptedFile, AesUtil.buildKeyFromPassword(aesPassword));
-            Files.deleteIfExists(targetFile);
-            targetFile = decryptedFile.toPath();
-            LoggerUtil.success("✅ [ZeroTier] File decrypted: " + targetFile.getFileName());
+        boolean decrypt = TransferContext.isEncryptionEnabled() && aesPassword != null;
+        File decryptedFile = new File(targetFile.toString().replace(".enc", ""));
+        if (decrypt) LoggerUtil.info("🔐 [ZeroTier] Decrypting file...");
+
+        ReceiveSink sink = ReceiveSink.open(decrypt ? null : targetFile.toFile(), decryptedFile,
+                decrypt ? AesUtil.buildKeyFromPassword(aesPassword) : null);
+        try (InputStream in = Files.newInputStream(receivedFile)) {
+            sink.readFrom(in);
+            sink.finish();
+        } catch (Exception e) {
+            sink.abort(e);
+            throw e;
         }
+        LoggerUtil.success(decrypt
+                ? "✅ [ZeroTier] File decrypted: " + decryptedFile.getName()
+                : "✅ File saved to: " + targetFile);
 
-        // 2. Verify checksum
         String expectedChecksum = TransferContext.getExpectedChecksum();
         if (expectedChecksum != null && !expectedChecksum.isBlank()) {
-            String actual = HashUtil.sha256Hex(targetFile.toFile());
-            if (expectedChecksum.equalsIgnoreCase(actual)) {
+            if (sink.matches(expectedChecksum)) {
                 LoggerUtil.success("🔒 [ZeroTier] Checksum OK");
             } else {
-                LoggerUtil.error("❌ [ZeroTier] Checksum mismatch! Expected=" + expectedChecksum + " Actual=" + actual);
+                LoggerUtil.error("❌ [ZeroTier] Checksum mismatch! Expected=" + expectedChecksum + " Actual=" + sink.checksum());
             }
         }
     }
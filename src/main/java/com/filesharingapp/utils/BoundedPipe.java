@@ -0,0 +1,179 @@
+package com.filesharingapp.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BoundedPipe
+ * -----------
+ * Baby-English:
+ * ✔ One thread writes bytes in (sink), another thread reads them out (source).
+ * ✔ At most "capacityBytes" wait in between → writer pauses when the
+ *   reader is slow (back-pressure), so memory stays small.
+ * ✔ Bytes move in blocks, not one by one (no 1-second polling like
+ *   java.io.PipedInputStream).
+ * ✔ Writer fails → reader gets the same error (not a silent short file).
+ * ✔ Reader closes early → writer gets "pipe closed" and can stop.
+ */
+public final class BoundedPipe {
+
+    private static final byte[] END = new byte[0];
+    private static final long POLL_MS = 200;
+
+    private final BlockingQueue<byte[]> queue;
+    private final int blockSize;
+    private volatile boolean readerClosed;
+    private volatile Throwable failure;
+
+    private final OutputStream sink = new Sink();
+    private final InputStream source = new Source();
+
+    public BoundedPipe(int capacityBytes, int blockSize) {
+        this.blockSize = Math.max(1024, blockSize);
+        this.queue = new ArrayBlockingQueue<>(Math.max(2, capacityBytes / this.blockSize));
+    }
+
+    /** Writer side. close() = end of data. */
+    public OutputStream sink() {
+        return sink;
+    }
+
+    /** Reader side. close() = reader gives up. */
+    public InputStream source() {
+        return source;
+    }
+
+    /** Writer side broke: reader will see this error after the bytes already queued. */
+    public void fail(Throwable error) {
+        failure = error;
+        try {
+            put(END);
+        } catch (IOException ignored) {
+            // reader is gone anyway
+        }
+    }
+
+    private void put(byte[] block) throws IOException {
+        try {
+            while (!queue.offer(block, POLL_MS, TimeUnit.MILLISECONDS)) {
+                if (readerClosed) throw new IOException("Pipe closed by reader");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing to pipe");
+        }
+        // Reader closing right after taking END is normal (it saw -1 and hung up)
+        if (readerClosed && block != END) throw new IOException("Pipe closed by reader");
+    }
+
+    // ============================================================
+    // ✍️ Writer
+    // ============================================================
+
+    private final class Sink extends OutputStream {
+        private byte[] block = new byte[blockSize];
+        private int filled;
+        private boolean closed;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) throw new IOException("Pipe already closed");
+            while (len > 0) {
+                int n = Math.min(len, block.length - filled);
+                System.arraycopy(b, off, block, filled, n);
+                filled += n;
+                off += n;
+                len -= n;
+                if (filled == block.length) flushBlock();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (filled > 0) flushBlock();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            flush();
+            closed = true;
+            put(END);
+        }
+
+        private void flushBlock() throws IOException {
+            byte[] full = (filled == block.length) ? block : Arrays.copyOf(block, filled);
+            put(full);
+            block = new byte[blockSize];
+            filled = 0;
+        }
+    }
+
+    // ============================================================
+    // 📖 Reader
+    // ============================================================
+
+    private final class Source extends InputStream {
+        private byte[] current;
+        private int pos;
+        private boolean ended;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return (n == -1) ? -1 : (one[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!nextBlock()) return -1;
+            int n = Math.min(len, current.length - pos);
+            System.arraycopy(current, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (current != null) ? current.length - pos : 0;
+        }
+
+        @Override
+        public void close() {
+            readerClosed = true;
+            queue.clear();
+        }
+
+        private boolean nextBlock() throws IOException {
+            while (!ended && (current == null || pos == current.length)) {
+                try {
+                    current = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while reading from pipe");
+                }
+                pos = 0;
+                if (current == END) ended = true;
+            }
+            if (ended) {
+                Throwable error = failure;
+                if (error != null) throw new IOException("Producer failed: " + error.getMessage(), error);
+                return false;
+            }
+            return true;
+        }
+    }
+}
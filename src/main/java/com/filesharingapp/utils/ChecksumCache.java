@@ -0,0 +1,195 @@
+package com.filesharingapp.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChecksumCache
+ * -------------
+ * Baby-English:
+ * ✔ Remembers checksums of files we already hashed, even after restart.
+ * ✔ Same file sent to ten receivers → hashed once, not ten times.
+ *
+ * Key = who the file is right now:
+ * ✔ canonical path
+ * ✔ size
+ * ✔ last-modified time (nanoseconds)
+ * ✔ file key (inode on Linux/macOS; "-" where the OS has none)
+ * ✔ checksum mode (sha256 / merkle:leafSize)
+ * Any change → new key → fresh hash. Old keys just age out.
+ *
+ * Features:
+ * ✔ Thread-safe (synchronized)
+ * ✔ Stored in logs/checksum_cache.csv (append-only, compacted on load)
+ * ✔ Keeps at most MAX_ENTRIES (oldest dropped first)
+ * ✔ transfer.checksum.cache.enabled=false → always hash
+ */
+public final class ChecksumCache {
+
+    /** Folder for logs. */
+    private static final Path LOG_DIR = Path.of("logs");
+    /** CSV file for cached checksums. */
+    private static final Path CACHE_FILE = LOG_DIR.resolve("checksum_cache.csv");
+
+    /** How many files we remember. */
+    private static final int MAX_ENTRIES = 10_000;
+
+    /** In-memory map in insertion order: key → checksum. */
+    private static final Map<String, String> CACHE = new LinkedHashMap<>(256, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private static final boolean ENABLED = AppConfig.getBoolean("transfer.checksum.cache.enabled", true);
+
+    static {
+        if (ENABLED) load();
+    }
+
+    private ChecksumCache() {
+        // Utility class – no objects.
+    }
+
+    /**
+     * get
+     * ---
+     * Baby-English: known checksum for this exact file version, or null.
+     */
+    public static String get(File file, String mode) {
+        if (!ENABLED) return null;
+        String key = keyOf(file, mode);
+        if (key == null) return null;
+        synchronized (ChecksumCache.class) {
+            return CACHE.get(key);
+        }
+    }
+
+    /**
+     * put
+     * ---
+     * Baby-English: remember checksum in memory and append it to the CSV.
+     */
+    public static void put(File file, String mode, String checksum) {
+        if (!ENABLED || checksum == null || checksum.isBlank()) return;
+        String key = keyOf(file, mode);
+        if (key == null) return;
+        synchronized (ChecksumCache.class) {
+            if (checksum.equals(CACHE.get(key))) return;
+            CACHE.put(key, checksum);
+            appendToCsv(key, checksum);
+        }
+    }
+
+    /**
+     * keyOf
+     * -----
+     * Baby-English: path|size|mtimeNanos|fileKey|mode, or null if the file
+     * cannot be read right now.
+     */
+    private static String keyOf(File file, String mode) {
+        try {
+            Path path = file.toPath().toRealPath();
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            Object fileKey = attrs.fileKey();
+            return safe(path.toString())
+                    + "|" + attrs.size()
+                    + "|" + attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                    + "|" + (fileKey != null ? safe(fileKey.toString()) : "-")
+                    + "|" + safe(mode);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // ============================================================
+    // 💾 CSV storage
+    // ============================================================
+
+    /**
+     * load
+     * ----
+     * Baby-English:
+     * ✔ Read every line; the last line for a key wins.
+     * ✔ If the file has many repeats or too many rows → write it back
+     *   short (only what is in memory).
+     */
+    private static void load() {
+        try {
+            Files.createDirectories(LOG_DIR);
+            if (!Files.exists(CACHE_FILE)) return;
+
+            int lines = 0;
+            try (BufferedReader br = Files.newBufferedReader(CACHE_FILE)) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    String[] parts = line.split("\",", 2);
+                    if (parts.length != 2) continue;
+                    String key = parts[0].replace("\"", "").trim();
+                    String[] rest = parts[1].split(",", 2);
+                    String checksum = rest[0].trim();
+                    if (key.isEmpty() || checksum.isEmpty()) continue;
+                    CACHE.remove(key); // re-insert → newest goes last
+                    CACHE.put(key, checksum);
+                    lines++;
+                }
+            }
+
+            if (lines > CACHE.size() * 2 && lines > 100) {
+                compact();
+            }
+            LoggerUtil.info("[ChecksumCache] Loaded " + CACHE.size() + " cached checksums.");
+        } catch (IOException e) {
+            LoggerUtil.error("Failed to load checksum cache", e);
+        }
+    }
+
+    private static void compact() throws IOException {
+        List<String> rows = new ArrayList<>(CACHE.size());
+        String now = Instant.now().toString();
+        for (Map.Entry<String, String> e : CACHE.entrySet()) {
+            rows.add(escapeCsv(e.getKey()) + "," + e.getValue() + "," + now);
+        }
+        Files.write(CACHE_FILE, rows);
+        LoggerUtil.info("[ChecksumCache] Compacted cache file to " + rows.size() + " rows.");
+    }
+
+    private static void appendToCsv(String key, String checksum) {
+        try (Writer w = new FileWriter(CACHE_FILE.toFile(), true)) {
+            w.write(escapeCsv(key) + "," + checksum + "," + Instant.now() + "\n");
+        } catch (IOException e) {
+            LoggerUtil.error("Failed to store checksum in cache", e);
+        }
+    }
+
+    /**
+     * safe
+     * ----
+     * Baby-English: no newlines, pipes or quotes inside key parts.
+     */
+    private static String safe(String v) {
+        if (v == null) return "";
+        return v.replace("\n", " ")
+                .replace("\r", " ")
+                .replace("|", "_")
+                .replace("\"", "'")
+                .trim();
+    }
+
+    private static String escapeCsv(String v) {
+        return "\"" + v + "\"";
+    }
+}
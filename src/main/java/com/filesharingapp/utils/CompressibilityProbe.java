@@ -0,0 +1,258 @@
+package com.filesharingapp.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * CompressibilityProbe
+ * --------------------
+ * Baby-English:
+ * ✔ Before we zip, take a quick look: will this file get smaller at all?
+ * ✔ Known squeezed formats (jpg, mp4, gz, zip, our own AES files ...)
+ *   → no. Found by the first bytes ("magic"), then by the extension.
+ * ✔ Otherwise read a few small samples spread over the file:
+ *     - bytes look random (entropy near 8 bits/byte) → try a fast
+ *       deflate on the samples to be sure,
+ *     - else → yes, it will shrink.
+ * ✔ Costs a few 64 KB reads, not a full pass.
+ * ✔ Same file (path + size + time) asked twice → answer from memory,
+ *   so one transfer logs its decision once.
+ */
+public final class CompressibilityProbe {
+
+    private static final boolean ENABLED = AppConfig.getBoolean("zip.probe.enabled", true);
+
+    /** Smaller expected savings than this → not worth deflating. */
+    private static final double MIN_SAVINGS = AppConfig.getDouble("zip.probe.minSavings", 0.03);
+
+    /** What to do with a lone incompressible file: "skip" = send without zip, "store" = zip as STORED. */
+    private static final boolean SKIP_ZIP =
+            !"store".equalsIgnoreCase(AppConfig.get("zip.probe.incompressible", "skip").trim());
+
+    private static final int SAMPLES = Math.max(1, AppConfig.getInt("zip.probe.samples", 4));
+    private static final int SAMPLE_BYTES = 64 * 1024;
+
+    /** Below this the byte mix alone already says "will shrink". */
+    private static final double RANDOM_ENTROPY = 7.5;
+
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+            "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "zst", "lz4", "br",
+            "jar", "apk", "docx", "xlsx", "pptx", "odt", "epub",
+            "jpg", "jpeg", "png", "gif", "webp", "heic", "avif",
+            "mp4", "m4v", "mov", "mkv", "webm", "avi",
+            "mp3", "m4a", "aac", "ogg", "opus", "flac",
+            "enc");
+
+    private static final int MEMO_SIZE = 64;
+    private static final Map<String, Verdict> MEMO = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Verdict> eldest) {
+            return size() > MEMO_SIZE;
+        }
+    };
+
+    private CompressibilityProbe() {}
+
+    /** zip.probe.incompressible=skip → a lone incompressible file is sent without a zip wrapper. */
+    public static boolean skipZipWhenIncompressible() {
+        return ENABLED && SKIP_ZIP;
+    }
+
+    // ============================================================
+    // 1️⃣ Result
+    // ============================================================
+
+    public static final class Verdict {
+        /** true → deflate; false → STORED / no zip */
+        public final boolean compressible;
+        /** 0.0 – 1.0, part of the size we expect to save */
+        public final double estimatedSavings;
+        /** Why (for the log) */
+        public final String reason;
+
+        Verdict(boolean compressible, double estimatedSavings, String reason) {
+            this.compressible = compressible;
+            this.estimatedSavings = estimatedSavings;
+            this.reason = reason;
+        }
+    }
+
+    // ============================================================
+    // 2️⃣ Probe
+    // ============================================================
+
+    /**
+     * probe
+     * Baby-English:
+     * ✔ Never throws: cannot read → "compressible" (the old behaviour).
+     * ✔ zip.probe.enabled=false → always "compressible".
+     */
+    public static Verdict probe(File file) {
+        if (!ENABLED || file == null || !file.isFile()) {
+            return new Verdict(true, 0.0, "probe off");
+        }
+
+        String key = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+        synchronized (MEMO) {
+            Verdict known = MEMO.get(key);
+            if (known != null) return known;
+        }
+
+        long start = System.nanoTime();
+        Verdict verdict;
+        try {
+            verdict = examine(file);
+        } catch (IOException e) {
+            LoggerUtil.warn("[ZipProbe] Could not sample " + file.getName() + ": " + e.getMessage());
+            verdict = new Verdict(true, 0.0, "sample failed");
+        }
+
+        long savedBytes = (long) (file.length() * verdict.estimatedSavings);
+        LoggerUtil.info(String.format(Locale.ROOT,
+                "[ZipProbe] %s → %s (%s, est. savings %.1f%% ≈ %d bytes, probe %d ms)",
+                file.getName(),
+                verdict.compressible ? "DEFLATE" : "STORE",
+                verdict.reason,
+                verdict.estimatedSavings * 100,
+                savedBytes,
+                (System.nanoTime() - start) / 1_000_000));
+
+        synchronized (MEMO) {
+            MEMO.put(key, verdict);
+        }
+        return verdict;
+    }
+
+    private static Verdict examine(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            long size = channel.size();
+            if (size == 0) return new Verdict(true, 0.0, "empty");
+
+            byte[] head = read(channel, 0, (int) Math.min(16, size));
+            String format = knownFormat(head);
+            if (format == null) format = knownExtension(file.getName());
+            if (format != null) return new Verdict(false, 0.0, "format " + format);
+
+            // Samples spread evenly: start, ..., end
+            int sampleLen = (int) Math.min(SAMPLE_BYTES, size);
+            int count = (size <= (long) sampleLen * SAMPLES) ? (int) Math.max(1, size / sampleLen) : SAMPLES;
+            byte[][] samples = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                long pos = (count == 1) ? 0 : (size - sampleLen) * i / (count - 1);
+                samples[i] = read(channel, pos, sampleLen);
+            }
+
+            double entropy = entropy(samples);
+            if (entropy < RANDOM_ENTROPY) {
+                // 8 - H bits of every byte are redundant (a floor: deflate also finds repeats)
+                return new Verdict(true, 1.0 - entropy / 8.0,
+                        String.format(Locale.ROOT, "entropy %.2f bits/byte", entropy));
+            }
+
+            double savings = Math.max(0.0, deflateTrial(samples));
+            return new Verdict(savings >= MIN_SAVINGS, savings,
+                    String.format(Locale.ROOT, "entropy %.2f bits/byte, trial deflate %.1f%%", entropy, savings * 100));
+        }
+    }
+
+    // ============================================================
+    // 3️⃣ Signals
+    // ============================================================
+
+    /** Magic bytes of formats that are already squeezed (null = none known). */
+    private static String knownFormat(byte[] h) {
+        if (starts(h, 0x50, 0x4B, 0x03, 0x04)) return "zip";
+        if (starts(h, 0x1F, 0x8B)) return "gzip";
+        if (starts(h, 'B', 'Z', 'h')) return "bzip2";
+        if (starts(h, 0xFD, '7', 'z', 'X', 'Z', 0x00)) return "xz";
+        if (starts(h, '7', 'z', 0xBC, 0xAF, 0x27, 0x1C)) return "7z";
+        if (starts(h, 0x28, 0xB5, 0x2F, 0xFD)) return "zstd";
+        if (starts(h, 'R', 'a', 'r', '!')) return "rar";
+        if (starts(h, 0xFF, 0xD8, 0xFF)) return "jpeg";
+        if (starts(h, 0x89, 'P', 'N', 'G')) return "png";
+        if (starts(h, 'G', 'I', 'F', '8')) return "gif";
+        if (starts(h, 'O', 'g', 'g', 'S')) return "ogg";
+        if (starts(h, 'f', 'L', 'a', 'C')) return "flac";
+        if (starts(h, 'I', 'D', '3')) return "mp3";
+        if (starts(h, 'F', 'S', 'G', '1')) return "aes-gcm";
+        if (h.length >= 12 && starts(h, 'R', 'I', 'F', 'F')
+                && new String(h, 8, 4, StandardCharsets.US_ASCII).equals("WEBP")) return "webp";
+        if (h.length >= 8 && new String(h, 4, 4, StandardCharsets.US_ASCII).equals("ftyp")) return "mp4/mov";
+        if (starts(h, 0x1A, 0x45, 0xDF, 0xA3)) return "mkv/webm";
+        return null;
+    }
+
+    private static String knownExtension(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot < 0 || dot == name.length() - 1) return null;
+        String ext = name.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return COMPRESSED_EXTENSIONS.contains(ext) ? "." + ext : null;
+    }
+
+    /** Shannon entropy of all samples together, in bits per byte (0 – 8). */
+    private static double entropy(byte[][] samples) {
+        long[] counts = new long[256];
+        long total = 0;
+        for (byte[] s : samples) {
+            for (byte b : s) counts[b & 0xFF]++;
+            total += s.length;
+        }
+        double bits = 0.0;
+        for (long c : counts) {
+            if (c == 0) continue;
+            double p = (double) c / total;
+            bits -= p * (Math.log(p) / Math.log(2));
+        }
+        return bits;
+    }
+
+    /** Fastest deflate level on the samples → part of the bytes saved. */
+    private static double deflateTrial(byte[][] samples) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            byte[] buf = new byte[SAMPLE_BYTES];
+            long in = 0;
+            long out = 0;
+            for (byte[] s : samples) {
+                deflater.reset();
+                deflater.setInput(s);
+                deflater.finish();
+                while (!deflater.finished()) out += deflater.deflate(buf);
+                in += s.length;
+            }
+            return 1.0 - (double) out / in;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // ============================================================
+    // 🔧 Helpers
+    // ============================================================
+
+    private static boolean starts(byte[] h, int... magic) {
+        if (h.length < magic.length) return false;
+        for (int i = 0; i < magic.length; i++) {
+            if ((h[i] & 0xFF) != (magic[i] & 0xFF)) return false;
+        }
+        return true;
+    }
+
+    private static byte[] read(FileChannel channel, long pos, int len) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, pos + buf.position());
+            if (n < 0) break;
+        }
+        return (buf.position() == len) ? buf.array() : Arrays.copyOf(buf.array(), buf.position());
+    }
+}
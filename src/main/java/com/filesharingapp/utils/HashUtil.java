@@ -2,10 +2,20 @@ package com.filesharingapp.utils;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * HashUtil
@@ -13,11 +23,170 @@ import java.security.NoSuchAlgorithmException;
  * Baby-English:
  * ✔ We make digital fingerprints (SHA-256) for strings and files.
  * ✔ Used to check file integrity after transfer.
+ * ✔ Tree mode (Merkle): cut the file in fixed-size leaves, hash the
+ *   leaves on all cores, then hash pairs up to one root.
+ *   Leaf hashes = fingerprints for single chunks.
  */
 public class HashUtil {
 
+    /** Leaf size for "transfer.checksum.mode=merkle" when not configured. */
+    public static final long DEFAULT_LEAF_SIZE = 1024 * 1024;
+
+    /** One fork/join task maps this much of the file at once. */
+    private static final long SEGMENT_BYTES = 32L * 1024 * 1024;
+
+    /** Domain bytes so a leaf hash can never be mistaken for a node hash. */
+    private static final byte LEAF_PREFIX = 0x00;
+    private static final byte NODE_PREFIX = 0x01;
+
+    /** ChecksumCache mode tag for plain SHA-256. */
+    private static final String SHA256_MODE = "sha256";
+
     private HashUtil() {}
 
+    // ============================================================
+    // 🧾 File checksum used by transfers
+    // ============================================================
+
+    /**
+     * fileChecksum
+     * Baby-English:
+     * ✔ The ONE checksum every transfer path should use for files.
+     * ✔ transfer.checksum.mode=sha256 (default) → plain SHA-256.
+     * ✔ transfer.checksum.mode=merkle → parallel Merkle root
+     *   (sender and receiver must use the same mode).
+     * ✔ Answers are kept in ChecksumCache (survives restarts), so an
+     *   unchanged file is never hashed twice.
+     */
+    public static String fileChecksum(File file) throws IOException {
+        String mode = checksumModeTag();
+        String known = ChecksumCache.get(file, mode);
+        if (known != null) return known;
+
+        String checksum;
+        if (isMerkleMode()) {
+            checksum = merkleTree(file, merkleLeafSize()).rootHex();
+        } else {
+            checksum = sha256Hex(file);
+        }
+        ChecksumCache.put(file, mode, checksum);
+        return checksum;
+    }
+
+    /**
+     * sha256Checksum
+     * Baby-English:
+     * ✔ Always plain SHA-256, whatever transfer.checksum.mode says.
+     * ✔ For places where an older peer expects SHA-256.
+     * ✔ Shares the "sha256" entries of ChecksumCache with fileChecksum().
+     */
+    public static String sha256Checksum(File file) throws IOException {
+        String known = ChecksumCache.get(file, SHA256_MODE);
+        if (known != null) return known;
+
+        String checksum = sha256Hex(file);
+        ChecksumCache.put(file, SHA256_MODE, checksum);
+        return checksum;
+    }
+
+    /**
+     * rememberChecksum
+     * Baby-English:
+     * ✔ Whoever produced the file and hashed it on the way (see
+     *   StreamingChecksum) tells us the answer here.
+     * ✔ Later fileChecksum() calls for that exact file are free.
+     */
+    public static void rememberChecksum(File file, String checksum) throws IOException {
+        ChecksumCache.put(file, checksumModeTag(), checksum);
+    }
+
+    /** "sha256" or "merkle:<leafSize>" – part of the cache key. */
+    private static String checksumModeTag() {
+        return isMerkleMode() ? "merkle:" + merkleLeafSize() : SHA256_MODE;
+    }
+
+    private static boolean isMerkleMode() {
+        return "merkle".equalsIgnoreCase(AppConfig.get("transfer.checksum.mode", "sha256"));
+    }
+
+    private static long merkleLeafSize() {
+        return AppConfig.getLong("transfer.checksum.leafSize", DEFAULT_LEAF_SIZE);
+    }
+
+    // ============================================================
+    // 🌊 Checksum while bytes flow by
+    // ============================================================
+
+    /**
+     * StreamingChecksum
+     * Baby-English:
+     * ✔ Feed bytes as they are written → get the SAME value that
+     *   fileChecksum() would give for the finished file.
+     * ✔ sha256 mode → one running digest.
+     * ✔ merkle mode → a new leaf digest every leafSize bytes; the
+     *   leaves are combined into the root at the end.
+     */
+    public static final class StreamingChecksum {
+        private final MessageDigest whole;
+        private final long leafSize;
+        private final List<byte[]> leaves = new ArrayList<>();
+        private MessageDigest leaf;
+        private long inLeaf;
+
+        private StreamingChecksum(boolean merkle, long leafSize) {
+            this.whole = merkle ? null : newSha256();
+            this.leafSize = leafSize;
+            this.leaf = merkle ? newLeafDigest() : null;
+        }
+
+        public void update(byte[] data, int off, int len) {
+            if (whole != null) {
+                whole.update(data, off, len);
+                return;
+            }
+            while (len > 0) {
+                int n = (int) Math.min(len, leafSize - inLeaf);
+                leaf.update(data, off, n);
+                inLeaf += n;
+                off += n;
+                len -= n;
+                if (inLeaf == leafSize) {
+                    leaves.add(leaf.digest());
+                    leaf = newLeafDigest();
+                    inLeaf = 0;
+                }
+            }
+        }
+
+        /** Stream that feeds every byte written to it into this checksum, then on to "sink". */
+        public OutputStream tap(OutputStream sink) {
+            return new FilterOutputStream(sink) {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    update(b, off, len);
+                    out.write(b, off, len);
+                }
+            };
+        }
+
+        /** Finish and return hex text (call once). */
+        public String finishHex() {
+            if (whole != null) return bytesToHex(whole.digest());
+            if (inLeaf > 0 || leaves.isEmpty()) leaves.add(leaf.digest());
+            return bytesToHex(combine(leaves.toArray(new byte[0][])));
+        }
+    }
+
+    /** New streaming checksum in the configured mode. */
+    public static StreamingChecksum newStreamingChecksum() {
+        return new StreamingChecksum(isMerkleMode(), merkleLeafSize());
+    }
+
     /**
      * Generates a SHA-256 hash for the given file.
      * This is the core method for integrity checks.
@@ -40,6 +209,157 @@ public class HashUtil {
         }
     }
 
+    // ============================================================
+    // 🌳 Merkle tree (parallel, memory-mapped)
+    // ============================================================
+
+    /**
+     * MerkleTree
+     * Baby-English:
+     * ✔ leaves[i] = SHA-256(0x00 + bytes of leaf i)
+     * ✔ node      = SHA-256(0x01 + left + right); odd one moves up as-is
+     * ✔ root      = the one hash left at the top
+     */
+    public static final class MerkleTree {
+        private final long leafSize;
+        private final long fileSize;
+        private final byte[][] leaves;
+        private final byte[] root;
+
+        private MerkleTree(long leafSize, long fileSize, byte[][] leaves, byte[] root) {
+            this.leafSize = leafSize;
+            this.fileSize = fileSize;
+            this.leaves = leaves;
+            this.root = root;
+        }
+
+        public long getLeafSize() { return leafSize; }
+        public long getFileSize() { return fileSize; }
+        public int leafCount() { return leaves.length; }
+        public String leafHex(int index) { return bytesToHex(leaves[index]); }
+        public String rootHex() { return bytesToHex(root); }
+    }
+
+    /**
+     * merkleTree
+     * Baby-English:
+     * ✔ One leaf per "leafSize" bytes (last leaf may be shorter).
+     * ✔ Leaves are hashed with fork/join on the common pool; each task
+     *   maps up to 32 MB of the file and hashes the leaves inside it.
+     * ✔ Use leafSize = chunk size → leafHex(i) checks chunk i alone.
+     *
+     * @param leafSize bytes per leaf (1 … Integer.MAX_VALUE)
+     */
+    public static MerkleTree merkleTree(File file, long leafSize) throws IOException {
+        if (leafSize <= 0 || leafSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid leaf size: " + leafSize);
+        }
+        long size = file.length();
+        int count = (int) Math.max(1L, (size + leafSize - 1) / leafSize);
+        byte[][] leaves = new byte[count][];
+        int leavesPerSegment = (int) Math.max(1L, SEGMENT_BYTES / leafSize);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ForkJoinPool.commonPool().invoke(
+                    new LeafTask(channel, leafSize, size, leaves, 0, count, leavesPerSegment));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new MerkleTree(leafSize, size, leaves, combine(leaves));
+    }
+
+    /** Digest already fed with the leaf prefix; add the chunk bytes, then digest(). */
+    public static MessageDigest newLeafDigest() {
+        MessageDigest digest = newSha256();
+        digest.update(LEAF_PREFIX);
+        return digest;
+    }
+
+    /** Hex text for a finished digest. */
+    public static String toHex(byte[] hash) {
+        return bytesToHex(hash);
+    }
+
+    /**
+     * LeafTask
+     * Baby-English: split leaf range in two until it fits in one segment,
+     * then map that segment once and hash its leaves one by one.
+     */
+    private static final class LeafTask extends RecursiveAction {
+        private final FileChannel channel;
+        private final long leafSize;
+        private final long fileSize;
+        private final byte[][] leaves;
+        private final int from;
+        private final int to;
+        private final int leavesPerSegment;
+
+        LeafTask(FileChannel channel, long leafSize, long fileSize, byte[][] leaves,
+                 int from, int to, int leavesPerSegment) {
+            this.channel = channel;
+            this.leafSize = leafSize;
+            this.fileSize = fileSize;
+            this.leaves = leaves;
+            this.from = from;
+            this.to = to;
+            this.leavesPerSegment = leavesPerSegment;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > leavesPerSegment) {
+                int mid = from + (to - from) / 2;
+                invokeAll(new LeafTask(channel, leafSize, fileSize, leaves, from, mid, leavesPerSegment),
+                          new LeafTask(channel, leafSize, fileSize, leaves, mid, to, leavesPerSegment));
+                return;
+            }
+            try {
+                long start = from * leafSize;
+                long end = Math.min(to * leafSize, fileSize);
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                for (int i = from; i < to; i++) {
+                    int leafStart = (int) ((i - from) * leafSize);
+                    int leafEnd = (int) Math.min(leafStart + leafSize, end - start);
+                    MessageDigest digest = newLeafDigest();
+                    digest.update(segment.slice(leafStart, leafEnd - leafStart));
+                    leaves[i] = digest.digest();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /** Hash pairs level by level until one root is left. */
+    private static byte[] combine(byte[][] leaves) {
+        byte[][] level = leaves;
+        while (level.length > 1) {
+            byte[][] next = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < next.length; i++) {
+                int left = 2 * i;
+                if (left + 1 >= level.length) {
+                    next[i] = level[left];
+                    continue;
+                }
+                MessageDigest digest = newSha256();
+                digest.update(NODE_PREFIX);
+                digest.update(level[left]);
+                digest.update(level[left + 1]);
+                next[i] = digest.digest();
+            }
+            level = next;
+        }
+        return level[0];
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 algorithm not found.", e);
+        }
+    }
+
     /**
      * Generates a hash for the given input string.
      *
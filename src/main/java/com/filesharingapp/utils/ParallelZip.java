@@ -0,0 +1,465 @@
+package com.filesharingapp.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * ParallelZip
+ * -----------
+ * Baby-English:
+ * ✔ ZipOutputStream squeezes a file on ONE core.
+ * ✔ Here (same idea as "pigz"):
+ *     1) cut the file into blocks (zip.parallel.blockSize),
+ *     2) squeeze every block on its own core with its own Deflater,
+ *        primed with the last 32 KB of the block before (good ratio),
+ *     3) glue the squeezed blocks together in order.
+ * ✔ Every block but the last ends with a "sync flush" → blocks line up
+ *   on byte borders, so the glued bytes are ONE normal deflate stream.
+ *   Any unzip tool reads the result.
+ * ✔ Sizes/CRC go in a data descriptor after the data, so we can write
+ *   straight into a pipe or socket. ZIP64 is used when an entry, the
+ *   archive or the entry count is too big for classic ZIP.
+ * ✔ addStoredFile: bytes copied as they are (STORED), for files that
+ *   would not shrink anyway (see CompressibilityProbe).
+ */
+public final class ParallelZip {
+
+    private static final boolean ENABLED = AppConfig.getBoolean("zip.parallel.enabled", true);
+
+    private static final int THREADS = AppConfig.getInt("zip.parallel.threads", 0) > 0
+            ? AppConfig.getInt("zip.parallel.threads", 0)
+            : Runtime.getRuntime().availableProcessors();
+
+    /** Plain bytes per block. */
+    private static final int BLOCK_SIZE = Math.max(64 * 1024, AppConfig.getInt("zip.parallel.blockSize", 512 * 1024));
+
+    /** Deflate looks back at most 32 KB → that is all the dictionary we need. */
+    private static final int DICT_SIZE = 32 * 1024;
+
+    private static final long MAX_32 = 0xFFFF_FFFFL;
+    private static final int MAX_16 = 0xFFFF;
+
+    private static final int LOCAL_SIG = 0x04034b50;
+    private static final int DESCRIPTOR_SIG = 0x08074b50;
+    private static final int CENTRAL_SIG = 0x02014b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int END_SIG = 0x06054b50;
+
+    /** bit 3 = sizes in data descriptor, bit 11 = UTF-8 names */
+    private static final int DEFLATED_FLAGS = 0x0008 | 0x0800;
+    private static final int STORED_FLAGS = 0x0800;
+    private static final int DEFLATED = 8;
+    private static final int STORED = 0;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+        private final AtomicInteger n = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "zip-deflate-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /** One raw (no zlib header) Deflater per worker thread, reset per block. */
+    private static final ThreadLocal<Deflater> DEFLATERS =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<byte[]> OUT_BUFFER = ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+
+    private ParallelZip() {}
+
+    /** zip.parallel.enabled (default true). */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    // ============================================================
+    // 1️⃣ Archive writer
+    // ============================================================
+
+    /**
+     * Writer
+     * Baby-English:
+     * ✔ addFile(...) / addStoredFile(...) as many times as needed, then close().
+     * ✔ close() writes the table of contents and closes the stream.
+     */
+    public static final class Writer implements Closeable {
+
+        private final CountingOutputStream out;
+        private final List<CentralEntry> entries = new ArrayList<>();
+        private boolean closed;
+
+        public Writer(OutputStream out) {
+            this.out = new CountingOutputStream(out);
+        }
+
+        public void addFile(File file, String entryName) throws IOException {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                addEntry(entryName, in, file.lastModified());
+            }
+        }
+
+        /** Any stream works, the size does not need to be known up front. */
+        public void addEntry(String entryName, InputStream in, long modifiedMs) throws IOException {
+            if (closed) throw new IOException("Archive already closed");
+
+            CentralEntry e = newEntry(entryName, DEFLATED, DEFLATED_FLAGS, modifiedMs);
+            writeLocalHeader(e);
+            deflateEntry(in, e);
+            e.zip64 = e.compressedSize >= MAX_32 || e.size >= MAX_32;
+            writeDescriptor(e);
+            entries.add(e);
+        }
+
+        /**
+         * addStoredFile
+         * Baby-English:
+         * ✔ STORED needs CRC + size BEFORE the data (readers insist), so
+         *   we read the file once for the CRC, then copy it.
+         * ✔ CRC is checked again while copying → file changed in between
+         *   gives an error, not a broken archive.
+         */
+        public void addStoredFile(File file, String entryName) throws IOException {
+            if (closed) throw new IOException("Archive already closed");
+
+            CentralEntry e = newEntry(entryName, STORED, STORED_FLAGS, file.lastModified());
+            e.crc = crc32(file);
+            e.size = file.length();
+            e.compressedSize = e.size;
+            e.zip64 = e.size >= MAX_32;
+            writeLocalHeader(e);
+
+            CRC32 crc = new CRC32();
+            long copied = 0;
+            byte[] buf = new byte[64 * 1024];
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                int n;
+                while (copied < e.size && (n = in.read(buf, 0, (int) Math.min(buf.length, e.size - copied))) > 0) {
+                    crc.update(buf, 0, n);
+                    out.write(buf, 0, n);
+                    copied += n;
+                }
+            }
+            if (copied != e.size || crc.getValue() != e.crc) {
+                throw new IOException("File changed while zipping: " + file.getName());
+            }
+            entries.add(e);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                writeCentralDirectory();
+                out.flush();
+            } finally {
+                out.close();
+            }
+        }
+
+        // --------------------------------------------------------
+        // Headers
+        // --------------------------------------------------------
+
+        private CentralEntry newEntry(String entryName, int method, int flags, long modifiedMs) {
+            CentralEntry e = new CentralEntry();
+            e.name = entryName.getBytes(StandardCharsets.UTF_8);
+            e.method = method;
+            e.flags = flags;
+            e.offset = out.count;
+            int[] dos = dosTime(modifiedMs);
+            e.dosTime = dos[0];
+            e.dosDate = dos[1];
+            return e;
+        }
+
+        /**
+         * DEFLATED: sizes are not known yet → all zero here, real values in
+         * the descriptor (8-byte sizes only when they do not fit in 4 bytes,
+         * same rule as java.util.zip reads and writes).
+         * STORED: CRC + sizes right here (ZIP64 extra when ≥ 4 GB).
+         */
+        private void writeLocalHeader(CentralEntry e) throws IOException {
+            boolean stored = e.method == STORED;
+            boolean extra = stored && e.zip64;
+            ByteBuffer bb = le(30 + e.name.length + (extra ? 20 : 0));
+            bb.putInt(LOCAL_SIG)
+                    .putShort((short) (extra ? 45 : 20))
+                    .putShort((short) e.flags)
+                    .putShort((short) e.method)
+                    .putShort((short) e.dosTime)
+                    .putShort((short) e.dosDate)
+                    .putInt(stored ? (int) e.crc : 0)
+                    .putInt(!stored ? 0 : extra ? (int) MAX_32 : (int) e.compressedSize)
+                    .putInt(!stored ? 0 : extra ? (int) MAX_32 : (int) e.size)
+                    .putShort((short) e.name.length)
+                    .putShort((short) (extra ? 20 : 0))
+                    .put(e.name);
+            if (extra) {
+                bb.putShort((short) 0x0001).putShort((short) 16).putLong(e.size).putLong(e.compressedSize);
+            }
+            out.write(bb.array());
+        }
+
+        private void writeDescriptor(CentralEntry e) throws IOException {
+            ByteBuffer bb = le(e.zip64 ? 24 : 16);
+            bb.putInt(DESCRIPTOR_SIG).putInt((int) e.crc);
+            if (e.zip64) {
+                bb.putLong(e.compressedSize).putLong(e.size);
+            } else {
+                bb.putInt((int) e.compressedSize).putInt((int) e.size);
+            }
+            out.write(bb.array());
+        }
+
+        private void writeCentralDirectory() throws IOException {
+            long cdStart = out.count;
+            for (CentralEntry e : entries) {
+                boolean big = e.zip64 || e.size >= MAX_32 || e.compressedSize >= MAX_32 || e.offset >= MAX_32;
+                int extraLen = big ? 28 : 0;
+                ByteBuffer bb = le(46 + e.name.length + extraLen);
+                bb.putInt(CENTRAL_SIG)
+                        .putShort((short) 45)                    // made by
+                        .putShort((short) (big ? 45 : 20))       // needed
+                        .putShort((short) e.flags)
+                        .putShort((short) e.method)
+                        .putShort((short) e.dosTime)
+                        .putShort((short) e.dosDate)
+                        .putInt((int) e.crc)
+                        .putInt(big ? (int) MAX_32 : (int) e.compressedSize)
+                        .putInt(big ? (int) MAX_32 : (int) e.size)
+                        .putShort((short) e.name.length)
+                        .putShort((short) extraLen)
+                        .putShort((short) 0)                     // comment
+                        .putShort((short) 0)                     // disk
+                        .putShort((short) 0)                     // internal attrs
+                        .putInt(0)                               // external attrs
+                        .putInt(big ? (int) MAX_32 : (int) e.offset)
+                        .put(e.name);
+                if (big) {
+                    bb.putShort((short) 0x0001).putShort((short) 24)
+                            .putLong(e.size).putLong(e.compressedSize).putLong(e.offset);
+                }
+                out.write(bb.array());
+            }
+            long cdSize = out.count - cdStart;
+
+            int count = entries.size();
+            boolean zip64End = count >= MAX_16 || cdStart >= MAX_32 || cdSize >= MAX_32
+                    || entries.stream().anyMatch(e -> e.zip64);
+            if (zip64End) {
+                long zip64EndOffset = out.count;
+                ByteBuffer bb = le(56 + 20);
+                bb.putInt(ZIP64_END_SIG).putLong(44)
+                        .putShort((short) 45).putShort((short) 45)
+                        .putInt(0).putInt(0)
+                        .putLong(count).putLong(count)
+                        .putLong(cdSize).putLong(cdStart);
+                bb.putInt(ZIP64_LOCATOR_SIG).putInt(0).putLong(zip64EndOffset).putInt(1);
+                out.write(bb.array());
+            }
+
+            ByteBuffer end = le(22);
+            end.putInt(END_SIG)
+                    .putShort((short) 0).putShort((short) 0)
+                    .putShort((short) Math.min(count, MAX_16))
+                    .putShort((short) Math.min(count, MAX_16))
+                    .putInt((int) Math.min(cdSize, MAX_32))
+                    .putInt((int) Math.min(cdStart, MAX_32))
+                    .putShort((short) 0);
+            out.write(end.array());
+        }
+
+        // --------------------------------------------------------
+        // Data: read → deflate on the pool → write in order
+        // --------------------------------------------------------
+
+        /**
+         * Baby-English:
+         * ✔ This thread reads blocks, updates the CRC and writes results.
+         * ✔ The pool squeezes up to 2×THREADS blocks at the same time;
+         *   more than that and we wait (memory stays small).
+         */
+        private void deflateEntry(InputStream in, CentralEntry e) throws IOException {
+            CRC32 crc = new CRC32();
+            Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+            int maxInFlight = THREADS * 2;
+            byte[] previous = null;
+            byte[] current = readBlock(in);
+
+            try {
+                while (true) {
+                    byte[] next = (current.length < BLOCK_SIZE) ? EMPTY : readBlock(in);
+                    boolean last = next.length == 0;
+                    crc.update(current);
+                    e.size += current.length;
+
+                    final byte[] data = current;
+                    final byte[] dict = previous;
+                    inFlight.add(POOL.submit(() -> deflateBlock(data, dict, last)));
+
+                    while (inFlight.size() >= maxInFlight || (last && !inFlight.isEmpty())) {
+                        byte[] packed = await(inFlight.poll());
+                        out.write(packed);
+                        e.compressedSize += packed.length;
+                    }
+                    if (last) break;
+                    previous = current;
+                    current = next;
+                }
+            } finally {
+                for (Future<byte[]> f : inFlight) f.cancel(true);
+            }
+            e.crc = crc.getValue();
+        }
+    }
+
+    /** What the central directory needs to know about one entry. */
+    private static final class CentralEntry {
+        byte[] name;
+        int method;
+        int flags;
+        boolean zip64;
+        long offset;
+        int dosTime;
+        int dosDate;
+        long crc;
+        long size;
+        long compressedSize;
+    }
+
+    // ============================================================
+    // 2️⃣ One block
+    // ============================================================
+
+    /**
+     * deflateBlock
+     * Baby-English:
+     * ✔ Prime with the end of the block before (dict) → same ratio as
+     *   one long stream, nearly.
+     * ✔ Not last → SYNC_FLUSH (ends on a byte border, stream stays open).
+     * ✔ Last → finish() (writes the final block marker).
+     */
+    private static byte[] deflateBlock(byte[] data, byte[] dict, boolean last) {
+        Deflater d = DEFLATERS.get();
+        d.reset();
+        if (dict != null) {
+            int len = Math.min(DICT_SIZE, dict.length);
+            d.setDictionary(dict, dict.length - len, len);
+        }
+        d.setInput(data);
+
+        byte[] buf = OUT_BUFFER.get();
+        ByteArrayOutputStream packed = new ByteArrayOutputStream(data.length / 2 + 64);
+        if (last) {
+            d.finish();
+            while (!d.finished()) {
+                int n = d.deflate(buf);
+                packed.write(buf, 0, n);
+            }
+        } else {
+            int n;
+            do {
+                n = d.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                packed.write(buf, 0, n);
+            } while (n == buf.length);
+        }
+        return packed.toByteArray();
+    }
+
+    // ============================================================
+    // 🔧 Helpers
+    // ============================================================
+
+    /** CRC32 of a whole file (STORED entries need it before the data). */
+    static long crc32(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int n;
+            while ((n = in.read(buf)) > 0) crc.update(buf, 0, n);
+        }
+        return crc.getValue();
+    }
+
+    private static byte[] readBlock(InputStream in) throws IOException {
+        byte[] block = new byte[BLOCK_SIZE];
+        int n = in.readNBytes(block, 0, BLOCK_SIZE);
+        return (n == BLOCK_SIZE) ? block : Arrays.copyOf(block, n);
+    }
+
+    private static byte[] await(Future<byte[]> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Compression failed", e.getCause());
+        }
+    }
+
+    private static ByteBuffer le(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** {time, date} in MS-DOS format (2-second steps, year ≥ 1980). */
+    private static int[] dosTime(long millis) {
+        LocalDateTime t = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (t.getYear() < 1980) t = LocalDateTime.of(1980, 1, 1, 0, 0);
+        int time = (t.getHour() << 11) | (t.getMinute() << 5) | (t.getSecond() >> 1);
+        int date = ((t.getYear() - 1980) << 9) | (t.getMonthValue() << 5) | t.getDayOfMonth();
+        return new int[]{time, date};
+    }
+
+    /** Keeps track of where we are in the archive (entry offsets). */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -2,7 +2,6 @@ package com.filesharingapp.utils;
 
 import java.io.*;
 import java.nio.file.Files;
-import java.security.MessageDigest;
 import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -44,12 +43,7 @@ public final class ZipUtil {
         File targetFolder = (destFolder != null) ? destFolder : file.getParentFile();
         File zipFile = new File(targetFolder, sanitizeName(file.getName()) + ".zip");
 
-        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile))) {
-            ZipEntry entry = new ZipEntry(sanitizeName(file.getName()));
-            zos.putNextEntry(entry);
-            Files.copy(file.toPath(), zos);
-            zos.closeEntry();
-        }
+        writeArchive(List.of(file), new BufferedOutputStream(new FileOutputStream(zipFile)), null);
 
         verifyZip(zipFile);
         LoggerUtil.info("[Zip] Created archive: " + zipFile.getName(), null);
@@ -66,14 +60,59 @@ public final class ZipUtil {
 
         File zipFile = new File(destFolder, "archive_" + System.currentTimeMillis() + ".zip");
 
-        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile))) {
-            int total = files.size();
-            int count = 0;
+        writeArchive(files, new BufferedOutputStream(new FileOutputStream(zipFile)), callback);
+
+        verifyZip(zipFile);
+        LoggerUtil.info("[Zip] Multi-file archive created: " + zipFile.getName(), null);
+        return zipFile;
+    }
+
+    // ============================
+    // ✅ Write Archive To Any Stream
+    // ============================
+    /**
+     * Baby English:
+     *   - Puts every real file of the list into ONE zip on "out".
+     *   - zip.parallel.enabled=true → ParallelZip (all cores squeeze).
+     *   - false → plain ZipOutputStream (one core), same as before.
+     *   - Files that will not shrink (CompressibilityProbe) go in STORED.
+     *   - Closes "out" at the end.
+     */
+    public static void writeArchive(List<File> files, OutputStream out, ProgressCallback callback) throws IOException {
+        int total = files.size();
+        int count = 0;
+
+        if (ParallelZip.isEnabled()) {
+            try (ParallelZip.Writer zip = new ParallelZip.Writer(out)) {
+                for (File f : files) {
+                    if (f == null || !f.exists() || !f.isFile()) continue;
+                    if (CompressibilityProbe.probe(f).compressible) {
+                        zip.addFile(f, sanitizeName(f.getName()));
+                    } else {
+                        zip.addStoredFile(f, sanitizeName(f.getName()));
+                    }
+
+                    count++;
+                    if (callback != null) {
+                        callback.onProgress(count, total);
+                    }
+                }
+            }
+            return;
+        }
 
+        try (ZipOutputStream zos = new ZipOutputStream(out)) {
             for (File f : files) {
                 if (f == null || !f.exists() || !f.isFile()) continue;
 
                 ZipEntry entry = new ZipEntry(sanitizeName(f.getName()));
+                if (!CompressibilityProbe.probe(f).compressible) {
+                    // STORED wants size + CRC before the bytes
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(f.length());
+                    entry.setCompressedSize(f.length());
+                    entry.setCrc(ParallelZip.crc32(f));
+                }
                 zos.putNextEntry(entry);
                 Files.copy(f.toPath(), zos);
                 zos.closeEntry();
@@ -84,16 +123,12 @@ public final class ZipUtil {
                 }
             }
         }
-
-        verifyZip(zipFile);
-        LoggerUtil.info("[Zip] Multi-file archive created: " + zipFile.getName(), null);
-        return zipFile;
     }
 
     // ============================
     // ✅ Sanitize File Name
     // ============================
-    private static String sanitizeName(String name) {
+    public static String sanitizeName(String name) {
         // Baby English: Remove bad characters
         return name.replaceAll("[^A-Za-z0-9._-]", "_");
     }
@@ -113,21 +148,8 @@ public final class ZipUtil {
     // ✅ Compute Checksum After ZIP
     // ============================
     public static String computeChecksum(File file) throws IOException {
-        try (InputStream is = new FileInputStream(file)) {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] buffer = new byte[8192];
-            int read;
-            while ((read = is.read(buffer)) != -1) {
-                digest.update(buffer, 0, read);
-            }
-            StringBuilder sb = new StringBuilder();
-            for (byte b : digest.digest()) {
-                sb.append(String.format("%02x", b));
-            }
-            return sb.toString();
-        } catch (Exception e) {
-            throw new IOException("Failed to compute checksum", e);
-        }
+        // Always SHA-256 (older peers expect it), even in merkle mode; cached
+        return HashUtil.sha256Checksum(file);
     }
 
     // ============================
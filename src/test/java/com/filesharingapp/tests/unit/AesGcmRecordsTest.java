@@ -0,0 +1,266 @@
+package com.filesharingapp.tests.unit;
+
+import com.filesharingapp.security.AesGcmRecords;
+import com.filesharingapp.security.AesUtil;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * AesGcmRecordsTest
+ * -----------------
+ * AES-GCM record format:
+ * ✔ file and stream round trips (empty, partial last record, exact fit)
+ * ✔ decryptRange gives the same bytes as slicing the plain file
+ * ✔ cut-off, swapped, changed records and a wrong password all fail
+ */
+public class AesGcmRecordsTest {
+
+    private static final int RECORD = 1024;             // smallest allowed → many records from little data
+    private static final int FULL = RECORD + AesGcmRecords.TAG_LENGTH;
+
+    private Path dir;
+    private SecretKey key;
+
+    @BeforeClass
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("aes-gcm-records");
+        key = AesUtil.buildKeyFromPassword("correct horse battery staple");
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDown() throws IOException {
+        AesUtil.destroyKey(key);
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Round trips
+    // ------------------------------------------------------------
+
+    @Test
+    public void fileRoundTripWithPartialLastRecord() throws IOException {
+        assertFileRoundTrip(randomBytes(10 * RECORD + 321));
+    }
+
+    @Test
+    public void fileRoundTripWithExactRecords() throws IOException {
+        assertFileRoundTrip(randomBytes(4 * RECORD));
+    }
+
+    @Test
+    public void emptyFileIsOneEmptyRecord() throws IOException {
+        File enc = assertFileRoundTrip(new byte[0]);
+        Assert.assertEquals(enc.length(), (long) AesGcmRecords.HEADER_LENGTH + AesGcmRecords.TAG_LENGTH);
+    }
+
+    @Test
+    public void streamRoundTrip() throws IOException {
+        byte[] plain = randomBytes(7 * RECORD + 5);
+        byte[] sealed = encryptWithStream(plain);
+        Assert.assertEquals((long) sealed.length, AesGcmRecords.encryptedLength(plain.length, RECORD));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long n = AesGcmRecords.decryptStream(new ByteArrayInputStream(sealed), out, key);
+        Assert.assertEquals(n, (long) plain.length);
+        Assert.assertEquals(out.toByteArray(), plain);
+    }
+
+    @Test
+    public void streamAndFileFormatsAreTheSame() throws IOException {
+        byte[] plain = randomBytes(3 * RECORD + 17);
+        File enc = dir.resolve("from-stream.enc").toFile();
+        Files.write(enc.toPath(), encryptWithStream(plain));
+
+        File dec = dir.resolve("from-stream.dec").toFile();
+        AesGcmRecords.decryptFile(enc, dec, key);
+        Assert.assertEquals(Files.readAllBytes(dec.toPath()), plain);
+    }
+
+    // ------------------------------------------------------------
+    // Ranges
+    // ------------------------------------------------------------
+
+    @Test
+    public void decryptRangeMatchesThePlainSlice() throws IOException {
+        byte[] plain = randomBytes(5 * RECORD + 100);
+        File enc = encryptToFile("range", plain);
+
+        try (FileChannel ch = FileChannel.open(enc.toPath(), StandardOpenOption.READ)) {
+            Assert.assertEquals(AesGcmRecords.plainLength(ch), (long) plain.length);
+
+            assertRange(ch, plain, 0, 10);                      // start of first record
+            assertRange(ch, plain, 500, 100);                   // middle of one record
+            assertRange(ch, plain, RECORD - 3, 6);              // across a record edge
+            assertRange(ch, plain, RECORD, RECORD);             // exactly one record
+            assertRange(ch, plain, 100, 4 * RECORD);            // many records
+            assertRange(ch, plain, 5 * RECORD + 50, 50);        // inside the short last record
+            assertRange(ch, plain, 0, plain.length);            // everything
+        }
+    }
+
+    @Test
+    public void decryptRangeStopsAtTheEndOfTheFile() throws IOException {
+        byte[] plain = randomBytes(2 * RECORD + 10);
+        File enc = encryptToFile("range-end", plain);
+
+        try (FileChannel ch = FileChannel.open(enc.toPath(), StandardOpenOption.READ)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            AesGcmRecords.decryptRange(ch, 2 * RECORD, 1_000_000, key, out);
+            Assert.assertEquals(out.toByteArray(), Arrays.copyOfRange(plain, 2 * RECORD, plain.length));
+
+            ByteArrayOutputStream none = new ByteArrayOutputStream();
+            AesGcmRecords.decryptRange(ch, 0, 0, key, none);
+            Assert.assertEquals(none.size(), 0);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Tampering
+    // ------------------------------------------------------------
+
+    @Test
+    public void droppingWholeRecordsFromTheEndIsDetected() throws IOException {
+        byte[] plain = randomBytes(3 * RECORD + 50);
+        File enc = encryptToFile("cut", plain);
+        truncate(enc, AesGcmRecords.HEADER_LENGTH + 2L * FULL); // records 0 and 1 still perfect
+
+        assertDecryptFails(enc);
+        assertStreamDecryptFails(Files.readAllBytes(enc.toPath()));
+    }
+
+    @Test
+    public void cutInsideARecordIsDetected() throws IOException {
+        byte[] plain = randomBytes(3 * RECORD);
+        File enc = encryptToFile("cut-mid", plain);
+        truncate(enc, enc.length() - 100);
+
+        assertDecryptFails(enc);
+        assertStreamDecryptFails(Files.readAllBytes(enc.toPath()));
+    }
+
+    @Test
+    public void swappedRecordsAreDetected() throws IOException {
+        byte[] plain = randomBytes(4 * RECORD);
+        File enc = encryptToFile("swap", plain);
+
+        byte[] bytes = Files.readAllBytes(enc.toPath());
+        int a = AesGcmRecords.HEADER_LENGTH;
+        int b = a + FULL;
+        byte[] first = Arrays.copyOfRange(bytes, a, b);
+        System.arraycopy(bytes, b, bytes, a, FULL);
+        System.arraycopy(first, 0, bytes, b, FULL);
+        Files.write(enc.toPath(), bytes);
+
+        assertDecryptFails(enc);
+        assertStreamDecryptFails(bytes);
+    }
+
+    @Test
+    public void changedByteIsDetectedByItsRange() throws IOException {
+        byte[] plain = randomBytes(3 * RECORD);
+        File enc = encryptToFile("flip", plain);
+
+        byte[] bytes = Files.readAllBytes(enc.toPath());
+        bytes[AesGcmRecords.HEADER_LENGTH + FULL + 7] ^= 1;      // inside record 1
+        Files.write(enc.toPath(), bytes);
+
+        try (FileChannel ch = FileChannel.open(enc.toPath(), StandardOpenOption.READ)) {
+            assertRange(ch, plain, 0, RECORD);                  // record 0 untouched → still fine
+            Assert.assertThrows(IOException.class,
+                    () -> AesGcmRecords.decryptRange(ch, RECORD, 10, key, new ByteArrayOutputStream()));
+        }
+    }
+
+    @Test
+    public void wrongPasswordIsRejected() throws IOException {
+        File enc = encryptToFile("wrong-pass", randomBytes(2 * RECORD));
+        SecretKey other = AesUtil.buildKeyFromPassword("not the password");
+
+        File dec = dir.resolve("wrong-pass.dec").toFile();
+        try {
+            Assert.assertThrows(IOException.class, () -> AesGcmRecords.decryptFile(enc, dec, other));
+            Assert.assertFalse(dec.exists(), "half-made output is removed");
+        } finally {
+            AesUtil.destroyKey(other);
+        }
+    }
+
+    // ------------------------------------------------------------
+
+    private File assertFileRoundTrip(byte[] plain) throws IOException {
+        File enc = encryptToFile("round-" + plain.length, plain);
+        Assert.assertEquals(enc.length(), AesGcmRecords.encryptedLength(plain.length, RECORD));
+        Assert.assertTrue(AesGcmRecords.isRecordFile(enc.toPath()));
+
+        File dec = dir.resolve("round-" + plain.length + ".dec").toFile();
+        AesGcmRecords.decryptFile(enc, dec, key);
+        Assert.assertEquals(Files.readAllBytes(dec.toPath()), plain);
+        return enc;
+    }
+
+    private File encryptToFile(String name, byte[] plain) throws IOException {
+        File src = dir.resolve(name + ".plain").toFile();
+        File enc = dir.resolve(name + ".enc").toFile();
+        Files.write(src.toPath(), plain);
+        AesGcmRecords.encryptFile(src, enc, key, RECORD);
+        return enc;
+    }
+
+    private byte[] encryptWithStream(byte[] plain) throws IOException {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (OutputStream out = AesGcmRecords.encryptingStream(sink, key, RECORD)) {
+            out.write(plain, 0, 100);                           // odd-sized writes cross record edges
+            out.write(plain, 100, plain.length - 100);
+        }
+        return sink.toByteArray();
+    }
+
+    private void assertRange(FileChannel ch, byte[] plain, int start, int length) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AesGcmRecords.decryptRange(ch, start, length, key, out);
+        Assert.assertEquals(out.toByteArray(), Arrays.copyOfRange(plain, start, start + length),
+                "range " + start + "+" + length);
+    }
+
+    private void assertDecryptFails(File enc) {
+        File dec = dir.resolve(enc.getName() + ".dec").toFile();
+        Assert.assertThrows(IOException.class, () -> AesGcmRecords.decryptFile(enc, dec, key));
+        Assert.assertFalse(dec.exists(), "half-made output is removed");
+    }
+
+    private void assertStreamDecryptFails(byte[] sealed) {
+        Assert.assertThrows(IOException.class, () -> AesGcmRecords.decryptStream(
+                new ByteArrayInputStream(sealed), new ByteArrayOutputStream(), key));
+    }
+
+    private static void truncate(File file, long size) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            ch.truncate(size);
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,169 @@
+package com.filesharingapp.tests.unit;
+
+import com.filesharingapp.core.ChunkBitmap;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * ChunkBitmapTest
+ * ---------------
+ * Which-chunks-do-we-have bitmap:
+ * ✔ set / get / cardinality / missingRanges in the heap
+ * ✔ checkpoint → bits survive a reopen, header values too
+ * ✔ close without checkpoint → bits are NOT on disk
+ */
+@Test(singleThreaded = true) // files are per method, kept in fields
+public class ChunkBitmapTest {
+
+    private Path dir;
+    private Path bitmapFile;
+    private FileChannel data;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("chunk-bitmap");
+        bitmapFile = dir.resolve("upload.bitmap");
+        data = FileChannel.open(dir.resolve("upload.part"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws IOException {
+        data.close();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void setGetAndCardinality() {
+        ChunkBitmap bitmap = ChunkBitmap.inMemory(20);
+        Assert.assertTrue(bitmap.set(0));
+        Assert.assertTrue(bitmap.set(9));
+        Assert.assertFalse(bitmap.set(9), "second set of the same chunk is not new");
+
+        Assert.assertTrue(bitmap.get(0));
+        Assert.assertTrue(bitmap.get(9));
+        Assert.assertFalse(bitmap.get(8));
+        Assert.assertEquals(bitmap.cardinality(), 2);
+        Assert.assertFalse(bitmap.isComplete());
+        Assert.assertFalse(bitmap.isPersistent());
+    }
+
+    @Test
+    public void completeWhenEveryChunkIsSet() {
+        ChunkBitmap bitmap = ChunkBitmap.inMemory(11); // not a multiple of 8
+        for (int i = 0; i < 11; i++) bitmap.set(i);
+        Assert.assertTrue(bitmap.isComplete());
+        Assert.assertTrue(bitmap.missingRanges().isEmpty());
+    }
+
+    @Test
+    public void missingRangesGroupsRuns() {
+        ChunkBitmap bitmap = ChunkBitmap.inMemory(10);
+        bitmap.set(2);
+        bitmap.set(3);
+        bitmap.set(7);
+
+        List<int[]> missing = bitmap.missingRanges();
+        Assert.assertEquals(missing.size(), 3);
+        Assert.assertEquals(missing.get(0), new int[]{0, 2});
+        Assert.assertEquals(missing.get(1), new int[]{4, 7});
+        Assert.assertEquals(missing.get(2), new int[]{8, 10});
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void indexPastTheEndIsRejected() {
+        ChunkBitmap.inMemory(8).set(8);
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void negativeIndexIsRejected() {
+        ChunkBitmap.inMemory(8).get(-1);
+    }
+
+    @Test
+    public void checkpointedBitsSurviveReopen() throws IOException {
+        ChunkBitmap bitmap = ChunkBitmap.create(bitmapFile, "tx-1", "report.pdf", 4096, 50_000, 13);
+        bitmap.set(0);
+        bitmap.set(5);
+        bitmap.set(12);
+        bitmap.checkpoint(data);
+        bitmap.close();
+
+        ChunkBitmap reopened = ChunkBitmap.open(bitmapFile);
+        try {
+            Assert.assertTrue(reopened.isPersistent());
+            Assert.assertEquals(reopened.getTransferId(), "tx-1");
+            Assert.assertEquals(reopened.getFileName(), "report.pdf");
+            Assert.assertEquals(reopened.getChunkSize(), 4096L);
+            Assert.assertEquals(reopened.getTotalBytes(), 50_000L);
+            Assert.assertEquals(reopened.getTotalChunks(), 13);
+            Assert.assertEquals(reopened.cardinality(), 3);
+            Assert.assertTrue(reopened.get(0));
+            Assert.assertTrue(reopened.get(5));
+            Assert.assertTrue(reopened.get(12));
+            Assert.assertFalse(reopened.get(1));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void bitsSetAfterCheckpointAreLostOnClose() throws IOException {
+        ChunkBitmap bitmap = ChunkBitmap.create(bitmapFile, "tx-2", "a.bin", 1024, 8192, 8);
+        bitmap.set(1);
+        bitmap.checkpoint(data);
+        bitmap.set(2);             // data for chunk 2 was never forced
+        bitmap.close();
+
+        ChunkBitmap reopened = ChunkBitmap.open(bitmapFile);
+        try {
+            Assert.assertTrue(reopened.get(1));
+            Assert.assertFalse(reopened.get(2));
+            Assert.assertEquals(reopened.cardinality(), 1);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void createReplacesAnOldBitmap() throws IOException {
+        ChunkBitmap old = ChunkBitmap.create(bitmapFile, "tx-3", "a.bin", 1024, 4096, 4);
+        old.set(0);
+        old.checkpoint(data);
+        old.close();
+
+        ChunkBitmap fresh = ChunkBitmap.create(bitmapFile, "tx-3", "a.bin", 1024, 4096, 4);
+        try {
+            Assert.assertEquals(fresh.cardinality(), 0);
+        } finally {
+            fresh.close();
+        }
+    }
+
+    @Test
+    public void deleteRemovesTheFile() throws IOException {
+        ChunkBitmap bitmap = ChunkBitmap.create(bitmapFile, "tx-4", "a.bin", 1024, 4096, 4);
+        bitmap.delete();
+        Assert.assertFalse(Files.exists(bitmapFile));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void openRejectsAFileThatIsNotABitmap() throws IOException {
+        Files.write(bitmapFile, new byte[2048]);
+        ChunkBitmap.open(bitmapFile);
+    }
+}
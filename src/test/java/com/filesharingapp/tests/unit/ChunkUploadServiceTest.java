@@ -0,0 +1,167 @@
+package com.filesharingapp.tests.unit;
+
+import com.filesharingapp.server.ChunkUploadService;
+import com.filesharingapp.server.ChunkUploadService.ChunkRejectedException;
+import com.filesharingapp.server.ChunkUploadService.MissingReport;
+import com.filesharingapp.utils.HashUtil;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+/**
+ * ChunkUploadServiceTest
+ * ----------------------
+ * handleChunk, straight into the preallocated .part file:
+ * ✔ units in any order, several units in one request (chunkCount)
+ * ✔ a duplicate of a stored unit is drained, never written again
+ * ✔ CRC32C / hash mismatch → rejected, bit stays clear, shows in getMissingReport
+ * ✔ last unit in → .part is moved into received/
+ */
+@Test(singleThreaded = true) // one transfer per method, kept in fields
+public class ChunkUploadServiceTest {
+
+    private static final int UNIT = 1024;
+    private static final int TOTAL = 3 * UNIT - 72;          // 3 units, the last one short
+
+    private String transferId;
+    private String fileName;
+    private byte[] data;
+
+    @BeforeMethod
+    public void setUp() {
+        long stamp = System.nanoTime();
+        transferId = "chunk-test-" + stamp;
+        fileName = "chunk-test-" + stamp + ".bin";
+        data = new byte[TOTAL];
+        new Random(stamp).nextBytes(data);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Path.of("received", fileName));
+        Files.deleteIfExists(partFile());
+        Files.deleteIfExists(Path.of("tmp", "uploads", transferId + ".bitmap"));
+    }
+
+    @Test
+    public void unitsOutOfOrderAndManyPerRequestAreMovedIntoPlace() throws IOException {
+        Assert.assertEquals(send(2, 1, unit(2), null, null), "CHUNK-STORED");
+        Assert.assertTrue(Files.exists(partFile()), "preallocated .part");
+        Assert.assertEquals(Files.size(partFile()), (long) TOTAL);
+
+        MissingReport report = ChunkUploadService.getMissingReport(transferId);
+        Assert.assertEquals(report.totalChunks, 3);
+        Assert.assertEquals(report.receivedChunks, 1);
+        Assert.assertEquals(report.missingChunks.size(), 1);
+        Assert.assertEquals(report.missingChunks.get(0), new int[]{0, 2});
+
+        Assert.assertEquals(send(0, 2, Arrays.copyOfRange(data, 0, 2 * UNIT), null, null), "MERGED");
+        assertMovedIntoPlace();
+    }
+
+    @Test
+    public void duplicateOfAStoredUnitIsNotWrittenAgain() throws IOException {
+        send(0, 1, unit(0), null, null);
+
+        byte[] other = new byte[UNIT];
+        Arrays.fill(other, (byte) 0x5A);
+        Assert.assertEquals(send(0, 1, other, null, null), "CHUNK-STORED");
+        Assert.assertEquals(Arrays.copyOfRange(Files.readAllBytes(partFile()), 0, UNIT), unit(0),
+                "stored unit untouched");
+        Assert.assertEquals(ChunkUploadService.getMissingReport(transferId).receivedChunks, 1);
+
+        // Units 0-1 in one request: 0 is skipped, 1 is written
+        Assert.assertEquals(send(0, 2, Arrays.copyOfRange(data, 0, 2 * UNIT), null, null), "CHUNK-STORED");
+        Assert.assertEquals(ChunkUploadService.getMissingReport(transferId).receivedChunks, 2);
+
+        Assert.assertEquals(send(2, 1, unit(2), null, null), "MERGED");
+        assertMovedIntoPlace();
+    }
+
+    @Test
+    public void crcMismatchLeavesTheUnitMissing() throws IOException {
+        send(0, 1, unit(0), null, null);
+
+        ChunkRejectedException rejected = Assert.expectThrows(ChunkRejectedException.class,
+                () -> send(1, 1, unit(1), "deadbeef", null));
+        Assert.assertEquals(rejected.getChunkIndex(), 1);
+        assertMissing(1, new int[]{1, 3});
+
+        // Resend with the right CRC → accepted
+        Assert.assertEquals(send(1, 1, unit(1), crc32c(unit(1)), null), "CHUNK-STORED");
+        assertMissing(2, new int[]{2, 3});
+
+        Assert.assertEquals(send(2, 1, unit(2), crc32c(unit(2)), null), "MERGED");
+        assertMovedIntoPlace();
+    }
+
+    @Test
+    public void hashMismatchLeavesAllUnitsOfTheRequestMissing() throws IOException {
+        byte[] body = Arrays.copyOfRange(data, 0, 2 * UNIT);
+        String badHashes = leafHash(unit(0)) + "," + leafHash(unit(2));
+
+        ChunkRejectedException rejected = Assert.expectThrows(ChunkRejectedException.class,
+                () -> send(0, 2, body, null, badHashes));
+        Assert.assertEquals(rejected.getChunkIndex(), 1);
+        assertMissing(0, new int[]{0, 3});
+
+        String goodHashes = leafHash(unit(0)) + "," + leafHash(unit(1));
+        Assert.assertEquals(send(0, 2, body, null, goodHashes), "CHUNK-STORED");
+        Assert.assertEquals(send(2, 1, unit(2), null, leafHash(unit(2))), "MERGED");
+        assertMovedIntoPlace();
+    }
+
+    // ------------------------------------------------------------
+
+    private String send(int chunkIndex, int chunkCount, byte[] body, String crc, String leafHashes)
+            throws IOException {
+        return ChunkUploadService.handleChunk(transferId, fileName, chunkIndex, UNIT, chunkCount, TOTAL,
+                new ByteArrayInputStream(body), null, crc, leafHashes);
+    }
+
+    private void assertMissing(int received, int[] missing) {
+        MissingReport report = ChunkUploadService.getMissingReport(transferId);
+        Assert.assertNotNull(report, "transfer still open");
+        Assert.assertEquals(report.receivedChunks, received);
+        Assert.assertEquals(report.missingChunks.size(), 1);
+        Assert.assertEquals(report.missingChunks.get(0), missing);
+    }
+
+    private void assertMovedIntoPlace() throws IOException {
+        Path done = Path.of("received", fileName);
+        Assert.assertTrue(Files.exists(done), "file moved into received/");
+        Assert.assertEquals(Files.readAllBytes(done), data);
+        Assert.assertFalse(Files.exists(partFile()), ".part is gone");
+        Assert.assertNull(ChunkUploadService.getMissingReport(transferId), "transfer closed");
+    }
+
+    private Path partFile() {
+        return Path.of("tmp", "uploads", transferId + ".part");
+    }
+
+    private byte[] unit(int index) {
+        return Arrays.copyOfRange(data, index * UNIT, Math.min((index + 1) * UNIT, TOTAL));
+    }
+
+    private static String crc32c(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static String leafHash(byte[] bytes) {
+        MessageDigest digest = HashUtil.newLeafDigest();
+        digest.update(bytes);
+        return HashUtil.toHex(digest.digest());
+    }
+}
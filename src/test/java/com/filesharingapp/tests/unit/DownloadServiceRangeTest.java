@@ -0,0 +1,176 @@
+package com.filesharingapp.tests.unit;
+
+import com.filesharingapp.server.DownloadService;
+import com.filesharingapp.server.DownloadService.ByteRange;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * DownloadServiceRangeTest
+ * ------------------------
+ * Range / If-Range rules of RFC 7233:
+ * ✔ null  → no usable header, whole file (200)
+ * ✔ empty → nothing fits inside the file (416)
+ * ✔ else  → pieces to send (206)
+ */
+public class DownloadServiceRangeTest {
+
+    private static final long SIZE = 1000;
+    private static final String ETAG = "\"3e8-18f0a\"";
+    private static final long MODIFIED_MS = 1_700_000_000_000L;
+
+    // ------------------------------------------------------------
+    // parseRanges
+    // ------------------------------------------------------------
+
+    @Test
+    public void simpleRange() {
+        List<ByteRange> ranges = DownloadService.parseRanges("bytes=0-99", SIZE);
+        assertRanges(ranges, 0, 99);
+        Assert.assertEquals(ranges.get(0).length(), 100L);
+        Assert.assertEquals(ranges.get(0).contentRange(SIZE), "bytes 0-99/1000");
+    }
+
+    @Test
+    public void openEndedRangeGoesToTheLastByte() {
+        assertRanges(DownloadService.parseRanges("bytes=500-", SIZE), 500, 999);
+    }
+
+    @Test
+    public void suffixRangeIsTheLastBytes() {
+        assertRanges(DownloadService.parseRanges("bytes=-200", SIZE), 800, 999);
+    }
+
+    @Test
+    public void suffixLongerThanTheFileIsTheWholeFile() {
+        assertRanges(DownloadService.parseRanges("bytes=-5000", SIZE), 0, 999);
+    }
+
+    @Test
+    public void endPastTheFileIsCut() {
+        assertRanges(DownloadService.parseRanges("bytes=900-5000", SIZE), 900, 999);
+    }
+
+    @Test
+    public void singleByteRanges() {
+        assertRanges(DownloadService.parseRanges("bytes=0-0,-1", SIZE), 0, 0, 999, 999);
+    }
+
+    @Test
+    public void multipleRangesKeepTheirOrder() {
+        assertRanges(DownloadService.parseRanges("bytes=20-29, 0-9", SIZE), 20, 29, 0, 9);
+    }
+
+    @Test
+    public void overlappingRangesAreSentAsAsked() {
+        assertRanges(DownloadService.parseRanges("bytes=0-499,400-599", SIZE), 0, 499, 400, 599);
+    }
+
+    @Test
+    public void unitIsCaseInsensitive() {
+        assertRanges(DownloadService.parseRanges("BYTES=10-19", SIZE), 10, 19);
+    }
+
+    @Test
+    public void unsatisfiablePiecesAreDropped() {
+        assertRanges(DownloadService.parseRanges("bytes=2000-3000,5-9", SIZE), 5, 9);
+    }
+
+    @Test
+    public void startAtOrPastTheEndIsUnsatisfiable() {
+        assertUnsatisfiable(DownloadService.parseRanges("bytes=1000-", SIZE));
+        assertUnsatisfiable(DownloadService.parseRanges("bytes=1000-1200,5000-6000", SIZE));
+    }
+
+    @Test
+    public void zeroSuffixIsUnsatisfiable() {
+        assertUnsatisfiable(DownloadService.parseRanges("bytes=-0", SIZE));
+    }
+
+    @Test
+    public void emptyFileCannotSatisfyAnyRange() {
+        assertUnsatisfiable(DownloadService.parseRanges("bytes=0-", 0));
+        assertUnsatisfiable(DownloadService.parseRanges("bytes=-10", 0));
+    }
+
+    @Test
+    public void invalidHeadersAreIgnored() {
+        Assert.assertNull(DownloadService.parseRanges(null, SIZE));
+        Assert.assertNull(DownloadService.parseRanges("items=0-9", SIZE), "unknown unit");
+        Assert.assertNull(DownloadService.parseRanges("bytes=", SIZE), "no specs");
+        Assert.assertNull(DownloadService.parseRanges("bytes=abc", SIZE), "no dash");
+        Assert.assertNull(DownloadService.parseRanges("bytes=5-2", SIZE), "last < first");
+        Assert.assertNull(DownloadService.parseRanges("bytes=-", SIZE), "no numbers");
+        Assert.assertNull(DownloadService.parseRanges("bytes=1x-9", SIZE), "not digits");
+        Assert.assertNull(DownloadService.parseRanges("bytes=0-9,oops", SIZE), "one bad spec spoils all");
+        Assert.assertNull(DownloadService.parseRanges("bytes=99999999999999999999-", SIZE), "overflow");
+    }
+
+    @Test
+    public void tooManyRangesFallBackToTheWholeFile() {
+        StringBuilder header = new StringBuilder("bytes=");
+        for (int i = 0; i < 33; i++) {
+            if (i > 0) header.append(',');
+            header.append(i * 10).append('-').append(i * 10 + 1);
+        }
+        Assert.assertNull(DownloadService.parseRanges(header.toString(), SIZE));
+    }
+
+    // ------------------------------------------------------------
+    // ifRangeMatches
+    // ------------------------------------------------------------
+
+    @Test
+    public void noIfRangeMeansRangesAreFine() {
+        Assert.assertTrue(DownloadService.ifRangeMatches(null, ETAG, MODIFIED_MS));
+        Assert.assertTrue(DownloadService.ifRangeMatches("  ", ETAG, MODIFIED_MS));
+    }
+
+    @Test
+    public void ifRangeEtagMustMatchExactly() {
+        Assert.assertTrue(DownloadService.ifRangeMatches(ETAG, ETAG, MODIFIED_MS));
+        Assert.assertFalse(DownloadService.ifRangeMatches("\"other\"", ETAG, MODIFIED_MS));
+    }
+
+    @Test
+    public void weakEtagNeverMatches() {
+        Assert.assertFalse(DownloadService.ifRangeMatches("W/" + ETAG, ETAG, MODIFIED_MS));
+    }
+
+    @Test
+    public void ifRangeDateMatchesOnlyTheSameSecond() {
+        Assert.assertTrue(DownloadService.ifRangeMatches(httpDate(MODIFIED_MS), ETAG, MODIFIED_MS));
+        Assert.assertTrue(DownloadService.ifRangeMatches(httpDate(MODIFIED_MS), ETAG, MODIFIED_MS + 999));
+        Assert.assertFalse(DownloadService.ifRangeMatches(httpDate(MODIFIED_MS - 60_000), ETAG, MODIFIED_MS));
+    }
+
+    @Test
+    public void unreadableIfRangeDoesNotMatch() {
+        Assert.assertFalse(DownloadService.ifRangeMatches("yesterday", ETAG, MODIFIED_MS));
+    }
+
+    // ------------------------------------------------------------
+
+    private static void assertRanges(List<ByteRange> ranges, long... startEndPairs) {
+        Assert.assertNotNull(ranges, "expected ranges");
+        Assert.assertEquals(ranges.size(), startEndPairs.length / 2);
+        for (int i = 0; i < ranges.size(); i++) {
+            Assert.assertEquals(ranges.get(i).start, startEndPairs[2 * i], "start of range " + i);
+            Assert.assertEquals(ranges.get(i).end, startEndPairs[2 * i + 1], "end of range " + i);
+        }
+    }
+
+    private static void assertUnsatisfiable(List<ByteRange> ranges) {
+        Assert.assertNotNull(ranges, "unsatisfiable is an empty list, not null");
+        Assert.assertTrue(ranges.isEmpty(), "expected no ranges (416)");
+    }
+
+    private static String httpDate(long epochMs) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(epochMs).atOffset(ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,143 @@
+package com.filesharingapp.tests.unit;
+
+import com.filesharingapp.server.LocalS3Server;
+import com.filesharingapp.transfer.S3ClientRegistry;
+import com.filesharingapp.transfer.S3MultipartUploader;
+import com.filesharingapp.transfer.S3RangedDownloader;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * LocalS3ServerTest
+ * -----------------
+ * S3 regression test with NO AWS account:
+ * starts the LocalS3Server stand-in on a free loopback port and runs the
+ * real multipart uploader and ranged downloader against it.
+ */
+@Test(singleThreaded = true)
+public class LocalS3ServerTest {
+
+    private static final String BUCKET = "regression-bucket";
+    private static final AwsBasicCredentials CREDS = AwsBasicCredentials.create("local", "local");
+
+    private Path root;
+    private Path work;
+    private S3Client s3;
+    private S3AsyncClient async;
+
+    @BeforeClass
+    public void startServer() throws IOException {
+        root = Files.createTempDirectory("local-s3-root");
+        work = Files.createTempDirectory("local-s3-work");
+        int port = LocalS3Server.start(0, root);
+        URI endpoint = URI.create("http://127.0.0.1:" + port);
+
+        s3 = S3ClientRegistry.client(Region.US_EAST_1, CREDS, endpoint);
+        async = S3ClientRegistry.asyncClient(Region.US_EAST_1, CREDS, endpoint);
+        s3.createBucket(b -> b.bucket(BUCKET));
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void stopServer() throws IOException {
+        LocalS3Server.stop();
+        deleteTree(root);
+        deleteTree(work);
+    }
+
+    @Test
+    public void smallFileIsOnePutAndDownloadsIntact() throws Exception {
+        File source = randomFile("small.bin", 300_000);
+        long sent = S3MultipartUploader.upload(s3, BUCKET, "small.bin", source, Map.of("sha256", "x"));
+        Assert.assertEquals(sent, source.length());
+
+        HeadObjectResponse head = s3.headObject(b -> b.bucket(BUCKET).key("small.bin"));
+        Assert.assertEquals(head.metadata().get("sha256"), "x");
+        Assert.assertFalse(head.eTag().contains("-"), "plain PUT has a plain MD5 ETag");
+
+        assertRoundTrip(source, "small.bin");
+    }
+
+    @Test
+    public void multipartUploadAndRangedDownloadAreByteIdentical() throws Exception {
+        File source = randomFile("multi.bin", 24L * 1024 * 1024 + 12_345); // 2 parts, 4 segments
+        S3MultipartUploader.upload(s3, BUCKET, "dir/multi.bin", source, Map.of("encrypted", "false"));
+
+        HeadObjectResponse head = s3.headObject(b -> b.bucket(BUCKET).key("dir/multi.bin"));
+        Assert.assertTrue(head.eTag().endsWith("-2\""), "multipart ETag: " + head.eTag());
+        Assert.assertEquals(head.metadata().get("encrypted"), "false");
+
+        assertRoundTrip(source, "dir/multi.bin");
+    }
+
+    @Test
+    public void asyncPartsGiveTheSameObject() throws Exception {
+        File source = randomFile("async.bin", 20L * 1024 * 1024);
+        S3MultipartUploader.upload(s3, async, BUCKET, "async.bin", source, Map.of());
+        assertRoundTrip(source, "async.bin");
+    }
+
+    @Test
+    public void inOrderStreamMatchesTheFileOnDisk() throws Exception {
+        File source = randomFile("ordered.bin", 17L * 1024 * 1024);
+        S3MultipartUploader.upload(s3, BUCKET, "ordered.bin", source, Map.of());
+        HeadObjectResponse head = s3.headObject(b -> b.bucket(BUCKET).key("ordered.bin"));
+
+        File target = work.resolve("ordered.out").toFile();
+        ByteArrayOutputStream inOrder = new ByteArrayOutputStream();
+        S3RangedDownloader.download(s3, BUCKET, "ordered.bin", target,
+                head.contentLength(), head.eTag(), inOrder);
+
+        byte[] expected = Files.readAllBytes(source.toPath());
+        Assert.assertEquals(inOrder.toByteArray(), expected);
+        Assert.assertEquals(Files.readAllBytes(target.toPath()), expected);
+    }
+
+    // ------------------------------------------------------------
+
+    private void assertRoundTrip(File source, String key) throws Exception {
+        HeadObjectResponse head = s3.headObject(b -> b.bucket(BUCKET).key(key));
+        Assert.assertEquals((long) head.contentLength(), source.length());
+
+        File target = work.resolve(key.replace('/', '_') + ".out").toFile();
+        S3RangedDownloader.download(s3, BUCKET, key, target, head.contentLength(), head.eTag());
+        Assert.assertEquals(Files.readAllBytes(target.toPath()), Files.readAllBytes(source.toPath()));
+    }
+
+    private File randomFile(String name, long size) throws IOException {
+        Path file = work.resolve(name);
+        byte[] block = new byte[1024 * 1024];
+        Random random = new Random(size);
+        try (var out = Files.newOutputStream(file)) {
+            for (long left = size; left > 0; left -= block.length) {
+                random.nextBytes(block);
+                out.write(block, 0, (int) Math.min(block.length, left));
+            }
+        }
+        return file.toFile();
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
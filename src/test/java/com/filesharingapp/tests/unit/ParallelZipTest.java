@@ -0,0 +1,256 @@
+package com.filesharingapp.tests.unit;
+
+import com.filesharingapp.utils.ParallelZip;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * ParallelZipTest
+ * ---------------
+ * Archives from ParallelZip must open with plain java.util.zip:
+ * ✔ DEFLATED entries cut in many blocks, STORED entries, empty entries
+ * ✔ ZipInputStream (local headers + descriptors) and ZipFile (central directory)
+ * ✔ ZIP64: more than 65535 entries, and one entry over 4 GB
+ *   (group "slow": left out of a plain mvn test, run with -Pslow-tests)
+ */
+public class ParallelZipTest {
+
+    private static final int BLOCK = 512 * 1024;         // zip.parallel.blockSize default
+
+    private Path dir;
+
+    @BeforeClass
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("parallel-zip");
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void deflatedEntriesReadBackWithZipInputStream() throws IOException {
+        Map<String, byte[]> expected = new LinkedHashMap<>();
+        expected.put("docs/notes.txt", textBytes(6 * BLOCK + 123));   // many blocks, back references across them
+        expected.put("random.bin", randomBytes(2 * BLOCK + 7));        // does not shrink
+        expected.put("empty.txt", new byte[0]);
+        expected.put("tiny.txt", "hi".getBytes(StandardCharsets.UTF_8));
+
+        Path zip = dir.resolve("deflated.zip");
+        try (ParallelZip.Writer writer = new ParallelZip.Writer(Files.newOutputStream(zip))) {
+            for (Map.Entry<String, byte[]> e : expected.entrySet()) {
+                writer.addFile(writeFile(e.getKey(), e.getValue()), e.getKey());
+            }
+        }
+
+        Assert.assertEquals(readWithZipInputStream(zip), expected.size());
+        assertZipFileContents(zip, expected, ZipEntry.DEFLATED);
+    }
+
+    @Test
+    public void storedEntriesAreCopiedAsTheyAre() throws IOException {
+        Map<String, byte[]> expected = new LinkedHashMap<>();
+        expected.put("photo.jpg", randomBytes(BLOCK + 99));
+        expected.put("empty.bin", new byte[0]);
+
+        Path zip = dir.resolve("stored.zip");
+        try (ParallelZip.Writer writer = new ParallelZip.Writer(Files.newOutputStream(zip))) {
+            for (Map.Entry<String, byte[]> e : expected.entrySet()) {
+                writer.addStoredFile(writeFile(e.getKey(), e.getValue()), e.getKey());
+            }
+        }
+
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(zip))) {
+            for (Map.Entry<String, byte[]> e : expected.entrySet()) {
+                ZipEntry entry = in.getNextEntry();
+                Assert.assertNotNull(entry);
+                Assert.assertEquals(entry.getName(), e.getKey());
+                Assert.assertEquals(entry.getMethod(), ZipEntry.STORED);
+                Assert.assertEquals(entry.getSize(), (long) e.getValue().length);
+                Assert.assertEquals(in.readAllBytes(), e.getValue());
+            }
+            Assert.assertNull(in.getNextEntry());
+        }
+        assertZipFileContents(zip, expected, ZipEntry.STORED);
+    }
+
+    @Test
+    public void mixedEntriesAndUtf8NamesFromStreams() throws IOException {
+        Map<String, byte[]> expected = new LinkedHashMap<>();
+        expected.put("résumé/über.txt", textBytes(BLOCK + 1));
+        expected.put("raw.dat", randomBytes(10_000));
+
+        Path zip = dir.resolve("mixed.zip");
+        try (ParallelZip.Writer writer = new ParallelZip.Writer(Files.newOutputStream(zip))) {
+            writer.addEntry("résumé/über.txt", new ByteArrayInputStream(expected.get("résumé/über.txt")),
+                    System.currentTimeMillis());
+            writer.addStoredFile(writeFile("raw.dat", expected.get("raw.dat")), "raw.dat");
+        }
+
+        Assert.assertEquals(readWithZipInputStream(zip), 2);
+        try (ZipFile zf = new ZipFile(zip.toFile(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, byte[]> e : expected.entrySet()) {
+                ZipEntry entry = zf.getEntry(e.getKey());
+                Assert.assertNotNull(entry, e.getKey());
+                try (InputStream in = zf.getInputStream(entry)) {
+                    Assert.assertEquals(in.readAllBytes(), e.getValue());
+                }
+            }
+        }
+    }
+
+    @Test(groups = "slow")
+    public void moreThan65535EntriesUseZip64End() throws IOException {
+        int count = 70_000;
+        Path zip = dir.resolve("many.zip");
+        try (ParallelZip.Writer writer = new ParallelZip.Writer(new BufferedOutputStream(Files.newOutputStream(zip)))) {
+            for (int i = 0; i < count; i++) {
+                byte[] data = ("entry " + i).getBytes(StandardCharsets.UTF_8);
+                writer.addEntry("e/" + i + ".txt", new ByteArrayInputStream(data), 0L);
+            }
+        }
+
+        Assert.assertEquals(readWithZipInputStream(zip), count);
+        try (ZipFile zf = new ZipFile(zip.toFile())) {
+            Assert.assertEquals(zf.size(), count);          // only right if the ZIP64 end record is read
+            ZipEntry last = zf.getEntry("e/" + (count - 1) + ".txt");
+            Assert.assertNotNull(last);
+            try (InputStream in = zf.getInputStream(last)) {
+                Assert.assertEquals(new String(in.readAllBytes(), StandardCharsets.UTF_8), "entry " + (count - 1));
+            }
+        }
+    }
+
+    @Test(groups = "slow")
+    public void entryOver4GbUsesZip64Sizes() throws IOException {
+        long size = 0x1_0000_0000L + 12_345;               // 4 GB + a bit, all zeros → tiny archive
+        Path zip = dir.resolve("big.zip");
+        try (ParallelZip.Writer writer = new ParallelZip.Writer(new BufferedOutputStream(Files.newOutputStream(zip)))) {
+            writer.addEntry("big.bin", new ZeroStream(size), 0L);
+            writer.addEntry("after.txt", new ByteArrayInputStream("still here".getBytes(StandardCharsets.UTF_8)), 0L);
+        }
+
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(zip))) {
+            Assert.assertEquals(in.getNextEntry().getName(), "big.bin");
+            Assert.assertEquals(drain(in), size);
+            ZipEntry after = in.getNextEntry();             // needs the 8-byte sizes in the descriptor
+            Assert.assertNotNull(after);
+            Assert.assertEquals(after.getName(), "after.txt");
+            Assert.assertEquals(new String(in.readAllBytes(), StandardCharsets.UTF_8), "still here");
+        }
+        try (ZipFile zf = new ZipFile(zip.toFile())) {
+            Assert.assertEquals(zf.getEntry("big.bin").getSize(), size);
+        }
+    }
+
+    // ------------------------------------------------------------
+
+    /** Reads every entry with ZipInputStream (CRC and sizes are checked by it); returns the entry count. */
+    private static int readWithZipInputStream(Path zip) throws IOException {
+        int entries = 0;
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(zip), StandardCharsets.UTF_8)) {
+            while (in.getNextEntry() != null) {
+                drain(in);
+                entries++;
+            }
+        }
+        return entries;
+    }
+
+    private static void assertZipFileContents(Path zip, Map<String, byte[]> expected, int method) throws IOException {
+        try (ZipFile zf = new ZipFile(zip.toFile())) {
+            Assert.assertEquals(zf.size(), expected.size());
+            for (Map.Entry<String, byte[]> e : expected.entrySet()) {
+                ZipEntry entry = zf.getEntry(e.getKey());
+                Assert.assertNotNull(entry, e.getKey());
+                Assert.assertEquals(entry.getMethod(), method);
+                Assert.assertEquals(entry.getSize(), (long) e.getValue().length);
+                CRC32 crc = new CRC32();
+                crc.update(e.getValue());
+                Assert.assertEquals(entry.getCrc(), crc.getValue());
+                try (InputStream in = zf.getInputStream(entry)) {
+                    Assert.assertEquals(in.readAllBytes(), e.getValue());
+                }
+            }
+        }
+    }
+
+    private static long drain(InputStream in) throws IOException {
+        byte[] buf = new byte[256 * 1024];
+        long total = 0;
+        int n;
+        while ((n = in.read(buf)) > 0) total += n;
+        return total;
+    }
+
+    private File writeFile(String name, byte[] data) throws IOException {
+        Path file = dir.resolve("src").resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, data);
+        return file.toFile();
+    }
+
+    private static byte[] textBytes(int size) {
+        StringBuilder sb = new StringBuilder(size + 64);
+        Random random = new Random(size);
+        while (sb.length() < size) {
+            sb.append("line ").append(random.nextInt(1000)).append(": the quick brown fox\n");
+        }
+        return sb.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    /** size zero bytes without holding them in memory. */
+    private static final class ZeroStream extends InputStream {
+        private long left;
+
+        ZeroStream(long size) {
+            this.left = size;
+        }
+
+        @Override
+        public int read() {
+            if (left <= 0) return -1;
+            left--;
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (left <= 0) return -1;
+            int n = (int) Math.min(len, left);
+            Arrays.fill(b, off, off + n, (byte) 0);
+            left -= n;
+            return n;
+        }
+    }
+}